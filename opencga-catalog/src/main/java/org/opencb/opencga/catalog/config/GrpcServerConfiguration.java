@@ -21,6 +21,17 @@ package org.opencb.opencga.catalog.config;
  */
 public class GrpcServerConfiguration extends AbstractServerConfiguration {
 
+    public static final int DEFAULT_MAX_BATCH_SIZE = 5000;
+    public static final int DEFAULT_MAX_CONVERTER_THREADS = 4;
+    public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 32;
+
+    /** Max number of variants read and converted at once by a streaming call. */
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    /** Size of the pool converting variants, shared by all the streaming calls. */
+    private int maxConverterThreads = DEFAULT_MAX_CONVERTER_THREADS;
+    /** Max number of streaming calls reading from the database at the same time. */
+    private int maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+
     public GrpcServerConfiguration() {
     }
 
@@ -28,4 +39,42 @@ public class GrpcServerConfiguration extends AbstractServerConfiguration {
         super(port);
     }
 
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("GrpcServerConfiguration{");
+        sb.append("port=").append(port);
+        sb.append(", logFile='").append(logFile).append('\'');
+        sb.append(", maxBatchSize=").append(maxBatchSize);
+        sb.append(", maxConverterThreads=").append(maxConverterThreads);
+        sb.append(", maxConcurrentStreams=").append(maxConcurrentStreams);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public GrpcServerConfiguration setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    public int getMaxConverterThreads() {
+        return maxConverterThreads;
+    }
+
+    public GrpcServerConfiguration setMaxConverterThreads(int maxConverterThreads) {
+        this.maxConverterThreads = maxConverterThreads;
+        return this;
+    }
+
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    public GrpcServerConfiguration setMaxConcurrentStreams(int maxConcurrentStreams) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        return this;
+    }
 }
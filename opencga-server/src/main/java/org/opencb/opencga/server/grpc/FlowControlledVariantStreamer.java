@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.server.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Streams the content of a {@link VariantDBIterator} to a gRPC client honouring the flow control of the call.
+ *
+ * Messages are only written while {@link ServerCallStreamObserver#isReady()} is true. When the client stops reading, the writer stops
+ * and resumes from the onReady handler, so the server never buffers more than a few batches per call. If the client cancels the call,
+ * the DB iterator is closed.
+ *
+ * The DB iterator is read in batches of {@code batchSize} by a reader task, never from the gRPC callbacks, with at most
+ * {@code max(2, 2 * converterThreads)} batches in memory. With {@code converterThreads > 0} the batches are converted into messages
+ * by the converter pool. Otherwise, the reader task converts them.
+ *
+ * Both pools are owned by the caller and shared by all the calls, so they bound the number of threads used by the server.
+ * If the reader pool rejects the task, the call fails with {@link Status#RESOURCE_EXHAUSTED}.
+ *
+ * Created on 18/10/26.
+ */
+public class FlowControlledVariantStreamer<T> {
+
+    private final ServerCallStreamObserver<T> responseObserver;
+    private final VariantDBIterator iterator;
+    private final Function<List<Variant>, List<T>> converter;
+    private final int batchSize;
+    private final int converterThreads;
+
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final AtomicBoolean iteratorClosed = new AtomicBoolean(false);
+
+    // Messages of the batch being written
+    private Iterator<T> pendingMessages = Collections.emptyIterator();
+    // Batch being waited by the writer. The completion callback is only registered once per batch
+    private CompletableFuture<List<T>> awaitedBatch;
+
+    private BlockingQueue<CompletableFuture<List<T>>> queue;
+    // Marks the end of the stream in the queue of pending batches
+    private final CompletableFuture<List<T>> endOfStream = CompletableFuture.completedFuture(Collections.emptyList());
+    private final ExecutorService readerPool;
+    // Only used with converterThreads > 0
+    private final ExecutorService converterPool;
+    private volatile Future<?> readerTask;
+    private volatile Thread reader;
+    // Either the reader task or the release of a call cancelled before reading claims the iterator
+    private final AtomicBoolean readerStarted = new AtomicBoolean(false);
+
+    protected static Logger logger = LoggerFactory.getLogger(FlowControlledVariantStreamer.class);
+
+    /**
+     * @param responseObserver  Response observer of the call. Must be a {@link ServerCallStreamObserver}
+     * @param iterator          Variants to stream. Will be closed at the end of the stream
+     * @param converter         Converts a batch of variants into the messages to send
+     * @param batchSize         Number of variants read and converted at once
+     * @param converterThreads  Number of batches converted in parallel ahead of the writer. 0 to convert in the reader task
+     * @param readerPool        Shared pool running the reader task of each call
+     * @param converterPool     Shared pool converting the batches. Only used with {@code converterThreads > 0}
+     */
+    public FlowControlledVariantStreamer(ServerCallStreamObserver<T> responseObserver, VariantDBIterator iterator,
+                                         Function<List<Variant>, List<T>> converter, int batchSize, int converterThreads,
+                                         ExecutorService readerPool, ExecutorService converterPool) {
+        this.responseObserver = responseObserver;
+        this.iterator = iterator;
+        this.converter = converter;
+        this.batchSize = Math.max(1, batchSize);
+        this.converterThreads = converterPool == null ? 0 : Math.max(0, converterThreads);
+        this.readerPool = readerPool;
+        this.converterPool = this.converterThreads > 0 ? converterPool : null;
+    }
+
+    /**
+     * Start streaming. Must be called from the thread executing the gRPC method.
+     */
+    public void start() {
+        queue = new ArrayBlockingQueue<>(Math.max(2, converterThreads * 2));
+        responseObserver.setOnCancelHandler(this::cancel);
+        try {
+            readerTask = readerPool.submit(this::read);
+        } catch (RejectedExecutionException e) {
+            reject();
+            return;
+        }
+        responseObserver.setOnReadyHandler(this::write);
+        // The first onReady event may have been delivered before the handler was registered
+        write();
+    }
+
+    /**
+     * Write messages while the call is ready. Invoked from the onReady handler, from the reader thread when a new batch
+     * is submitted, and when the awaited batch is converted.
+     */
+    private synchronized void write() {
+        if (finished.get()) {
+            return;
+        }
+        try {
+            while (responseObserver.isReady()) {
+                if (pendingMessages.hasNext()) {
+                    responseObserver.onNext(pendingMessages.next());
+                    continue;
+                }
+                CompletableFuture<List<T>> future = queue.peek();
+                if (future == null) {
+                    // The reader will call write() when the next batch is submitted
+                    return;
+                } else if (!future.isDone()) {
+                    if (awaitedBatch != future) {
+                        awaitedBatch = future;
+                        future.whenComplete((messages, throwable) -> write());
+                    }
+                    return;
+                }
+                queue.poll();
+                if (future == endOfStream) {
+                    complete();
+                    return;
+                }
+                pendingMessages = future.join().iterator();
+            }
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Read batches from the iterator and submit them to be converted. Blocks when the queue is full, so the DB cursor
+     * is not read faster than the client consumes.
+     */
+    private void read() {
+        if (!readerStarted.compareAndSet(false, true)) {
+            // Released before starting. The iterator is already closed
+            return;
+        }
+        reader = Thread.currentThread();
+        try {
+            while (!finished.get() && iterator.hasNext()) {
+                List<Variant> batch = nextBatch();
+                CompletableFuture<List<T>> future;
+                if (converterPool == null) {
+                    future = CompletableFuture.completedFuture(converter.apply(batch));
+                } else {
+                    future = CompletableFuture.supplyAsync(() -> converter.apply(batch), converterPool);
+                }
+                queue.put(future);
+                write();
+            }
+            queue.put(endOfStream);
+            write();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            if (!finished.get()) {
+                fail(e);
+            }
+        } finally {
+            reader = null;
+            closeIterator();
+        }
+    }
+
+    private List<Variant> nextBatch() {
+        List<Variant> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && iterator.hasNext()) {
+            batch.add(iterator.next());
+        }
+        return batch;
+    }
+
+    private void complete() {
+        if (finished.compareAndSet(false, true)) {
+            release();
+            responseObserver.onCompleted();
+        }
+    }
+
+    private synchronized void fail(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (finished.compareAndSet(false, true)) {
+            logger.error("Error streaming variants", e);
+            release();
+            responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).withCause(e).asRuntimeException());
+        }
+    }
+
+    private void reject() {
+        if (finished.compareAndSet(false, true)) {
+            logger.warn("Too many concurrent variant streams. Rejecting call");
+            closeIterator();
+            responseObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription("Too many concurrent variant streams").asRuntimeException());
+        }
+    }
+
+    private void cancel() {
+        if (finished.compareAndSet(false, true)) {
+            logger.info("Variants stream cancelled by the client");
+            release();
+        }
+    }
+
+    private void release() {
+        if (readerStarted.compareAndSet(false, true)) {
+            // The reader task did not start, so it will not close the iterator
+            if (readerTask != null) {
+                readerTask.cancel(false);
+            }
+            closeIterator();
+        } else if (Thread.currentThread() != reader && readerTask != null) {
+            // The reader task closes the iterator when finishing
+            readerTask.cancel(true);
+        }
+        // The pools are shared. Skip the pending conversions of this call
+        for (CompletableFuture<List<T>> future : queue) {
+            future.cancel(false);
+        }
+        queue.clear();
+    }
+
+    private void closeIterator() {
+        if (iteratorClosed.compareAndSet(false, true)) {
+            try {
+                iterator.close();
+            } catch (Exception e) {
+                logger.warn("Error closing the variants iterator", e);
+            }
+        }
+    }
+
+}
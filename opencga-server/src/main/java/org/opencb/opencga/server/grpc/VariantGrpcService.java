@@ -16,6 +16,7 @@
 
 package org.opencb.opencga.server.grpc;
 
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import org.opencb.biodata.models.common.protobuf.service.ServiceTypesModel;
 import org.opencb.biodata.models.variant.Variant;
@@ -25,22 +26,74 @@ import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResult;
 import org.opencb.opencga.catalog.config.Configuration;
+import org.opencb.opencga.catalog.config.GrpcServerConfiguration;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
 /**
  * Created by imedina on 29/12/15.
  */
 public class VariantGrpcService extends VariantServiceGrpc.VariantServiceImplBase {
 
+    /**
+     * Number of variants read and converted at once. With getBatch, number of variants per message.
+     * Limited by {@link GrpcServerConfiguration#getMaxBatchSize}.
+     */
+    public static final String BATCH_SIZE = "batchSize";
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    /**
+     * Number of batches converted in parallel ahead of the network writer. 0 to convert in the reader task.
+     * Limited by {@link GrpcServerConfiguration#getMaxConverterThreads}.
+     */
+    public static final String CONVERTER_THREADS = "converterThreads";
+
     private GenericGrpcService genericGrpcService;
 
+    private final int maxBatchSize;
+    private final int maxConverterThreads;
+    // Shared by all the calls, so the number of threads does not depend on the client requests
+    private final ExecutorService readerPool;
+    private final ExecutorService converterPool;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     public VariantGrpcService(Configuration configuration, StorageConfiguration storageConfiguration) {
         genericGrpcService = new GenericGrpcService(configuration, storageConfiguration);
+
+        GrpcServerConfiguration grpcConfiguration = null;
+        if (configuration != null && configuration.getServer() != null) {
+            grpcConfiguration = configuration.getServer().getGrpc();
+        }
+        if (grpcConfiguration == null) {
+            grpcConfiguration = new GrpcServerConfiguration();
+        }
+        maxBatchSize = Math.max(1, grpcConfiguration.getMaxBatchSize());
+        maxConverterThreads = Math.max(0, grpcConfiguration.getMaxConverterThreads());
+
+        // Rejects new streams when all the readers are busy, instead of queueing them
+        readerPool = new ThreadPoolExecutor(0, Math.max(1, grpcConfiguration.getMaxConcurrentStreams()),
+                60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                    Thread thread = new Thread(r, "grpc-variant-reader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        if (maxConverterThreads > 0) {
+            converterPool = Executors.newFixedThreadPool(maxConverterThreads, r -> {
+                Thread thread = new Thread(r, "grpc-variant-converter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            converterPool = null;
+        }
     }
 
     @Override
@@ -64,20 +117,64 @@ public class VariantGrpcService extends VariantServiceGrpc.VariantServiceImplBas
 
     @Override
     public void get(GenericServiceModel.Request request, StreamObserver<VariantProto.Variant> responseObserver) {
+        stream(request, responseObserver, (converter, variants) -> {
+            List<VariantProto.Variant> messages = new ArrayList<>(variants.size());
+            for (Variant variant : variants) {
+                messages.add(converter.convert(variant));
+            }
+            return messages;
+        });
+    }
+
+    @Override
+    public void getBatch(GenericServiceModel.Request request, StreamObserver<VariantServiceModel.VariantBatch> responseObserver) {
+        stream(request, responseObserver, (converter, variants) -> {
+            VariantServiceModel.VariantBatch.Builder builder = VariantServiceModel.VariantBatch.newBuilder();
+            for (Variant variant : variants) {
+                builder.addVariants(converter.convert(variant));
+            }
+            return Collections.singletonList(builder.build());
+        });
+    }
+
+    /**
+     * Stream the variants matching the request using the flow control of the call. See {@link FlowControlledVariantStreamer}.
+     *
+     * Accepts the options {@link #BATCH_SIZE} and {@link #CONVERTER_THREADS}.
+     *
+     * @param request           gRPC request
+     * @param responseObserver  Response observer
+     * @param batchConverter    Converts a batch of variants into messages, given a converter owned by the calling thread
+     * @param <T>               Type of the messages
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void stream(GenericServiceModel.Request request, StreamObserver<T> responseObserver,
+                            BiFunction<VariantAvroToVariantProtoConverter, List<Variant>, List<T>> batchConverter) {
+        VariantDBIterator iterator = null;
         try {
-            VariantAvroToVariantProtoConverter converter = new VariantAvroToVariantProtoConverter();
             Query query = genericGrpcService.createQuery(request);
             QueryOptions queryOptions = genericGrpcService.createQueryOptions(request);
             logger.info("Get variants query : {} , queryOptions : {}" , query.toJson(), queryOptions.toJson());
-            try (VariantDBIterator iterator = genericGrpcService.variantStorageManager.iterator(query, queryOptions, request.getSessionId())) {
-                while (iterator.hasNext()) {
-                    Variant variant = iterator.next();
-                    responseObserver.onNext(converter.convert(variant));
-                }
-            }
-            responseObserver.onCompleted();
+            int batchSize = Math.min(queryOptions.getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE), maxBatchSize);
+            int converterThreads = Math.min(queryOptions.getInt(CONVERTER_THREADS, 0), maxConverterThreads);
+            queryOptions.remove(BATCH_SIZE);
+            queryOptions.remove(CONVERTER_THREADS);
+
+            iterator = genericGrpcService.variantStorageManager.iterator(query, queryOptions, request.getSessionId());
+            // The converter is not thread safe
+            ThreadLocal<VariantAvroToVariantProtoConverter> converters = ThreadLocal.withInitial(VariantAvroToVariantProtoConverter::new);
+            new FlowControlledVariantStreamer<>((ServerCallStreamObserver<T>) responseObserver, iterator,
+                    variants -> batchConverter.apply(converters.get(), variants), batchSize, converterThreads,
+                    readerPool, converterPool).start();
         } catch (Exception e) {
             logger.error("Error on get variants", e);
+            if (iterator != null) {
+                try {
+                    iterator.close();
+                } catch (Exception e1) {
+                    e.addSuppressed(e1);
+                }
+            }
             responseObserver.onError(e);
         }
     }
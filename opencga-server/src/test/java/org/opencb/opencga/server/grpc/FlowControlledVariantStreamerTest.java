@@ -0,0 +1,339 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.server.grpc;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBIterator;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class FlowControlledVariantStreamerTest {
+
+    private static final int BATCH_SIZE = 10;
+    private static final Function<List<Variant>, List<Integer>> CONVERTER =
+            variants -> variants.stream().map(Variant::getStart).collect(Collectors.toList());
+    private static final ExecutorService READER_POOL = Executors.newCachedThreadPool();
+    private static final ExecutorService CONVERTER_POOL = Executors.newFixedThreadPool(4);
+
+    @AfterClass
+    public static void afterClass() {
+        READER_POOL.shutdownNow();
+        CONVERTER_POOL.shutdownNow();
+    }
+
+    @Test
+    public void testStreamAll() throws Exception {
+        testStreamAll(0);
+    }
+
+    @Test
+    public void testStreamAllConverterThreads() throws Exception {
+        testStreamAll(4);
+    }
+
+    private void testStreamAll(int converterThreads) throws Exception {
+        FakeIterator iterator = new FakeIterator(1000);
+        FakeObserver observer = new FakeObserver(true);
+
+        new FlowControlledVariantStreamer<>(observer, iterator, CONVERTER, BATCH_SIZE, converterThreads,
+                READER_POOL, CONVERTER_POOL).start();
+
+        assertTrue(observer.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(range(1, 1000), observer.getMessages());
+        assertNull(observer.error);
+        assertTrue(iterator.closed.await(10, TimeUnit.SECONDS));
+        // The DB iterator is never read from the gRPC callbacks
+        assertFalse(iterator.readFromCallback);
+    }
+
+    @Test
+    public void testFlowControl() throws Exception {
+        testFlowControl(0);
+    }
+
+    @Test
+    public void testFlowControlConverterThreads() throws Exception {
+        testFlowControl(2);
+    }
+
+    private void testFlowControl(int converterThreads) throws Exception {
+        FakeIterator iterator = new FakeIterator(10000);
+        FakeObserver observer = new FakeObserver(false);
+
+        new FlowControlledVariantStreamer<>(observer, iterator, CONVERTER, BATCH_SIZE, converterThreads,
+                READER_POOL, CONVERTER_POOL).start();
+
+        // While the client is not ready, the reader only reads a bounded number of batches ahead
+        waitFor(() -> iterator.read.get() >= BATCH_SIZE * 2);
+        Thread.sleep(200);
+        int maxBatches = Math.max(2, converterThreads * 2) + 1;
+        assertTrue(iterator.read.get() + " variants read", iterator.read.get() <= BATCH_SIZE * maxBatches);
+        assertTrue(observer.getMessages().isEmpty());
+
+        // Toggle the ready flag until the end of the stream
+        while (observer.completed.getCount() > 0) {
+            observer.setReady(true);
+            observer.setReady(false);
+        }
+        observer.setReady(true);
+        assertTrue(observer.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(range(1, 10000), observer.getMessages());
+        assertNull(observer.error);
+        assertTrue(iterator.closed.await(10, TimeUnit.SECONDS));
+        assertFalse(iterator.readFromCallback);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        testCancel(0);
+    }
+
+    @Test
+    public void testCancelConverterThreads() throws Exception {
+        testCancel(2);
+    }
+
+    private void testCancel(int converterThreads) throws Exception {
+        FakeIterator iterator = new FakeIterator(100000);
+        FakeObserver observer = new FakeObserver(false);
+        // The client stops reading after 55 messages
+        observer.stopAfter = 55;
+
+        new FlowControlledVariantStreamer<>(observer, iterator, CONVERTER, BATCH_SIZE, converterThreads,
+                READER_POOL, CONVERTER_POOL).start();
+        observer.setReady(true);
+        waitFor(() -> observer.getMessages().size() == 55);
+
+        observer.cancel();
+        assertTrue(iterator.closed.await(10, TimeUnit.SECONDS));
+
+        // Nothing else is written after cancelling the call
+        observer.stopAfter = Integer.MAX_VALUE;
+        observer.setReady(true);
+        Thread.sleep(100);
+        assertEquals(range(1, 55), observer.getMessages());
+        assertEquals(1, observer.completed.getCount());
+        assertNull(observer.error);
+        assertTrue(iterator.read.get() < 100000);
+    }
+
+    @Test
+    public void testConverterError() throws Exception {
+        FakeIterator iterator = new FakeIterator(1000);
+        FakeObserver observer = new FakeObserver(true);
+        Function<List<Variant>, List<Integer>> converter = variants -> {
+            if (variants.get(0).getStart() > 500) {
+                throw new IllegalStateException("Error converting");
+            }
+            return CONVERTER.apply(variants);
+        };
+
+        new FlowControlledVariantStreamer<>(observer, iterator, converter, BATCH_SIZE, 2, READER_POOL, CONVERTER_POOL).start();
+
+        waitFor(() -> observer.error != null);
+        assertEquals(1, observer.completed.getCount());
+        assertTrue(iterator.closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTooManyStreams() throws Exception {
+        ExecutorService readerPool = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new SynchronousQueue<>());
+        try {
+            // The first client does not read, so its reader is kept busy
+            FakeIterator iterator1 = new FakeIterator(100000);
+            FakeObserver observer1 = new FakeObserver(false);
+            new FlowControlledVariantStreamer<>(observer1, iterator1, CONVERTER, BATCH_SIZE, 0, readerPool, null).start();
+            waitFor(() -> iterator1.read.get() > 0);
+
+            FakeIterator iterator2 = new FakeIterator(1000);
+            FakeObserver observer2 = new FakeObserver(true);
+            new FlowControlledVariantStreamer<>(observer2, iterator2, CONVERTER, BATCH_SIZE, 0, readerPool, null).start();
+
+            assertNotNull(observer2.error);
+            assertEquals(Status.Code.RESOURCE_EXHAUSTED, ((StatusRuntimeException) observer2.error).getStatus().getCode());
+            assertTrue(observer2.getMessages().isEmpty());
+            assertTrue(iterator2.closed.await(10, TimeUnit.SECONDS));
+            assertEquals(0, iterator2.read.get());
+
+            observer1.cancel();
+            assertTrue(iterator1.closed.await(10, TimeUnit.SECONDS));
+        } finally {
+            readerPool.shutdownNow();
+        }
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> list = new ArrayList<>(to - from + 1);
+        for (int i = from; i <= to; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timeout", System.currentTimeMillis() < timeout);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Fake call. Runs the onReady handler in the calling thread when the ready flag is set, as gRPC does from its executor.
+     */
+    private static class FakeObserver extends ServerCallStreamObserver<Integer> {
+        private final List<Integer> messages = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile boolean ready;
+        private volatile boolean cancelled;
+        private volatile int stopAfter = Integer.MAX_VALUE;
+        private volatile Throwable error;
+        private Runnable onReadyHandler;
+        private Runnable onCancelHandler;
+
+        FakeObserver(boolean ready) {
+            this.ready = ready;
+        }
+
+        void setReady(boolean ready) {
+            this.ready = ready;
+            if (ready && onReadyHandler != null) {
+                CALLBACK.set(true);
+                try {
+                    onReadyHandler.run();
+                } finally {
+                    CALLBACK.set(false);
+                }
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            CALLBACK.set(true);
+            try {
+                onCancelHandler.run();
+            } finally {
+                CALLBACK.set(false);
+            }
+        }
+
+        List<Integer> getMessages() {
+            synchronized (messages) {
+                return new ArrayList<>(messages);
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready && !cancelled && messages.size() < stopAfter;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler) {
+            this.onCancelHandler = onCancelHandler;
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(int count) {
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+
+        public void setCompression(String compression) {
+        }
+
+        @Override
+        public void onNext(Integer value) {
+            assertFalse("Message after cancel", cancelled);
+            messages.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onCompleted() {
+            completed.countDown();
+        }
+    }
+
+    /** Marks the threads executing a gRPC callback. */
+    private static final ThreadLocal<Boolean> CALLBACK = ThreadLocal.withInitial(() -> false);
+
+    private static class FakeIterator extends VariantDBIterator {
+        private final int numVariants;
+        private final AtomicInteger read = new AtomicInteger();
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private volatile boolean readFromCallback;
+
+        FakeIterator(int numVariants) {
+            this.numVariants = numVariants;
+        }
+
+        @Override
+        public boolean hasNext() {
+            readFromCallback |= CALLBACK.get();
+            return read.get() < numVariants;
+        }
+
+        @Override
+        public Variant next() {
+            readFromCallback |= CALLBACK.get();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return new Variant("1", read.incrementAndGet(), "A", "C");
+        }
+
+        @Override
+        public void close() throws Exception {
+            closed.countDown();
+        }
+    }
+}
@@ -562,6 +562,28 @@ public class CliOptionsParser extends OptionsParser {
         @Parameter(names = {"--concurrency"}, description = "Number of threads to run in parallel", required = false, arity = 1)
         public int concurrency = 1;
 
+        @Parameter(names = {"--duration"}, description = "Seconds running queries. If not set, each query is executed "
+                + "num-repetition times", required = false, arity = 1)
+        public int duration;
+
+        @Parameter(names = {"--warmup"}, description = "Seconds running queries before start measuring", required = false, arity = 1)
+        public int warmup;
+
+        @Parameter(names = {"--mode"}, description = "Query load mode: closed (new query when the previous finishes) or open "
+                + "(fixed rate)", required = false, arity = 1)
+        public String mode;
+
+        @Parameter(names = {"--rate"}, description = "Queries per second in open mode", required = false, arity = 1)
+        public int rate;
+
+        @Parameter(names = {"--query-file"}, description = "File with the mix of queries. One query per line with an optional weight",
+                required = false, arity = 1)
+        public String queryFile;
+
+        @Parameter(names = {"-o", "--output"}, description = "Output file for the results, in JSON or CSV format, depending on the "
+                + "extension", required = false, arity = 1)
+        public String output;
+
     }
 
     @Parameters(commandNames = {"stats-variants"}, commandDescription = "Create and load stats into a database.")
@@ -616,6 +616,35 @@ public class VariantCommandExecutor extends CommandExecutor {
             configuration.getBenchmark().setConcurrency(benchmarkCommandOptions.concurrency);
         }
 
+        if (benchmarkCommandOptions.load != null && !benchmarkCommandOptions.load.isEmpty()) {
+            configuration.getBenchmark().setLoad(true);
+            configuration.getBenchmark().setInput(benchmarkCommandOptions.load);
+        }
+
+        if (benchmarkCommandOptions.duration > 0) {
+            configuration.getBenchmark().setDuration(benchmarkCommandOptions.duration);
+        }
+
+        if (benchmarkCommandOptions.warmup > 0) {
+            configuration.getBenchmark().setWarmup(benchmarkCommandOptions.warmup);
+        }
+
+        if (benchmarkCommandOptions.mode != null && !benchmarkCommandOptions.mode.isEmpty()) {
+            configuration.getBenchmark().setMode(benchmarkCommandOptions.mode);
+        }
+
+        if (benchmarkCommandOptions.rate > 0) {
+            configuration.getBenchmark().setRate(benchmarkCommandOptions.rate);
+        }
+
+        if (benchmarkCommandOptions.queryFile != null && !benchmarkCommandOptions.queryFile.isEmpty()) {
+            configuration.getBenchmark().setQueryFile(benchmarkCommandOptions.queryFile);
+        }
+
+        if (benchmarkCommandOptions.output != null && !benchmarkCommandOptions.output.isEmpty()) {
+            configuration.getBenchmark().setOutput(benchmarkCommandOptions.output);
+        }
+
         logger.debug("Benchmark configuration: {}", configuration.getBenchmark());
 
         // validate
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.benchmarks;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * StudyConfigurationManager keeping the StudyConfigurations in memory, so the converters can be benchmarked without any database.
+ *
+ * Created on 18/10/26.
+ */
+public class InMemoryStudyConfigurationManager extends StudyConfigurationManager {
+
+    private final Map<Integer, StudyConfiguration> studyConfigurations = new ConcurrentHashMap<>();
+
+    public InMemoryStudyConfigurationManager(StudyConfiguration... studyConfigurations) {
+        super(new ObjectMap());
+        for (StudyConfiguration studyConfiguration : studyConfigurations) {
+            this.studyConfigurations.put(studyConfiguration.getStudyId(), studyConfiguration);
+        }
+    }
+
+    @Override
+    protected QueryResult<StudyConfiguration> internalGetStudyConfiguration(String studyName, Long time, QueryOptions options) {
+        for (StudyConfiguration studyConfiguration : studyConfigurations.values()) {
+            if (studyConfiguration.getStudyName().equals(studyName)) {
+                return new QueryResult<>("", 0, 1, 1, "", "", Collections.singletonList(studyConfiguration));
+            }
+        }
+        return new QueryResult<>("", 0, 0, 0, "", "", Collections.emptyList());
+    }
+
+    @Override
+    protected QueryResult<StudyConfiguration> internalGetStudyConfiguration(int studyId, Long timeStamp, QueryOptions options) {
+        StudyConfiguration studyConfiguration = studyConfigurations.get(studyId);
+        if (studyConfiguration != null) {
+            return new QueryResult<>("", 0, 1, 1, "", "", Collections.singletonList(studyConfiguration));
+        } else {
+            return new QueryResult<>("", 0, 0, 0, "", "", Collections.emptyList());
+        }
+    }
+
+    @Override
+    protected QueryResult internalUpdateStudyConfiguration(StudyConfiguration studyConfiguration, QueryOptions options) {
+        studyConfigurations.put(studyConfiguration.getStudyId(), studyConfiguration);
+        return new QueryResult();
+    }
+
+    @Override
+    public Map<String, Integer> getStudies(QueryOptions options) {
+        return studyConfigurations.values().stream()
+                .collect(Collectors.toMap(StudyConfiguration::getStudyName, StudyConfiguration::getStudyId));
+    }
+}
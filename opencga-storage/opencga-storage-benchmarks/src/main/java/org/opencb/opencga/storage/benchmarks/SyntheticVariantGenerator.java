@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.benchmarks;
+
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.annotation.ConsequenceTypeMappings;
+import org.opencb.biodata.models.variant.avro.*;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
+
+import java.util.*;
+
+/**
+ * Generates reproducible synthetic variants, annotations and study configurations for the benchmarks.
+ *
+ * All the variants belong to the same study and file, and contain one genotype per sample, with format GT:DP.
+ *
+ * Created on 18/10/26.
+ */
+public class SyntheticVariantGenerator {
+
+    public static final int STUDY_ID = 1;
+    public static final String STUDY_NAME = "benchmark_study";
+    public static final int FILE_ID = 1;
+    public static final String FILE_NAME = "benchmark.vcf.gz";
+    public static final String CHROMOSOME = "1";
+    public static final String COHORT_ALL = StudyEntry.DEFAULT_COHORT;
+    public static final String VCF_HEADER = "##fileformat=VCFv4.1\n"
+            + "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n"
+            + "##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read Depth\">\n"
+            + "##contig=<ID=" + CHROMOSOME + ">\n"
+            + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\n";
+
+    private static final String[] BASES = {"A", "C", "G", "T"};
+    private static final String[] SO_TERMS = {"missense_variant", "synonymous_variant", "intron_variant", "upstream_gene_variant",
+            "3_prime_UTR_variant", "stop_gained", };
+    private static final String[] BIOTYPES = {"protein_coding", "lincRNA", "processed_transcript", };
+
+    private final int numSamples;
+    private final Random random;
+    private final LinkedHashMap<String, Integer> samplesPosition;
+    private int position = 10000;
+
+    /**
+     * @param numSamples    Number of samples of the study
+     * @param seed          Seed for the random generator. Using the same seed produces the same variants
+     */
+    public SyntheticVariantGenerator(int numSamples, long seed) {
+        this.numSamples = numSamples;
+        this.random = new Random(seed);
+        samplesPosition = new LinkedHashMap<>();
+        for (int i = 0; i < numSamples; i++) {
+            samplesPosition.put(getSampleName(i), i);
+        }
+    }
+
+    public static String getSampleName(int i) {
+        return "S" + i;
+    }
+
+    public List<String> getSampleNames() {
+        return new ArrayList<>(samplesPosition.keySet());
+    }
+
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    /**
+     * Creates a StudyConfiguration with one indexed file, containing all the samples, and one cohort with all of them.
+     *
+     * @return StudyConfiguration
+     */
+    public StudyConfiguration createStudyConfiguration() {
+        StudyConfiguration studyConfiguration = new StudyConfiguration(STUDY_ID, STUDY_NAME, FILE_ID, FILE_NAME);
+        LinkedHashSet<Integer> sampleIds = new LinkedHashSet<>();
+        for (Map.Entry<String, Integer> entry : samplesPosition.entrySet()) {
+            // Sample ids starting at 1
+            int sampleId = entry.getValue() + 1;
+            studyConfiguration.getSampleIds().put(entry.getKey(), sampleId);
+            sampleIds.add(sampleId);
+        }
+        studyConfiguration.getSamplesInFiles().put(FILE_ID, sampleIds);
+        studyConfiguration.getIndexedFiles().add(FILE_ID);
+        studyConfiguration.getCohortIds().put(COHORT_ALL, 1);
+        studyConfiguration.getCohorts().put(1, new HashSet<>(sampleIds));
+        studyConfiguration.getHeaders().put(FILE_ID, VCF_HEADER);
+        studyConfiguration.getAttributes().put(VariantStorageEngine.Options.EXTRA_GENOTYPE_FIELDS.key(), Collections.singletonList("DP"));
+        studyConfiguration.getAttributes()
+                .put(VariantStorageEngine.Options.EXTRA_GENOTYPE_FIELDS_TYPE.key(), Collections.singletonList("Integer"));
+        return studyConfiguration;
+    }
+
+    /**
+     * @return Cohort definition to be used with the VariantStatisticsCalculator
+     */
+    public Map<String, Set<String>> getCohorts() {
+        return Collections.singletonMap(COHORT_ALL, new HashSet<>(samplesPosition.keySet()));
+    }
+
+    public List<Variant> generate(int numVariants) {
+        List<Variant> variants = new ArrayList<>(numVariants);
+        for (int i = 0; i < numVariants; i++) {
+            variants.add(generate());
+        }
+        return variants;
+    }
+
+    /**
+     * Generates the next variant. Variants are sorted by position.
+     *
+     * Genotypes follow a typical distribution: 70% 0/0, 20% 0/1, 8% 1/1 and 2% missing.
+     *
+     * @return A new variant
+     */
+    public Variant generate() {
+        position += 1 + random.nextInt(200);
+        String reference = BASES[random.nextInt(BASES.length)];
+        String alternate = BASES[(Arrays.asList(BASES).indexOf(reference) + 1 + random.nextInt(BASES.length - 1)) % BASES.length];
+
+        Variant variant = new Variant(CHROMOSOME, position, position, reference, alternate);
+        variant.setIds(Collections.singletonList("rs" + position));
+
+        StudyEntry studyEntry = new StudyEntry(String.valueOf(FILE_ID), String.valueOf(STUDY_ID));
+        studyEntry.setFormatAsString("GT:DP");
+        studyEntry.setSamplesPosition(samplesPosition);
+        List<List<String>> samplesData = new ArrayList<>(numSamples);
+        for (int i = 0; i < numSamples; i++) {
+            samplesData.add(Arrays.asList(nextGenotype(), String.valueOf(random.nextInt(60))));
+        }
+        studyEntry.setSamplesData(samplesData);
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("QUAL", String.valueOf(random.nextInt(1000)));
+        attributes.put("FILTER", "PASS");
+        attributes.put("DP", String.valueOf(numSamples * 30));
+        studyEntry.setFiles(new ArrayList<>(Collections.singletonList(new FileEntry(String.valueOf(FILE_ID), "", attributes))));
+        variant.addStudyEntry(studyEntry);
+        return variant;
+    }
+
+    /**
+     * Generates an annotation for the variant, with a few consequence types, conservation scores and population frequencies.
+     *
+     * @param variant Variant to annotate
+     * @return VariantAnnotation
+     */
+    public VariantAnnotation generateAnnotation(Variant variant) {
+        VariantAnnotation annotation = new VariantAnnotation();
+        annotation.setChromosome(variant.getChromosome());
+        annotation.setStart(variant.getStart());
+        annotation.setReference(variant.getReference());
+        annotation.setAlternate(variant.getAlternate());
+        annotation.setId(variant.getIds().isEmpty() ? null : variant.getIds().get(0));
+
+        int numConsequenceTypes = 1 + random.nextInt(5);
+        List<ConsequenceType> consequenceTypes = new ArrayList<>(numConsequenceTypes);
+        for (int i = 0; i < numConsequenceTypes; i++) {
+            int gene = random.nextInt(20000);
+            ConsequenceType consequenceType = new ConsequenceType();
+            consequenceType.setGeneName("GENE" + gene);
+            consequenceType.setEnsemblGeneId(String.format("ENSG%011d", gene));
+            consequenceType.setEnsemblTranscriptId(String.format("ENST%011d", gene * 10 + i));
+            consequenceType.setStrand("+");
+            consequenceType.setBiotype(BIOTYPES[random.nextInt(BIOTYPES.length)]);
+            String soName = SO_TERMS[random.nextInt(SO_TERMS.length)];
+            consequenceType.setSequenceOntologyTerms(Collections.singletonList(
+                    new SequenceOntologyTerm(ConsequenceTypeMappings.getSoAccessionString(soName), soName)));
+            consequenceTypes.add(consequenceType);
+        }
+        annotation.setConsequenceTypes(consequenceTypes);
+
+        annotation.setConservation(Arrays.asList(
+                new Score(random.nextDouble(), "phastCons", ""),
+                new Score(random.nextDouble() * 10 - 5, "phylop", ""),
+                new Score(random.nextDouble() * 10 - 5, "gerp", "")));
+
+        List<PopulationFrequency> populationFrequencies = new ArrayList<>();
+        for (String population : Arrays.asList("ALL", "AFR", "EUR", "EAS")) {
+            float altFreq = random.nextFloat();
+            populationFrequencies.add(new PopulationFrequency("1kG_phase3", population, variant.getReference(), variant.getAlternate(),
+                    1 - altFreq, altFreq, -1f, -1f, -1f));
+        }
+        annotation.setPopulationFrequencies(populationFrequencies);
+        return annotation;
+    }
+
+    private String nextGenotype() {
+        int i = random.nextInt(100);
+        if (i < 70) {
+            return "0/0";
+        } else if (i < 90) {
+            return "0/1";
+        } else if (i < 98) {
+            return "1/1";
+        } else {
+            return "./.";
+        }
+    }
+}
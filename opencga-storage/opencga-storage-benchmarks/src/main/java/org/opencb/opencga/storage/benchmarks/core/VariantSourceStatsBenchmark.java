@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.benchmarks.core;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.stats.VariantSourceStats;
+import org.opencb.opencga.storage.benchmarks.SyntheticVariantGenerator;
+import org.opencb.opencga.storage.core.variant.stats.AccumulatedStatsMerger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Benchmark for the accumulation of the {@link VariantSourceStats} from concurrent stats tasks, comparing one accumulator
+ * shared by all the threads with one accumulator per thread merged at the end.
+ *
+ * The total work is constant, so the time per invocation shows how the accumulation scales with the number of threads.
+ *
+ * Created on 18/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class VariantSourceStatsBenchmark {
+
+    public static final int BATCH_SIZE = 100;
+    public static final int NUM_BATCHES = 64;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int numThreads;
+
+    @Param({"shared", "perThread"})
+    public String accumulator;
+
+    @Param({"100"})
+    public int numSamples;
+
+    private ExecutorService executor;
+    private List<Variant> variants;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticVariantGenerator generator = new SyntheticVariantGenerator(numSamples, 0);
+        variants = generator.generate(BATCH_SIZE);
+        executor = Executors.newFixedThreadPool(numThreads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public VariantSourceStats accumulate() throws InterruptedException, ExecutionException {
+        String studyId = String.valueOf(SyntheticVariantGenerator.STUDY_ID);
+        boolean shared = accumulator.equals("shared");
+        VariantSourceStats sharedStats = new VariantSourceStats(null, studyId);
+        List<Future<VariantSourceStats>> futures = new ArrayList<>(numThreads);
+        for (int thread = 0; thread < numThreads; thread++) {
+            int numBatches = NUM_BATCHES / numThreads + (thread < NUM_BATCHES % numThreads ? 1 : 0);
+            futures.add(executor.submit(() -> {
+                VariantSourceStats stats = shared ? sharedStats : new VariantSourceStats(null, studyId);
+                for (int i = 0; i < numBatches; i++) {
+                    if (shared) {
+                        synchronized (stats) {
+                            update(stats);
+                        }
+                    } else {
+                        update(stats);
+                    }
+                }
+                return stats;
+            }));
+        }
+        List<VariantSourceStats> partialStats = new ArrayList<>(numThreads);
+        for (Future<VariantSourceStats> future : futures) {
+            partialStats.add(future.get());
+        }
+        return shared ? sharedStats : AccumulatedStatsMerger.merge(studyId, partialStats);
+    }
+
+    private void update(VariantSourceStats stats) {
+        stats.updateFileStats(variants);
+        stats.updateSampleStats(variants, null);
+    }
+
+}
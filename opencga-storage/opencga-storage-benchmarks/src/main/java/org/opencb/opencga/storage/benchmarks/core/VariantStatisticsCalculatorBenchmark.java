@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.benchmarks.core;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.benchmarks.SyntheticVariantGenerator;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatisticsCalculator;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatsWrapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link VariantStatisticsCalculator#calculateBatch}, calculating the stats of one cohort with all the samples.
+ *
+ * Created on 18/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(VariantStatisticsCalculatorBenchmark.BATCH_SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class VariantStatisticsCalculatorBenchmark {
+
+    public static final int BATCH_SIZE = 100;
+
+    @Param({"10", "100", "1000"})
+    public int numSamples;
+
+    private VariantStatisticsCalculator calculator;
+    private List<Variant> variants;
+    private Map<String, Set<String>> cohorts;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticVariantGenerator generator = new SyntheticVariantGenerator(numSamples, 0);
+        calculator = new VariantStatisticsCalculator(true);
+        variants = generator.generate(BATCH_SIZE);
+        cohorts = generator.getCohorts();
+    }
+
+    @Benchmark
+    public List<VariantStatsWrapper> calculateBatch() {
+        return calculator.calculateBatch(variants, String.valueOf(SyntheticVariantGenerator.STUDY_ID),
+                String.valueOf(SyntheticVariantGenerator.FILE_ID), cohorts);
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.benchmarks.core;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.benchmarks.SyntheticVariantGenerator;
+import org.opencb.opencga.storage.core.variant.io.VariantVcfDataWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the {@link VariantVcfDataWriter}. The output is discarded, so only the conversion and the VCF encoding are measured.
+ *
+ * Created on 18/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(VariantVcfDataWriterBenchmark.BATCH_SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class VariantVcfDataWriterBenchmark {
+
+    public static final int BATCH_SIZE = 100;
+
+    @Param({"10", "100", "1000"})
+    public int numSamples;
+
+    private VariantVcfDataWriter writer;
+    private List<Variant> variants;
+    private long writtenBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticVariantGenerator generator = new SyntheticVariantGenerator(numSamples, 0);
+        variants = generator.generate(BATCH_SIZE);
+
+        // The header is taken from the StudyConfiguration, so the VariantSourceDBAdaptor is never used
+        writer = new VariantVcfDataWriter(generator.createStudyConfiguration(), null, new OutputStream() {
+            @Override
+            public void write(int b) {
+                writtenBytes++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writtenBytes += len;
+            }
+        }, new QueryOptions());
+        writer.open();
+        writer.pre();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.post();
+        writer.close();
+    }
+
+    @Benchmark
+    public long write() {
+        writer.write(variants);
+        return writtenBytes;
+    }
+
+}
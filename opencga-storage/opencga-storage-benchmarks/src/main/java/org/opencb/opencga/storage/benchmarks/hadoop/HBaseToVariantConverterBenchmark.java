@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.benchmarks.hadoop;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.benchmarks.InMemoryStudyConfigurationManager;
+import org.opencb.opencga.storage.benchmarks.SyntheticVariantGenerator;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.hadoop.variant.converters.HBaseToVariantConverter;
+import org.opencb.opencga.storage.hadoop.variant.index.VariantTableHelper;
+import org.opencb.opencga.storage.hadoop.variant.index.VariantTableStudyRow;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the {@link HBaseToVariantConverter}, used to read variants from the HBase variants table.
+ *
+ * Created on 18/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(HBaseToVariantConverterBenchmark.BATCH_SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HBaseToVariantConverterBenchmark {
+
+    public static final int BATCH_SIZE = 100;
+
+    @Param({"10", "100", "1000"})
+    public int numSamples;
+
+    private HBaseToVariantConverter converter;
+    private List<VariantTableStudyRow> rows;
+    private List<Result> results;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        VariantTableHelper helper = VariantTableStudyRowBenchmark.createHelper();
+        SyntheticVariantGenerator generator = new SyntheticVariantGenerator(numSamples, 0);
+        StudyConfiguration studyConfiguration = generator.createStudyConfiguration();
+        converter = new HBaseToVariantConverter(helper, new InMemoryStudyConfigurationManager(studyConfiguration));
+
+        rows = new ArrayList<>(BATCH_SIZE);
+        results = new ArrayList<>(BATCH_SIZE);
+        for (Variant variant : generator.generate(BATCH_SIZE)) {
+            VariantTableStudyRow row = new VariantTableStudyRow(variant, SyntheticVariantGenerator.STUDY_ID,
+                    studyConfiguration.getSampleIds());
+            rows.add(row);
+            results.add(VariantTableStudyRowBenchmark.toResult(row.createPut(helper)));
+        }
+    }
+
+    @Benchmark
+    public void rowToVariant(Blackhole blackhole) {
+        for (VariantTableStudyRow row : rows) {
+            blackhole.consume(converter.convert(row));
+        }
+    }
+
+    @Benchmark
+    public void resultToVariant(Blackhole blackhole) {
+        for (Result result : results) {
+            blackhole.consume(converter.convert(result));
+        }
+    }
+
+}
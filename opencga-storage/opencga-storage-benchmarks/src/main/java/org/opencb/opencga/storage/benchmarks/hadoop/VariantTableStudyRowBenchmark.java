@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.benchmarks.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.benchmarks.SyntheticVariantGenerator;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
+import org.opencb.opencga.storage.hadoop.variant.index.VariantTableHelper;
+import org.opencb.opencga.storage.hadoop.variant.index.VariantTableStudyRow;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the {@link VariantTableStudyRow}, used to store the variants in the HBase variants table.
+ *
+ * Created on 18/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(VariantTableStudyRowBenchmark.BATCH_SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class VariantTableStudyRowBenchmark {
+
+    public static final int BATCH_SIZE = 100;
+
+    @Param({"10", "100", "1000"})
+    public int numSamples;
+
+    private VariantTableHelper helper;
+    private Map<String, Integer> sampleIds;
+    private List<Variant> variants;
+    private List<VariantTableStudyRow> rows;
+    private List<Result> results;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        helper = createHelper();
+        SyntheticVariantGenerator generator = new SyntheticVariantGenerator(numSamples, 0);
+        StudyConfiguration studyConfiguration = generator.createStudyConfiguration();
+        sampleIds = studyConfiguration.getSampleIds();
+
+        variants = generator.generate(BATCH_SIZE);
+        rows = new ArrayList<>(BATCH_SIZE);
+        results = new ArrayList<>(BATCH_SIZE);
+        for (Variant variant : variants) {
+            VariantTableStudyRow row = new VariantTableStudyRow(variant, SyntheticVariantGenerator.STUDY_ID, sampleIds);
+            rows.add(row);
+            results.add(toResult(row.createPut(helper)));
+        }
+    }
+
+    @Benchmark
+    public void variantToRow(Blackhole blackhole) {
+        for (Variant variant : variants) {
+            blackhole.consume(new VariantTableStudyRow(variant, SyntheticVariantGenerator.STUDY_ID, sampleIds));
+        }
+    }
+
+    @Benchmark
+    public void createPut(Blackhole blackhole) {
+        for (VariantTableStudyRow row : rows) {
+            blackhole.consume(row.createPut(helper));
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (Result result : results) {
+            blackhole.consume(VariantTableStudyRow.parse(result, helper));
+        }
+    }
+
+    /**
+     * Creates a VariantTableHelper that does not require any connection to HBase.
+     *
+     * @return VariantTableHelper
+     */
+    static VariantTableHelper createHelper() {
+        Configuration conf = new Configuration();
+        conf.setInt(GenomeHelper.CONFIG_STUDY_ID, SyntheticVariantGenerator.STUDY_ID);
+        return new VariantTableHelper(conf, "benchmark_archive", "benchmark_variants", null);
+    }
+
+    /**
+     * Build the Result that would be returned by HBase after writing the Put.
+     *
+     * @param put   Put to convert
+     * @return      Result with the same cells
+     */
+    static Result toResult(Put put) {
+        List<Cell> cells = new ArrayList<>();
+        for (List<Cell> familyCells : put.getFamilyCellMap().values()) {
+            cells.addAll(familyCells);
+        }
+        cells.sort(KeyValue.COMPARATOR);
+        return Result.create(cells);
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.benchmarks.mongodb;
+
+import org.bson.Document;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.opencga.storage.benchmarks.SyntheticVariantGenerator;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine;
+import org.opencb.opencga.storage.mongodb.variant.converters.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the MongoDB variant converters, in both directions.
+ *
+ * Each invocation converts a batch of {@link #BATCH_SIZE} variants, so the reported throughput is in variants per second.
+ *
+ * Created on 18/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(MongoDBConvertersBenchmark.BATCH_SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MongoDBConvertersBenchmark {
+
+    public static final int BATCH_SIZE = 100;
+
+    @Param({"10", "100", "1000"})
+    public int numSamples;
+
+    private DocumentToVariantConverter variantConverter;
+    private DocumentToSamplesConverter samplesConverter;
+    private DocumentToVariantAnnotationConverter annotationConverter;
+
+    private LinkedHashSet<String> sampleNames;
+    private List<Variant> variants;
+    private List<Document> variantDocuments;
+    private List<Document> studyDocuments;
+    private List<VariantAnnotation> annotations;
+    private List<Document> annotationDocuments;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticVariantGenerator generator = new SyntheticVariantGenerator(numSamples, 0);
+        StudyConfiguration studyConfiguration = generator.createStudyConfiguration();
+        studyConfiguration.getAttributes().put(MongoDBVariantStorageEngine.MongoDBVariantOptions.DEFAULT_GENOTYPE.key(), "0/0");
+
+        samplesConverter = new DocumentToSamplesConverter(studyConfiguration);
+        variantConverter = new DocumentToVariantConverter(
+                new DocumentToStudyVariantEntryConverter(true, samplesConverter),
+                new DocumentToVariantStatsConverter());
+        annotationConverter = new DocumentToVariantAnnotationConverter();
+
+        sampleNames = new LinkedHashSet<>(generator.getSampleNames());
+        variants = generator.generate(BATCH_SIZE);
+        variantDocuments = new ArrayList<>(BATCH_SIZE);
+        studyDocuments = new ArrayList<>(BATCH_SIZE);
+        annotations = new ArrayList<>(BATCH_SIZE);
+        annotationDocuments = new ArrayList<>(BATCH_SIZE);
+        for (Variant variant : variants) {
+            Document document = variantConverter.convertToStorageType(variant);
+            variantDocuments.add(document);
+            studyDocuments.add((Document) document.get(DocumentToVariantConverter.STUDIES_FIELD, List.class).get(0));
+            VariantAnnotation annotation = generator.generateAnnotation(variant);
+            annotations.add(annotation);
+            annotationDocuments.add(annotationConverter.convertToStorageType(annotation));
+        }
+    }
+
+    @Benchmark
+    public void variantToDocument(Blackhole blackhole) {
+        for (Variant variant : variants) {
+            blackhole.consume(variantConverter.convertToStorageType(variant));
+        }
+    }
+
+    @Benchmark
+    public void documentToVariant(Blackhole blackhole) {
+        for (Document document : variantDocuments) {
+            Variant variant = variantConverter.convertToDataModelType(document);
+            // Samples data is decoded on the first access
+            for (List<String> sampleData : variant.getStudies().get(0).getSamplesData()) {
+                blackhole.consume(sampleData);
+            }
+            blackhole.consume(variant);
+        }
+    }
+
+    @Benchmark
+    public void samplesToDocument(Blackhole blackhole) {
+        for (Variant variant : variants) {
+            Document otherFields = new Document();
+            blackhole.consume(samplesConverter.convertToStorageType(variant.getStudies().get(0), SyntheticVariantGenerator.STUDY_ID,
+                    otherFields, sampleNames));
+            blackhole.consume(otherFields);
+        }
+    }
+
+    @Benchmark
+    public void documentToSamples(Blackhole blackhole) {
+        for (Document studyDocument : studyDocuments) {
+            // Samples data is decoded on the first access
+            for (List<String> sampleData : samplesConverter.convertToDataModelType(studyDocument, SyntheticVariantGenerator.STUDY_ID)) {
+                blackhole.consume(sampleData);
+            }
+        }
+    }
+
+    @Benchmark
+    public void annotationToDocument(Blackhole blackhole) {
+        for (VariantAnnotation annotation : annotations) {
+            blackhole.consume(annotationConverter.convertToStorageType(annotation));
+        }
+    }
+
+    @Benchmark
+    public void documentToAnnotation(Blackhole blackhole) {
+        for (Document document : annotationDocuments) {
+            blackhole.consume(annotationConverter.convertToDataModelType(document));
+        }
+    }
+
+}
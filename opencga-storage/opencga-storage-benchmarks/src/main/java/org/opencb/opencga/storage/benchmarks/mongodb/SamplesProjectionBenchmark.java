@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.benchmarks.mongodb;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.benchmarks.SyntheticVariantGenerator;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine;
+import org.opencb.opencga.storage.mongodb.variant.adaptors.VariantSamplesProjection;
+import org.opencb.opencga.storage.mongodb.variant.converters.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the client side cost of reading variants when only a few samples are returned, with and without the
+ * server side samples projection.
+ *
+ * Documents are kept as raw BSON, as received from the server, so each invocation includes the BSON decoding. The
+ * size in bytes of both kinds of documents is printed at the setup.
+ *
+ * Created on 18/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SamplesProjectionBenchmark.BATCH_SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SamplesProjectionBenchmark {
+
+    public static final int BATCH_SIZE = 100;
+    public static final int RETURNED_SAMPLES = 5;
+
+    @Param({"100", "1000", "5000"})
+    public int numSamples;
+
+    private final DocumentCodec codec = new DocumentCodec();
+    private DocumentToVariantConverter variantConverter;
+    private List<RawBsonDocument> fullDocuments;
+    private List<RawBsonDocument> projectedDocuments;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticVariantGenerator generator = new SyntheticVariantGenerator(numSamples, 0);
+        StudyConfiguration studyConfiguration = generator.createStudyConfiguration();
+        studyConfiguration.getAttributes().put(MongoDBVariantStorageEngine.MongoDBVariantOptions.DEFAULT_GENOTYPE.key(), "0/0");
+        List<String> returnedSamples = generator.getSampleNames().subList(0, RETURNED_SAMPLES);
+
+        DocumentToSamplesConverter samplesConverter = new DocumentToSamplesConverter(studyConfiguration);
+        variantConverter = new DocumentToVariantConverter(
+                new DocumentToStudyVariantEntryConverter(false, samplesConverter),
+                new DocumentToVariantStatsConverter());
+        VariantSamplesProjection samplesProjection = VariantSamplesProjection.build(studyConfiguration, returnedSamples, null);
+
+        fullDocuments = new ArrayList<>(BATCH_SIZE);
+        projectedDocuments = new ArrayList<>(BATCH_SIZE);
+        long fullBytes = 0;
+        long projectedBytes = 0;
+        for (Variant variant : generator.generate(BATCH_SIZE)) {
+            Document document = variantConverter.convertToStorageType(variant);
+            RawBsonDocument full = new RawBsonDocument(document, codec);
+            RawBsonDocument projected = new RawBsonDocument(samplesProjection.apply(document), codec);
+            fullDocuments.add(full);
+            projectedDocuments.add(projected);
+            fullBytes += full.getByteBuffer().remaining();
+            projectedBytes += projected.getByteBuffer().remaining();
+        }
+        samplesConverter.setReturnedSamples(returnedSamples);
+        System.out.printf("Bytes per variant with %d samples: full = %d, projected = %d%n", numSamples,
+                fullBytes / BATCH_SIZE, projectedBytes / BATCH_SIZE);
+    }
+
+    @Benchmark
+    public void fullDocument(Blackhole blackhole) {
+        for (RawBsonDocument document : fullDocuments) {
+            convert(document, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void projectedDocument(Blackhole blackhole) {
+        for (RawBsonDocument document : projectedDocuments) {
+            convert(document, blackhole);
+        }
+    }
+
+    private void convert(RawBsonDocument document, Blackhole blackhole) {
+        Variant variant = variantConverter.convertToDataModelType(document.decode(codec));
+        // Read the returned samples
+        for (List<String> sampleData : variant.getStudies().get(0).getSamplesData()) {
+            blackhole.consume(sampleData);
+        }
+    }
+
+}
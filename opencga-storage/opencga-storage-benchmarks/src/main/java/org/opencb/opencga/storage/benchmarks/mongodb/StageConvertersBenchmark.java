@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.benchmarks.mongodb;
+
+import org.bson.types.Binary;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.benchmarks.SyntheticVariantGenerator;
+import org.opencb.opencga.storage.mongodb.variant.converters.stage.VariantToAvroBinaryConverter;
+import org.opencb.opencga.storage.mongodb.variant.converters.stage.VariantToJsonBinaryConverter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks for the binary converters used to store the variants in the stage collection.
+ *
+ * The JSON converter is included as a baseline for the Avro converter.
+ *
+ * Created on 18/10/26.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(StageConvertersBenchmark.BATCH_SIZE)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StageConvertersBenchmark {
+
+    public static final int BATCH_SIZE = 100;
+
+    @Param({"10", "100", "1000"})
+    public int numSamples;
+
+    private VariantToAvroBinaryConverter avroConverter;
+    private VariantToJsonBinaryConverter jsonConverter;
+    private List<Variant> variants;
+    private List<Binary> avroBinaries;
+    private List<Binary> jsonBinaries;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        avroConverter = new VariantToAvroBinaryConverter();
+        jsonConverter = new VariantToJsonBinaryConverter();
+        variants = new SyntheticVariantGenerator(numSamples, 0).generate(BATCH_SIZE);
+        avroBinaries = variants.stream().map(avroConverter::convertToStorageType).collect(Collectors.toList());
+        jsonBinaries = variants.stream().map(jsonConverter::convertToStorageType).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void variantToAvroBinary(Blackhole blackhole) {
+        for (Variant variant : variants) {
+            blackhole.consume(avroConverter.convertToStorageType(variant));
+        }
+    }
+
+    @Benchmark
+    public void avroBinaryToVariant(Blackhole blackhole) {
+        for (Binary binary : avroBinaries) {
+            blackhole.consume(avroConverter.convertToDataModelType(binary));
+        }
+    }
+
+    @Benchmark
+    public void variantToJsonBinary(Blackhole blackhole) {
+        for (Variant variant : variants) {
+            blackhole.consume(jsonConverter.convertToStorageType(variant));
+        }
+    }
+
+    @Benchmark
+    public void jsonBinaryToVariant(Blackhole blackhole) {
+        for (Binary binary : jsonBinaries) {
+            blackhole.consume(jsonConverter.convertToDataModelType(binary));
+        }
+    }
+
+}
@@ -16,9 +16,15 @@
 
 package org.opencb.opencga.storage.core.benchmark;
 
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.opencga.storage.core.config.BenchmarkConfiguration;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.concurrent.ExecutionException;
 
@@ -36,13 +42,43 @@ public class BenchmarkManager {
     public BenchmarkStats variantBenchmark() throws ClassNotFoundException, StorageEngineException, InstantiationException,
             IllegalAccessException, ExecutionException, InterruptedException {
 
-        BenchmarkRunner benchmarkRunner = new VariantBenchmarkRunner(storageConfiguration);
-        BenchmarkStats benchmarkStats = benchmarkRunner.query(storageConfiguration.getBenchmark().getNumRepetitions(),
-                new HashSet<>(storageConfiguration.getBenchmark().getQueries()));
+        BenchmarkConfiguration benchmark = storageConfiguration.getBenchmark();
+        String storageEngine = StringUtils.isEmpty(benchmark.getStorageEngine())
+                ? storageConfiguration.getDefaultStorageEngineId()
+                : benchmark.getStorageEngine();
+        BenchmarkRunner benchmarkRunner = new VariantBenchmarkRunner(storageEngine, storageConfiguration);
+        if (benchmark.isLoad()) {
+            benchmarkRunner.convert();
+            benchmarkRunner.insert();
+        }
+        BenchmarkStats benchmarkStats = benchmarkRunner.query(benchmark.getNumRepetitions(),
+                new HashSet<>(benchmark.getQueries() == null ? Collections.emptyList() : benchmark.getQueries()));
 
+        if (StringUtils.isNotEmpty(benchmark.getOutput())) {
+            writeStats(benchmarkStats, Paths.get(benchmark.getOutput()));
+        }
         return benchmarkStats;
     }
 
+    /**
+     * Write the benchmark stats in CSV format if the output file ends with ".csv", or in JSON format otherwise.
+     *
+     * @param benchmarkStats    Benchmark stats
+     * @param output            Output file
+     * @throws StorageEngineException if there is an error writing the file
+     */
+    public static void writeStats(BenchmarkStats benchmarkStats, Path output) throws StorageEngineException {
+        try {
+            if (output.toString().toLowerCase().endsWith(".csv")) {
+                benchmarkStats.writeCsv(output);
+            } else {
+                benchmarkStats.writeJson(output);
+            }
+        } catch (IOException e) {
+            throw new StorageEngineException("Error writing benchmark stats to " + output, e);
+        }
+    }
+
     //Load data if user provide the loading option with file path
     private void loadDataToHBase(String filePath) {
         //TODO : If user wants to load the data to HBase and then benchmarking
@@ -16,59 +16,97 @@
 
 package org.opencb.opencga.storage.core.benchmark;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by imedina on 16/06/15.
  */
 public class BenchmarkStats {
 
-    private Map<String, List<Integer>> counters;
+    private Map<String, List<Long>> counters;
     private Map<String, List<Double>> std;
 
+    /** Latency of each query type, in microseconds. */
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+    /** Number of completed operations per second, since the start of the measurement. */
+    private final Map<Long, AtomicLong> throughput = new ConcurrentSkipListMap<>();
+    /** Stats of the convert and insert phases. */
+    private final Map<String, ObjectMap> phases = new LinkedHashMap<>();
+    private long durationMillis;
+
     public BenchmarkStats() {
         counters = new LinkedHashMap<>();
         std = new LinkedHashMap<>();
     }
 
-    public void addExecutionTime(String counter, int executionTime) {
+    public LatencyHistogram getLatencyHistogram(String query) {
+        return latencies.computeIfAbsent(query, key -> new LatencyHistogram());
+    }
+
+    public void addLatency(String query, long latencyMicros, long elapsedMillis) {
+        getLatencyHistogram(query).record(latencyMicros);
+        throughput.computeIfAbsent(elapsedMillis / 1000, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    public void addError(String query) {
+        errors.computeIfAbsent(query, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    public synchronized void addPhase(String phase, ObjectMap stats) {
+        phases.put(phase, stats);
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public synchronized void addExecutionTime(String counter, long executionTime) {
         if (!counters.containsKey(counter)) {
             counters.put(counter, new ArrayList<>());
         }
         counters.get(counter).add(executionTime);
     }
 
-    public void addStdDeviation(String counter, double executionTime) {
+    public synchronized void addStdDeviation(String counter, double executionTime) {
         if (!std.containsKey(counter)) {
             std.put(counter, new ArrayList<>());
         }
         std.get(counter).add(executionTime);
     }
 
-    public double avg(String counter) {
+    public synchronized double avg(String counter) {
         if (counter != null && counters.get(counter) != null) {
-            List<Integer> integers = counters.get(counter);
+            List<Long> values = counters.get(counter);
             double total = 0;
-            for (Integer integer : integers) {
-                total += integer.doubleValue();
+            for (Long value : values) {
+                total += value.doubleValue();
             }
-            double avgRoundOff = Math.round((total / integers.size()) * 1000d) / 1000d;
+            double avgRoundOff = Math.round((total / values.size()) * 1000d) / 1000d;
             return avgRoundOff; //total / integers.size();
         }
         return 0.0f;
     }
 
     double variance(String counter) {
-        List<Integer> integers = counters.get(counter);
+        List<Long> values = counters.get(counter);
         double mean = avg(counter);
         double temp = 0;
-        for (int a : integers) {
+        for (long a : values) {
             temp += Math.pow((mean - a), 2);
         }
-        double varianceRoundOff = Math.round((temp / integers.size()) * 1000d) / 1000d;
+        double varianceRoundOff = Math.round((temp / values.size()) * 1000d) / 1000d;
         return varianceRoundOff; //temp / integers.size();
     }
 
@@ -77,6 +115,65 @@ public class BenchmarkStats {
         return stdDevRoundOff; //Math.sqrt(variance(counter));
     }
 
+    /**
+     * Summary of the latency percentiles, in microseconds, and throughput of each query type.
+     *
+     * @return Summary
+     */
+    public synchronized Map<String, Object> getSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("durationMillis", durationMillis);
+        Map<String, Object> queries = new LinkedHashMap<>();
+        // Include the queries that always failed
+        Set<String> queryNames = new TreeSet<>(latencies.keySet());
+        queryNames.addAll(errors.keySet());
+        for (String query : queryNames) {
+            LatencyHistogram histogram = latencies.getOrDefault(query, new LatencyHistogram());
+            Map<String, Object> querySummary = new LinkedHashMap<>();
+            querySummary.put("count", histogram.getCount());
+            querySummary.put("errors", errors.containsKey(query) ? errors.get(query).get() : 0);
+            querySummary.put("throughput", durationMillis > 0 ? histogram.getCount() * 1000.0 / durationMillis : 0);
+            querySummary.put("mean", histogram.getMean());
+            querySummary.put("p50", histogram.getValueAtPercentile(50));
+            querySummary.put("p95", histogram.getValueAtPercentile(95));
+            querySummary.put("p99", histogram.getValueAtPercentile(99));
+            querySummary.put("max", histogram.getMax());
+            queries.put(query, querySummary);
+        }
+        summary.put("queries", queries);
+        Map<Long, Long> throughputOverTime = new LinkedHashMap<>();
+        throughput.forEach((second, count) -> throughputOverTime.put(second, count.get()));
+        summary.put("throughputOverTime", throughputOverTime);
+        summary.put("phases", new LinkedHashMap<>(phases));
+        return summary;
+    }
+
+    public void writeJson(Path output) throws IOException {
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(output.toFile(), getSummary());
+    }
+
+    /**
+     * Write one line per query type, with the latencies in microseconds.
+     *
+     * @param output    Output file
+     * @throws IOException  if there is an error writing the file
+     */
+    @SuppressWarnings("unchecked")
+    public void writeCsv(Path output) throws IOException {
+        Map<String, Object> queries = (Map<String, Object>) getSummary().get("queries");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output))) {
+            writer.println("query,count,errors,throughput,mean,p50,p95,p99,max");
+            for (Map.Entry<String, Object> entry : queries.entrySet()) {
+                Map<String, Object> querySummary = (Map<String, Object>) entry.getValue();
+                StringBuilder line = new StringBuilder(entry.getKey().replace(',', ';'));
+                for (Object value : querySummary.values()) {
+                    line.append(',').append(value);
+                }
+                writer.println(line);
+            }
+        }
+    }
+
 //    private static final String ANSI_BLACK = "\u001B[30m";
 //    private static final String ANSI_WHITE = "\u001B[37m";
 //    private static final String ANSI_RESET = "\u001B[0m";
@@ -87,7 +184,7 @@ public class BenchmarkStats {
     private static final String ANSI_YELLOW = "\u001B[33m";
     private static final String ANSI_CYAN = "\u001B[36m";
 
-    public void printSummary(String dbName, String tableName, int nuOfRepetition, int numOfThreads) {
+    public synchronized void printSummary(String dbName, String tableName, int nuOfRepetition, int numOfThreads) {
         System.out.println(ANSI_YELLOW + "Following are the test stats");
         System.out.print(ANSI_GREEN + "Database name: " + ANSI_CYAN + dbName + ", ");
         System.out.print(ANSI_GREEN + "Table name: " + ANSI_CYAN + tableName + ", ");
@@ -103,6 +200,16 @@ public class BenchmarkStats {
             System.out.print(ANSI_GREEN + "Standard Deviation: " + ANSI_CYAN + standardDeviation(key));
             System.out.println();
         }
+        for (String key : new TreeSet<>(latencies.keySet())) {
+            LatencyHistogram histogram = latencies.get(key);
+            System.out.print(ANSI_GREEN + "Query: " + ANSI_CYAN + key + ", ");
+            System.out.print(ANSI_GREEN + "Count: " + ANSI_CYAN + histogram.getCount() + ", ");
+            System.out.print(ANSI_GREEN + "p50: " + ANSI_CYAN + histogram.getValueAtPercentile(50) + "us, ");
+            System.out.print(ANSI_GREEN + "p95: " + ANSI_CYAN + histogram.getValueAtPercentile(95) + "us, ");
+            System.out.print(ANSI_GREEN + "p99: " + ANSI_CYAN + histogram.getValueAtPercentile(99) + "us, ");
+            System.out.print(ANSI_GREEN + "Max: " + ANSI_CYAN + histogram.getMax() + "us");
+            System.out.println();
+        }
     }
 
 
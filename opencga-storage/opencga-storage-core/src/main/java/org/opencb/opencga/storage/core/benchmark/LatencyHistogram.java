@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe latency histogram with log-linear buckets, in the spirit of HdrHistogram.
+ *
+ * Values are recorded in microseconds. Values below 128 are recorded exactly, and larger values with a relative
+ * error lower than 1/64 (~1.6%).
+ *
+ * Created on 18/10/26.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_SHIFT = 63 - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKET_COUNT + MAX_SHIFT * HALF_SUB_BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalSum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(index(value));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+        long currentMin = min.get();
+        while (value < currentMin && !min.compareAndSet(currentMin, value)) {
+            currentMin = min.get();
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.getCount());
+        totalSum.addAndGet(other.totalSum.get());
+        long otherMax = other.getMax();
+        long currentMax = max.get();
+        while (otherMax > currentMax && !max.compareAndSet(currentMax, otherMax)) {
+            currentMax = max.get();
+        }
+        long otherMin = other.min.get();
+        long currentMin = min.get();
+        while (otherMin < currentMin && !min.compareAndSet(currentMin, otherMin)) {
+            currentMin = min.get();
+        }
+    }
+
+    /**
+     * Get the value at the given percentile. The returned value is the highest value equivalent to the bucket, so
+     * the percentile is never underestimated.
+     *
+     * @param percentile    Percentile, from 0 to 100
+     * @return              Value at the percentile
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+        long accumulated = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            accumulated += counts.get(i);
+            if (accumulated >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMin() {
+        long value = min.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : ((double) totalSum.get()) / count;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Number of bits to discard, so the value fits in [64, 128)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (int) ((value >> shift) - HALF_SUB_BUCKET_COUNT);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -16,27 +16,38 @@
 
 package org.opencb.opencga.storage.core.benchmark;
 
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.StoragePipelineResult;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.StorageManagerFactory;
+import org.opencb.opencga.storage.core.config.BenchmarkConfiguration;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by imedina on 16/06/15.
  */
 public class VariantBenchmarkRunner extends BenchmarkRunner {
 
-    private String[] queryType;
-    private String queryParams;
+    private VariantStorageEngine variantStorageEngine;
     private BenchmarkStats benchmarkStats;
+    private URI transformedFile;
 
     public VariantBenchmarkRunner(StorageConfiguration storageConfiguration) throws IllegalAccessException, ClassNotFoundException,
             InstantiationException, StorageEngineException {
@@ -48,25 +59,91 @@ public class VariantBenchmarkRunner extends BenchmarkRunner {
         this.storageEngine = storageEngine;
         this.storageConfiguration = storageConfiguration;
         logger = LoggerFactory.getLogger(this.getClass());
+        benchmarkStats = new BenchmarkStats();
         init(storageEngine);
     }
 
+    VariantBenchmarkRunner(StorageConfiguration storageConfiguration, VariantDBAdaptor variantDBAdaptor) {
+        this.storageConfiguration = storageConfiguration;
+        this.variantDBAdaptor = variantDBAdaptor;
+        logger = LoggerFactory.getLogger(this.getClass());
+        benchmarkStats = new BenchmarkStats();
+    }
+
     private void init(String storageEngine)
             throws IllegalAccessException, InstantiationException, ClassNotFoundException, StorageEngineException {
         StorageManagerFactory storageManagerFactory = StorageManagerFactory.get(storageConfiguration);
-        VariantStorageEngine variantStorageManager = storageManagerFactory.getVariantStorageManager(storageEngine);
-        variantDBAdaptor = variantStorageManager.getDBAdaptor(storageConfiguration.getBenchmark().getDatabaseName());
+        variantStorageEngine = storageManagerFactory.getVariantStorageManager(storageEngine);
+        variantDBAdaptor = variantStorageEngine.getDBAdaptor(storageConfiguration.getBenchmark().getDatabaseName());
     }
 
-
+    /**
+     * Transform the benchmark input file, measuring the throughput of the transform step.
+     *
+     * @return Benchmark stats, with the phase "convert"
+     * @throws StorageEngineException if the transformation fails
+     */
     @Override
-    public BenchmarkStats convert() {
-        return null;
+    public BenchmarkStats convert() throws StorageEngineException {
+        Path input = getInput();
+        URI outdir = input.getParent().toUri();
+        StoragePipelineResult result = variantStorageEngine.index(Collections.singletonList(input.toUri()), outdir,
+                true, true, false).get(0);
+        transformedFile = result.getTransformResult();
+
+        long numVariants = countVariants(transformedFile);
+        benchmarkStats.addPhase("convert", phaseStats(input, numVariants, result.getTransformTimeMillis()));
+        return benchmarkStats;
     }
 
+    /**
+     * Load the transformed benchmark input file, measuring the throughput of the load step.
+     * The input file is transformed first, if needed.
+     *
+     * @return Benchmark stats, with the phase "insert"
+     * @throws StorageEngineException if the load fails
+     */
     @Override
-    public BenchmarkStats insert() {
-        return null;
+    public BenchmarkStats insert() throws StorageEngineException {
+        if (transformedFile == null) {
+            convert();
+        }
+        Path input = Paths.get(transformedFile);
+        URI outdir = input.getParent().toUri();
+        StoragePipelineResult result = variantStorageEngine.index(Collections.singletonList(transformedFile), outdir,
+                false, false, true).get(0);
+
+        long numVariants = countVariants(transformedFile);
+        benchmarkStats.addPhase("insert", phaseStats(input, numVariants, result.getLoadTimeMillis()));
+        return benchmarkStats;
+    }
+
+    private Path getInput() throws StorageEngineException {
+        String input = storageConfiguration.getBenchmark().getInput();
+        if (StringUtils.isEmpty(input)) {
+            throw new StorageEngineException("Missing input file to benchmark the convert and insert phases");
+        }
+        return Paths.get(input).toAbsolutePath();
+    }
+
+    private long countVariants(URI transformedFile) throws StorageEngineException {
+        VariantSource source = variantStorageEngine.getVariantReaderUtils().readVariantSource(transformedFile);
+        return source.getStats() == null ? 0 : source.getStats().getNumRecords();
+    }
+
+    private ObjectMap phaseStats(Path file, long numVariants, long timeMillis) {
+        long bytes;
+        try {
+            bytes = Files.size(file);
+        } catch (IOException e) {
+            bytes = 0;
+        }
+        double seconds = timeMillis / 1000.0;
+        return new ObjectMap("file", file.toString())
+                .append("variants", numVariants)
+                .append("timeMillis", timeMillis)
+                .append("variantsPerSecond", seconds > 0 ? numVariants / seconds : 0)
+                .append("megabytesPerSecond", seconds > 0 ? bytes / 1048576.0 / seconds : 0);
     }
 
     @Override
@@ -76,104 +153,300 @@ public class VariantBenchmarkRunner extends BenchmarkRunner {
 
     @Override
     public BenchmarkStats query(int numRepetitions, Set<String> benchmarkTests) throws ExecutionException, InterruptedException {
-//        int executionTime = 0;
+        Map<String, Integer> queryMix = new LinkedHashMap<>();
+        String queryFile = storageConfiguration.getBenchmark().getQueryFile();
+        if (StringUtils.isNotEmpty(queryFile)) {
+            try {
+                queryMix.putAll(readQueryMix(Paths.get(queryFile)));
+            } catch (IOException e) {
+                throw new ExecutionException("Error reading query file " + queryFile, e);
+            }
+        } else {
+            for (String benchmarkTest : benchmarkTests) {
+                queryMix.put(benchmarkTest, 1);
+            }
+        }
+        return query(numRepetitions, queryMix);
+    }
 
-        benchmarkStats = new BenchmarkStats();
-        for (int i = 0; i < numRepetitions; i++) {
-            Iterator<String> iterator = benchmarkTests.iterator();
-            while (iterator.hasNext()) {
-                String next = iterator.next();
-
-                queryType = next.split("-");
-                if (queryType.length >= 2) {
-                    queryParams = queryType[1];
-                } else if (queryType.length == 1 && queryType[0].equals("distinct")) {
-//                    System.out.println("inside else .query :: ");
-                    queryParams = "gene";
-                }
+    /**
+     * Execute a mix of queries.
+     *
+     * If a duration is configured, the queries are selected randomly with the given weights during that time,
+     * either in closed or open loop mode. Otherwise, each query is executed numRepetitions times per thread.
+     *
+     * @param numRepetitions    Number of repetitions of each query, if no duration is configured
+     * @param queryMix          Queries to execute, with the relative weight of each one
+     * @return                  Benchmark stats
+     * @throws ExecutionException   if the benchmark can not be executed. Failed queries are counted as errors
+     * @throws InterruptedException if interrupted while waiting for the queries
+     */
+    public BenchmarkStats query(int numRepetitions, Map<String, Integer> queryMix) throws ExecutionException, InterruptedException {
+        BenchmarkConfiguration benchmark = storageConfiguration.getBenchmark();
+        int concurrency = Math.max(1, benchmark.getConcurrency());
+
+        List<String> queries = new ArrayList<>(queryMix.keySet());
+        int[] cumulativeWeights = new int[queries.size()];
+        int totalWeight = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            totalWeight += Math.max(1, queryMix.get(queries.get(i)));
+            cumulativeWeights[i] = totalWeight;
+        }
+        // Build the queries before starting, to fail fast on unknown queries
+        Map<String, Callable<?>> tasks = new LinkedHashMap<>();
+        for (String query : queries) {
+            tasks.put(query, buildQuery(query));
+        }
 
-                Query query = new Query();
-                QueryOptions queryOptions = new QueryOptions();
-
-                switch (queryType[0]) {
-                    case "count":
-                        executeThreads(queryType[0], () -> variantDBAdaptor.count(new Query()));
-                        System.out.println("VariantBenchmarkRunner.query" + variantDBAdaptor.count(new Query()).getResult());
-//                        executionTime = count();
-                        break;
-                    case "distinct":
-                        executeThreads(queryType[0], () -> variantDBAdaptor.distinct(new Query(), queryParams));
-//                        System.out.println("VariantBenchmarkRunner.query >>>>>> " + queryParams + "   "
-//                                + variantDBAdaptor.distinct(new Query(),
-//                                queryParams).getResult().size());
-                        break;
-                    case "queryById":
-                        query.put(VariantDBAdaptor.VariantQueryParams.ID.key(), queryParams);
-                        executeThreads(queryType[0], () -> variantDBAdaptor.get(query, queryOptions));
-                        break;
-                    case "queryByRegion":
-                        query.put(VariantDBAdaptor.VariantQueryParams.REGION.key(), queryParams);
-                        executeThreads(queryType[0], () -> variantDBAdaptor.get(query, queryOptions));
-                        break;
-                    case "queryByChromosome":
-                        query.put(VariantDBAdaptor.VariantQueryParams.CHROMOSOME.key(), queryParams);
-                        executeThreads(queryType[0], () -> variantDBAdaptor.get(query, queryOptions));
-                        break;
-                    case "queryByGene":
-                        query.put(VariantDBAdaptor.VariantQueryParams.GENE.key(), queryParams);
-                        executeThreads(queryType[0], () -> variantDBAdaptor.get(query, queryOptions));
-                        break;
-                    case "queryByType":
-                        query.put(VariantDBAdaptor.VariantQueryParams.TYPE.key(), queryParams);
-                        executeThreads(queryType[0], () -> variantDBAdaptor.get(query, queryOptions));
-                        break;
-                    case "queryByReference":
-                        query.put(VariantDBAdaptor.VariantQueryParams.REFERENCE.key(), queryParams);
-                        executeThreads(queryType[0], () -> variantDBAdaptor.get(query, queryOptions));
-                        break;
-                    case "queryByAlternate":
-                        query.put(VariantDBAdaptor.VariantQueryParams.ALTERNATE.key(), queryParams);
-                        executeThreads(queryType[0], () -> variantDBAdaptor.get(query, queryOptions));
-                        break;
-                    case "queryByStudies":
-                        query.put(VariantDBAdaptor.VariantQueryParams.STUDIES.key(), queryParams);
-                        executeThreads(queryType[0], () -> variantDBAdaptor.get(query, queryOptions));
-                        break;
-                    default:
-                        break;
+        ExecutorService executorService = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "benchmark");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            if (benchmark.getDuration() > 0) {
+                long warmupNanos = TimeUnit.SECONDS.toNanos(Math.max(0, benchmark.getWarmup()));
+                long durationNanos = TimeUnit.SECONDS.toNanos(benchmark.getDuration());
+                if (BenchmarkConfiguration.OPEN_LOOP.equalsIgnoreCase(benchmark.getMode())) {
+                    runOpenLoop(executorService, tasks, queries, cumulativeWeights, benchmark.getRate(), warmupNanos, durationNanos);
+                } else {
+                    runClosedLoop(executorService, concurrency, tasks, queries, cumulativeWeights, warmupNanos, durationNanos);
                 }
-//                benchmarkStats.addExecutionTime(next, executionTime);
+                benchmarkStats.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+            } else {
+                runRepetitions(executorService, concurrency, tasks, numRepetitions);
             }
+        } finally {
+            executorService.shutdownNow();
         }
 
-        benchmarkStats.printSummary(storageConfiguration.getBenchmark().getDatabaseName(),
-                storageConfiguration.getBenchmark().getTable(), storageConfiguration.getBenchmark().getNumRepetitions(),
-                storageConfiguration.getBenchmark().getConcurrency());
+        benchmarkStats.printSummary(benchmark.getDatabaseName(), benchmark.getTable(), numRepetitions, concurrency);
         return benchmarkStats;
     }
 
-    private <T> List<Future<T>> executeThreads(String test, Callable<T> task) throws ExecutionException, InterruptedException {
-        int concurrency = storageConfiguration.getBenchmark().getConcurrency();
-//        System.out.println("concurrency :: " + concurrency);
-        ExecutorService executorService = Executors.newFixedThreadPool(10);
-        List<Future<T>> futureList = new ArrayList<>(10);
-        for (int i = 0; i < concurrency; i++) {
-            futureList.add(executorService.submit(task));
+    /**
+     * Execute every query numRepetitions times in each thread.
+     */
+    private void runRepetitions(ExecutorService executorService, int concurrency, Map<String, Callable<?>> tasks, int numRepetitions)
+            throws ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < numRepetitions; i++) {
+            for (Map.Entry<String, Callable<?>> entry : tasks.entrySet()) {
+                List<Future<Long>> futures = new ArrayList<>(concurrency);
+                for (int thread = 0; thread < concurrency; thread++) {
+                    futures.add(executorService.submit(() -> execute(entry.getKey(), entry.getValue(), System.nanoTime(), start)));
+                }
+                long totalTime = 0;
+                for (Future<Long> future : futures) {
+                    totalTime += future.get();
+                }
+                benchmarkStats.addExecutionTime(entry.getKey(), totalTime);
+                benchmarkStats.addStdDeviation(entry.getKey(), totalTime);
+            }
         }
+        benchmarkStats.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
 
-        int totalTime = 0;
-        for (Future<T> queryResultFuture : futureList) {
-            totalTime += ((QueryResult) queryResultFuture.get()).getDbTime();
-//            System.out.println("queryResultFuture.get().getDbTime() = " + queryResultFuture.get().getDbTime());
-//            System.out.println("queryResultFuture.get().getResult().size() = " + queryResultFuture.get().getResult().get(0));
+    /**
+     * Each thread issues a new query as soon as the previous one finishes.
+     */
+    private void runClosedLoop(ExecutorService executorService, int concurrency, Map<String, Callable<?>> tasks, List<String> queries,
+                               int[] cumulativeWeights, long warmupNanos, long durationNanos)
+            throws ExecutionException, InterruptedException {
+        long warmupEnd = System.nanoTime() + warmupNanos;
+        long end = warmupEnd + durationNanos;
+        List<Future<?>> futures = new ArrayList<>(concurrency);
+        for (int thread = 0; thread < concurrency; thread++) {
+            futures.add(executorService.submit(() -> {
+                Random random = ThreadLocalRandom.current();
+                long now;
+                while ((now = System.nanoTime()) < end && !Thread.currentThread().isInterrupted()) {
+                    String query = nextQuery(random, queries, cumulativeWeights);
+                    if (now < warmupEnd) {
+                        warmup(query, tasks.get(query));
+                    } else {
+                        execute(query, tasks.get(query), now, warmupEnd);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
         }
+    }
 
-        benchmarkStats.addExecutionTime(test, totalTime);
-        benchmarkStats.addStdDeviation(test, totalTime);
+    /**
+     * Issue the queries at a fixed rate, independently of the response time. The latency is measured from the moment
+     * the query should have been issued, so the queueing time is included and slow responses are not hidden.
+     */
+    private void runOpenLoop(ExecutorService executorService, Map<String, Callable<?>> tasks, List<String> queries,
+                             int[] cumulativeWeights, int rate, long warmupNanos, long durationNanos)
+            throws ExecutionException, InterruptedException {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Expected a positive rate of queries per second for the open loop mode");
+        }
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long warmupEnd = start + warmupNanos;
+        long end = warmupEnd + durationNanos;
+        Random random = new Random();
+        List<Future<Long>> futures = new LinkedList<>();
+        AtomicLong pending = new AtomicLong();
+        for (long i = 0;; i++) {
+            long intendedStart = start + i * intervalNanos;
+            if (intendedStart >= end) {
+                break;
+            }
+            long sleep = intendedStart - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+            String query = nextQuery(random, queries, cumulativeWeights);
+            pending.incrementAndGet();
+            futures.add(executorService.submit(() -> {
+                try {
+                    if (intendedStart < warmupEnd) {
+                        warmup(query, tasks.get(query));
+                        return 0L;
+                    } else {
+                        return execute(query, tasks.get(query), intendedStart, warmupEnd);
+                    }
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }));
+            // Remove finished futures, checking for errors
+            Iterator<Future<Long>> iterator = futures.iterator();
+            while (iterator.hasNext()) {
+                Future<Long> future = iterator.next();
+                if (!future.isDone()) {
+                    break;
+                }
+                future.get();
+                iterator.remove();
+            }
+        }
+        logger.info("Waiting for {} pending queries", pending.get());
+        for (Future<Long> future : futures) {
+            future.get();
+        }
+    }
 
-        return futureList;
+    /**
+     * Execute a query, and record its latency. Failed queries are counted as errors, and do not stop the benchmark.
+     *
+     * @return DB time of the query, or 0 if failed
+     */
+    private long execute(String query, Callable<?> task, long intendedStart, long measureStart) {
+        Object result;
+        try {
+            result = task.call();
+        } catch (Exception e) {
+            benchmarkStats.addError(query);
+            logger.debug("Error executing query " + query, e);
+            return 0;
+        }
+        long now = System.nanoTime();
+        benchmarkStats.addLatency(query, TimeUnit.NANOSECONDS.toMicros(now - intendedStart),
+                TimeUnit.NANOSECONDS.toMillis(now - measureStart));
+        if (result instanceof QueryResult) {
+            return ((QueryResult) result).getDbTime();
+        }
+        return 0;
     }
-}
 
+    /**
+     * Execute a query without measuring it. Errors are ignored, as in the measured queries.
+     */
+    private void warmup(String query, Callable<?> task) {
+        try {
+            task.call();
+        } catch (Exception e) {
+            logger.debug("Error executing warmup query " + query, e);
+        }
+    }
 
+    private static String nextQuery(Random random, List<String> queries, int[] cumulativeWeights) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return queries.get(i);
+            }
+        }
+        return queries.get(queries.size() - 1);
+    }
+
+    /**
+     * Read a query mix file. Each line contains a query, in the same format as the queries from the configuration,
+     * followed by an optional weight separated by a tab or space. Empty lines and lines starting with '#' are ignored.
+     *
+     * @param queryFile Query file
+     * @return          Map from query to weight
+     * @throws IOException if there is an error reading the file
+     */
+    public static Map<String, Integer> readQueryMix(Path queryFile) throws IOException {
+        Map<String, Integer> queryMix = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(queryFile)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] split = line.split("\\s+");
+            int weight = split.length > 1 ? Integer.parseInt(split[1]) : 1;
+            queryMix.merge(split[0], weight, Integer::sum);
+        }
+        return queryMix;
+    }
 
+    private Callable<?> buildQuery(String benchmarkTest) {
+        String[] queryType = benchmarkTest.split("-", 2);
+        String queryParams = null;
+        if (queryType.length >= 2) {
+            queryParams = queryType[1];
+        } else if (queryType.length == 1 && queryType[0].equals("distinct")) {
+            queryParams = "gene";
+        }
+
+        Query query = new Query();
+        final String params = queryParams;
+        switch (queryType[0]) {
+            case "count":
+                return () -> variantDBAdaptor.count(new Query());
+            case "distinct":
+                return () -> variantDBAdaptor.distinct(new Query(), params);
+            case "queryById":
+                query.put(VariantDBAdaptor.VariantQueryParams.ID.key(), queryParams);
+                break;
+            case "queryByRegion":
+                query.put(VariantDBAdaptor.VariantQueryParams.REGION.key(), queryParams);
+                break;
+            case "queryByChromosome":
+                query.put(VariantDBAdaptor.VariantQueryParams.CHROMOSOME.key(), queryParams);
+                break;
+            case "queryByGene":
+                query.put(VariantDBAdaptor.VariantQueryParams.GENE.key(), queryParams);
+                break;
+            case "queryByType":
+                query.put(VariantDBAdaptor.VariantQueryParams.TYPE.key(), queryParams);
+                break;
+            case "queryByReference":
+                query.put(VariantDBAdaptor.VariantQueryParams.REFERENCE.key(), queryParams);
+                break;
+            case "queryByAlternate":
+                query.put(VariantDBAdaptor.VariantQueryParams.ALTERNATE.key(), queryParams);
+                break;
+            case "queryByStudies":
+                query.put(VariantDBAdaptor.VariantQueryParams.STUDIES.key(), queryParams);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown benchmark query " + benchmarkTest);
+        }
+        // Copy the query and options on each execution, as the DBAdaptor may modify them
+        return () -> variantDBAdaptor.get(new Query(query), new QueryOptions());
+    }
+
+    public BenchmarkStats getBenchmarkStats() {
+        return benchmarkStats;
+    }
+}
@@ -0,0 +1,60 @@
+package org.opencb.opencga.storage.core.cache;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryResult;
+
+import java.util.regex.Pattern;
+
+/**
+ * Storage used by the {@link CacheManager} to keep the query results.
+ *
+ * Created on 18/10/26.
+ */
+public interface CacheBackend {
+
+    /**
+     * Get a cached result.
+     *
+     * @param key   Cache key
+     * @param <T>   Result type
+     * @return      Cached result, or null if missing
+     * @throws CacheBackendException if the backend is not reachable
+     */
+    <T> QueryResult<T> get(String key) throws CacheBackendException;
+
+    void set(String key, Query query, QueryResult queryResult) throws CacheBackendException;
+
+    /**
+     * Remove all the entries starting with the given prefix.
+     *
+     * @param keyPrefix  Key prefix
+     * @throws CacheBackendException if the backend is not reachable
+     */
+    void invalidate(String keyPrefix) throws CacheBackendException;
+
+    /**
+     * Remove all the entries matching the given pattern.
+     *
+     * @param pattern    Key pattern
+     * @throws CacheBackendException if the backend is not reachable
+     */
+    void clear(Pattern pattern) throws CacheBackendException;
+
+    void clear() throws CacheBackendException;
+
+    /**
+     * Hits, misses, evictions and size of the cache.
+     *
+     * @return Cache statistics
+     */
+    ObjectMap getStats();
+
+    void close();
+
+    class CacheBackendException extends Exception {
+        public CacheBackendException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -1,20 +1,14 @@
 package org.opencb.opencga.storage.core.cache;
 
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.lang3.StringUtils;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResult;
 import org.opencb.opencga.storage.core.config.CacheConfiguration;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
-import org.redisson.Config;
-import org.redisson.Redisson;
-import org.redisson.RedissonClient;
-import org.redisson.client.RedisConnectionException;
-import org.redisson.codec.JsonJacksonCodec;
-import org.redisson.codec.KryoCodec;
-import org.redisson.core.RKeys;
-import org.redisson.core.RMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.regex.Pattern;
@@ -26,13 +20,22 @@ public class CacheManager {
 
     private StorageConfiguration storageConfiguration;
 
-    private Config redissonConfig;
     private Set<String> allowedTypesSet;
-    private RedissonClient redissonClient;
-    private boolean redisState;
+    private CacheBackend backend;
+    private boolean backendState;
 
+    public static final String REDIS_BACKEND = "redis";
+    public static final String LOCAL_BACKEND = "local";
 
-    private static final String PREFIX_DATABASE_KEY = "ocga:";
+    static final String PREFIX_DATABASE_KEY = "ocga:";
+
+    /**
+     * The local backend is shared by all the CacheManagers of the process, so the results invalidated by one manager are
+     * not returned by the others. All of them must use the same local cache settings.
+     */
+    private static LocalCacheBackend localCacheBackend;
+
+    private static Logger logger = LoggerFactory.getLogger(CacheManager.class);
 
     public CacheManager() {
     }
@@ -46,56 +49,57 @@ public class CacheManager {
             this.storageConfiguration = configuration;
 
             cache = configuration.getCache();
-            redissonConfig = new Config();
-
-            String host = (StringUtils.isNotEmpty(cache.getHost()))
-                    ? cache.getHost()
-                    : CacheConfiguration.DEFAULT_HOST;
-            redissonConfig.useSingleServer().setAddress(host);
-
-            String codec = (StringUtils.isNotEmpty(cache.getSerialization()))
-                    ? cache.getSerialization()
-                    : CacheConfiguration.DEFAULT_SERIALIZATION;
 
             this.allowedTypesSet = new HashSet<>(Arrays.asList(cache.getAllowedTypes().split(",")));
 
-
-            if (StringUtils.isNotEmpty(cache.getPassword())) {
-                redissonConfig.useSingleServer().setPassword(cache.getPassword());
-            }
-
-            if ("KRYO".equalsIgnoreCase(codec)) {
-                redissonConfig.setCodec(new KryoCodec());
+            if (LOCAL_BACKEND.equalsIgnoreCase(cache.getBackend())) {
+                backend = getLocalCacheBackend(cache);
             } else {
-                redissonConfig.setCodec(new JsonJacksonCodec());
+                // The Redisson client will be created on demand
+                backend = new RedisCacheBackend(cache);
             }
 
-            redisState = true;
+            backendState = true;
+        }
+    }
+
+    public CacheManager(StorageConfiguration configuration, CacheBackend backend) {
+        this(configuration);
+        this.backend = backend;
+    }
 
-//            redissonClient = Redisson.create(redissonConfig);
-            redissonClient = null;
+    private static synchronized LocalCacheBackend getLocalCacheBackend(CacheConfiguration cache) {
+        long maxMemory = cache.getMaxMemory() > 0 ? cache.getMaxMemory() : CacheConfiguration.DEFAULT_MAX_MEMORY;
+        if (localCacheBackend == null) {
+            localCacheBackend = new LocalCacheBackend(maxMemory, cache.getTtl());
+        } else if (localCacheBackend.getMaxBytes() != maxMemory || localCacheBackend.getTtlSeconds() != cache.getTtl()) {
+            throw new IllegalArgumentException("Conflicting local cache configuration. The local cache of this process is already "
+                    + "configured with maxMemory=" + localCacheBackend.getMaxBytes() + ", ttl=" + localCacheBackend.getTtlSeconds()
+                    + ". Found maxMemory=" + maxMemory + ", ttl=" + cache.getTtl());
         }
+        return localCacheBackend;
     }
 
+    /**
+     * Discard the local backend shared by the process. Used by the tests to start with a new configuration.
+     */
+    static synchronized void resetLocalCacheBackend() {
+        localCacheBackend = null;
+    }
 
     public <T> QueryResult<T> get(String key) {
 
         QueryResult<T> queryResult = new QueryResult<>();
         if (isActive()) {
             long start = System.currentTimeMillis();
-            RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
-
             try {
-                // We only retrieve the first field of the HASH, which is the only one that exist.
-                Map<Integer, Map<String, Object>> result = map.getAll(new HashSet<>(Collections.singletonList(0)));
-
-                if (result != null && !result.isEmpty()) {
-                    Object resultMap = result.get(0).get("result");
-                    queryResult = (QueryResult<T>) resultMap;
+                QueryResult<T> result = backend.get(key);
+                if (result != null) {
+                    queryResult = result;
                     queryResult.setDbTime((int) (System.currentTimeMillis() - start));
                 }
-            } catch (RedisConnectionException e) {
-                redisState = false;
+            } catch (CacheBackend.CacheBackendException e) {
+                backendState = false;
                 queryResult.setWarningMsg("Unable to connect to Redis Cache, Please query WITHOUT Cache (Falling back to Database)");
                 return queryResult;
             }
@@ -108,14 +112,10 @@ public class CacheManager {
         if (isActive()) {
             if (queryResult.getDbTime() >= storageConfiguration.getCache().getSlowThreshold()
                     && queryResult.getResult().size() >= storageConfiguration.getCache().getMaxResultSize()) {
-                RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
-                Map<String, Object> record = new HashMap<>();
-                record.put("query", query);
-                record.put("result", queryResult);
                 try {
-                    map.fastPut(0, record);
-                } catch (RedisConnectionException e) {
-                    redisState = false;
+                    backend.set(key, query, queryResult);
+                } catch (CacheBackend.CacheBackendException e) {
+                    backendState = false;
                     queryResult.setWarningMsg("Unable to connect to Redis Cache, Please query WITHOUT Cache (Falling back to Database)");
                 }
             }
@@ -123,12 +123,30 @@ public class CacheManager {
     }
 
     public String createKey(String studyId, String allowedType, Query query, QueryOptions queryOptions) {
+        return createKey(studyId, -1, allowedType, query, queryOptions);
+    }
+
+    /**
+     * Create a versioned cache key. Every time the data of the study changes, the data generation is incremented,
+     * so the entries created with a previous generation are not used anymore, and will expire.
+     *
+     * @param studyId           Study id
+     * @param dataGeneration    Data generation of the study. Use a negative number for non versioned keys
+     * @param allowedType       Type of the cached results
+     * @param query             Query
+     * @param queryOptions      Query options
+     * @return                  Cache key
+     */
+    public String createKey(String studyId, long dataGeneration, String allowedType, Query query, QueryOptions queryOptions) {
 
         queryOptions.remove("cache");
         queryOptions.remove("sId");
 
-        StringBuilder key = new StringBuilder(PREFIX_DATABASE_KEY);
-        key.append(studyId).append(":").append(allowedType);
+        StringBuilder key = new StringBuilder(getStudyPrefix(studyId));
+        key.append(allowedType);
+        if (dataGeneration >= 0) {
+            key.append(":g").append(dataGeneration);
+        }
         SortedMap<String, SortedSet<Object>> map = new TreeMap<>();
 
         for (String item : query.keySet()) {
@@ -146,36 +164,91 @@ public class CacheManager {
         return key.toString();
     }
 
+    /**
+     * Remove all the cached results of a study. To be called after modifying the data of the study.
+     *
+     * @param studyId   Study id
+     */
+    public void invalidate(String studyId) {
+        if (isActive()) {
+            try {
+                backend.invalidate(getStudyPrefix(studyId));
+            } catch (CacheBackend.CacheBackendException | RuntimeException e) {
+                logger.warn("Unable to invalidate cache for study " + studyId, e);
+            }
+        }
+    }
+
+    /**
+     * Remove all the cached results.
+     */
+    public void invalidateAll() {
+        if (isActive()) {
+            try {
+                backend.invalidate(PREFIX_DATABASE_KEY);
+            } catch (CacheBackend.CacheBackendException | RuntimeException e) {
+                logger.warn("Unable to invalidate cache", e);
+            }
+        }
+    }
+
+    /**
+     * Remove the cached results of a study from the in-process cache, after modifying the data of the study.
+     * Redis entries are not removed, to avoid connecting to the server on every load. Those will not be used
+     * anymore if the keys are versioned with the data generation of the study.
+     *
+     * @param configuration Storage configuration
+     * @param studyId       Study id. If null, invalidate all the studies
+     */
+    public static void invalidateLocal(StorageConfiguration configuration, Integer studyId) {
+        CacheConfiguration cache = configuration.getCache();
+        if (cache == null || !cache.isActive() || !LOCAL_BACKEND.equalsIgnoreCase(cache.getBackend())) {
+            return;
+        }
+        CacheManager cacheManager = new CacheManager(configuration);
+        if (studyId == null) {
+            cacheManager.invalidateAll();
+        } else {
+            cacheManager.invalidate(String.valueOf(studyId));
+        }
+    }
+
+    private static String getStudyPrefix(String studyId) {
+        return PREFIX_DATABASE_KEY + studyId + ":";
+    }
+
     public boolean isActive() {
-        return storageConfiguration.getCache().isActive() && redisState;
+        return storageConfiguration != null && storageConfiguration.getCache().isActive() && backendState;
     }
 
     public boolean isTypeAllowed(String type) {
-        return allowedTypesSet.contains(type);
+        return allowedTypesSet != null && allowedTypesSet.contains(type);
     }
 
-    public void clear() {
-        RKeys redisKeys = getRedissonClient().getKeys();
-        redisKeys.deleteByPattern(PREFIX_DATABASE_KEY + "*");
+    public ObjectMap getStats() {
+        return backend == null ? new ObjectMap() : backend.getStats();
     }
 
-    public void clear(Pattern pattern) {
-        RKeys redisKeys = getRedissonClient().getKeys();
-        redisKeys.deleteByPattern(pattern.toString());
+    public void clear() {
+        try {
+            backend.clear();
+        } catch (CacheBackend.CacheBackendException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
     }
 
-    public void close() {
-        if (redissonClient != null) {
-            redissonClient.shutdown();
-            redissonClient = null;
+    public void clear(Pattern pattern) {
+        try {
+            backend.clear(pattern);
+        } catch (CacheBackend.CacheBackendException e) {
+            throw new IllegalStateException(e.getMessage(), e);
         }
     }
 
-    private synchronized RedissonClient getRedissonClient() {
-        if (redissonClient == null) {
-            redissonClient = Redisson.create(redissonConfig);
+    public void close() {
+        if (backend != null) {
+            backend.close();
         }
-        return redissonClient;
     }
 
 }
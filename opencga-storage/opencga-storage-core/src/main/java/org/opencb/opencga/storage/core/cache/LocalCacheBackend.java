@@ -0,0 +1,185 @@
+package org.opencb.opencga.storage.core.cache;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryResult;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * In-process cache backend. Keeps the results in a LRU map bounded by the estimated size in bytes of the entries.
+ *
+ * Entries expire after a time to live. The size of each entry is estimated from the number of results, as an exact
+ * measure would require serializing the results.
+ *
+ * The list of results is copied when stored and when returned, so the callers can modify their lists. The results
+ * themselves are not copied, and must not be modified after being cached.
+ *
+ * Created on 18/10/26.
+ */
+public class LocalCacheBackend implements CacheBackend {
+
+    public static final long DEFAULT_RESULT_SIZE = 1024;
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private final long maxBytes;
+    private final long ttlSeconds;
+    private final long ttlNanos;
+    private final ToLongFunction<QueryResult> sizeEstimator;
+    private final LongSupplier nanoTime;
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    private static final class Entry {
+        private final QueryResult<?> queryResult;
+        private final long size;
+        private final long expireAt;
+
+        private Entry(QueryResult<?> queryResult, long size, long expireAt) {
+            this.queryResult = queryResult;
+            this.size = size;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * @param maxBytes      Max estimated size of the cache in bytes
+     * @param ttlSeconds    Time to live of each entry, in seconds. Use a non positive number to disable expiration
+     */
+    public LocalCacheBackend(long maxBytes, long ttlSeconds) {
+        this(maxBytes, ttlSeconds, queryResult -> ENTRY_OVERHEAD + DEFAULT_RESULT_SIZE * queryResult.getResult().size());
+    }
+
+    public LocalCacheBackend(long maxBytes, long ttlSeconds, ToLongFunction<QueryResult> sizeEstimator) {
+        this(maxBytes, ttlSeconds, sizeEstimator, System::nanoTime);
+    }
+
+    LocalCacheBackend(long maxBytes, long ttlSeconds, ToLongFunction<QueryResult> sizeEstimator, LongSupplier nanoTime) {
+        this.maxBytes = maxBytes;
+        this.ttlSeconds = ttlSeconds;
+        this.ttlNanos = ttlSeconds > 0 ? TimeUnit.SECONDS.toNanos(ttlSeconds) : Long.MAX_VALUE;
+        this.sizeEstimator = sizeEstimator;
+        this.nanoTime = nanoTime;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized <T> QueryResult<T> get(String key) {
+        Entry entry = map.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (ttlNanos != Long.MAX_VALUE && nanoTime.getAsLong() - entry.expireAt > 0) {
+            remove(key);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        // Return a copy, so the cached entry is not modified by the caller
+        return copy((QueryResult<T>) entry.queryResult);
+    }
+
+    @Override
+    public void set(String key, Query query, QueryResult queryResult) {
+        long size = key.length() * 2 + sizeEstimator.applyAsLong(queryResult);
+        if (size > maxBytes) {
+            // Would evict the whole cache
+            return;
+        }
+        // Store a copy, so the cached entry is not modified by the caller
+        Entry entry = new Entry(copy(queryResult), size, nanoTime.getAsLong() + ttlNanos);
+        synchronized (this) {
+            remove(key);
+            map.put(key, entry);
+            bytes += size;
+            Iterator<Entry> iterator = map.values().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= iterator.next().size;
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(String keyPrefix) {
+        Iterator<Map.Entry<String, Entry>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getKey().startsWith(keyPrefix)) {
+                bytes -= entry.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear(Pattern pattern) {
+        Iterator<Map.Entry<String, Entry>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (pattern.matcher(entry.getKey()).matches()) {
+                bytes -= entry.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        map.clear();
+        bytes = 0;
+    }
+
+    @Override
+    public synchronized ObjectMap getStats() {
+        return new ObjectMap("backend", "local")
+                .append("hits", hits)
+                .append("misses", misses)
+                .append("evictions", evictions)
+                .append("expirations", expirations)
+                .append("entries", map.size())
+                .append("bytes", bytes)
+                .append("maxBytes", maxBytes);
+    }
+
+    @Override
+    public void close() {
+        // The local cache is shared within the process. Nothing to close.
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    private static <T> QueryResult<T> copy(QueryResult<T> queryResult) {
+        return new QueryResult<>(queryResult.getId(), queryResult.getDbTime(), queryResult.getNumResults(),
+                queryResult.getNumTotalResults(), queryResult.getWarningMsg(), queryResult.getErrorMsg(),
+                new ArrayList<>(queryResult.getResult()));
+    }
+
+    private void remove(String key) {
+        Entry old = map.remove(key);
+        if (old != null) {
+            bytes -= old.size;
+        }
+    }
+}
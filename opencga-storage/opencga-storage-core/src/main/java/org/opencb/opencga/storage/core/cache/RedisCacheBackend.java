@@ -0,0 +1,144 @@
+package org.opencb.opencga.storage.core.cache;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.config.CacheConfiguration;
+import org.redisson.Config;
+import org.redisson.Redisson;
+import org.redisson.RedissonClient;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.codec.JsonJacksonCodec;
+import org.redisson.codec.KryoCodec;
+import org.redisson.core.RMap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Cache backend storing the results in a Redis server using Redisson.
+ *
+ * The Redisson client is created the first time it is used.
+ *
+ * Created by wasim on 26/10/16.
+ */
+public class RedisCacheBackend implements CacheBackend {
+
+    private final Config redissonConfig;
+    private final int ttl;
+    private RedissonClient redissonClient;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public RedisCacheBackend(CacheConfiguration cache) {
+        redissonConfig = new Config();
+        ttl = cache.getTtl();
+
+        String host = (StringUtils.isNotEmpty(cache.getHost()))
+                ? cache.getHost()
+                : CacheConfiguration.DEFAULT_HOST;
+        redissonConfig.useSingleServer().setAddress(host);
+
+        String codec = (StringUtils.isNotEmpty(cache.getSerialization()))
+                ? cache.getSerialization()
+                : CacheConfiguration.DEFAULT_SERIALIZATION;
+
+        if (StringUtils.isNotEmpty(cache.getPassword())) {
+            redissonConfig.useSingleServer().setPassword(cache.getPassword());
+        }
+
+        if ("KRYO".equalsIgnoreCase(codec)) {
+            redissonConfig.setCodec(new KryoCodec());
+        } else {
+            redissonConfig.setCodec(new JsonJacksonCodec());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> QueryResult<T> get(String key) throws CacheBackendException {
+        try {
+            RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
+            // We only retrieve the first field of the HASH, which is the only one that exist.
+            Map<Integer, Map<String, Object>> result = map.getAll(new HashSet<>(Collections.singletonList(0)));
+
+            if (result != null && !result.isEmpty()) {
+                hits.incrementAndGet();
+                return (QueryResult<T>) result.get(0).get("result");
+            }
+        } catch (RedisConnectionException e) {
+            throw new CacheBackendException("Unable to connect to Redis Cache", e);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public void set(String key, Query query, QueryResult queryResult) throws CacheBackendException {
+        Map<String, Object> record = new HashMap<>();
+        record.put("query", query);
+        record.put("result", queryResult);
+        try {
+            RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
+            map.fastPut(0, record);
+            if (ttl > 0) {
+                // Entries from old data generations are never read again. Let them expire.
+                map.expire(ttl, TimeUnit.SECONDS);
+            }
+        } catch (RedisConnectionException e) {
+            throw new CacheBackendException("Unable to connect to Redis Cache", e);
+        }
+    }
+
+    @Override
+    public void invalidate(String keyPrefix) throws CacheBackendException {
+        try {
+            getRedissonClient().getKeys().deleteByPattern(keyPrefix + "*");
+        } catch (RedisConnectionException e) {
+            throw new CacheBackendException("Unable to connect to Redis Cache", e);
+        }
+    }
+
+    @Override
+    public void clear(Pattern pattern) throws CacheBackendException {
+        try {
+            getRedissonClient().getKeys().deleteByPattern(pattern.toString());
+        } catch (RedisConnectionException e) {
+            throw new CacheBackendException("Unable to connect to Redis Cache", e);
+        }
+    }
+
+    @Override
+    public void clear() throws CacheBackendException {
+        invalidate(CacheManager.PREFIX_DATABASE_KEY);
+    }
+
+    @Override
+    public ObjectMap getStats() {
+        return new ObjectMap("backend", "redis")
+                .append("hits", hits.get())
+                .append("misses", misses.get());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (redissonClient != null) {
+            redissonClient.shutdown();
+            redissonClient = null;
+        }
+    }
+
+    synchronized RedissonClient getRedissonClient() {
+        if (redissonClient == null) {
+            redissonClient = Redisson.create(redissonConfig);
+        }
+        return redissonClient;
+    }
+}
@@ -33,6 +33,39 @@ public class BenchmarkConfiguration {
     private DatabaseCredentials database;
     private int concurrency;
 
+    /**
+     * Duration of the query benchmark in seconds. If not positive, each query is executed numRepetitions times.
+     */
+    private int duration;
+    /**
+     * Seconds executing queries before start measuring.
+     */
+    private int warmup;
+    /**
+     * Accepted values are: closed, open.
+     * Closed loop issues a new query as soon as the previous one finishes. Open loop issues the queries at a fixed rate.
+     */
+    private String mode;
+    /**
+     * Queries per second issued in open loop mode.
+     */
+    private int rate;
+    /**
+     * File with the mix of queries to execute. One query per line, followed by an optional weight.
+     */
+    private String queryFile;
+    /**
+     * Variant file used to benchmark the convert and insert phases.
+     */
+    private String input;
+    /**
+     * Output file for the results. Format is selected from the extension: json or csv.
+     */
+    private String output;
+
+    public static final String CLOSED_LOOP = "closed";
+    public static final String OPEN_LOOP = "open";
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("BenchmarkConfiguration{");
@@ -44,6 +77,13 @@ public class BenchmarkConfiguration {
         sb.append(", table='").append(table).append('\'');
         sb.append(", database=").append(database);
         sb.append(", concurrency=").append(concurrency);
+        sb.append(", duration=").append(duration);
+        sb.append(", warmup=").append(warmup);
+        sb.append(", mode='").append(mode).append('\'');
+        sb.append(", rate=").append(rate);
+        sb.append(", queryFile='").append(queryFile).append('\'');
+        sb.append(", input='").append(input).append('\'');
+        sb.append(", output='").append(output).append('\'');
         sb.append('}');
         return sb.toString();
     }
@@ -111,4 +151,60 @@ public class BenchmarkConfiguration {
     public void setConcurrency(int concurrency) {
         this.concurrency = concurrency;
     }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public void setDuration(int duration) {
+        this.duration = duration;
+    }
+
+    public int getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    public String getQueryFile() {
+        return queryFile;
+    }
+
+    public void setQueryFile(String queryFile) {
+        this.queryFile = queryFile;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public void setInput(String input) {
+        this.input = input;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
 }
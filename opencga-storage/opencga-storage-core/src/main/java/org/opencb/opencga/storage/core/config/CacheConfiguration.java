@@ -24,12 +24,30 @@ public class CacheConfiguration {
      */
     private String allowedTypes;
 
+    /**
+     * Accepted values are: redis, local.
+     */
+    private String backend;
+
+    /**
+     * Max estimated memory, in bytes, used by the local backend.
+     */
+    private long maxMemory;
+
+    /**
+     * Time to live of the cached entries, in seconds.
+     */
+    private int ttl;
+
     public static final boolean DEFAULT_ACTVE = true;
     public static final String DEFAULT_SERIALIZATION = "json";
     public static final String DEFAULT_ALLOWED_TYPE = "aln,var";
     public static final String DEFAULT_HOST = "localhost:6379";
     public static final String DEFAULT_PASSWORD = "";
     public static final int DEFAULT_MAX_FILE_SIZE = 500;
+    public static final String DEFAULT_BACKEND = "redis";
+    public static final long DEFAULT_MAX_MEMORY = 256L * 1024 * 1024;
+    public static final int DEFAULT_TTL = 3600;
 
     public CacheConfiguration() {
         this(DEFAULT_HOST, DEFAULT_ACTVE, DEFAULT_SERIALIZATION, 50, DEFAULT_MAX_FILE_SIZE, DEFAULT_PASSWORD,
@@ -45,6 +63,9 @@ public class CacheConfiguration {
         this.maxResultSize = maxFileSize;
         this.password = password;
         this.allowedTypes = allowedTypes;
+        this.backend = DEFAULT_BACKEND;
+        this.maxMemory = DEFAULT_MAX_MEMORY;
+        this.ttl = DEFAULT_TTL;
     }
 
     @Override
@@ -56,6 +77,9 @@ public class CacheConfiguration {
                 + ", slowThreshold=" + slowThreshold
                 + ", maxResultSize=" + maxResultSize
                 + ", allowedTypes='" + allowedTypes + '\''
+                + ", backend='" + backend + '\''
+                + ", maxMemory=" + maxMemory
+                + ", ttl=" + ttl
                 + '}');
         return sb.toString();
     }
@@ -122,4 +146,31 @@ public class CacheConfiguration {
         this.allowedTypes = allowedTypes;
         return this;
     }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public CacheConfiguration setBackend(String backend) {
+        this.backend = backend;
+        return this;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public CacheConfiguration setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+        return this;
+    }
+
+    public int getTtl() {
+        return ttl;
+    }
+
+    public CacheConfiguration setTtl(int ttl) {
+        this.ttl = ttl;
+        return this;
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.core.io.plain;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Line of a text file, as a range of bytes over a shared buffer. The line terminator is not included.
+ *
+ * The bytes are not copied nor decoded until {@link #toString(Charset)} is called, so this can be done by the thread consuming
+ * the line instead of the one reading the file.
+ *
+ * Created on 18/10/26.
+ */
+public class ByteLine {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param buffer    Buffer with the content of the line. Must not be modified, and its position is ignored
+     * @param offset    Absolute index of the first byte of the line
+     * @param length    Length of the line, without the line terminator
+     */
+    public ByteLine(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public byte byteAt(int i) {
+        return buffer.get(offset + i);
+    }
+
+    /**
+     * @return If the line starts with '#'
+     */
+    public boolean isHeader() {
+        return length > 0 && buffer.get(offset) == '#';
+    }
+
+    /**
+     * Check if the line is empty or only contains whitespace, like {@code line.trim().isEmpty()}.
+     *
+     * @return If the line is blank
+     */
+    public boolean isBlank() {
+        for (int i = offset; i < offset + length; i++) {
+            if ((buffer.get(i) & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String toString(Charset charset) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, charset);
+        } else {
+            byte[] bytes = new byte[length];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.limit(offset + length).position(offset);
+            duplicate.get(bytes);
+            return new String(bytes, charset);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toString(Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.core.io.plain;
+
+import org.opencb.commons.io.DataReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the lines of a text file as {@link ByteLine}, without decoding them.
+ *
+ * The file, decompressed if needed, is read into heap chunks of {@code chunkSize} bytes, and the lines are ranges over
+ * the chunks. The only work done by the reader thread is finding the line terminators. Charset decoding is left to the
+ * consumers of the lines.
+ *
+ * Chunks are never reused, so a line remains valid while it is referenced. A chunk is released by the garbage collector
+ * once the consumers drop all its lines. Memory mapping is avoided on purpose, as the mappings could not be released
+ * safely while the lines are still being consumed by other threads.
+ *
+ * Created on 18/10/26.
+ */
+public class ByteLineDataReader implements DataReader<ByteLine> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    protected final Path path;
+    protected final int decompressThreads;
+    protected final int chunkSize;
+    protected long readLines = 0L;
+    protected final AtomicLong readBytes = new AtomicLong(0);
+    protected long startTime;
+
+    private InputStream inputStream;
+    private boolean eof;
+
+    private ByteBuffer buffer;
+    private int lineStart;
+    private int scanPosition;
+
+    protected static Logger logger = LoggerFactory.getLogger(ByteLineDataReader.class);
+
+    public ByteLineDataReader(Path path) {
+        this(path, 1);
+    }
+
+    public ByteLineDataReader(Path path, int decompressThreads) {
+        this(path, decompressThreads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param path              Input file
+     * @param decompressThreads Number of threads inflating gzip inputs. See {@link StringDataReader#StringDataReader(Path, int)}
+     * @param chunkSize         Size of the chunks. Grows if a line is longer
+     */
+    public ByteLineDataReader(Path path, int decompressThreads, int chunkSize) {
+        this.path = path;
+        this.decompressThreads = decompressThreads;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            inputStream = StringDataReader.openInputStream(path, decompressThreads, readBytes);
+            eof = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer = ByteBuffer.allocate(0);
+        lineStart = 0;
+        scanPosition = 0;
+        startTime = System.currentTimeMillis();
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        try {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer = null;
+        logger.info("Read {} lines, {} bytes in {}s. {} lines/s, {} MB/s", readLines, readBytes.get(),
+                (System.currentTimeMillis() - startTime) / 1000.0, (long) getLinesPerSecond(),
+                String.format("%.2f", getBytesPerSecond() / 1024 / 1024));
+        return true;
+    }
+
+    @Override
+    public List<ByteLine> read() {
+        ByteLine line = nextLine();
+        return line == null ? Collections.emptyList() : Collections.singletonList(line);
+    }
+
+    @Override
+    public List<ByteLine> read(int batchSize) {
+        List<ByteLine> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            ByteLine line = nextLine();
+            if (line == null) {
+                return batch;
+            }
+            batch.add(line);
+        }
+        return batch;
+    }
+
+    private ByteLine nextLine() {
+        try {
+            while (true) {
+                int limit = buffer.limit();
+                for (int i = scanPosition; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        return newLine(i, i + 1);
+                    }
+                }
+                scanPosition = limit;
+                if (!refill()) {
+                    // Last line, without line terminator
+                    return lineStart < limit ? newLine(limit, limit) : null;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteLine newLine(int end, int next) {
+        int lineEnd = end;
+        if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+            lineEnd--;
+        }
+        ByteLine line = new ByteLine(buffer, lineStart, lineEnd - lineStart);
+        lineStart = next;
+        scanPosition = next;
+        onReadLine();
+        return line;
+    }
+
+    /**
+     * Replace the current chunk with a new one starting at the beginning of the current line.
+     *
+     * @return false if there is no more data to read
+     * @throws IOException on errors reading the file
+     */
+    private boolean refill() throws IOException {
+        int carry = buffer.limit() - lineStart;
+        // Grow the chunk if the current line does not fit
+        int size = Math.max(chunkSize, carry * 2);
+        if (eof) {
+            return false;
+        }
+        byte[] chunk = new byte[size];
+        System.arraycopy(buffer.array(), lineStart, chunk, 0, carry);
+        int length = carry;
+        while (length < size) {
+            int n = inputStream.read(chunk, length, size - length);
+            if (n < 0) {
+                eof = true;
+                break;
+            }
+            length += n;
+        }
+        if (length == carry) {
+            return false;
+        }
+        buffer = ByteBuffer.wrap(chunk, 0, length);
+        scanPosition = carry;
+        lineStart = 0;
+        return true;
+    }
+
+    protected void onReadLine() {
+        if (++readLines % 100000 == 0) {
+            logger.debug("read lines = {}, {} lines/s, {} MB/s", readLines, (long) getLinesPerSecond(),
+                    String.format("%.2f", getBytesPerSecond() / 1024 / 1024));
+        }
+    }
+
+    public long getReadLines() {
+        return readLines;
+    }
+
+    /**
+     * @return Number of bytes read from the input file. For compressed files, the number of compressed bytes.
+     */
+    public long getReadBytes() {
+        return readBytes.get();
+    }
+
+    public double getLinesPerSecond() {
+        return readLines / getElapsedSeconds();
+    }
+
+    public double getBytesPerSecond() {
+        return readBytes.get() / getElapsedSeconds();
+    }
+
+    private double getElapsedSeconds() {
+        return Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+    }
+}
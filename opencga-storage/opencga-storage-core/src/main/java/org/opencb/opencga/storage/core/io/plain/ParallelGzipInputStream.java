@@ -0,0 +1,327 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.io.plain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Gzip input stream that inflates ahead of the consumer.
+ *
+ * BGZF inputs (like bgzipped VCFs) are split into their blocks without inflating them, using the block size stored in the
+ * "BC" extra subfield of each gzip member header. The blocks are inflated in parallel by a pool of threads and returned
+ * in the original order.
+ *
+ * Other gzip inputs, including plain multi-member gzip, do not store where each member ends, so they can not be split
+ * without inflating. In that case, a single background thread inflates the input ahead of the consumer.
+ *
+ * At most {@code 4 * numThreads} blocks are kept in memory.
+ *
+ * Created on 18/10/26.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    private static final int GZIP_HEADER_SIZE = 12;     // ID1 ID2 CM FLG MTIME(4) XFL OS XLEN(2)
+    private static final int GZIP_TRAILER_SIZE = 8;     // CRC32 ISIZE
+    private static final int FEXTRA = 4;
+    private static final int BGZF_MAX_BLOCK_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final InputStream in;
+    private final boolean bgzf;
+    private final BlockingQueue<Future<byte[]>> blocks;
+    private final Future<byte[]> endOfStream = CompletableFuture.completedFuture(null);
+    private final ExecutorService inflaters;
+    private final Thread splitter;
+
+    private byte[] buffer = EMPTY;
+    private int position = 0;
+    private boolean finished = false;
+
+    protected static Logger logger = LoggerFactory.getLogger(ParallelGzipInputStream.class);
+
+    /**
+     * @param in         Gzip compressed input stream
+     * @param numThreads Number of threads inflating BGZF blocks
+     * @throws IOException if the input is not gzip compressed
+     */
+    public ParallelGzipInputStream(InputStream in, int numThreads) throws IOException {
+        this.in = in.markSupported() ? in : new BufferedInputStream(in);
+        numThreads = Math.max(1, numThreads);
+
+        bgzf = isBgzf(this.in);
+        blocks = new ArrayBlockingQueue<>(numThreads * 4);
+        if (bgzf) {
+            logger.debug("BGZF input. Inflating blocks with {} threads", numThreads);
+            inflaters = Executors.newFixedThreadPool(numThreads, r -> {
+                Thread thread = new Thread(r, "bgzf-inflater");
+                thread.setDaemon(true);
+                return thread;
+            });
+            splitter = new Thread(this::splitBgzf, "bgzf-splitter");
+        } else {
+            logger.debug("Non BGZF gzip input. Inflating in a background thread");
+            inflaters = null;
+            GZIPInputStream gzip = new GZIPInputStream(this.in);
+            splitter = new Thread(() -> inflate(gzip), "gzip-inflater");
+        }
+        splitter.setDaemon(true);
+        splitter.start();
+    }
+
+    /**
+     * Check if the stream starts with a BGZF block. The stream must support mark.
+     *
+     * @param in    Input stream
+     * @return      If the first member of the stream is a BGZF block
+     * @throws IOException on errors reading the stream
+     */
+    public static boolean isBgzf(InputStream in) throws IOException {
+        byte[] header = new byte[18];
+        in.mark(header.length);
+        int read = readFully(in, header, 0, header.length);
+        in.reset();
+        return read == header.length
+                && (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139 && header[2] == 8
+                && (header[3] & FEXTRA) != 0 && unsignedShort(header, 10) == 6
+                && header[12] == 'B' && header[13] == 'C' && unsignedShort(header, 14) == 2;
+    }
+
+    public boolean isBgzf() {
+        return bgzf;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fillBuffer()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fillBuffer()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.length - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return buffer.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        splitter.interrupt();
+        if (inflaters != null) {
+            inflaters.shutdownNow();
+        }
+        blocks.clear();
+        in.close();
+    }
+
+    private boolean fillBuffer() throws IOException {
+        while (position >= buffer.length) {
+            if (finished) {
+                return false;
+            }
+            Future<byte[]> future;
+            try {
+                future = blocks.take();
+                if (future == endOfStream) {
+                    finished = true;
+                    return false;
+                }
+                buffer = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (ExecutionException e) {
+                finished = true;
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Read the BGZF blocks from the input and submit them to the inflaters.
+     */
+    private void splitBgzf() {
+        try {
+            byte[] header = new byte[GZIP_HEADER_SIZE];
+            int read;
+            while ((read = readFully(in, header, 0, header.length)) > 0) {
+                if (read < header.length) {
+                    throw new EOFException("Unexpected end of BGZF block header");
+                }
+                byte[] block = readBgzfBlock(header);
+                blocks.put(inflaters.submit(() -> inflateBgzfBlock(block)));
+            }
+            blocks.put(endOfStream);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Inflate a non splittable gzip input in chunks.
+     *
+     * @param gzip Gzip input stream
+     */
+    private void inflate(GZIPInputStream gzip) {
+        try {
+            while (true) {
+                byte[] chunk = new byte[CHUNK_SIZE];
+                int read = readFully(gzip, chunk, 0, chunk.length);
+                if (read > 0) {
+                    byte[] data = read == chunk.length ? chunk : Arrays.copyOf(chunk, read);
+                    blocks.put(CompletableFuture.completedFuture(data));
+                }
+                if (read < chunk.length) {
+                    break;
+                }
+            }
+            blocks.put(endOfStream);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(Exception e) {
+        CompletableFuture<byte[]> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        try {
+            blocks.put(failed);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private byte[] readBgzfBlock(byte[] header) throws IOException {
+        if ((header[0] & 0xFF) != 31 || (header[1] & 0xFF) != 139 || header[2] != 8 || (header[3] & FEXTRA) == 0) {
+            throw new IOException("Malformed BGZF block. Expected gzip header with extra fields");
+        }
+        int xlen = unsignedShort(header, 10);
+        byte[] extra = new byte[xlen];
+        if (readFully(in, extra, 0, xlen) != xlen) {
+            throw new EOFException("Unexpected end of BGZF block header");
+        }
+        int blockSize = -1;
+        for (int i = 0; i + 4 <= xlen; i += 4 + unsignedShort(extra, i + 2)) {
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && unsignedShort(extra, i + 2) == 2) {
+                blockSize = unsignedShort(extra, i + 4) + 1;
+                break;
+            }
+        }
+        if (blockSize < 0 || blockSize > BGZF_MAX_BLOCK_SIZE) {
+            throw new IOException("Malformed BGZF block. Missing or invalid BC subfield");
+        }
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, header.length);
+        System.arraycopy(extra, 0, block, header.length, xlen);
+        int remaining = blockSize - header.length - xlen;
+        if (readFully(in, block, header.length + xlen, remaining) != remaining) {
+            throw new EOFException("Unexpected end of BGZF block");
+        }
+        return block;
+    }
+
+    private static byte[] inflateBgzfBlock(byte[] block) throws IOException {
+        int dataOffset = GZIP_HEADER_SIZE + unsignedShort(block, 10);
+        int dataLength = block.length - dataOffset - GZIP_TRAILER_SIZE;
+        int trailer = block.length - GZIP_TRAILER_SIZE;
+        int size = unsignedInt(block, trailer + 4);
+        if (size == 0) {
+            return EMPTY;
+        }
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, dataOffset, dataLength);
+            int inflated = 0;
+            while (inflated < size && !inflater.finished()) {
+                int n = inflater.inflate(data, inflated, size - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != size) {
+                throw new IOException("Malformed BGZF block. Expected " + size + " bytes, got " + inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed BGZF block", e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 0, size);
+        if ((int) crc32.getValue() != unsignedInt(block, trailer)) {
+            throw new IOException("Corrupted BGZF block. CRC32 mismatch");
+        }
+        return data;
+    }
+
+    private static int readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = in.read(b, off + total, len - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static int unsignedShort(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+    }
+
+    private static int unsignedInt(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+
+}
@@ -23,11 +23,11 @@ import org.xerial.snappy.SnappyInputStream;
 
 import java.io.*;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -37,34 +37,69 @@ public class StringDataReader implements DataReader<String> {
 
     protected BufferedReader reader;
     protected final Path path;
+    protected final int decompressThreads;
     protected long readLines = 0L;
+    protected final AtomicLong readBytes = new AtomicLong(0);
+    protected long startTime;
 
     protected static Logger logger = LoggerFactory.getLogger(StringDataReader.class);
 
     public StringDataReader(Path path) {
+        this(path, 1);
+    }
+
+    /**
+     * @param path              Input file
+     * @param decompressThreads Number of threads inflating gzip inputs. With more than one thread, the input is inflated
+     *                          ahead of the reader by a {@link ParallelGzipInputStream}, in parallel if it is BGZF compressed
+     */
+    public StringDataReader(Path path, int decompressThreads) {
         this.path = path;
+        this.decompressThreads = decompressThreads;
     }
 
     @Override
     public boolean open() {
         try {
-            String fileName = path.toFile().getName();
-            if (fileName.endsWith(".gz")) {
-                logger.debug("Gzip input compress");
-                this.reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(path.toFile()))));
-            } else if (fileName.endsWith(".snappy") || fileName.endsWith(".snz")) {
-                logger.info("Snappy input compress");
-                this.reader = new BufferedReader(new InputStreamReader(new SnappyInputStream(new FileInputStream(path.toFile()))));
-            } else {
-                logger.debug("Plain input compress");
-                this.reader = Files.newBufferedReader(path, Charset.defaultCharset());
-            }
+            this.reader = new BufferedReader(new InputStreamReader(openInputStream(path, decompressThreads, readBytes),
+                    Charset.defaultCharset()));
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+        startTime = System.currentTimeMillis();
         return true;
     }
 
+    /**
+     * Open the file, decompressing it if needed.
+     *
+     * @param path              Input file
+     * @param decompressThreads Number of threads inflating gzip inputs
+     * @param readBytes         Counter of bytes read from the file
+     * @return                  Uncompressed input stream
+     * @throws IOException      on errors opening the file
+     */
+    static InputStream openInputStream(Path path, int decompressThreads, AtomicLong readBytes) throws IOException {
+        String fileName = path.toFile().getName();
+        InputStream inputStream = new ByteCountingInputStream(new FileInputStream(path.toFile()), readBytes);
+        if (fileName.endsWith(".gz")) {
+            if (decompressThreads > 1) {
+                ParallelGzipInputStream gzipInputStream = new ParallelGzipInputStream(inputStream, decompressThreads);
+                logger.debug("Gzip input compress. BGZF: {}, decompress threads: {}", gzipInputStream.isBgzf(), decompressThreads);
+                inputStream = gzipInputStream;
+            } else {
+                logger.debug("Gzip input compress");
+                inputStream = new GZIPInputStream(inputStream);
+            }
+        } else if (fileName.endsWith(".snappy") || fileName.endsWith(".snz")) {
+            logger.info("Snappy input compress");
+            inputStream = new SnappyInputStream(inputStream);
+        } else {
+            logger.debug("Plain input compress");
+        }
+        return inputStream;
+    }
+
     @Override
     public boolean close() {
         try {
@@ -72,6 +107,9 @@ public class StringDataReader implements DataReader<String> {
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+        logger.info("Read {} lines, {} bytes in {}s. {} lines/s, {} MB/s", readLines, readBytes.get(),
+                (System.currentTimeMillis() - startTime) / 1000.0, (long) getLinesPerSecond(),
+                String.format("%.2f", getBytesPerSecond() / 1024 / 1024));
         return true;
     }
 
@@ -115,7 +153,31 @@ public class StringDataReader implements DataReader<String> {
 
     protected void onReadLine() {
         if (++readLines % 100000 == 0) {
-            logger.debug("read lines = " + readLines);
+            logger.debug("read lines = {}, {} lines/s, {} MB/s", readLines, (long) getLinesPerSecond(),
+                    String.format("%.2f", getBytesPerSecond() / 1024 / 1024));
         }
     }
+
+    public long getReadLines() {
+        return readLines;
+    }
+
+    /**
+     * @return Number of bytes read from the input file. For compressed files, the number of compressed bytes.
+     */
+    public long getReadBytes() {
+        return readBytes.get();
+    }
+
+    public double getLinesPerSecond() {
+        return readLines / getElapsedSeconds();
+    }
+
+    public double getBytesPerSecond() {
+        return readBytes.get() / getElapsedSeconds();
+    }
+
+    private double getElapsedSeconds() {
+        return Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.core.io.plain;
+
+import htsjdk.tribble.readers.TabixReader;
+import org.opencb.commons.io.DataReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the lines of one region of a bgzipped and tabix indexed file.
+ *
+ * Tabix returns all the lines overlapping the region, so a line spanning two consecutive regions would be returned twice.
+ * To avoid this, only the lines starting in the region are returned.
+ *
+ * Created on 18/10/26.
+ */
+public class TabixDataReader implements DataReader<String> {
+
+    private final Path path;
+    private final String chromosome;
+    private final int start;
+    private final int end;
+
+    private TabixReader tabixReader;
+    private TabixReader.Iterator iterator;
+    private boolean finished;
+    protected long readLines = 0L;
+
+    /**
+     * Read a whole chromosome.
+     *
+     * @param path          Input file. The index is expected at path + ".tbi"
+     * @param chromosome    Chromosome to read
+     */
+    public TabixDataReader(Path path, String chromosome) {
+        this(path, chromosome, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param path          Input file. The index is expected at path + ".tbi"
+     * @param chromosome    Chromosome to read
+     * @param start         First position of the region, 1-based, inclusive
+     * @param end           Last position of the region, 1-based, inclusive
+     */
+    public TabixDataReader(Path path, String chromosome, int start, int end) {
+        this.path = path;
+        this.chromosome = chromosome;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            tabixReader = new TabixReader(path.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int tid = tabixReader.chr2tid(chromosome);
+        if (tid < 0) {
+            finished = true;
+        } else {
+            // Tabix queries are 0-based, half open
+            iterator = tabixReader.query(tid, start - 1, end);
+            finished = iterator == null;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        if (tabixReader != null) {
+            tabixReader.close();
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> read() {
+        return read(1);
+    }
+
+    @Override
+    public List<String> read(int batchSize) {
+        if (finished) {
+            return Collections.emptyList();
+        }
+        List<String> batch = new ArrayList<>(batchSize);
+        try {
+            while (batch.size() < batchSize) {
+                String line = iterator.next();
+                if (line == null) {
+                    finished = true;
+                    break;
+                }
+                int position = getPosition(line);
+                if (position < start) {
+                    // Starts in the previous region
+                    continue;
+                } else if (position > end) {
+                    finished = true;
+                    break;
+                }
+                batch.add(line);
+                readLines++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return batch;
+    }
+
+    public long getReadLines() {
+        return readLines;
+    }
+
+    /**
+     * Parse the second column of a VCF line.
+     *
+     * @param line  VCF line
+     * @return      Position
+     */
+    private static int getPosition(String line) {
+        int from = line.indexOf('\t') + 1;
+        int to = line.indexOf('\t', from);
+        return Integer.parseInt(line.substring(from, to < 0 ? line.length() : to));
+    }
+}
@@ -60,6 +60,11 @@ public class StudyConfiguration {
 
     private Long timeStamp;
 
+    /**
+     * Incremented every time the variants of the study are modified. Used to build versioned cache keys.
+     */
+    private long dataGeneration;
+
     private ObjectMap attributes;
 
     protected StudyConfiguration() {
@@ -84,6 +89,7 @@ public class StudyConfiguration {
         this.batches = other.batches;
         this.aggregation = other.aggregation;
         this.timeStamp = other.timeStamp;
+        this.dataGeneration = other.dataGeneration;
         this.attributes = new ObjectMap(other.attributes);
     }
 
@@ -117,6 +123,7 @@ public class StudyConfiguration {
         this.batches = new ArrayList<>();
         this.aggregation = VariantSource.Aggregation.NONE;
         this.timeStamp = 0L;
+        this.dataGeneration = 0;
         this.attributes = new ObjectMap();
     }
 
@@ -157,6 +164,7 @@ public class StudyConfiguration {
                 .append("batches", batches)
                 .append("aggregation", aggregation)
                 .append("timeStamp", timeStamp)
+                .append("dataGeneration", dataGeneration)
                 .append("attributes", attributes)
                 .toString();
     }
@@ -280,6 +288,18 @@ public class StudyConfiguration {
         this.timeStamp = timeStamp;
     }
 
+    public long getDataGeneration() {
+        return dataGeneration;
+    }
+
+    public void setDataGeneration(long dataGeneration) {
+        this.dataGeneration = dataGeneration;
+    }
+
+    public long incrementDataGeneration() {
+        return ++dataGeneration;
+    }
+
     public ObjectMap getAttributes() {
         return attributes;
     }
@@ -312,13 +332,14 @@ public class StudyConfiguration {
                 && Objects.equals(batches, that.batches)
                 && aggregation == that.aggregation
                 && Objects.equals(timeStamp, that.timeStamp)
+                && dataGeneration == that.dataGeneration
                 && Objects.equals(attributes, that.attributes);
     }
 
     @Override
     public int hashCode() {
         return Objects.hash(studyId, studyName, fileIds, sampleIds, cohortIds, cohorts, indexedFiles, headers, samplesInFiles,
-                calculatedStats, invalidStats, batches, aggregation, timeStamp, attributes);
+                calculatedStats, invalidStats, batches, aggregation, timeStamp, dataGeneration, attributes);
     }
 
     public static <T, R> BiMap<R, T> inverseMap(BiMap<T, R> map) {
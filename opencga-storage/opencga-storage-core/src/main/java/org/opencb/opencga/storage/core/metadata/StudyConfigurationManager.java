@@ -182,6 +182,23 @@ public abstract class StudyConfigurationManager implements AutoCloseable {
 
     public abstract Map<String, Integer> getStudies(QueryOptions options);
 
+    /**
+     * Get the timestamp of the last update of each study, to detect changes made by other processes.
+     *
+     * This default implementation reads every StudyConfiguration. Implementations should read only the timestamps.
+     *
+     * @return Timestamp of each study
+     */
+    public Map<Integer, Long> getStudyTimeStamps() {
+        Map<Integer, Long> timeStamps = new HashMap<>();
+        QueryOptions readOnly = new QueryOptions(READ_ONLY, true);
+        for (Integer studyId : getStudies(null).values()) {
+            StudyConfiguration studyConfiguration = getStudyConfiguration(studyId, readOnly).first();
+            timeStamps.put(studyId, studyConfiguration == null ? null : studyConfiguration.getTimeStamp());
+        }
+        return timeStamps;
+    }
+
     public final QueryResult updateStudyConfiguration(StudyConfiguration studyConfiguration, QueryOptions options) {
         long timeStamp = System.currentTimeMillis();
         logger.debug("Timestamp : {} -> {}", studyConfiguration.getTimeStamp(), timeStamp);
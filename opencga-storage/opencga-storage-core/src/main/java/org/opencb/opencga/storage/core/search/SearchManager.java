@@ -4,6 +4,7 @@ import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrClient;
 import org.apache.solr.client.solrj.impl.HttpClientUtil;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -11,19 +12,35 @@ import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.run.ParallelTaskRunner;
+import org.opencb.opencga.core.common.ProgressLogger;
 import org.opencb.opencga.storage.core.config.SearchConfiguration;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
+import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.search.iterators.SolrVariantSearchIterator;
+import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.io.db.VariantDBReader;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Created by wasim on 09/11/16.
  */
 public class SearchManager {
 
+    public static final String BATCH_SIZE = "batchSize";
+    /** Max time in milliseconds before the loaded documents are committed. If 0, commit only at the end of the load. */
+    public static final String COMMIT_WITHIN = "search.load.commitWithin";
+    /** Size of the queue of pending documents of the async update client. */
+    public static final String LOAD_QUEUE_SIZE = "search.load.queueSize";
+    /** Number of threads of the async update client. */
+    public static final String LOAD_UPDATE_THREADS = "search.load.updateThreads";
+
     private SearchConfiguration searchConfiguration;
+    private static String solrUrl;
     private static HttpSolrClient solrServer;
     private static VariantSearchFactory variantSearchFactory;
 
@@ -31,7 +48,8 @@ public class SearchManager {
     public SearchManager() {
         //TODO remove testing constructor
         if (this.solrServer == null) {
-            this.solrServer = new HttpSolrClient("http://localhost:8983/solr/variants");
+            solrUrl = "http://localhost:8983/solr/variants";
+            this.solrServer = new HttpSolrClient(solrUrl);
             solrServer.setRequestWriter(new BinaryRequestWriter());
         }
         if (variantSearchFactory == null) {
@@ -44,7 +62,8 @@ public class SearchManager {
         this.searchConfiguration = storageConfiguration.getSearch();
 
         if (searchConfiguration.getHost() != null && searchConfiguration.getCollection() != null && solrServer == null) {
-            solrServer = new HttpSolrClient(searchConfiguration.getHost() + searchConfiguration.getCollection());
+            solrUrl = searchConfiguration.getHost() + searchConfiguration.getCollection();
+            solrServer = new HttpSolrClient(solrUrl);
             solrServer.setRequestWriter(new BinaryRequestWriter());
             HttpClientUtil.setBasicAuth((DefaultHttpClient) solrServer.getHttpClient(), searchConfiguration.getUser(),
                     searchConfiguration.getPassword());
@@ -87,18 +106,69 @@ public class SearchManager {
         }
     }
 
+    /**
+     * Load all the variants matching the query into Solr.
+     *
+     * Variants are read from the {@link VariantDBAdaptor}, converted into {@link VariantSearch} in several threads,
+     * and added to Solr with an async batched client. There is only one commit at the end of the load, unless
+     * {@link #COMMIT_WITHIN} is provided.
+     *
+     * @param dbAdaptor     VariantDBAdaptor to read the variants from
+     * @param query         Query to select the variants to load
+     * @param options       Options. See {@link VariantStorageEngine.Options#LOAD_THREADS},
+     *                      {@link VariantStorageEngine.Options#LOAD_BATCH_SIZE} and {@link #COMMIT_WITHIN}
+     * @return              The loader used, with the number of loaded documents and the load throughput
+     * @throws StorageEngineException   If there is any error loading the variants
+     */
+    public VariantSearchLoader load(VariantDBAdaptor dbAdaptor, Query query, QueryOptions options) throws StorageEngineException {
+        int loadThreads = options.getInt(VariantStorageEngine.Options.LOAD_THREADS.key(),
+                VariantStorageEngine.Options.LOAD_THREADS.defaultValue());
+        int batchSize = options.getInt(VariantStorageEngine.Options.LOAD_BATCH_SIZE.key(),
+                VariantStorageEngine.Options.LOAD_BATCH_SIZE.defaultValue());
+        int commitWithin = options.getInt(COMMIT_WITHIN, 0);
+        int queueSize = options.getInt(LOAD_QUEUE_SIZE, batchSize * loadThreads * 2);
+        int updateThreads = options.getInt(LOAD_UPDATE_THREADS, loadThreads);
+
+        ConcurrentUpdateSolrClient updateSolrClient = new ConcurrentUpdateSolrClient(solrUrl, solrServer.getHttpClient(), queueSize,
+                updateThreads);
+        updateSolrClient.setRequestWriter(new BinaryRequestWriter());
+        try {
+            VariantDBReader reader = new VariantDBReader(dbAdaptor, query, new QueryOptions(options));
+            VariantSearchLoader loader = new VariantSearchLoader(updateSolrClient, commitWithin)
+                    .setProgressLogger(new ProgressLogger("Load variants into Solr:", () -> dbAdaptor.count(new Query(query)).first(), 200));
+
+            ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
+                    .setNumTasks(loadThreads)
+                    .setBatchSize(batchSize)
+                    .setAbortOnFail(true).build();
+            ParallelTaskRunner<Variant, VariantSearch> ptr = new ParallelTaskRunner<>(reader,
+                    variantSearchFactory::create, loader, config);
+            ptr.run();
+            return loader;
+        } catch (ExecutionException e) {
+            throw new StorageEngineException("Error loading variants into Solr", e);
+        } finally {
+            updateSolrClient.shutdownNow();
+        }
+    }
+
+    /**
+     * Iterate over all the variants matching the query. Results are fetched from Solr in pages of
+     * {@link #BATCH_SIZE} documents using the cursorMark, so the whole result is never kept in memory.
+     *
+     * @param query         Query
+     * @param queryOptions  Query options. {@link QueryOptions#LIMIT} is the max number of results to return,
+     *                      after skipping the first {@link QueryOptions#SKIP} results.
+     * @return              Iterator over the results
+     */
     public SolrVariantSearchIterator iterator(Query query, QueryOptions queryOptions) {
 
         SolrQuery solrQuery = SearchUtil.createSolrQuery(query, queryOptions);
-        QueryResponse response = null;
-
-        try {
-            response = solrServer.query(solrQuery);
-        } catch (SolrServerException | IOException e) {
-            e.printStackTrace();
-        }
+        int batchSize = queryOptions.getInt(BATCH_SIZE, SolrVariantSearchIterator.DEFAULT_BATCH_SIZE);
+        long limit = queryOptions.getLong(QueryOptions.LIMIT, -1);
+        long skip = queryOptions.getLong(QueryOptions.SKIP, 0);
 
-        return new SolrVariantSearchIterator(response.getBeans(VariantSearch.class).iterator());
+        return new SolrVariantSearchIterator(solrServer, solrQuery, batchSize, limit, Math.max(0, skip));
     }
 
     public VariantSearchFacet getFacet(Query query, QueryOptions queryOptions) {
@@ -0,0 +1,107 @@
+package org.opencb.opencga.storage.core.search;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrClient;
+import org.opencb.commons.io.DataWriter;
+import org.opencb.opencga.core.common.ProgressLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DataWriter for bulk loading {@link VariantSearch} documents into Solr.
+ *
+ * Documents are added without an explicit commit. If a commitWithin is provided, Solr will make them visible
+ * in that time. In any case, there is one single commit at the end of the load.
+ *
+ * Created on 18/10/26.
+ */
+public class VariantSearchLoader implements DataWriter<VariantSearch> {
+
+    private final SolrClient solrClient;
+    private final int commitWithinMs;
+    private ProgressLogger progressLogger;
+
+    private final AtomicLong numDocs = new AtomicLong();
+    private long startNanoTime;
+    private long loadNanoTime;
+
+    private final Logger logger = LoggerFactory.getLogger(VariantSearchLoader.class);
+
+    /**
+     * @param solrClient        Solr client. For async batched updates, use a {@link ConcurrentUpdateSolrClient}
+     * @param commitWithinMs    Max time in milliseconds before the documents are committed. Use 0 to commit only at the end.
+     */
+    public VariantSearchLoader(SolrClient solrClient, int commitWithinMs) {
+        this.solrClient = solrClient;
+        this.commitWithinMs = commitWithinMs;
+    }
+
+    @Override
+    public boolean pre() {
+        numDocs.set(0);
+        startNanoTime = System.nanoTime();
+        return true;
+    }
+
+    @Override
+    public boolean write(List<VariantSearch> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            if (commitWithinMs > 0) {
+                solrClient.addBeans(batch, commitWithinMs);
+            } else {
+                solrClient.addBeans(batch);
+            }
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Error loading variants into Solr", e);
+        }
+        numDocs.addAndGet(batch.size());
+
+        if (progressLogger != null) {
+            progressLogger.increment(batch.size(), () -> "up to variant " + batch.get(batch.size() - 1).getId());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean post() {
+        if (solrClient instanceof ConcurrentUpdateSolrClient) {
+            // Wait for the pending async updates
+            ((ConcurrentUpdateSolrClient) solrClient).blockUntilFinished();
+        }
+        try {
+            solrClient.commit();
+        } catch (SolrServerException | IOException e) {
+            throw new RuntimeException("Error committing variants into Solr", e);
+        }
+        loadNanoTime = System.nanoTime() - startNanoTime;
+        logger.info("Loaded {} variants into Solr in {}s ({} docs/s)", getNumDocs(), loadNanoTime / 1000000000.0,
+                String.format("%.2f", getDocsPerSecond()));
+        return true;
+    }
+
+    public VariantSearchLoader setProgressLogger(ProgressLogger progressLogger) {
+        this.progressLogger = progressLogger;
+        return this;
+    }
+
+    public long getNumDocs() {
+        return numDocs.get();
+    }
+
+    public long getLoadNanoTime() {
+        return loadNanoTime;
+    }
+
+    public double getDocsPerSecond() {
+        long nanoTime = loadNanoTime > 0 ? loadNanoTime : System.nanoTime() - startNanoTime;
+        return nanoTime > 0 ? numDocs.get() / (nanoTime / 1000000000.0) : 0;
+    }
+}
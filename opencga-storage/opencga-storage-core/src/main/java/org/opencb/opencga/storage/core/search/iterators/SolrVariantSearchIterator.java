@@ -1,31 +1,185 @@
 package org.opencb.opencga.storage.core.search.iterators;
 
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.opencb.opencga.storage.core.search.VariantSearch;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
+ * Iterates over all the results of a Solr query using cursorMark deep paging.
+ *
+ * Only one page of documents is kept in memory, while the next page is being fetched in a background thread.
+ * Documents are converted into {@link VariantSearch} beans when they are returned.
+ *
+ * The cursorMark can not be used with the start parameter, so the first skipped documents are read and discarded.
+ * The background thread is released when the last page is read, if there is an error fetching a page, or on close.
+ *
  * Created by wasim on 14/11/16.
  */
 public class SolrVariantSearchIterator extends VariantSearchIterator {
 
-    private Iterator<VariantSearch> solrIterator;
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final String ID_FIELD = "id";
 
-    public SolrVariantSearchIterator(Iterator<VariantSearch> solrIterator) {
-        this.solrIterator = solrIterator;
+    private final SolrClient solrClient;
+    private final SolrQuery solrQuery;
+    private final int batchSize;
+    private final long limit;
+    private final long skip;
+    private final ExecutorService executorService;
+
+    private String cursorMark;
+    private Future<QueryResponse> nextPage;
+    private Iterator<SolrDocument> currentPage;
+    /** Number of documents requested to the server. */
+    private long requested;
+    /** Number of documents returned by the iterator. */
+    private long count;
+    /** Number of documents discarded by the iterator. */
+    private long skipped;
+
+    /**
+     * @param solrClient    Solr client
+     * @param solrQuery     Query to execute. The query will be sorted by id, to be able to use the cursorMark.
+     *                      The start of the query, if any, is used as the number of documents to skip.
+     * @param batchSize     Number of documents to fetch in each page
+     * @param limit         Max number of documents to return. Use a non positive number for no limit
+     */
+    public SolrVariantSearchIterator(SolrClient solrClient, SolrQuery solrQuery, int batchSize, long limit) {
+        this(solrClient, solrQuery, batchSize, limit, solrQuery.getStart() == null ? 0 : solrQuery.getStart());
+    }
+
+    /**
+     * @param solrClient    Solr client
+     * @param solrQuery     Query to execute. The query will be sorted by id, to be able to use the cursorMark.
+     * @param batchSize     Number of documents to fetch in each page
+     * @param limit         Max number of documents to return. Use a non positive number for no limit
+     * @param skip          Number of documents to skip
+     */
+    public SolrVariantSearchIterator(SolrClient solrClient, SolrQuery solrQuery, int batchSize, long limit, long skip) {
+        if (skip < 0) {
+            throw new IllegalArgumentException("Invalid skip " + skip);
+        }
+        this.solrClient = solrClient;
+        this.solrQuery = solrQuery.getCopy();
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        this.limit = limit > 0 ? limit : Long.MAX_VALUE;
+        this.skip = skip;
+
+        // The cursorMark requires a sort on the uniqueKey field
+        boolean sortById = false;
+        for (SolrQuery.SortClause sortClause : this.solrQuery.getSorts()) {
+            if (sortClause.getItem().equals(ID_FIELD)) {
+                sortById = true;
+            }
+        }
+        if (!sortById) {
+            this.solrQuery.addSort(ID_FIELD, SolrQuery.ORDER.asc);
+        }
+        this.solrQuery.setStart(null);
+
+        executorService = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "solr-variant-search-iterator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        nextPage = fetchPage(cursorMark);
     }
 
     @Override
     public void close() throws Exception {
+        release();
     }
 
     @Override
     public boolean hasNext() {
-        return solrIterator.hasNext();
+        if (count >= limit) {
+            release();
+            return false;
+        }
+        while (currentPage == null || !currentPage.hasNext()) {
+            if (nextPage == null) {
+                return false;
+            }
+            QueryResponse response = getNextPage();
+            int rows = response.getResults().size();
+            String nextCursorMark = response.getNextCursorMark();
+            if (rows == 0 || nextCursorMark == null || nextCursorMark.equals(cursorMark) || requested >= getMaxRequested()) {
+                // Last page
+                release();
+            } else {
+                // Prefetch the next page while iterating over the current one
+                cursorMark = nextCursorMark;
+                nextPage = fetchPage(cursorMark);
+            }
+            currentPage = response.getResults().iterator();
+            // Discard the skipped documents
+            while (skipped < skip && currentPage.hasNext()) {
+                currentPage.next();
+                skipped++;
+            }
+        }
+        return true;
     }
 
     @Override
     public VariantSearch next() {
-        return solrIterator.next();
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        count++;
+        return solrClient.getBinder().getBean(VariantSearch.class, currentPage.next());
+    }
+
+    private long getMaxRequested() {
+        return limit == Long.MAX_VALUE ? Long.MAX_VALUE : limit + skip;
+    }
+
+    private Future<QueryResponse> fetchPage(String cursorMark) {
+        SolrQuery pageQuery = solrQuery.getCopy();
+        int rows = (int) Math.min(batchSize, getMaxRequested() - requested);
+        requested += rows;
+        pageQuery.setRows(rows);
+        pageQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+        return executorService.submit(() -> solrClient.query(pageQuery));
+    }
+
+    private QueryResponse getNextPage() {
+        try {
+            return nextPage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release();
+            throw new RuntimeException("Interrupted while fetching variants from Solr", e);
+        } catch (ExecutionException e) {
+            release();
+            throw new RuntimeException("Error fetching variants from Solr", e.getCause());
+        }
+    }
+
+    /**
+     * No more pages are going to be fetched. Release the background thread.
+     */
+    private void release() {
+        nextPage = null;
+        executorService.shutdownNow();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    boolean isReleased() {
+        return executorService.isShutdown();
     }
 }
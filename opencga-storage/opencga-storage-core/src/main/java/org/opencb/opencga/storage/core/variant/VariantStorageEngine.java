@@ -25,6 +25,7 @@ import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.core.common.TimeUtils;
 import org.opencb.opencga.storage.core.StoragePipelineResult;
 import org.opencb.opencga.storage.core.StorageEngine;
+import org.opencb.opencga.storage.core.cache.CacheManager;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
 import org.opencb.opencga.storage.core.exceptions.StoragePipelineException;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
@@ -32,8 +33,8 @@ import org.opencb.opencga.storage.core.metadata.ExportMetadata;
 import org.opencb.opencga.storage.core.metadata.FileStudyConfigurationManager;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
+import org.opencb.opencga.storage.core.search.SearchManager;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
-import org.opencb.opencga.storage.core.variant.adaptors.VariantDBIterator;
 import org.opencb.opencga.storage.core.variant.annotation.DefaultVariantAnnotationManager;
 import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager;
 import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotatorException;
@@ -92,6 +93,10 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         TRANSFORM_BATCH_SIZE("transform.batch.size", 200),
         TRANSFORM_THREADS("transform.threads", 4),
         TRANSFORM_FORMAT("transform.format", "avro"),
+        TRANSFORM_DECOMPRESS_THREADS("transform.decompress.threads", 4), //Threads inflating gzip inputs. In parallel for BGZF files
+        TRANSFORM_BYTE_LINE_READER("transform.reader.bytes", false), //Decode the lines in the transform threads instead of the reader
+        TRANSFORM_SHARDED("transform.sharded", false), //Transform bgzipped and tabix indexed files in one shard per chromosome
+        TRANSFORM_SHARD_WINDOW_SIZE("transform.shard.window.size", 0), //Split the chromosomes in windows of this size. 0 to disable
         LOAD_BATCH_SIZE("load.batch.size", 100),
         LOAD_THREADS("load.threads", 6),
         MERGE_BATCH_SIZE("merge.batch.size", 10),          //Number of files to merge directly from first to second table
@@ -104,7 +109,8 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         RESUME("resume", false),
 
         DEFAULT_TIMEOUT("dbadaptor.default_timeout", 10000), // Default timeout for DBAdaptor operations. Only used if none is provided.
-        MAX_TIMEOUT("dbadaptor.max_timeout", 30000);         // Max allowed timeout for DBAdaptor operations
+        MAX_TIMEOUT("dbadaptor.max_timeout", 30000),         // Max allowed timeout for DBAdaptor operations
+        GENE_INDEX_FILE("dbadaptor.gene.index.file", null);  // CellBase gene dump or GTF file to resolve gene filters locally
 
         private final String key;
         private final Object value;
@@ -265,6 +271,8 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
             VariantAnnotationManager annotationManager = newVariantAnnotationManager(annotator, dbAdaptor);
             annotationManager.annotate(query, options);
         }
+        // The annotation is shared by all the studies
+        CacheManager.invalidateLocal(configuration, null);
     }
 
     /**
@@ -345,6 +353,9 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         try (VariantDBAdaptor dbAdaptor = getDBAdaptor(dbName)) {
             VariantStatisticsManager statisticsManager = newVariantStatisticsManager(dbAdaptor);
             statisticsManager.calculateStatistics(study, cohorts, options);
+            StudyConfiguration studyConfiguration = dbAdaptor.getStudyConfigurationManager()
+                    .getStudyConfiguration(study, new QueryOptions()).first();
+            CacheManager.invalidateLocal(configuration, studyConfiguration == null ? null : studyConfiguration.getStudyId());
         }
     }
 
@@ -499,13 +510,15 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
     }
 
     public void insertVariantIntoSolr() throws StorageEngineException {
+        insertVariantIntoSolr(new Query(), new QueryOptions(getOptions()));
+    }
 
-        VariantDBAdaptor dbAdaptor = getDBAdaptor();
-        VariantDBIterator variantDBIterator = dbAdaptor.iterator();
-
-        while (variantDBIterator.hasNext()) {
-            searchManager.insert(variantDBIterator.next());
+    public void insertVariantIntoSolr(Query query, QueryOptions options) throws StorageEngineException {
+        if (searchManager == null) {
+            searchManager = new SearchManager(configuration);
         }
+        VariantDBAdaptor dbAdaptor = getDBAdaptor();
+        searchManager.load(dbAdaptor, query, options);
     }
 
 }
@@ -18,6 +18,8 @@ package org.opencb.opencga.storage.core.variant;
 
 import com.google.common.collect.BiMap;
 import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.readers.TabixReader;
+import htsjdk.variant.vcf.VCFContigHeaderLine;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLineType;
 import htsjdk.variant.vcf.VCFHeaderVersion;
@@ -32,6 +34,7 @@ import org.opencb.biodata.formats.variant.io.VariantReader;
 import org.opencb.biodata.formats.variant.io.VariantWriter;
 import org.opencb.biodata.formats.variant.vcf4.FullVcfCodec;
 import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.*;
 import org.opencb.biodata.models.variant.avro.VariantAvro;
 import org.opencb.biodata.tools.variant.stats.VariantGlobalStatsCalculator;
@@ -43,9 +46,12 @@ import org.opencb.commons.run.ParallelTaskRunner;
 import org.opencb.commons.run.Task;
 import org.opencb.hpg.bigdata.core.io.avro.AvroFileWriter;
 import org.opencb.opencga.storage.core.StoragePipeline;
+import org.opencb.opencga.storage.core.cache.CacheManager;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+import org.opencb.opencga.storage.core.io.plain.ByteLineDataReader;
 import org.opencb.opencga.storage.core.io.plain.StringDataReader;
+import org.opencb.opencga.storage.core.io.plain.TabixDataReader;
 import org.opencb.opencga.storage.core.io.plain.StringDataWriter;
 import org.opencb.opencga.storage.core.metadata.BatchFileOperation;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
@@ -53,6 +59,7 @@ import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine.Options;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
+import org.opencb.opencga.storage.core.variant.io.VariantTransformManifest;
 import org.opencb.opencga.storage.core.variant.io.json.VariantJsonWriter;
 import org.opencb.opencga.storage.core.variant.transform.MalformedVariantHandler;
 import org.opencb.opencga.storage.core.variant.transform.VariantAvroTransformTask;
@@ -63,11 +70,16 @@ import org.slf4j.Logger;
 import java.io.*;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.zip.GZIPInputStream;
 
@@ -312,17 +324,14 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
             //Read VariantSource
             source = VariantReaderUtils.readVariantSource(input, source);
 
-            //Reader
-            StringDataReader dataReader = new StringDataReader(input);
-
             //Writer
-            DataWriter<ByteBuffer> dataWriter;
-            try {
-                dataWriter = new AvroFileWriter<>(VariantAvro.getClassSchema(), compression, new FileOutputStream(outputVariantsFile
-                        .toFile()));
-            } catch (FileNotFoundException e) {
-                throw new StorageEngineException("Fail init writer", e);
-            }
+            Function<Path, DataWriter<ByteBuffer>> writerFactory = path -> {
+                try {
+                    return new AvroFileWriter<>(VariantAvro.getClassSchema(), compression, new FileOutputStream(path.toFile()));
+                } catch (FileNotFoundException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
             Supplier<VariantTransformTask<ByteBuffer>> taskSupplier;
 
             if (parser.equalsIgnoreCase(HTSJDK_PARSER)) {
@@ -330,92 +339,89 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
                 FullVcfCodec codec = new FullVcfCodec();
                 final VariantSource finalSource = source;
                 Pair<VCFHeader, VCFHeaderVersion> header = readHtsHeader(input);
-                VariantGlobalStatsCalculator statsCalculator = new VariantGlobalStatsCalculator(source);
                 taskSupplier = () -> new VariantAvroTransformTask(header.getKey(), header.getValue(), finalSource, outputMetaFile,
-                        statsCalculator, includeSrc, generateReferenceBlocks)
+                        null, includeSrc, generateReferenceBlocks)
                         .setFailOnError(failOnError).addMalformedErrorHandler(malformedHandler);
             } else {
                 // TODO Create a utility to determine which extensions are variants files
                 final VariantVcfFactory factory = createVariantVcfFactory(source, fileName);
                 logger.info("Using Biodata to read variants.");
                 final VariantSource finalSource = source;
-                VariantGlobalStatsCalculator statsCalculator = new VariantGlobalStatsCalculator(source);
-                taskSupplier = () -> new VariantAvroTransformTask(factory, finalSource, outputMetaFile, statsCalculator, includeSrc)
+                taskSupplier = () -> new VariantAvroTransformTask(factory, finalSource, outputMetaFile, null, includeSrc)
                         .setFailOnError(failOnError).addMalformedErrorHandler(malformedHandler);
             }
 
-            logger.info("Generating output file {}", outputVariantsFile);
+            if (isShardedTransform(input)) {
+                start = System.currentTimeMillis();
+                outputVariantsFile = transformShards(input, fileName, format, extension, outputMetaFile, taskSupplier,
+                        writerFactory, numTasks, batchSize);
+                end = System.currentTimeMillis();
+            } else {
+                logger.info("Generating output file {}", outputVariantsFile);
 
-            ParallelTaskRunner<String, ByteBuffer> ptr;
-            try {
-                ptr = new ParallelTaskRunner<>(
-                        dataReader,
-                        taskSupplier,
-                        dataWriter,
-                        config
-                );
-            } catch (Exception e) {
-                throw new StorageEngineException("Error while creating ParallelTaskRunner", e);
-            }
-            logger.info("Multi thread transform... [1 reading, {} transforming, 1 writing]", numTasks);
-            start = System.currentTimeMillis();
-            try {
-                ptr.run();
-            } catch (ExecutionException e) {
-                throw new StorageEngineException("Error while executing TransformVariants in ParallelTaskRunner", e);
+                ParallelTaskRunner<?, ByteBuffer> ptr;
+                try {
+                    ptr = createTransformRunner(input, taskSupplier, writerFactory.apply(outputVariantsFile), config);
+                } catch (Exception e) {
+                    throw new StorageEngineException("Error while creating ParallelTaskRunner", e);
+                }
+                logger.info("Multi thread transform... [1 reading, {} transforming, 1 writing]", numTasks);
+                start = System.currentTimeMillis();
+                try {
+                    ptr.run();
+                } catch (ExecutionException e) {
+                    throw new StorageEngineException("Error while executing TransformVariants in ParallelTaskRunner", e);
+                }
+                end = System.currentTimeMillis();
             }
-            end = System.currentTimeMillis();
         } else if ("json".equals(format)) {
             //Read VariantSource
             source = VariantReaderUtils.readVariantSource(input, source);
 
-            //Reader
-            StringDataReader dataReader = new StringDataReader(input);
-
             //Writers
-            StringDataWriter dataWriter = new StringDataWriter(outputVariantsFile, true);
+            Function<Path, DataWriter<String>> writerFactory = path -> new StringDataWriter(path, true);
 
             final VariantSource finalSource = source;
-            ParallelTaskRunner<String, String> ptr;
 
             Supplier<VariantTransformTask<String>> taskSupplier;
             if (parser.equalsIgnoreCase(HTSJDK_PARSER)) {
                 logger.info("Using HTSJDK to read variants.");
                 Pair<VCFHeader, VCFHeaderVersion> header = readHtsHeader(input);
-                VariantGlobalStatsCalculator statsCalculator = new VariantGlobalStatsCalculator(finalSource);
                 taskSupplier = () -> new VariantJsonTransformTask(header.getKey(), header.getValue(), finalSource,
-                        outputMetaFile, statsCalculator, includeSrc, generateReferenceBlocks)
+                        outputMetaFile, null, includeSrc, generateReferenceBlocks)
                         .setFailOnError(failOnError).addMalformedErrorHandler(malformedHandler);
             } else {
                 // TODO Create a utility to determine which extensions are variants files
                 final VariantVcfFactory factory = createVariantVcfFactory(source, fileName);
                 logger.info("Using Biodata to read variants.");
-                VariantGlobalStatsCalculator statsCalculator = new VariantGlobalStatsCalculator(source);
-                taskSupplier = () -> new VariantJsonTransformTask(factory, finalSource, outputMetaFile, statsCalculator, includeSrc)
+                taskSupplier = () -> new VariantJsonTransformTask(factory, finalSource, outputMetaFile, null, includeSrc)
                         .setFailOnError(failOnError).addMalformedErrorHandler(malformedHandler);
             }
 
-            logger.info("Generating output file {}", outputVariantsFile);
+            if (isShardedTransform(input)) {
+                start = System.currentTimeMillis();
+                outputVariantsFile = transformShards(input, fileName, format, extension, outputMetaFile, taskSupplier,
+                        writerFactory, numTasks, batchSize);
+                end = System.currentTimeMillis();
+            } else {
+                logger.info("Generating output file {}", outputVariantsFile);
 
-            try {
-                ptr = new ParallelTaskRunner<>(
-                        dataReader,
-                        taskSupplier,
-                        dataWriter,
-                        config
-                );
-            } catch (Exception e) {
-                throw new StorageEngineException("Error while creating ParallelTaskRunner", e);
-            }
+                ParallelTaskRunner<?, String> ptr;
+                try {
+                    ptr = createTransformRunner(input, taskSupplier, writerFactory.apply(outputVariantsFile), config);
+                } catch (Exception e) {
+                    throw new StorageEngineException("Error while creating ParallelTaskRunner", e);
+                }
 
-            logger.info("Multi thread transform... [1 reading, {} transforming, 1 writing]", numTasks);
-            start = System.currentTimeMillis();
-            try {
-                ptr.run();
-            } catch (ExecutionException e) {
-                throw new StorageEngineException("Error while executing TransformVariants in ParallelTaskRunner", e);
+                logger.info("Multi thread transform... [1 reading, {} transforming, 1 writing]", numTasks);
+                start = System.currentTimeMillis();
+                try {
+                    ptr.run();
+                } catch (ExecutionException e) {
+                    throw new StorageEngineException("Error while executing TransformVariants in ParallelTaskRunner", e);
+                }
+                end = System.currentTimeMillis();
             }
-            end = System.currentTimeMillis();
         } else if ("proto".equals(format)) {
             //Read VariantSource
             source = VariantReaderUtils.readVariantSource(input, source);
@@ -438,6 +444,178 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
         return outputUri.resolve(outputVariantsFile.getFileName().toString());
     }
 
+    /**
+     * Check if the input can be transformed in shards. See {@link Options#TRANSFORM_SHARDED}.
+     *
+     * @param input Input file
+     * @return      If the transform should be sharded
+     */
+    protected boolean isShardedTransform(Path input) {
+        if (!options.getBoolean(Options.TRANSFORM_SHARDED.key(), Options.TRANSFORM_SHARDED.defaultValue())) {
+            return false;
+        }
+        if (!input.toString().endsWith(".gz") || !Files.exists(Paths.get(input.toString() + ".tbi"))) {
+            logger.warn("Unable to run a sharded transform. Missing tabix index {}.tbi. Transform as a single stream", input);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Transform a bgzipped and tabix indexed file in shards. Each shard is one region of the genome, and is transformed by
+     * an independent reader -&gt; task -&gt; writer pipeline, into its own part file. Up to {@code numShardsInParallel} shards
+     * are transformed at the same time.
+     *
+     * The parts are listed in genomic order in a {@link VariantTransformManifest}, next to the parts.
+     *
+     * @param input                 Input file
+     * @param fileName              Input file name
+     * @param format                Output format
+     * @param extension             Output compression extension
+     * @param outputMetaFile        Metadata file, shared by all the parts
+     * @param taskSupplier          Transform task supplier
+     * @param writerFactory         Creates the writer of each part
+     * @param numShardsInParallel   Number of shards to transform at the same time
+     * @param batchSize             Batch size
+     * @param <T>                   Output type
+     * @return                      Path to the manifest
+     * @throws StorageEngineException if the transform fails
+     */
+    protected <T> Path transformShards(Path input, String fileName, String format, String extension, Path outputMetaFile,
+                                       Supplier<VariantTransformTask<T>> taskSupplier, Function<Path, DataWriter<T>> writerFactory,
+                                       int numShardsInParallel, int batchSize)
+            throws StorageEngineException {
+        Path outdir = outputMetaFile.getParent();
+        List<Region> shards = getTransformShards(input);
+        logger.info("Sharded transform... [{} shards, {} in parallel]", shards.size(), numShardsInParallel);
+
+        ParallelTaskRunner.Config shardConfig = ParallelTaskRunner.Config.builder()
+                .setNumTasks(1)
+                .setBatchSize(batchSize)
+                .setCapacity(2)
+                .setSorted(true)
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numShardsInParallel);
+        List<String> partNames = new ArrayList<>(shards.size());
+        List<Future<Long>> futures = new ArrayList<>(shards.size());
+        for (Region shard : shards) {
+            String partName = String.format("%s.%s.part-%05d.%s%s", fileName, VariantReaderUtils.VARIANTS_FILE, partNames.size() + 1,
+                    format, extension);
+            partNames.add(partName);
+            futures.add(executor.submit(() -> {
+                TabixDataReader dataReader = new TabixDataReader(input, shard.getChromosome(), shard.getStart(), shard.getEnd());
+                new ParallelTaskRunner<>(dataReader, taskSupplier, writerFactory.apply(outdir.resolve(partName)), shardConfig).run();
+                logger.debug("Shard {} transformed. {} lines", shard, dataReader.getReadLines());
+                return dataReader.getReadLines();
+            }));
+        }
+        executor.shutdown();
+
+        VariantTransformManifest manifest = new VariantTransformManifest(format, outputMetaFile.getFileName().toString());
+        try {
+            for (int i = 0; i < shards.size(); i++) {
+                Region shard = shards.get(i);
+                String region = shard.getStart() <= 1 && shard.getEnd() == Integer.MAX_VALUE ? shard.getChromosome() : shard.toString();
+                manifest.getParts().add(new VariantTransformManifest.Part(region, partNames.get(i), futures.get(i).get()));
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new StorageEngineException("Interrupted sharded transform", e);
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw new StorageEngineException("Error while executing sharded transform", e.getCause());
+        }
+
+        Path manifestPath = outdir.resolve(fileName + "." + VariantReaderUtils.VARIANTS_FILE + "." + format + extension
+                + VariantReaderUtils.MANIFEST_EXTENSION);
+        try {
+            manifest.write(manifestPath);
+        } catch (IOException e) {
+            throw new StorageEngineException("Unable to write manifest " + manifestPath, e);
+        }
+        logger.info("Generated manifest {} with {} parts", manifestPath, shards.size());
+        return manifestPath;
+    }
+
+    /**
+     * Split the input in shards, one per chromosome indexed in the tabix index. Chromosomes are sorted as in the VCF header.
+     * Chromosomes without contig line go at the end, in the order of the tabix index, which is the order of the file.
+     *
+     * With {@link Options#TRANSFORM_SHARD_WINDOW_SIZE}, chromosomes with a known length are split in windows of that size.
+     *
+     * @param input Bgzipped and tabix indexed input file
+     * @return      List of regions
+     * @throws StorageEngineException if the index can not be read
+     */
+    protected List<Region> getTransformShards(Path input) throws StorageEngineException {
+        int windowSize = options.getInt(Options.TRANSFORM_SHARD_WINDOW_SIZE.key(), Options.TRANSFORM_SHARD_WINDOW_SIZE.defaultValue());
+        // Chromosomes in the order of the tabix index
+        Set<String> chromosomes = new LinkedHashSet<>();
+        try {
+            TabixReader tabixReader = new TabixReader(input.toString());
+            tabixReader.getChromosomes().stream()
+                    .sorted(Comparator.comparingInt(tabixReader::chr2tid))
+                    .forEach(chromosomes::add);
+            tabixReader.close();
+        } catch (IOException e) {
+            throw new StorageEngineException("Unable to read tabix index from " + input, e);
+        }
+
+        // Sort chromosomes as in the header. Unknown chromosomes go at the end, in the order of the index
+        Map<String, Integer> lengths = new LinkedHashMap<>();
+        for (VCFContigHeaderLine contig : readHtsHeader(input).getKey().getContigLines()) {
+            if (chromosomes.remove(contig.getID())) {
+                lengths.put(contig.getID(), contig.getSAMSequenceRecord().getSequenceLength());
+            }
+        }
+        chromosomes.forEach(chromosome -> lengths.put(chromosome, 0));
+
+        List<Region> shards = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : lengths.entrySet()) {
+            int length = entry.getValue();
+            if (windowSize > 0 && length > windowSize) {
+                for (int start = 1; start <= length; start += windowSize) {
+                    // Last window takes any variant beyond the declared length
+                    int end = start + windowSize > length ? Integer.MAX_VALUE : start + windowSize - 1;
+                    shards.add(new Region(entry.getKey(), start, end));
+                }
+            } else {
+                shards.add(new Region(entry.getKey(), 1, Integer.MAX_VALUE));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Create the runner for the multi thread transform.
+     *
+     * With {@link Options#TRANSFORM_BYTE_LINE_READER}, the lines are read as bytes by a {@link ByteLineDataReader} and decoded
+     * by the transform tasks. Otherwise, the lines are decoded by the {@link StringDataReader} thread.
+     *
+     * @param input         Input file
+     * @param taskSupplier  Transform task supplier
+     * @param dataWriter    Output writer
+     * @param config        Runner configuration
+     * @param <T>           Output type
+     * @return              ParallelTaskRunner
+     * @throws Exception    If the ParallelTaskRunner can not be created
+     */
+    protected <T> ParallelTaskRunner<?, T> createTransformRunner(Path input, Supplier<VariantTransformTask<T>> taskSupplier,
+                                                                 DataWriter<T> dataWriter, ParallelTaskRunner.Config config)
+            throws Exception {
+        int decompressThreads = options.getInt(Options.TRANSFORM_DECOMPRESS_THREADS.key(),
+                Options.TRANSFORM_DECOMPRESS_THREADS.defaultValue());
+        if (options.getBoolean(Options.TRANSFORM_BYTE_LINE_READER.key(), Options.TRANSFORM_BYTE_LINE_READER.defaultValue())) {
+            ByteLineDataReader dataReader = new ByteLineDataReader(input, decompressThreads);
+            return new ParallelTaskRunner<>(dataReader, () -> taskSupplier.get().asByteLineTask(), dataWriter, config);
+        } else {
+            StringDataReader dataReader = new StringDataReader(input, decompressThreads);
+            return new ParallelTaskRunner<>(dataReader, taskSupplier, dataWriter, config);
+        }
+    }
+
     protected VariantVcfFactory createVariantVcfFactory(VariantSource source, String fileName) throws StorageEngineException {
         VariantVcfFactory factory;
         if (fileName.endsWith(".vcf") || fileName.endsWith(".vcf.gz") || fileName.endsWith(".vcf.snappy")) {
@@ -768,11 +946,15 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
             //Update StudyConfiguration
             studyConfiguration = getStudyConfiguration(true);
             securePostLoad(fileIds, studyConfiguration);
+            // New variants loaded. Invalidate cached queries
+            studyConfiguration.incrementDataGeneration();
             dbAdaptor.getStudyConfigurationManager().updateStudyConfiguration(studyConfiguration, new QueryOptions());
         } finally {
             dbAdaptor.getStudyConfigurationManager().unLockStudy(studyId, lock);
         }
 
+        CacheManager.invalidateLocal(configuration, studyId);
+
         return input;
     }
 
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.adaptors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opencb.biodata.models.core.Region;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local index of gene coordinates, GO terms and expression tissues, used to resolve gene, GO and expression
+ * filters without querying CellBase.
+ *
+ * Loaded from a CellBase gene dump (one gene json per line) or from a GTF file. GTF files only provide the gene
+ * coordinates. Both can be gzipped.
+ *
+ * Created on 18/10/26.
+ */
+public class GeneIndex {
+
+    private static final Map<Path, GeneIndex> INDEXES = new ConcurrentHashMap<>();
+    private static final String GO_DB_NAME = "go";
+
+    private final Map<String, Region> regions = new HashMap<>();
+    private final Map<String, Set<String>> genesByGo = new HashMap<>();
+    private final Map<String, Set<String>> genesByTissue = new HashMap<>();
+
+    protected static Logger logger = LoggerFactory.getLogger(GeneIndex.class);
+
+    /**
+     * Get the index of a file, loading it only once per JVM.
+     *
+     * @param path  CellBase gene dump or GTF file
+     * @return      Gene index
+     * @throws UncheckedIOException if the file can not be read
+     */
+    public static GeneIndex load(Path path) {
+        return INDEXES.computeIfAbsent(path.toAbsolutePath(), p -> {
+            try {
+                return new GeneIndex(p);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    GeneIndex() {
+    }
+
+    GeneIndex(Path path) throws IOException {
+        long start = System.currentTimeMillis();
+        String fileName = path.getFileName().toString();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(path), StandardCharsets.UTF_8))) {
+            if (fileName.endsWith(".gtf") || fileName.endsWith(".gtf.gz")) {
+                loadGtf(reader);
+            } else {
+                loadCellBaseGenes(reader);
+            }
+        }
+        logger.info("Loaded gene index from {} in {}ms. {} genes, {} GO terms, {} tissues", path, System.currentTimeMillis() - start,
+                regions.size(), genesByGo.size(), genesByTissue.size());
+    }
+
+    private static InputStream open(Path path) throws IOException {
+        InputStream is = Files.newInputStream(path);
+        return path.toString().endsWith(".gz") ? new GZIPInputStream(is) : is;
+    }
+
+    void loadGtf(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length < 9 || !fields[2].equals("gene")) {
+                continue;
+            }
+            String chromosome = fields[0];
+            int start = Integer.parseInt(fields[3]);
+            int end = Integer.parseInt(fields[4]);
+            String geneId = null;
+            String geneName = null;
+            for (String attribute : fields[8].split(";")) {
+                String[] split = attribute.trim().split(" ", 2);
+                if (split.length == 2) {
+                    if (split[0].equals("gene_id")) {
+                        geneId = split[1].replace("\"", "");
+                    } else if (split[0].equals("gene_name")) {
+                        geneName = split[1].replace("\"", "");
+                    }
+                }
+            }
+            addGene(geneId, geneName, chromosome, start, end);
+        }
+    }
+
+    void loadCellBaseGenes(BufferedReader reader) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            JsonNode gene = objectMapper.readTree(line);
+            String name = gene.path("name").asText(null);
+            addGene(gene.path("id").asText(null), name, gene.path("chromosome").asText(), gene.path("start").asInt(),
+                    gene.path("end").asInt());
+            if (name == null) {
+                continue;
+            }
+            for (JsonNode transcript : gene.path("transcripts")) {
+                for (JsonNode xref : transcript.path("xrefs")) {
+                    if (GO_DB_NAME.equals(xref.path("dbName").asText())) {
+                        genesByGo.computeIfAbsent(xref.path("id").asText(), key -> new HashSet<>()).add(name);
+                    }
+                }
+            }
+            for (JsonNode expression : gene.path("annotation").path("expression")) {
+                String tissue = expression.path("factorValue").asText(null);
+                if (tissue != null) {
+                    genesByTissue.computeIfAbsent(tissue.toLowerCase(), key -> new HashSet<>()).add(name);
+                }
+            }
+        }
+    }
+
+    void addGene(String id, String name, String chromosome, int start, int end) {
+        if (chromosome.startsWith("chr")) {
+            chromosome = chromosome.substring("chr".length());
+        }
+        Region region = new Region(chromosome, start, end);
+        if (id != null) {
+            regions.put(id, region);
+        }
+        if (name != null) {
+            regions.put(name, region);
+        }
+    }
+
+    /**
+     * @param gene  Gene name or id
+     * @return      Gene coordinates, or null if the gene is not in the index
+     */
+    public Region getRegion(String gene) {
+        return regions.get(gene);
+    }
+
+    /**
+     * @param go    GO term
+     * @return      Names of the genes annotated with the GO term, or null if the GO term is not in the index
+     */
+    public Set<String> getGenesByGo(String go) {
+        return genesByGo.get(go);
+    }
+
+    /**
+     * @param tissue    Expression tissue
+     * @return          Names of the genes expressed in the tissue, or null if the tissue is not in the index
+     */
+    public Set<String> getGenesByTissue(String tissue) {
+        return genesByTissue.get(tissue.toLowerCase());
+    }
+}
@@ -21,14 +21,17 @@ import org.opencb.biodata.models.core.Gene;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.annotation.ConsequenceTypeMappings;
 import org.opencb.cellbase.core.api.GeneDBAdaptor;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResult;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
+import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.function.Function;
 import java.util.regex.Matcher;
@@ -118,6 +121,7 @@ public class VariantDBAdaptorUtils {
     private static final int GENE_EXTRA_REGION = 5000;
 
     private VariantDBAdaptor adaptor;
+    private final GeneIndex geneIndex;
 
     /**
      * Check if the object query contains the value param, is not null and, if is an string or a list, is not empty.
@@ -156,7 +160,17 @@ public class VariantDBAdaptorUtils {
     }
 
     public VariantDBAdaptorUtils(VariantDBAdaptor variantDBAdaptor) {
+        this(variantDBAdaptor, null);
+    }
+
+    /**
+     * @param variantDBAdaptor  VariantDBAdaptor
+     * @param options           Storage engine options. Uses {@link VariantStorageEngine.Options#GENE_INDEX_FILE}
+     */
+    public VariantDBAdaptorUtils(VariantDBAdaptor variantDBAdaptor, ObjectMap options) {
         adaptor = variantDBAdaptor;
+        String geneIndexFile = options == null ? null : options.getString(VariantStorageEngine.Options.GENE_INDEX_FILE.key());
+        geneIndex = StringUtils.isEmpty(geneIndexFile) ? null : GeneIndex.load(Paths.get(geneIndexFile));
     }
 
     public StudyConfigurationManager getStudyConfigurationManager() {
@@ -455,6 +469,13 @@ public class VariantDBAdaptorUtils {
     }
 
     public Region getGeneRegion(String geneStr) {
+        if (geneIndex != null) {
+            Region region = geneIndex.getRegion(geneStr);
+            if (region != null) {
+                return new Region(region.getChromosome(), Math.max(0, region.getStart() - GENE_EXTRA_REGION),
+                        region.getEnd() + GENE_EXTRA_REGION);
+            }
+        }
         QueryOptions params = new QueryOptions(QueryOptions.INCLUDE, "name,chromosome,start,end");
         try {
             Gene gene = adaptor.getCellBaseClient().getGeneClient().get(Collections.singletonList(geneStr), params).firstResult();
@@ -472,9 +493,21 @@ public class VariantDBAdaptorUtils {
 
     public Set<String> getGenesByGo(List<String> goValues) {
         Set<String> genes = new HashSet<>();
+        List<String> missingGoValues = new ArrayList<>(goValues.size());
+        for (String goValue : goValues) {
+            Set<String> indexedGenes = geneIndex == null ? null : geneIndex.getGenesByGo(goValue);
+            if (indexedGenes == null) {
+                missingGoValues.add(goValue);
+            } else {
+                genes.addAll(indexedGenes);
+            }
+        }
+        if (missingGoValues.isEmpty()) {
+            return genes;
+        }
         QueryOptions params = new QueryOptions(QueryOptions.INCLUDE, "name,chromosome,start,end");
         try {
-            List<QueryResult<Gene>> responses = adaptor.getCellBaseClient().getGeneClient().get(goValues, params)
+            List<QueryResult<Gene>> responses = adaptor.getCellBaseClient().getGeneClient().get(missingGoValues, params)
                     .getResponse();
             for (QueryResult<Gene> response : responses) {
                 for (Gene gene : response.getResult()) {
@@ -496,6 +529,11 @@ public class VariantDBAdaptorUtils {
             try {
                 String[] split = expressionValue.split(":");
                 expressionValue = split[0];
+                Set<String> indexedGenes = geneIndex == null ? null : geneIndex.getGenesByTissue(expressionValue);
+                if (indexedGenes != null) {
+                    genes.addAll(indexedGenes);
+                    continue;
+                }
                 // TODO: Add expression value {UP, DOWN}. See https://github.com/opencb/cellbase/issues/245
                 Query cellbaseQuery = new Query(GeneDBAdaptor.QueryParams.ANNOTATION_EXPRESSION_TISSUE.key(), expressionValue);
                 List<QueryResult<Gene>> responses = adaptor.getCellBaseClient().getGeneClient().search(cellbaseQuery, params)
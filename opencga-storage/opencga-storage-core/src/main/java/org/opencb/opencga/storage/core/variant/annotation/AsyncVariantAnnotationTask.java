@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.commons.run.ParallelTaskRunner;
+import org.opencb.opencga.storage.core.variant.annotation.annotators.VariantAnnotator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Annotation task keeping several annotation requests in flight for each worker.
+ *
+ * Each batch read by the worker is split in requests. Up to {@link #maxInFlight} requests are sent concurrently to the
+ * annotator, and the annotations are returned in the same order as the input variants.
+ * The size of the requests adapts to the observed latency: it grows while the requests are faster than the target
+ * latency, and is halved when they are slower. Failed requests are retried with an exponential backoff with jitter.
+ *
+ * Created on 18/10/26.
+ */
+public class AsyncVariantAnnotationTask
+        implements ParallelTaskRunner.TaskWithException<Variant, VariantAnnotation, VariantAnnotatorException> {
+
+    public static final int MIN_REQUEST_SIZE = 10;
+
+    private final VariantAnnotator variantAnnotator;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final int maxRequestSize;
+    private final long targetLatency;
+    private final int maxRetries;
+    private final long retryDelay;
+    private final Semaphore inFlight;
+    private final AtomicInteger requestSize;
+
+    protected static Logger logger = LoggerFactory.getLogger(AsyncVariantAnnotationTask.class);
+
+    /**
+     * @param variantAnnotator  Annotator to use
+     * @param executor          Executor sending the requests. May be shared by several tasks
+     * @param maxInFlight       Max number of concurrent requests of this task
+     * @param requestSize       Initial number of variants per request. Will never exceed twice this value
+     * @param targetLatency     Target latency for each request, in milliseconds
+     * @param maxRetries        Max number of retries for each request
+     * @param retryDelay        Base delay between retries, in milliseconds
+     */
+    public AsyncVariantAnnotationTask(VariantAnnotator variantAnnotator, ExecutorService executor, int maxInFlight, int requestSize,
+                                      long targetLatency, int maxRetries, long retryDelay) {
+        this.variantAnnotator = variantAnnotator;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.maxRequestSize = Math.max(MIN_REQUEST_SIZE, requestSize * 2);
+        this.targetLatency = targetLatency;
+        this.maxRetries = maxRetries;
+        this.retryDelay = retryDelay;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.requestSize = new AtomicInteger(Math.max(MIN_REQUEST_SIZE, requestSize));
+    }
+
+    @Override
+    public List<VariantAnnotation> apply(List<Variant> variants) throws VariantAnnotatorException {
+        List<Future<List<VariantAnnotation>>> futures = new ArrayList<>();
+        try {
+            int offset = 0;
+            while (offset < variants.size()) {
+                inFlight.acquire();
+                int size = Math.min(requestSize.get(), variants.size() - offset);
+                List<Variant> request = variants.subList(offset, offset + size);
+                offset += size;
+                try {
+                    futures.add(executor.submit(() -> {
+                        try {
+                            return annotate(request);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw new VariantAnnotatorException("Error submitting annotation request", e);
+                }
+            }
+
+            // Hand off the annotations in the same order as the variants
+            List<VariantAnnotation> annotations = new ArrayList<>(variants.size());
+            for (Future<List<VariantAnnotation>> future : futures) {
+                annotations.addAll(future.get());
+            }
+            return annotations;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VariantAnnotatorException("Interrupted while annotating variants", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof VariantAnnotatorException) {
+                throw (VariantAnnotatorException) e.getCause();
+            }
+            throw new VariantAnnotatorException("Error annotating variants", e.getCause());
+        } finally {
+            for (Future<List<VariantAnnotation>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private List<VariantAnnotation> annotate(List<Variant> variants) throws VariantAnnotatorException, InterruptedException {
+        for (int retry = 0;; retry++) {
+            long start = System.currentTimeMillis();
+            try {
+                List<VariantAnnotation> annotations = variantAnnotator.annotate(variants);
+                adjustRequestSize(variants.size(), System.currentTimeMillis() - start);
+                return annotations;
+            } catch (VariantAnnotatorException | RuntimeException e) {
+                if (retry >= maxRetries) {
+                    throw e;
+                }
+                long delay = (long) (retryDelay * (1L << Math.min(retry, 16)) * (0.5 + ThreadLocalRandom.current().nextDouble()));
+                logger.warn("Error annotating batch of {} variants. Retry {}/{} in {}ms : {}", variants.size(), retry + 1, maxRetries,
+                        delay, e.getMessage());
+                // Slow responses are the most common cause of errors
+                adjustRequestSize(variants.size(), Long.MAX_VALUE);
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    private void adjustRequestSize(int size, long latency) {
+        requestSize.updateAndGet(current -> {
+            if (latency > targetLatency) {
+                return Math.max(MIN_REQUEST_SIZE, Math.min(current, size) / 2);
+            } else if (size >= current) {
+                return Math.min(maxRequestSize, current + Math.max(1, current / 10));
+            } else {
+                return current;
+            }
+        });
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getRequestSize() {
+        return requestSize.get();
+    }
+}
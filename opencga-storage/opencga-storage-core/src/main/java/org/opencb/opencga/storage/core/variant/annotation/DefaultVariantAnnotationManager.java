@@ -39,7 +39,10 @@ import org.opencb.opencga.core.common.UriUtils;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.io.avro.AvroDataReader;
 import org.opencb.opencga.storage.core.io.avro.AvroDataWriter;
+import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.annotation.annotators.AbstractCellBaseVariantAnnotator;
+import org.opencb.opencga.storage.core.variant.annotation.annotators.VariantAnnotationCache;
 import org.opencb.opencga.storage.core.variant.annotation.annotators.VariantAnnotator;
 import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
 import org.opencb.opencga.storage.core.variant.io.db.VariantAnnotationDBWriter;
@@ -58,6 +61,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -75,6 +80,17 @@ public class DefaultVariantAnnotationManager implements VariantAnnotationManager
     public static final String BATCH_SIZE = "batchSize";
     public static final String NUM_WRITERS = "numWriters";
     public static final String NUM_THREADS = "numThreads";
+    /** Keep several annotation requests in flight for each thread. See {@link AsyncVariantAnnotationTask}. */
+    public static final String ASYNC = "annotation.async";
+    public static final boolean DEFAULT_ASYNC = false;
+    public static final String ASYNC_IN_FLIGHT = "annotation.async.inFlight";
+    public static final int DEFAULT_ASYNC_IN_FLIGHT = 8;
+    public static final String ASYNC_TARGET_LATENCY = "annotation.async.targetLatency";
+    public static final long DEFAULT_ASYNC_TARGET_LATENCY = 5000;
+    public static final String ASYNC_MAX_RETRIES = "annotation.async.maxRetries";
+    public static final int DEFAULT_ASYNC_MAX_RETRIES = 3;
+    public static final String ASYNC_RETRY_DELAY = "annotation.async.retryDelay";
+    public static final long DEFAULT_ASYNC_RETRY_DELAY = 1000;
 
     private VariantDBAdaptor dbAdaptor;
     private VariantAnnotator variantAnnotator;
@@ -109,6 +125,11 @@ public class DefaultVariantAnnotationManager implements VariantAnnotationManager
                     options.getString(FILE_NAME, "annotation_" + TimeUtils.getTime()),
                     query, options);
             logger.info("Finished annotation creation {}ms, generated file {}", System.currentTimeMillis() - start, annotationFile);
+            if (variantAnnotator instanceof AbstractCellBaseVariantAnnotator
+                    && ((AbstractCellBaseVariantAnnotator) variantAnnotator).getCache() != null) {
+                VariantAnnotationCache cache = ((AbstractCellBaseVariantAnnotator) variantAnnotator).getCache();
+                logger.info("Annotation cache {} : {} hits, {} misses", cache.getDir(), cache.getHits(), cache.getMisses());
+            }
         } else {
             try {
                 annotationFile = UriUtils.createUri(annotationFileStr);
@@ -156,15 +177,21 @@ public class DefaultVariantAnnotationManager implements VariantAnnotationManager
 
         int batchSize = 200;
         int numThreads = 8;
+        boolean async = DEFAULT_ASYNC;
         if (options != null) { //Parse query options
             batchSize = options.getInt(BATCH_SIZE, batchSize);
             numThreads = options.getInt(NUM_THREADS, numThreads);
+            async = options.getBoolean(ASYNC, async);
         }
 
         try {
             DataReader<Variant> variantDataReader = new VariantDBReader(dbAdaptor, query, iteratorQueryOptions);
 
             ProgressLogger progressLogger = new ProgressLogger("Annotated variants:", () -> dbAdaptor.count(query).first(), 200);
+            if (async) {
+                return createAnnotationAsync(variantDataReader, variantAnnotationDataWriter(path, gzip, avro), progressLogger,
+                        batchSize, numThreads, options, fileUri);
+            }
             ParallelTaskRunner.TaskWithException<Variant, VariantAnnotation, VariantAnnotatorException> annotationTask = variantList -> {
                 List<VariantAnnotation> variantAnnotationList;
                 long start = System.currentTimeMillis();
@@ -178,12 +205,7 @@ public class DefaultVariantAnnotationManager implements VariantAnnotationManager
                 return variantAnnotationList;
             };
 
-            final DataWriter<VariantAnnotation> variantAnnotationDataWriter;
-            if (avro) {
-                variantAnnotationDataWriter = new AvroDataWriter<>(path, gzip, VariantAnnotation.getClassSchema());
-            } else {
-                variantAnnotationDataWriter = new VariantAnnotationJsonDataWriter(path, gzip);
-            }
+            final DataWriter<VariantAnnotation> variantAnnotationDataWriter = variantAnnotationDataWriter(path, gzip, avro);
 
             ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
                     .setNumTasks(numThreads)
@@ -200,6 +222,54 @@ public class DefaultVariantAnnotationManager implements VariantAnnotationManager
         return fileUri;
     }
 
+    private URI createAnnotationAsync(DataReader<Variant> variantDataReader, DataWriter<VariantAnnotation> variantAnnotationDataWriter,
+                                      ProgressLogger progressLogger, int batchSize, int numThreads, QueryOptions options, URI fileUri)
+            throws ExecutionException {
+        int maxInFlight = options.getInt(ASYNC_IN_FLIGHT, DEFAULT_ASYNC_IN_FLIGHT);
+        long targetLatency = options.getLong(ASYNC_TARGET_LATENCY, DEFAULT_ASYNC_TARGET_LATENCY);
+        int maxRetries = options.getInt(ASYNC_MAX_RETRIES, DEFAULT_ASYNC_MAX_RETRIES);
+        long retryDelay = options.getLong(ASYNC_RETRY_DELAY, DEFAULT_ASYNC_RETRY_DELAY);
+        logger.info("Annotating with {} threads and up to {} requests in flight per thread", numThreads, maxInFlight);
+
+        // Threads of this executor only wait for the annotator responses
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads * maxInFlight, r -> {
+            Thread thread = new Thread(r, "annotation-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
+                    .setNumTasks(numThreads)
+                    // Each read batch is split in requests sent concurrently
+                    .setBatchSize(batchSize * maxInFlight)
+                    .setAbortOnFail(true)
+                    .setSorted(true).build();
+            ParallelTaskRunner<Variant, VariantAnnotation> parallelTaskRunner = new ParallelTaskRunner<>(variantDataReader, () -> {
+                AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(variantAnnotator, executor, maxInFlight, batchSize,
+                        targetLatency, maxRetries, retryDelay);
+                return (ParallelTaskRunner.TaskWithException<Variant, VariantAnnotation, VariantAnnotatorException>) variantList -> {
+                    List<VariantAnnotation> variantAnnotationList = task.apply(variantList);
+                    progressLogger.increment(variantList.size(),
+                            () -> ", up to position " + variantList.get(variantList.size() - 1).toString()
+                                    + ", request size " + task.getRequestSize());
+                    return variantAnnotationList;
+                };
+            }, variantAnnotationDataWriter, config);
+            parallelTaskRunner.run();
+        } finally {
+            executor.shutdownNow();
+        }
+        return fileUri;
+    }
+
+    private static DataWriter<VariantAnnotation> variantAnnotationDataWriter(Path path, boolean gzip, boolean avro) {
+        if (avro) {
+            return new AvroDataWriter<>(path, gzip, VariantAnnotation.getClassSchema());
+        } else {
+            return new VariantAnnotationJsonDataWriter(path, gzip);
+        }
+    }
+
 
     public void loadAnnotation(URI uri, QueryOptions options) throws IOException, StorageEngineException {
         Path path = Paths.get(uri);
@@ -209,6 +279,22 @@ public class DefaultVariantAnnotationManager implements VariantAnnotationManager
         } else {
             loadCustomAnnotation(uri, options);
         }
+        incrementDataGeneration();
+    }
+
+    /**
+     * The annotation is shared by all the studies. Increment the data generation of all of them to invalidate the cached queries.
+     *
+     * @throws StorageEngineException if the study can not be locked
+     */
+    protected void incrementDataGeneration() throws StorageEngineException {
+        StudyConfigurationManager studyConfigurationManager = dbAdaptor.getStudyConfigurationManager();
+        for (Integer studyId : studyConfigurationManager.getStudyIds(QueryOptions.empty())) {
+            studyConfigurationManager.lockAndUpdate(studyId, studyConfiguration -> {
+                studyConfiguration.incrementDataGeneration();
+                return studyConfiguration;
+            });
+        }
     }
 
     /**
@@ -22,6 +22,12 @@ public interface VariantAnnotationManager {
     String CREATE = "annotation.create";
     String LOAD_FILE = "annotation.load.file";
     String CUSTOM_ANNOTATION_KEY = "custom_annotation_key";
+    // Persistent cache of annotations. See VariantAnnotationCache
+    String ANNOTATION_CACHE = "annotation.cache";
+    // Required with ANNOTATION_CACHE. Should not be a temporary directory, as it would be wiped on reboot
+    String ANNOTATION_CACHE_DIR = "annotation.cache.dir";
+    // Max number of annotations indexed in memory. See VariantAnnotationCache.DEFAULT_MAX_SIZE
+    String ANNOTATION_CACHE_MAX_SIZE = "annotation.cache.maxSize";
 
     void annotate(Query query, QueryOptions options) throws VariantAnnotatorException, IOException, StorageEngineException;
 
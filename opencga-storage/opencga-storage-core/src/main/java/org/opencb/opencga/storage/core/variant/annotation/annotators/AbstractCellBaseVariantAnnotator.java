@@ -30,8 +30,10 @@ import org.opencb.opencga.storage.core.variant.io.json.mixin.VariantAnnotationMi
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
 
 /**
  * Created by jacobo on 9/01/15.
@@ -46,6 +48,7 @@ public abstract class AbstractCellBaseVariantAnnotator extends VariantAnnotator
     protected final String species;
     protected final String assembly;
     protected final String cellbaseVersion;
+    private final VariantAnnotationCache cache;
 
     public AbstractCellBaseVariantAnnotator(StorageConfiguration storageConfiguration, ObjectMap options) throws VariantAnnotatorException {
         super(storageConfiguration, options);
@@ -66,6 +69,20 @@ public abstract class AbstractCellBaseVariantAnnotator extends VariantAnnotator
         checkNotNull(species, "species");
         checkNotNull(assembly, "assembly");
 
+        if (options.getBoolean(VariantAnnotationManager.ANNOTATION_CACHE, false)) {
+            String cacheDirStr = options.getString(VariantAnnotationManager.ANNOTATION_CACHE_DIR);
+            checkNotNull(cacheDirStr, VariantAnnotationManager.ANNOTATION_CACHE_DIR);
+            Path cacheDir = Paths.get(cacheDirStr);
+            int cacheMaxSize = options.getInt(VariantAnnotationManager.ANNOTATION_CACHE_MAX_SIZE, VariantAnnotationCache.DEFAULT_MAX_SIZE);
+            try {
+                cache = new VariantAnnotationCache(cacheDir, getClass().getSimpleName() + '_' + cellbaseVersion + '_' + species + '_'
+                        + assembly, cacheMaxSize);
+            } catch (IOException e) {
+                throw new VariantAnnotatorException("Unable to open annotation cache at " + cacheDir, e);
+            }
+        } else {
+            cache = null;
+        }
     }
 
     protected static void checkNotNull(String value, String name) throws VariantAnnotatorException {
@@ -86,7 +103,66 @@ public abstract class AbstractCellBaseVariantAnnotator extends VariantAnnotator
     @Override
     public final List<VariantAnnotation> annotate(List<Variant> variants) throws VariantAnnotatorException {
         List<Variant> nonStructuralVariations = filterStructuralVariants(variants);
-        return annotateFiltered(nonStructuralVariations);
+        if (cache == null) {
+            return annotateFiltered(nonStructuralVariations);
+        }
+        try {
+            List<Variant> misses = new ArrayList<>();
+            List<VariantAnnotation> annotations = cache.getAll(nonStructuralVariations, misses);
+            logger.debug("Annotation cache hits: {}, misses: {}", annotations.size(), misses.size());
+            if (misses.isEmpty()) {
+                return annotations;
+            }
+            List<VariantAnnotation> newAnnotations = annotateFiltered(misses);
+            cache.putAll(newAnnotations);
+            if (annotations.isEmpty()) {
+                return newAnnotations;
+            }
+            annotations.addAll(newAnnotations);
+            return sortAsInput(nonStructuralVariations, annotations);
+        } catch (IOException e) {
+            throw new VariantAnnotatorException("Error accessing annotation cache " + cache.getDir(), e);
+        }
+    }
+
+    /**
+     * Sort the cached and the new annotations in the order of the input variants, as if all of them were annotated at once.
+     * Annotations not matching any input variant are kept at the end.
+     *
+     * @param variants      Input variants
+     * @param annotations   Cached and new annotations
+     * @return              Sorted annotations
+     */
+    private static List<VariantAnnotation> sortAsInput(List<Variant> variants, List<VariantAnnotation> annotations) {
+        Map<String, VariantAnnotation> annotationsByKey = new LinkedHashMap<>(annotations.size());
+        for (VariantAnnotation annotation : annotations) {
+            annotationsByKey.putIfAbsent(VariantAnnotationCache.key(annotation.getChromosome(), annotation.getStart(),
+                    annotation.getReference(), annotation.getAlternate()), annotation);
+        }
+        List<VariantAnnotation> sorted = new ArrayList<>(annotations.size());
+        Set<String> matched = new HashSet<>();
+        for (Variant variant : variants) {
+            String key = VariantAnnotationCache.key(variant.getChromosome(), variant.getStart(), variant.getReference(),
+                    variant.getAlternate());
+            VariantAnnotation annotation = annotationsByKey.get(key);
+            if (annotation != null) {
+                sorted.add(annotation);
+                matched.add(key);
+            }
+        }
+        for (Map.Entry<String, VariantAnnotation> entry : annotationsByKey.entrySet()) {
+            if (!matched.contains(entry.getKey())) {
+                sorted.add(entry.getValue());
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * @return Persistent annotation cache, or null if disabled
+     */
+    public VariantAnnotationCache getCache() {
+        return cache;
     }
 
     protected abstract List<VariantAnnotation> annotateFiltered(List<Variant> variants) throws VariantAnnotatorException;
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation.annotators;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.opencga.storage.core.variant.io.json.mixin.VariantAnnotationMixin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of variant annotations, stored in append only segment files.
+ *
+ * Each annotator version uses its own directory. The annotations are indexed by the normalized variant
+ * "chr:start:ref:alt", and the index is rebuilt from the segment files when the cache is opened. Only the keys
+ * are kept in memory, taking about 150 bytes per annotation. The index is bounded by {@code maxSize}
+ * (see {@link #DEFAULT_MAX_SIZE}). Once full, new annotations are not cached, and annotations beyond the limit
+ * are not indexed when opening the cache.
+ *
+ * The cache may be shared by several processes. Writes and the recovery of incomplete records are done holding an
+ * exclusive {@link FileLock} on the lock file of the directory, so records are never interleaved or truncated while
+ * being written. Each process only sees the annotations written by others when opening the cache.
+ *
+ * Segment record format: key length (int) | key (UTF-8) | annotation length (int) | annotation (json).
+ *
+ * Created on 18/10/26.
+ */
+public class VariantAnnotationCache {
+
+    public static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+    /** Default max number of indexed annotations. About 300MB of heap. */
+    public static final int DEFAULT_MAX_SIZE = 2000000;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final String LOCK_FILE = ".lock";
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    // A JVM can not hold two locks on the same file, so writers of the same directory are serialized first in the JVM
+    private static final Map<Path, Object> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path dir;
+    private final int maxSize;
+    private final Object jvmLock;
+    private final ObjectMapper objectMapper;
+    // Position of each annotation: segment << OFFSET_BITS | offset
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private final List<Path> segments = new CopyOnWriteArrayList<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private boolean full;
+
+    protected static Logger logger = LoggerFactory.getLogger(VariantAnnotationCache.class);
+
+    /**
+     * @param baseDir   Base directory of the cache
+     * @param version   Annotator version, e.g. cellbase version, species and assembly
+     * @throws IOException if the cache can not be opened
+     */
+    public VariantAnnotationCache(Path baseDir, String version) throws IOException {
+        this(baseDir, version, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param baseDir   Base directory of the cache
+     * @param version   Annotator version, e.g. cellbase version, species and assembly
+     * @param maxSize   Max number of annotations to index
+     * @throws IOException if the cache can not be opened
+     */
+    public VariantAnnotationCache(Path baseDir, String version, int maxSize) throws IOException {
+        dir = baseDir.resolve(version.replaceAll("[^a-zA-Z0-9._-]", "_"));
+        Files.createDirectories(dir);
+        this.maxSize = maxSize;
+        jvmLock = JVM_LOCKS.computeIfAbsent(dir.toAbsolutePath().normalize(), path -> new Object());
+        objectMapper = new ObjectMapper();
+        objectMapper.addMixIn(VariantAnnotation.class, VariantAnnotationMixin.class);
+        objectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        open();
+    }
+
+    private void open() throws IOException {
+        long start = System.currentTimeMillis();
+        synchronized (jvmLock) {
+            try (FileChannel lockChannel = lockChannel(); FileLock lock = lockChannel.lock()) {
+                for (int segment = 0;; segment++) {
+                    Path path = segmentPath(segment);
+                    if (!Files.exists(path)) {
+                        break;
+                    }
+                    segments.add(path);
+                    long validLength = loadIndex(segment, path);
+                    if (validLength < Files.size(path)) {
+                        // Incomplete record from an interrupted run. No other process is writing while holding the lock
+                        logger.warn("Truncating annotation cache segment {} to {} bytes", path, validLength);
+                        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                            channel.truncate(validLength);
+                        }
+                    }
+                }
+            }
+        }
+        if (full) {
+            logger.warn("Annotation cache at {} is full. Only {} annotations are indexed", dir, maxSize);
+        }
+        logger.info("Annotation cache at {} with {} annotations in {} segments. Loaded in {}ms", dir, index.size(), segments.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    private long loadIndex(int segment, Path path) throws IOException {
+        long position = 0;
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                String key;
+                int keyLength;
+                int length;
+                try {
+                    keyLength = is.readInt();
+                    if (keyLength < 0) {
+                        return position;
+                    }
+                    byte[] keyBytes = new byte[keyLength];
+                    is.readFully(keyBytes);
+                    key = new String(keyBytes, StandardCharsets.UTF_8);
+                    length = is.readInt();
+                } catch (EOFException e) {
+                    return position;
+                }
+                long recordStart = position;
+                if (length < 0 || is.skip(length) < length) {
+                    return recordStart;
+                }
+                position += Integer.BYTES + keyLength + Integer.BYTES + length;
+                if (index.size() < maxSize) {
+                    index.put(key, ((long) segment) << OFFSET_BITS | recordStart);
+                } else {
+                    full = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Look up the annotations of a list of variants.
+     *
+     * @param variants  Variants to look up
+     * @param misses    Variants not found in the cache
+     * @return          Cached annotations
+     * @throws IOException if the cache can not be read
+     */
+    public List<VariantAnnotation> getAll(List<Variant> variants, List<Variant> misses) throws IOException {
+        List<VariantAnnotation> annotations = new ArrayList<>(variants.size());
+        Map<Integer, FileChannel> channels = new HashMap<>();
+        try {
+            for (Variant variant : variants) {
+                Long position = index.get(key(variant.getChromosome(), variant.getStart(), variant.getReference(), variant.getAlternate()));
+                if (position == null) {
+                    misses.add(variant);
+                } else {
+                    int segment = (int) (position >>> OFFSET_BITS);
+                    FileChannel channel = channels.get(segment);
+                    if (channel == null) {
+                        channel = FileChannel.open(segments.get(segment), StandardOpenOption.READ);
+                        channels.put(segment, channel);
+                    }
+                    annotations.add(read(channel, position & OFFSET_MASK));
+                }
+            }
+        } finally {
+            for (FileChannel channel : channels.values()) {
+                channel.close();
+            }
+        }
+        hits.addAndGet(annotations.size());
+        this.misses.addAndGet(variants.size() - annotations.size());
+        return annotations;
+    }
+
+    private VariantAnnotation read(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, header, offset);
+        int keyLength = header.getInt(0);
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, lengthBuffer, offset + Integer.BYTES + keyLength);
+        ByteBuffer value = ByteBuffer.allocate(lengthBuffer.getInt(0));
+        readFully(channel, value, offset + Integer.BYTES + keyLength + Integer.BYTES);
+        return objectMapper.readValue(value.array(), VariantAnnotation.class);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of annotation cache segment");
+            }
+        }
+    }
+
+    /**
+     * Add new annotations to the cache. Annotations already in the cache are skipped. Once the cache is full, no more
+     * annotations are added.
+     *
+     * @param annotations   Annotations to add
+     * @throws IOException if the cache can not be written
+     */
+    public void putAll(List<VariantAnnotation> annotations) throws IOException {
+        if (annotations.isEmpty()) {
+            return;
+        }
+        synchronized (jvmLock) {
+            if (full) {
+                return;
+            }
+            try (FileChannel lockChannel = lockChannel(); FileLock lock = lockChannel.lock()) {
+                write(annotations);
+            }
+        }
+    }
+
+    private void write(List<VariantAnnotation> annotations) throws IOException {
+        if (segments.isEmpty() || Files.size(segments.get(segments.size() - 1)) > SEGMENT_SIZE) {
+            segments.add(segmentPath(segments.size()));
+        }
+        int segment = segments.size() - 1;
+        Path path = segments.get(segment);
+        // Other processes may have written to the segment since it was opened
+        long position = Files.exists(path) ? Files.size(path) : 0;
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream os = new DataOutputStream(buffer);
+        Map<String, Long> newPositions = new HashMap<>();
+        for (VariantAnnotation annotation : annotations) {
+            if (index.size() + newPositions.size() >= maxSize) {
+                full = true;
+                logger.warn("Annotation cache at {} is full. New annotations will not be cached", dir);
+                break;
+            }
+            String key = key(annotation.getChromosome(), annotation.getStart(), annotation.getReference(), annotation.getAlternate());
+            if (index.containsKey(key) || newPositions.containsKey(key)) {
+                continue;
+            }
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] value = objectMapper.writeValueAsBytes(annotation);
+            newPositions.put(key, ((long) segment) << OFFSET_BITS | (position + os.size()));
+            os.writeInt(keyBytes.length);
+            os.write(keyBytes);
+            os.writeInt(value.length);
+            os.write(value);
+        }
+        os.flush();
+        try (OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            buffer.writeTo(out);
+        }
+        // Publish the positions once the annotations are written
+        index.putAll(newPositions);
+    }
+
+    private FileChannel lockChannel() throws IOException {
+        return FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int segment) {
+        return dir.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Normalized variant key. Empty alleles may be represented as "" or "-".
+     *
+     * @param chromosome    Chromosome
+     * @param start         Start
+     * @param reference     Reference allele
+     * @param alternate     Alternate allele
+     * @return              Key
+     */
+    static String key(String chromosome, Integer start, String reference, String alternate) {
+        return chromosome + ':' + start + ':' + normalizeAllele(reference) + ':' + normalizeAllele(alternate);
+    }
+
+    private static String normalizeAllele(String allele) {
+        return allele == null || allele.equals("-") ? "" : allele;
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.core.variant.io;
+
+import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Reads the parts of a sharded transform, listed in a {@link VariantTransformManifest}, one after the other.
+ *
+ * Only one part is opened at a time.
+ *
+ * Created on 18/10/26.
+ */
+public class MultiPartVariantReader extends AbstractVariantReader {
+
+    private final List<Path> parts;
+    private final Function<Path, VariantReader> readerFactory;
+    private int currentPart = 0;
+    private VariantReader currentReader;
+
+    /**
+     * @param parts         Transformed variant files, in order
+     * @param metadataFile  Metadata file shared by all the parts
+     * @param source        VariantSource to fill
+     * @param readerFactory Creates the reader for each part
+     */
+    public MultiPartVariantReader(List<Path> parts, Path metadataFile, VariantSource source,
+                                  Function<Path, VariantReader> readerFactory) {
+        super(metadataFile, source);
+        this.parts = parts;
+        this.readerFactory = readerFactory;
+    }
+
+    @Override
+    public boolean open() {
+        currentPart = 0;
+        currentReader = null;
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        closeCurrentReader();
+        return true;
+    }
+
+    @Override
+    public boolean post() {
+        return true;
+    }
+
+    @Override
+    public List<Variant> read() {
+        return read(1);
+    }
+
+    @Override
+    public List<Variant> read(int batchSize) {
+        while (currentPart < parts.size()) {
+            if (currentReader == null) {
+                currentReader = readerFactory.apply(parts.get(currentPart));
+                currentReader.open();
+                currentReader.pre();
+            }
+            List<Variant> batch = currentReader.read(batchSize);
+            if (!batch.isEmpty()) {
+                return batch;
+            }
+            closeCurrentReader();
+            currentPart++;
+        }
+        return Collections.emptyList();
+    }
+
+    private void closeCurrentReader() {
+        if (currentReader != null) {
+            currentReader.post();
+            currentReader.close();
+            currentReader = null;
+        }
+    }
+}
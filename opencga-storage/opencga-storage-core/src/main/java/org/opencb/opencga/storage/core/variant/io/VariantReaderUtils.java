@@ -32,6 +32,7 @@ import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 /**
@@ -46,9 +47,11 @@ public class VariantReaderUtils {
     public static final String METADATA_FILE = "file";
     public static final String METADATA_FORMAT = "json";
     public static final String METADATA_FILE_FORMAT_GZ = METADATA_FILE + "." + METADATA_FORMAT + ".gz";
+    public static final String MANIFEST_EXTENSION = ".manifest";
 
     private static final Pattern VALID_META = Pattern.compile("^.+\\." + METADATA_FILE + "\\." + METADATA_FORMAT + "\\.gz$");
-    private static final Pattern VALID_VARIANTS = Pattern.compile("^.+\\." + VARIANTS_FILE + "\\.(avro|json|proto)(\\.(gz|snappy))?$");
+    private static final Pattern VALID_VARIANTS = Pattern.compile("^.+\\." + VARIANTS_FILE + "\\.(avro|json|proto)(\\.(gz|snappy))?"
+            + "(" + Pattern.quote(MANIFEST_EXTENSION) + ")?$");
 
     /**
      * Get a variant data reader depending on the type of the input file.
@@ -60,7 +63,9 @@ public class VariantReaderUtils {
      */
     public static VariantReader getVariantReader(Path input, VariantSource source) throws StorageEngineException {
         String fileName = input.getFileName().toString();
-        if (isJson(fileName)) {
+        if (isManifest(fileName)) {
+            return getMultiPartVariantReader(input, source);
+        } else if (isJson(fileName)) {
             return getVariantJsonReader(input, source);
         } else if (isAvro(fileName)) {
             return getVariantAvroReader(input, source);
@@ -97,6 +102,26 @@ public class VariantReaderUtils {
         return variantAvroReader;
     }
 
+    protected static MultiPartVariantReader getMultiPartVariantReader(Path manifestPath, VariantSource source)
+            throws StorageEngineException {
+        VariantTransformManifest manifest;
+        try {
+            manifest = VariantTransformManifest.read(manifestPath);
+        } catch (IOException e) {
+            throw new StorageEngineException("Unable to read manifest " + manifestPath, e);
+        }
+        Path metadataFile = manifestPath.resolveSibling(manifest.getMetadataFile()).toAbsolutePath();
+        Function<Path, VariantReader> readerFactory;
+        if (isJson(manifestPath.toString())) {
+            readerFactory = part -> new VariantJsonReader(source, part.toAbsolutePath().toString(), metadataFile.toString());
+        } else if (isAvro(manifestPath.toString())) {
+            readerFactory = part -> new VariantAvroReader(part.toAbsolutePath().toFile(), metadataFile.toFile(), source);
+        } else {
+            throw variantInputNotSupported(manifestPath);
+        }
+        return new MultiPartVariantReader(manifest.getPartPaths(manifestPath), metadataFile, source, readerFactory);
+    }
+
     public static Path getMetaFromTransformedFile(Path variantsFile) {
         return Paths.get(getMetaFromTransformedFile(variantsFile.toString()));
     }
@@ -201,6 +226,9 @@ public class VariantReaderUtils {
     }
 
     public static boolean hasFormat(String fileName, String format) {
+        if (isManifest(fileName)) {
+            fileName = fileName.substring(0, fileName.length() - MANIFEST_EXTENSION.length());
+        }
         if (fileName.endsWith("." + format)) {
             return true;
         } else if (fileName.contains(".")) {
@@ -209,6 +237,14 @@ public class VariantReaderUtils {
         return false;
     }
 
+    /**
+     * @param fileName  File name
+     * @return          If the file is the manifest of a sharded transform. See {@link VariantTransformManifest}
+     */
+    public static boolean isManifest(String fileName) {
+        return fileName.endsWith(MANIFEST_EXTENSION);
+    }
+
     public static void checkTransformedVariants(String file) {
         if (!isTransformedVariants(file)) {
             throw new IllegalArgumentException("Not a valid transformed variants file : " + file);
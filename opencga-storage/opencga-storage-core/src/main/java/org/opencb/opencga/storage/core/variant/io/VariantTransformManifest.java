@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencb.opencga.storage.core.variant.io;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes the output of a sharded transform: the transformed variants are split in several parts, one per genomic region,
+ * listed in the genomic order of the original file. All the parts share the same metadata file.
+ *
+ * Created on 18/10/26.
+ */
+public class VariantTransformManifest {
+
+    private String format;
+    private String metadataFile;
+    private List<Part> parts = new ArrayList<>();
+
+    public VariantTransformManifest() {
+    }
+
+    public VariantTransformManifest(String format, String metadataFile) {
+        this.format = format;
+        this.metadataFile = metadataFile;
+    }
+
+    public static VariantTransformManifest read(Path manifest) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(manifest)) {
+            return read(inputStream);
+        }
+    }
+
+    public static VariantTransformManifest read(InputStream inputStream) throws IOException {
+        return new ObjectMapper().readValue(inputStream, VariantTransformManifest.class);
+    }
+
+    public void write(Path manifest) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(manifest)) {
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(outputStream, this);
+        }
+    }
+
+    /**
+     * @param manifest  Path to this manifest
+     * @return          Paths to the parts, resolved against the directory of the manifest
+     */
+    public List<Path> getPartPaths(Path manifest) {
+        List<Path> paths = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            paths.add(manifest.resolveSibling(part.getFile()));
+        }
+        return paths;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public VariantTransformManifest setFormat(String format) {
+        this.format = format;
+        return this;
+    }
+
+    /**
+     * @return Name of the metadata file, relative to the directory of the manifest
+     */
+    public String getMetadataFile() {
+        return metadataFile;
+    }
+
+    public VariantTransformManifest setMetadataFile(String metadataFile) {
+        this.metadataFile = metadataFile;
+        return this;
+    }
+
+    public List<Part> getParts() {
+        return parts;
+    }
+
+    public VariantTransformManifest setParts(List<Part> parts) {
+        this.parts = parts;
+        return this;
+    }
+
+    /**
+     * Transformed variants from one genomic region.
+     */
+    public static class Part {
+        private String region;
+        private String file;
+        private long numLines;
+
+        public Part() {
+        }
+
+        public Part(String region, String file, long numLines) {
+            this.region = region;
+            this.file = file;
+            this.numLines = numLines;
+        }
+
+        /**
+         * @return Region of the original file, as "chr" or "chr:start-end"
+         */
+        public String getRegion() {
+            return region;
+        }
+
+        public Part setRegion(String region) {
+            this.region = region;
+            return this;
+        }
+
+        /**
+         * @return Name of the file, relative to the directory of the manifest
+         */
+        public String getFile() {
+            return file;
+        }
+
+        public Part setFile(String file) {
+            this.file = file;
+            return this;
+        }
+
+        /**
+         * @return Number of lines read from the original file
+         */
+        public long getNumLines() {
+            return numLines;
+        }
+
+        public Part setNumLines(long numLines) {
+            this.numLines = numLines;
+            return this;
+        }
+    }
+}
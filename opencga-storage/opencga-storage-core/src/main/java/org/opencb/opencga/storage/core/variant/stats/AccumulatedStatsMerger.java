@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.avro.generic.GenericRecord;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.stats.VariantGlobalStats;
+import org.opencb.biodata.models.variant.stats.VariantSourceStats;
+import org.opencb.opencga.storage.core.variant.io.json.mixin.GenericRecordAvroJsonMixin;
+import org.opencb.opencga.storage.core.variant.io.json.mixin.VariantSourceJsonMixin;
+
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Merges the partial file and sample stats accumulated by concurrent tasks, so each task can update its own accumulator
+ * without synchronization.
+ *
+ * Stats are merged field by field over their json representation. Only the counters listed in {@link #ADDITIVE_FIELDS}, and
+ * the values of the maps of counters listed in {@link #ADDITIVE_MAP_FIELDS}, are added. The fields describing the input
+ * ({@link #NON_ADDITIVE_FIELDS}) are the same for all the partial stats. The mean quality is the mean of the partial means,
+ * weighted by their number of records. Any other field, like strings, booleans or arrays, can not be merged, and is rejected
+ * unless all the partial stats have the same value.
+ *
+ * Created on 18/10/26.
+ */
+public final class AccumulatedStatsMerger {
+
+    static final Set<String> ADDITIVE_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            // VariantGlobalStats
+            "numRecords", "passCount", "transitionsCount", "transversionsCount", "snpsCount", "indelsCount", "indelCount",
+            "structuralCount", "multiallelicsCount", "biallelicsCount", "accumulatedQuality",
+            // Sample stats
+            "mendelianErrors", "missingGenotypes", "homozygotesNumber")));
+    static final Set<String> ADDITIVE_MAP_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "variantTypeCounts", "chromosomeCounts", "consequenceTypesCount", "genotypesCount")));
+    static final Set<String> NON_ADDITIVE_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("samplesCount", "filesCount")));
+    private static final String MEAN_QUALITY = "meanQuality";
+    private static final String NUM_RECORDS = "numRecords";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .addMixIn(VariantSource.class, VariantSourceJsonMixin.class)
+            .addMixIn(GenericRecord.class, GenericRecordAvroJsonMixin.class);
+
+    private AccumulatedStatsMerger() {
+    }
+
+    /**
+     * @param stats1 Partial global stats. May be null
+     * @param stats2 Partial global stats. May be null
+     * @return       Merged stats
+     */
+    public static VariantGlobalStats merge(VariantGlobalStats stats1, VariantGlobalStats stats2) {
+        return merge(stats1, stats2, VariantGlobalStats.class);
+    }
+
+    /**
+     * @param studyId       Study of the stats
+     * @param partialStats  Partial source stats of each task
+     * @return              Merged stats
+     */
+    public static VariantSourceStats merge(String studyId, Collection<VariantSourceStats> partialStats) {
+        VariantSourceStats merged = null;
+        for (VariantSourceStats stats : partialStats) {
+            merged = merge(merged, stats, VariantSourceStats.class);
+        }
+        return merged == null ? new VariantSourceStats(null, studyId) : merged;
+    }
+
+    /**
+     * Deep copy of a model object.
+     *
+     * @param value Object to copy
+     * @param clazz Class of the object
+     * @param <T>   Type of the object
+     * @return      Copy of the object
+     */
+    public static <T> T copy(T value, Class<T> clazz) {
+        try {
+            return OBJECT_MAPPER.treeToValue(OBJECT_MAPPER.valueToTree(value), clazz);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static <T> T merge(T value1, T value2, Class<T> clazz) {
+        if (value1 == null) {
+            return value2;
+        } else if (value2 == null) {
+            return value1;
+        }
+        JsonNode node1 = OBJECT_MAPPER.valueToTree(value1);
+        JsonNode node2 = OBJECT_MAPPER.valueToTree(value2);
+        try {
+            return OBJECT_MAPPER.treeToValue(mergeNodes(null, node1, node2, false), clazz);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static JsonNode mergeNodes(String field, JsonNode node1, JsonNode node2, boolean counters) {
+        if (node1 == null || node1.isNull()) {
+            return node2;
+        } else if (node2 == null || node2.isNull()) {
+            return node1;
+        } else if (node1.isObject() && node2.isObject()) {
+            ObjectNode merged = ((ObjectNode) node1).deepCopy();
+            Iterator<Map.Entry<String, JsonNode>> fields = node2.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> entry = fields.next();
+                String key = entry.getKey();
+                if (MEAN_QUALITY.equals(key) && !counters) {
+                    merged.put(MEAN_QUALITY, mergeMeanQuality(node1, node2));
+                } else {
+                    merged.set(key, mergeNodes(key, merged.get(key), entry.getValue(), ADDITIVE_MAP_FIELDS.contains(key)));
+                }
+            }
+            return merged;
+        } else if (node1.isNumber() && node2.isNumber()) {
+            if (counters || ADDITIVE_FIELDS.contains(field)) {
+                if (node1.isIntegralNumber() && node2.isIntegralNumber()) {
+                    return OBJECT_MAPPER.getNodeFactory().numberNode(node1.asLong() + node2.asLong());
+                } else {
+                    return OBJECT_MAPPER.getNodeFactory().numberNode(node1.asDouble() + node2.asDouble());
+                }
+            } else if (NON_ADDITIVE_FIELDS.contains(field)) {
+                return node1.asDouble() >= node2.asDouble() ? node1 : node2;
+            } else if (node1.asDouble() == node2.asDouble()) {
+                return node1;
+            } else {
+                throw new IllegalArgumentException("Unable to merge the stats field '" + field + "'. Values " + node1 + " and " + node2);
+            }
+        } else if (node1.equals(node2)) {
+            return node1;
+        } else {
+            throw new IllegalArgumentException("Unable to merge the stats field '" + field + "'. Values " + node1 + " and " + node2);
+        }
+    }
+
+    /**
+     * Mean of the partial mean qualities, weighted by their number of records.
+     *
+     * @param node1 Partial stats
+     * @param node2 Partial stats
+     * @return      Merged mean quality
+     */
+    private static float mergeMeanQuality(JsonNode node1, JsonNode node2) {
+        long numRecords1 = node1.path(NUM_RECORDS).asLong();
+        long numRecords2 = node2.path(NUM_RECORDS).asLong();
+        if (numRecords1 + numRecords2 == 0) {
+            return 0;
+        }
+        double quality1 = node1.path(MEAN_QUALITY).asDouble() * numRecords1;
+        double quality2 = node2.path(MEAN_QUALITY).asDouble() * numRecords2;
+        return (float) ((quality1 + quality2) / (numRecords1 + numRecords2));
+    }
+
+}
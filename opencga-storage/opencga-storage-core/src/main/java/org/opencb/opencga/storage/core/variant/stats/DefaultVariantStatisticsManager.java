@@ -54,6 +54,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -71,6 +73,19 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
     public static final String OUTPUT = "output";
     public static final String STATS_LOAD_PARALLEL = "stats.load.parallel";
     public static final boolean DEFAULT_STATS_LOAD_PARALLEL = true;
+    /** Calculate and load the stats in one pass, without the intermediate stats files. */
+    public static final String STATS_DIRECT = "stats.direct";
+    public static final boolean DEFAULT_STATS_DIRECT = false;
+    /** With {@link #STATS_DIRECT}, write also the stats files as a checkpoint of the loaded stats. */
+    public static final String STATS_DIRECT_CHECKPOINT = "stats.direct.checkpoint";
+    public static final boolean DEFAULT_STATS_DIRECT_CHECKPOINT = false;
+    /**
+     * Calculate the stats from the genotype index of the storage engine, without building the Variant objects.
+     * Only for non aggregated studies, and if supported by the storage engine. See {@link GenotypeIndexStatsCalculator}.
+     * The source stats are not calculated, so the source stats file is not written, and the stored ones are not modified.
+     */
+    public static final String STATS_GENOTYPE_INDEX = "stats.genotype.index";
+    public static final boolean DEFAULT_STATS_GENOTYPE_INDEX = false;
 
     private static final String VARIANT_STATS_SUFFIX = ".variants.stats.json.gz";
     private static final String SOURCE_STATS_SUFFIX = ".source.stats.json.gz";
@@ -91,16 +106,26 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
     @Override
     public void calculateStatistics(String study, List<String> cohorts, QueryOptions options) throws IOException, StorageEngineException {
 
-        URI output;
-        try {
-            output = UriUtils.createUri(options.getString(OUTPUT));
-        } catch (URISyntaxException e) {
-            throw new IllegalArgumentException(e);
+        boolean direct = options.getBoolean(STATS_DIRECT, DEFAULT_STATS_DIRECT);
+        boolean checkpoint = options.getBoolean(STATS_DIRECT_CHECKPOINT, DEFAULT_STATS_DIRECT_CHECKPOINT);
+
+        URI output = null;
+        if (!direct || checkpoint) {
+            try {
+                output = UriUtils.createUri(options.getString(OUTPUT));
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException(e);
+            }
         }
 
-        URI stats = createStats(dbAdaptor, output, study, cohorts, options);
+        if (direct) {
+            StudyConfiguration studyConfiguration = dbAdaptor.getStudyConfigurationManager().getStudyConfiguration(study, options).first();
+            calculateAndLoadStats(dbAdaptor, output, toCohortsMap(cohorts), null, studyConfiguration, options);
+        } else {
+            URI stats = createStats(dbAdaptor, output, study, cohorts, options);
 
-        loadStats(dbAdaptor, stats, study, options);
+            loadStats(dbAdaptor, stats, study, options);
+        }
     }
 
 
@@ -134,12 +159,17 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
 
         StudyConfigurationManager studyConfigurationManager = variantDBAdaptor.getStudyConfigurationManager();
         StudyConfiguration studyConfiguration = studyConfigurationManager.getStudyConfiguration(study, options).first();
+        return createStats(variantDBAdaptor, output, toCohortsMap(cohorts), null, studyConfiguration, options);
+    }
+
+    private static Map<String, Set<String>> toCohortsMap(List<String> cohorts) {
         Map<String, Set<String>> cohortsMap = new HashMap<>(cohorts.size());
         for (String cohort : cohorts) {
             cohortsMap.put(cohort, Collections.emptySet());
         }
-        return createStats(variantDBAdaptor, output, cohortsMap, null, studyConfiguration, options);
+        return cohortsMap;
     }
+
     /**
      * retrieves batches of Variants, delegates to obtain VariantStatsWrappers from those Variants, and writes them to the output URI.
      * <p>
@@ -165,6 +195,34 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
     public URI createStats(VariantDBAdaptor variantDBAdaptor, URI output, Map<String, Set<String>> cohorts,
                            Map<String, Integer> cohortIds, StudyConfiguration studyConfiguration, QueryOptions options)
             throws IOException, StorageEngineException {
+        return calculateStats(variantDBAdaptor, output, cohorts, cohortIds, studyConfiguration, options, false);
+    }
+
+    /**
+     * Calculates the stats and loads them in a single pass. The stats tasks hand the {@link VariantStatsWrapper} batches
+     * straight to a {@link VariantStatsDBWriter}, without serializing them to an intermediate file and parsing them again.
+     * <p>
+     * With {@link #STATS_DIRECT_CHECKPOINT}, the stats files are also written to the output, as done by {@link #createStats}.
+     *
+     * @param variantDBAdaptor   to obtain and update the Variants
+     * @param output             where to write the checkpoint files. May be null if no checkpoint is required
+     * @param cohorts            cohorts (subsets) of the samples. key: cohort name, defaultValue: list of sample names.
+     * @param cohortIds          Cohort ID
+     * @param studyConfiguration Study configuration object
+     * @param options            (mandatory) fileId, (optional) filters to the query, batch size, number of threads to use...
+     * @throws IOException If any error occurs
+     * @throws StorageEngineException If any error occurs
+     */
+    public void calculateAndLoadStats(VariantDBAdaptor variantDBAdaptor, URI output, Map<String, Set<String>> cohorts,
+                                      Map<String, Integer> cohortIds, StudyConfiguration studyConfiguration, QueryOptions options)
+            throws IOException, StorageEngineException {
+        calculateStats(variantDBAdaptor, output, cohorts, cohortIds, studyConfiguration, options, true);
+    }
+
+    private URI calculateStats(VariantDBAdaptor variantDBAdaptor, URI output, Map<String, Set<String>> cohorts,
+                               Map<String, Integer> cohortIds, StudyConfiguration studyConfiguration, QueryOptions options,
+                               boolean direct)
+            throws IOException, StorageEngineException {
 //        String fileId;
         if (options == null) {
             options = new QueryOptions();
@@ -175,6 +233,7 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
         int numTasks = options.getInt(Options.LOAD_THREADS.key(), 6);
         boolean overwrite = options.getBoolean(Options.OVERWRITE_STATS.key(), false);
         boolean updateStats = options.getBoolean(Options.UPDATE_STATS.key(), false);
+        boolean writeFiles = !direct || options.getBoolean(STATS_DIRECT_CHECKPOINT, DEFAULT_STATS_DIRECT_CHECKPOINT);
         Properties tagmap = options.get(Options.AGGREGATION_MAPPING_PROPERTIES.key(), Properties.class, null);
 //            fileId = options.getString(VariantStorageEngine.Options.FILE_ID.key());
 
@@ -226,20 +285,58 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
         QueryOptions readerOptions = new QueryOptions(QueryOptions.SORT, true)
                 .append(QueryOptions.EXCLUDE, VariantDBAdaptorUtils.ANNOTATION_FIELD);
         logger.info("ReaderQueryOptions: " + readerOptions.toJson());
-        VariantDBReader reader = new VariantDBReader(studyConfiguration, variantDBAdaptor, readerQuery, readerOptions);
-        List<ParallelTaskRunner.Task<Variant, String>> tasks = new ArrayList<>(numTasks);
         ProgressLogger progressLogger = new ProgressLogger("Calculated stats:",
                 () -> variantDBAdaptor.count(readerQuery).first(), 200).setBatchSize(5000);
+        List<VariantStatsDBWriter> dbWriters = new ArrayList<>(numTasks);
+        List<VariantStatsDBWriter> taskDbWriters = new ArrayList<>(numTasks);
         for (int i = 0; i < numTasks; i++) {
-            tasks.add(new VariantStatsWrapperTask(overwrite, cohorts, studyConfiguration, variantSourceStats, tagmap, progressLogger));
+            VariantStatsDBWriter dbWriter = null;
+            if (direct) {
+                dbWriter = newVariantStatisticsDBWriter(variantDBAdaptor, studyConfiguration, options);
+                dbWriter.pre();
+                dbWriters.add(dbWriter);
+            }
+            taskDbWriters.add(dbWriter);
+        }
+        StringDataWriter writer = null;
+        if (writeFiles) {
+            Path variantStatsPath = Paths.get(output.getPath() + VARIANT_STATS_SUFFIX);
+            logger.info("will write stats to {}", variantStatsPath);
+            writer = new StringDataWriter(variantStatsPath, true);
+        }
+
+        GenotypeIndexStatsSource<?> genotypeIndexSource = null;
+        if (options.getBoolean(STATS_GENOTYPE_INDEX, DEFAULT_STATS_GENOTYPE_INDEX)) {
+            if (isAggregated(studyConfiguration.getAggregation())) {
+                logger.info("Aggregated study. Ignore " + STATS_GENOTYPE_INDEX);
+            } else {
+                genotypeIndexSource = newGenotypeIndexStatsSource(variantDBAdaptor, readerQuery, studyConfiguration, cohorts, options);
+                if (genotypeIndexSource == null) {
+                    logger.info("Genotype index stats not supported by this storage engine. Ignore " + STATS_GENOTYPE_INDEX);
+                } else {
+                    logger.info("Calculating stats from the genotype index. Source stats will not be updated");
+                }
+            }
         }
-        Path variantStatsPath = Paths.get(output.getPath() + VARIANT_STATS_SUFFIX);
-        logger.info("will write stats to {}", variantStatsPath);
-        StringDataWriter writer = new StringDataWriter(variantStatsPath, true);
 
         // runner
         ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder().setNumTasks(numTasks).setBatchSize(batchSize).build();
-        ParallelTaskRunner runner = new ParallelTaskRunner<>(reader, tasks, writer, config);
+        ParallelTaskRunner runner;
+        List<VariantSourceStats> partialSourceStats = new ArrayList<>(numTasks);
+        if (genotypeIndexSource == null) {
+            VariantDBReader reader = new VariantDBReader(studyConfiguration, variantDBAdaptor, readerQuery, readerOptions);
+            List<ParallelTaskRunner.Task<Variant, String>> tasks = new ArrayList<>(numTasks);
+            for (VariantStatsDBWriter dbWriter : taskDbWriters) {
+                // Each task accumulates its own source stats. Merged at the end
+                VariantSourceStats taskSourceStats = new VariantSourceStats(null, Integer.toString(studyConfiguration.getStudyId()));
+                partialSourceStats.add(taskSourceStats);
+                tasks.add(new VariantStatsWrapperTask(overwrite, cohorts, studyConfiguration, taskSourceStats, tagmap, progressLogger,
+                        dbWriter, writeFiles));
+            }
+            runner = new ParallelTaskRunner<>(reader, tasks, writer, config);
+        } else {
+            runner = newGenotypeIndexStatsRunner(genotypeIndexSource, taskDbWriters, writeFiles, progressLogger, writer, config);
+        }
         try {
             logger.info("starting stats creation for cohorts {}", cohorts.keySet());
             long start = System.currentTimeMillis();
@@ -249,10 +346,25 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
             throw new StorageEngineException("Unable to calculate statistics.", e);
         }
         // source stats
-        Path fileSourcePath = Paths.get(output.getPath() + SOURCE_STATS_SUFFIX);
-        try (OutputStream outputSourceStream = getOutputStream(fileSourcePath, options)) {
-            ObjectWriter sourceWriter = jsonObjectMapper.writerFor(VariantSourceStats.class);
-            outputSourceStream.write(sourceWriter.writeValueAsBytes(variantSourceStats));
+        if (!partialSourceStats.isEmpty()) {
+            variantSourceStats = AccumulatedStatsMerger.merge(variantSourceStats.getStudyId(), partialSourceStats);
+        }
+        if (writeFiles && genotypeIndexSource == null) {
+            Path fileSourcePath = Paths.get(output.getPath() + SOURCE_STATS_SUFFIX);
+            try (OutputStream outputSourceStream = getOutputStream(fileSourcePath, options)) {
+                ObjectWriter sourceWriter = jsonObjectMapper.writerFor(VariantSourceStats.class);
+                outputSourceStream.write(sourceWriter.writeValueAsBytes(variantSourceStats));
+            }
+        }
+
+        if (direct) {
+            checkNumWrites(dbWriters);
+            if (genotypeIndexSource == null) {
+                variantDBAdaptor.getVariantSourceDBAdaptor().updateSourceStats(variantSourceStats, studyConfiguration, options);
+            }
+            checkAndUpdateCalculatedCohorts(studyConfiguration, cohorts.keySet(), updateStats);
+            // Stats modified. Invalidate cached queries
+            studyConfiguration.incrementDataGeneration();
         }
 
         variantDBAdaptor.getStudyConfigurationManager().updateStudyConfiguration(studyConfiguration, options);
@@ -260,6 +372,101 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
         return output;
     }
 
+    /**
+     * Reader of the genotype index of a storage engine, and a supplier of the functions calculating the stats of each batch.
+     * One function is used by each task, so they don't need to be thread safe.
+     *
+     * @param <T> Type of the elements read from the genotype index
+     */
+    protected static class GenotypeIndexStatsSource<T> {
+        private final DataReader<T> reader;
+        private final Supplier<Function<List<T>, List<VariantStatsWrapper>>> calculatorSupplier;
+
+        public GenotypeIndexStatsSource(DataReader<T> reader, Supplier<Function<List<T>, List<VariantStatsWrapper>>> calculatorSupplier) {
+            this.reader = reader;
+            this.calculatorSupplier = calculatorSupplier;
+        }
+
+        public DataReader<T> getReader() {
+            return reader;
+        }
+
+        public Supplier<Function<List<T>, List<VariantStatsWrapper>>> getCalculatorSupplier() {
+            return calculatorSupplier;
+        }
+    }
+
+    /**
+     * Storage engines with a genotype index can override this method to calculate the stats without building the Variant objects.
+     * See {@link GenotypeIndexStatsCalculator}.
+     *
+     * @param variantDBAdaptor   DBAdaptor
+     * @param query              Variants to calculate
+     * @param studyConfiguration Study configuration, with the cohorts already updated
+     * @param cohorts            Cohorts to calculate
+     * @param options            Options
+     * @return                   Genotype index source, or null if not supported
+     */
+    protected GenotypeIndexStatsSource<?> newGenotypeIndexStatsSource(VariantDBAdaptor variantDBAdaptor, Query query,
+                                                                      StudyConfiguration studyConfiguration,
+                                                                      Map<String, Set<String>> cohorts, QueryOptions options) {
+        return null;
+    }
+
+    private <T> ParallelTaskRunner<T, String> newGenotypeIndexStatsRunner(GenotypeIndexStatsSource<T> source,
+                                                                          List<VariantStatsDBWriter> dbWriters, boolean serialize,
+                                                                          ProgressLogger progressLogger, StringDataWriter writer,
+                                                                          ParallelTaskRunner.Config config) {
+        List<ParallelTaskRunner.Task<T, String>> tasks = new ArrayList<>(dbWriters.size());
+        for (VariantStatsDBWriter dbWriter : dbWriters) {
+            tasks.add(new GenotypeIndexStatsTask<>(source.getCalculatorSupplier().get(), progressLogger, dbWriter, serialize));
+        }
+        return new ParallelTaskRunner<>(source.getReader(), tasks, writer, config);
+    }
+
+    class GenotypeIndexStatsTask<T> implements ParallelTaskRunner.Task<T, String> {
+
+        private final Function<List<T>, List<VariantStatsWrapper>> calculator;
+        private final ProgressLogger progressLogger;
+        private final VariantStatsDBWriter dbWriter;
+        private final boolean serialize;
+        private final ObjectWriter variantsWriter;
+
+        GenotypeIndexStatsTask(Function<List<T>, List<VariantStatsWrapper>> calculator, ProgressLogger progressLogger,
+                               VariantStatsDBWriter dbWriter, boolean serialize) {
+            this.calculator = calculator;
+            this.progressLogger = progressLogger;
+            this.dbWriter = dbWriter;
+            this.serialize = serialize;
+            ObjectMapper objectMapper = new ObjectMapper(new JsonFactory());
+            objectMapper.addMixIn(VariantStats.class, VariantStatsJsonMixin.class);
+            variantsWriter = objectMapper.writerFor(VariantStatsWrapper.class);
+        }
+
+        @Override
+        public List<String> apply(List<T> batch) {
+            List<VariantStatsWrapper> variantStatsWrappers = calculator.apply(batch);
+            List<String> strings = new ArrayList<>(serialize ? variantStatsWrappers.size() : 0);
+            if (serialize) {
+                for (VariantStatsWrapper variantStatsWrapper : variantStatsWrappers) {
+                    try {
+                        strings.add(variantsWriter.writeValueAsString(variantStatsWrapper));
+                    } catch (JsonProcessingException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            if (dbWriter != null && !variantStatsWrappers.isEmpty()) {
+                dbWriter.write(variantStatsWrappers);
+            }
+            if (!variantStatsWrappers.isEmpty()) {
+                VariantStatsWrapper last = variantStatsWrappers.get(variantStatsWrappers.size() - 1);
+                progressLogger.increment(batch.size(), () -> ", up to position " + last.getChromosome() + ":" + last.getPosition());
+            }
+            return strings;
+        }
+    }
+
     class VariantStatsWrapperTask implements ParallelTaskRunner.Task<Variant, String> {
 
         private boolean overwrite;
@@ -272,10 +479,26 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
         private VariantSourceStats variantSourceStats;
         private Properties tagmap;
         private VariantStatisticsCalculator variantStatisticsCalculator;
+        // Only in the direct mode. Loads the calculated stats
+        private final VariantStatsDBWriter dbWriter;
+        private final boolean serialize;
 
         VariantStatsWrapperTask(boolean overwrite, Map<String, Set<String>> cohorts,
                                 StudyConfiguration studyConfiguration,
                                 VariantSourceStats variantSourceStats, Properties tagmap, ProgressLogger progressLogger) {
+            this(overwrite, cohorts, studyConfiguration, variantSourceStats, tagmap, progressLogger, null, true);
+        }
+
+        /**
+         * @param dbWriter  Optional writer to load the stats from the task, without the intermediate file
+         * @param serialize Return the stats serialized as json. Otherwise, returns an empty list
+         */
+        VariantStatsWrapperTask(boolean overwrite, Map<String, Set<String>> cohorts,
+                                StudyConfiguration studyConfiguration,
+                                VariantSourceStats variantSourceStats, Properties tagmap, ProgressLogger progressLogger,
+                                VariantStatsDBWriter dbWriter, boolean serialize) {
+            this.dbWriter = dbWriter;
+            this.serialize = serialize;
             this.overwrite = overwrite;
             this.cohorts = cohorts;
             this.studyConfiguration = studyConfiguration;
@@ -292,7 +515,7 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
         @Override
         public List<String> apply(List<Variant> variants) {
 
-            List<String> strings = new ArrayList<>(variants.size());
+            List<String> strings = new ArrayList<>(serialize ? variants.size() : 0);
             boolean defaultCohortAbsent = false;
 
             List<VariantStatsWrapper> variantStatsWrappers = variantStatisticsCalculator.calculateBatch(variants,
@@ -300,25 +523,30 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
 
             long start = System.currentTimeMillis();
             for (VariantStatsWrapper variantStatsWrapper : variantStatsWrappers) {
-                try {
-                    strings.add(variantsWriter.writeValueAsString(variantStatsWrapper));
-                    if (variantStatsWrapper.getCohortStats().get(StudyEntry.DEFAULT_COHORT) == null) {
-                        defaultCohortAbsent = true;
+                if (variantStatsWrapper.getCohortStats().get(StudyEntry.DEFAULT_COHORT) == null) {
+                    defaultCohortAbsent = true;
+                }
+                if (serialize) {
+                    try {
+                        strings.add(variantsWriter.writeValueAsString(variantStatsWrapper));
+                    } catch (JsonProcessingException e) {
+                        e.printStackTrace();
                     }
-                } catch (JsonProcessingException e) {
-                    e.printStackTrace();
                 }
             }
+            if (dbWriter != null && !variantStatsWrappers.isEmpty()) {
+                dbWriter.write(variantStatsWrappers);
+            }
 
             // we don't want to overwrite file stats regarding all samples with stats about a subset of samples. Maybe if we change
             // VariantSource.stats to a map with every subset...
+            // The source stats are owned by this task, so they don't need synchronization
             if (!defaultCohortAbsent) {
-                synchronized (variantSourceStats) {
-                    variantSourceStats.updateFileStats(variants);
-                    variantSourceStats.updateSampleStats(variants, null);  // TODO test
-                }
+                variantSourceStats.updateFileStats(variants);
+                variantSourceStats.updateSampleStats(variants, null);  // TODO test
             }
-            logger.debug("another batch of {} elements calculated. time: {}ms", strings.size(), System.currentTimeMillis() - start);
+            logger.debug("another batch of {} elements calculated. time: {}ms", variantStatsWrappers.size(),
+                    System.currentTimeMillis() - start);
             if (!variants.isEmpty()) {
                 progressLogger.increment(variants.size(), () -> ", up to position "
                         + variants.get(variants.size() - 1).getChromosome()
@@ -360,10 +588,17 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
         long start = System.currentTimeMillis();
 
         loadVariantStats(variantStatsUri, studyConfiguration, options);
-        loadSourceStats(variantDBAdaptor, sourceStatsUri, studyConfiguration, options);
+        if (Paths.get(sourceStatsUri).toFile().exists()) {
+            loadSourceStats(variantDBAdaptor, sourceStatsUri, studyConfiguration, options);
+        } else {
+            // Stats calculated from the genotype index. See STATS_GENOTYPE_INDEX
+            logger.info("Missing source stats file {}. Source stats not updated", sourceStatsUri);
+        }
 
         logger.info("finishing stats loading, time: {}ms", System.currentTimeMillis() - start);
 
+        // Stats modified. Invalidate cached queries
+        studyConfiguration.incrementDataGeneration();
         variantDBAdaptor.getStudyConfigurationManager().updateStudyConfiguration(studyConfiguration, options);
 
     }
@@ -422,13 +657,16 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
             throw new StorageEngineException("Error loading stats", e);
         }
 
+        checkNumWrites(writers);
+    }
+
+    private void checkNumWrites(List<VariantStatsDBWriter> writers) {
         Long writes = writers.stream().map(VariantStatsDBWriter::getNumWrites).reduce((a, b) -> a + b).orElse(0L);
         Long variantStats = writers.stream().map(VariantStatsDBWriter::getVariantStats).reduce((a, b) -> a + b).orElse(0L);
         if (writes < variantStats) {
             logger.warn("provided statistics of {} variants, but only {} were updated", variantStats, writes);
             logger.info("note: maybe those variants didn't had the proper study? maybe the new and the old stats were the same?");
         }
-
     }
 
     protected DataReader<VariantStatsWrapper> newVariantStatsWrapperDataReader(InputStream inputStream) {
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.opencb.biodata.models.feature.Genotype;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+
+import java.util.*;
+
+/**
+ * Calculates the stats of all the cohorts of a study in one pass over a genotype index, this is, a map from genotype to
+ * the list of sample ids with that genotype, as stored by the storage engines. Samples not present in the index have the
+ * default genotype.
+ *
+ * Each cohort is stored as a bitset of sample ids. The number of samples of each cohort with a genotype is the cardinality of
+ * the intersection between the cohort and the samples of the genotype, so the sample names and genotype strings of
+ * each sample are never built.
+ *
+ * The calculated stats are equivalent to the ones from {@link VariantStatisticsCalculator} for non aggregated studies.
+ * The unknown genotype {@value #UNKNOWN_GENOTYPE} is counted as missing.
+ *
+ * Instances are not thread safe.
+ *
+ * Created on 18/10/26.
+ */
+public class GenotypeIndexStatsCalculator {
+
+    public static final String UNKNOWN_GENOTYPE = "?/?";
+    public static final String MISSING_GENOTYPE = "./.";
+
+    private final String[] cohortNames;
+    private final long[][] cohortSamples;
+    private final int[] cohortSizes;
+    // Scratch bitset with the samples of one genotype
+    private final long[] genotypeSamples;
+
+    /**
+     * @param cohorts Samples of each cohort. Only samples already indexed in the study should be included.
+     */
+    public GenotypeIndexStatsCalculator(Map<String, ? extends Collection<Integer>> cohorts) {
+        int maxSampleId = 0;
+        for (Collection<Integer> samples : cohorts.values()) {
+            for (Integer sampleId : samples) {
+                maxSampleId = Math.max(maxSampleId, sampleId);
+            }
+        }
+        int numWords = (maxSampleId >> 6) + 1;
+
+        cohortNames = new String[cohorts.size()];
+        cohortSamples = new long[cohorts.size()][];
+        cohortSizes = new int[cohorts.size()];
+        int c = 0;
+        for (Map.Entry<String, ? extends Collection<Integer>> entry : cohorts.entrySet()) {
+            long[] words = new long[numWords];
+            for (Integer sampleId : entry.getValue()) {
+                words[sampleId >> 6] |= 1L << sampleId;
+            }
+            int size = 0;
+            for (long word : words) {
+                size += Long.bitCount(word);
+            }
+            cohortNames[c] = entry.getKey();
+            cohortSamples[c] = words;
+            cohortSizes[c] = size;
+            c++;
+        }
+        genotypeSamples = new long[numWords];
+    }
+
+    /**
+     * Creates a calculator for some cohorts of the study. Samples not indexed yet are excluded from the cohorts.
+     *
+     * @param studyConfiguration    Study configuration
+     * @param cohorts               Cohort names
+     * @return                      Stats calculator
+     */
+    public static GenotypeIndexStatsCalculator fromStudyConfiguration(StudyConfiguration studyConfiguration, Collection<String> cohorts) {
+        Set<Integer> indexedSamples = new HashSet<>(StudyConfiguration.getIndexedSamples(studyConfiguration).values());
+        Map<String, Set<Integer>> cohortSamples = new LinkedHashMap<>();
+        for (String cohort : cohorts) {
+            Integer cohortId = studyConfiguration.getCohortIds().get(cohort);
+            Set<Integer> samples = new HashSet<>(studyConfiguration.getCohorts().getOrDefault(cohortId, Collections.emptySet()));
+            samples.retainAll(indexedSamples);
+            cohortSamples.put(cohort, samples);
+        }
+        return new GenotypeIndexStatsCalculator(cohortSamples);
+    }
+
+    /**
+     * Calculate the stats of all the cohorts for one variant.
+     *
+     * @param variant           Variant. Only the alleles and type are used
+     * @param genotypeIndex     Samples of each genotype
+     * @param defaultGenotype   Genotype of the samples not present in the index. If null, these samples are not counted
+     * @return                  Stats for each cohort
+     */
+    public Map<String, VariantStats> calculate(Variant variant, Map<String, ? extends Collection<Integer>> genotypeIndex,
+                                               String defaultGenotype) {
+        int numCohorts = cohortNames.length;
+        Map<String, int[]> counts = new LinkedHashMap<>(genotypeIndex.size() + 1);
+        int[] listed = new int[numCohorts];
+
+        for (Map.Entry<String, ? extends Collection<Integer>> entry : genotypeIndex.entrySet()) {
+            Collection<Integer> samples = entry.getValue();
+            if (samples == null || samples.isEmpty()) {
+                continue;
+            }
+            int minWord = Integer.MAX_VALUE;
+            int maxWord = -1;
+            for (Integer sampleId : samples) {
+                int word = sampleId >> 6;
+                // Skip samples with ids out of any cohort
+                if (word < genotypeSamples.length) {
+                    genotypeSamples[word] |= 1L << sampleId;
+                    minWord = Math.min(minWord, word);
+                    maxWord = Math.max(maxWord, word);
+                }
+            }
+            if (maxWord < 0) {
+                continue;
+            }
+            int[] gtCounts = counts.computeIfAbsent(normalizeGenotype(entry.getKey()), key -> new int[numCohorts]);
+            for (int c = 0; c < numCohorts; c++) {
+                long[] cohort = cohortSamples[c];
+                int count = 0;
+                for (int w = minWord; w <= maxWord; w++) {
+                    count += Long.bitCount(genotypeSamples[w] & cohort[w]);
+                }
+                gtCounts[c] += count;
+                listed[c] += count;
+            }
+            Arrays.fill(genotypeSamples, minWord, maxWord + 1, 0L);
+        }
+
+        if (defaultGenotype != null) {
+            int[] gtCounts = counts.computeIfAbsent(normalizeGenotype(defaultGenotype), key -> new int[numCohorts]);
+            for (int c = 0; c < numCohorts; c++) {
+                gtCounts[c] += cohortSizes[c] - listed[c];
+            }
+        }
+
+        // Parse each genotype once per variant
+        String ref = variant.getReference();
+        String alt = variant.getAlternate();
+        Genotype[] genotypes = new Genotype[counts.size()];
+        int[][] genotypeCounts = new int[counts.size()][];
+        int i = 0;
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            genotypes[i] = new Genotype(entry.getKey(), ref, alt);
+            genotypeCounts[i] = entry.getValue();
+            i++;
+        }
+        // Biallelic genotypes are always present in the genotype frequencies
+        Genotype[] biallelicGenotypes = {new Genotype("0/0", ref, alt), new Genotype("0/1", ref, alt), new Genotype("1/1", ref, alt)};
+
+        Map<String, VariantStats> stats = new LinkedHashMap<>(numCohorts);
+        for (int c = 0; c < numCohorts; c++) {
+            stats.put(cohortNames[c], buildStats(variant, genotypes, genotypeCounts, biallelicGenotypes, c));
+        }
+        return stats;
+    }
+
+    private VariantStats buildStats(Variant variant, Genotype[] genotypes, int[][] genotypeCounts, Genotype[] biallelicGenotypes,
+                                    int cohort) {
+        VariantStats stats = new VariantStats(variant);
+        String ref = variant.getReference();
+        String alt = variant.getAlternate();
+
+        Map<Genotype, Integer> genotypesCount = new HashMap<>();
+        int refAlleles = 0;
+        int altAlleles = 0;
+        int missingAlleles = 0;
+        int missingGenotypes = 0;
+        int totalAlleles = 0;
+        int totalGenotypes = 0;
+        for (int i = 0; i < genotypes.length; i++) {
+            int count = genotypeCounts[i][cohort];
+            if (count == 0) {
+                continue;
+            }
+            Genotype genotype = genotypes[i];
+            genotypesCount.merge(genotype, count, Integer::sum);
+
+            int called = 0;
+            for (int allele : genotype.getAllelesIdx()) {
+                if (allele < 0) {
+                    missingAlleles += count;
+                } else {
+                    called++;
+                    if (allele == 0) {
+                        refAlleles += count;
+                    } else if (allele == 1) {
+                        altAlleles += count;
+                    }
+                }
+            }
+            totalAlleles += called * count;
+            if (called == 0) {
+                missingGenotypes += count;
+            } else if (called == genotype.getAllelesIdx().length) {
+                totalGenotypes += count;
+            }
+        }
+
+        stats.setGenotypesCount(genotypesCount);
+        stats.setRefAlleleCount(refAlleles);
+        stats.setAltAlleleCount(altAlleles);
+        stats.setMissingAlleles(missingAlleles);
+        stats.setMissingGenotypes(missingGenotypes);
+
+        // Allele frequencies and MAF
+        if (totalAlleles == 0) {
+            stats.setMaf(-1F);
+        } else {
+            float refFreq = refAlleles / (float) totalAlleles;
+            float altFreq = altAlleles / (float) totalAlleles;
+            stats.setRefAlleleFreq(refFreq);
+            stats.setAltAlleleFreq(altFreq);
+            if (refFreq <= altFreq) {
+                stats.setMaf(refFreq);
+                stats.setMafAllele(ref);
+            } else {
+                stats.setMaf(altFreq);
+                stats.setMafAllele(alt);
+            }
+        }
+
+        // Genotype frequencies and MGF
+        if (totalGenotypes == 0) {
+            stats.setMgf(-1F);
+        } else {
+            Map<Genotype, Float> genotypesFreq = new HashMap<>();
+            for (Genotype genotype : biallelicGenotypes) {
+                genotypesFreq.put(genotype, 0F);
+            }
+            for (Map.Entry<Genotype, Integer> entry : genotypesCount.entrySet()) {
+                boolean missing = false;
+                for (int allele : entry.getKey().getAllelesIdx()) {
+                    missing |= allele < 0;
+                }
+                if (!missing) {
+                    genotypesFreq.put(entry.getKey(), entry.getValue() / (float) totalGenotypes);
+                }
+            }
+            float mgf = 1;
+            String mgfGenotype = null;
+            for (Map.Entry<Genotype, Float> entry : genotypesFreq.entrySet()) {
+                if (entry.getValue() < mgf) {
+                    mgf = entry.getValue();
+                    mgfGenotype = entry.getKey().toString();
+                }
+            }
+            stats.setGenotypesFreq(genotypesFreq);
+            stats.setMgf(mgf);
+            stats.setMgfGenotype(mgfGenotype);
+        }
+        return stats;
+    }
+
+    private static String normalizeGenotype(String genotype) {
+        return UNKNOWN_GENOTYPE.equals(genotype) ? MISSING_GENOTYPE : genotype;
+    }
+
+}
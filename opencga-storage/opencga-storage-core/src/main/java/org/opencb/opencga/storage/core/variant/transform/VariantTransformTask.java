@@ -31,12 +31,16 @@ import org.opencb.biodata.models.variant.exceptions.NotAVariantException;
 import org.opencb.biodata.tools.variant.converters.avro.VariantContextToVariantConverter;
 import org.opencb.biodata.tools.variant.stats.VariantGlobalStatsCalculator;
 import org.opencb.commons.run.ParallelTaskRunner;
+import org.opencb.opencga.storage.core.io.plain.ByteLine;
+import org.opencb.opencga.storage.core.io.plain.ByteLineDataReader;
 import org.opencb.opencga.storage.core.io.plain.StringDataWriter;
 import org.opencb.opencga.storage.core.variant.io.json.mixin.GenericRecordAvroJsonMixin;
 import org.opencb.opencga.storage.core.variant.io.json.mixin.VariantSourceJsonMixin;
+import org.opencb.opencga.storage.core.variant.stats.AccumulatedStatsMerger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -60,7 +64,10 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
     protected final VariantContextToVariantConverter converter;
     protected final VariantNormalizer normalizer;
     protected final Path outputFileJsonFile;
+    // Shared stats calculator. If null, each task calculates the stats of its own batches, merged into the source at post
     protected final VariantGlobalStatsCalculator variantStatsTask;
+    private VariantSource taskSource;
+    private VariantGlobalStatsCalculator taskStatsCalculator;
     protected final AtomicLong htsConvertTime = new AtomicLong(0);
     protected final AtomicLong biodataConvertTime = new AtomicLong(0);
     protected final AtomicLong normTime = new AtomicLong(0);
@@ -99,19 +106,39 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
 
     @Override
     public void pre() {
-        synchronized (variantStatsTask) {
-            variantStatsTask.pre();
+        if (variantStatsTask == null) {
+            taskSource = AccumulatedStatsMerger.copy(source, VariantSource.class);
+            taskSource.setStats(null);
+            taskStatsCalculator = new VariantGlobalStatsCalculator(taskSource);
+            taskStatsCalculator.pre();
+        } else {
+            synchronized (variantStatsTask) {
+                variantStatsTask.pre();
+            }
         }
     }
 
+    private VariantGlobalStatsCalculator getStatsCalculator() {
+        return variantStatsTask == null ? taskStatsCalculator : variantStatsTask;
+    }
+
     @Override
     public List<T> apply(List<String> batch) {
+        return transform(batch, true);
+    }
+
+    /**
+     * @param batch       Batch of lines
+     * @param filterLines Discard header and blank lines. False if the batch only contains variant lines
+     * @return            Transformed variants
+     */
+    private List<T> transform(List<String> batch, boolean filterLines) {
         List<Variant> transformedVariants = new ArrayList<>(batch.size());
         logger.debug("Transforming {} lines", batch.size());
         long curr;
         if (factory != null) {
             for (String line : batch) {
-                if (line.startsWith("#") || line.trim().isEmpty()) {
+                if (filterLines && (line.startsWith("#") || line.trim().isEmpty())) {
                     continue;
                 }
                 List<Variant> variants;
@@ -133,7 +160,7 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
                         transformedVariants.add(variant);
                     }
 
-                    variantStatsTask.apply(variants);
+                    getStatsCalculator().apply(variants);
 
                 } catch (NotAVariantException ignore) {
                     variants = Collections.emptyList();
@@ -145,7 +172,7 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
             List<VariantContext> variantContexts = new ArrayList<>(batch.size());
             curr = System.currentTimeMillis();
             for (String line : batch) {
-                if (line.startsWith("#") || line.trim().isEmpty()) {
+                if (filterLines && (line.startsWith("#") || line.trim().isEmpty())) {
                     continue;
                 }
                 try {
@@ -172,7 +199,7 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
             }
             this.normTime.addAndGet(System.currentTimeMillis() - curr);
 
-            variantStatsTask.apply(normalizedVariants);
+            getStatsCalculator().apply(normalizedVariants);
 
             transformedVariants.addAll(normalizedVariants);
         }
@@ -180,6 +207,45 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
         return encodeVariants(transformedVariants);
     }
 
+    /**
+     * Transform a batch of lines read with a {@link ByteLineDataReader}. Header and blank lines are discarded before
+     * decoding the lines, so only the variant lines are copied into Strings, in the calling thread.
+     *
+     * @param batch Batch of lines
+     * @return      Transformed variants
+     */
+    public List<T> applyBytes(List<ByteLine> batch) {
+        List<String> lines = new ArrayList<>(batch.size());
+        for (ByteLine line : batch) {
+            if (!line.isHeader() && !line.isBlank()) {
+                lines.add(line.toString(Charset.defaultCharset()));
+            }
+        }
+        return transform(lines, false);
+    }
+
+    /**
+     * @return This task, reading the lines from a {@link ByteLineDataReader}
+     */
+    public ParallelTaskRunner.Task<ByteLine, T> asByteLineTask() {
+        return new ParallelTaskRunner.Task<ByteLine, T>() {
+            @Override
+            public void pre() {
+                VariantTransformTask.this.pre();
+            }
+
+            @Override
+            public List<T> apply(List<ByteLine> batch) {
+                return applyBytes(batch);
+            }
+
+            @Override
+            public void post() {
+                VariantTransformTask.this.post();
+            }
+        };
+    }
+
     private void onError(RuntimeException e, String line) {
         logger.error("Error parsing line: {}", line);
         for (BiConsumer<String, RuntimeException> handler : errorHandlers) {
@@ -192,19 +258,27 @@ public abstract class VariantTransformTask<T> implements ParallelTaskRunner.Task
 
     @Override
     public void post() {
-        synchronized (variantStatsTask) {
-            variantStatsTask.post();
-        }
         ObjectMapper jsonObjectMapper = new ObjectMapper();
         jsonObjectMapper.addMixIn(VariantSource.class, VariantSourceJsonMixin.class);
         jsonObjectMapper.addMixIn(GenericRecord.class, GenericRecordAvroJsonMixin.class);
-
         ObjectWriter variantSourceObjectWriter = jsonObjectMapper.writerFor(VariantSource.class);
-        try {
-            String sourceJsonString = variantSourceObjectWriter.writeValueAsString(source);
-            StringDataWriter.write(outputFileJsonFile, Collections.singletonList(sourceJsonString));
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
+
+        if (variantStatsTask == null) {
+            taskStatsCalculator.post();
+        }
+        // Tasks from concurrent runners (i.e. sharded transform) share the source and the metadata file
+        synchronized (variantStatsTask == null ? source : variantStatsTask) {
+            if (variantStatsTask == null) {
+                source.setStats(AccumulatedStatsMerger.merge(source.getStats(), taskSource.getStats()));
+            } else {
+                variantStatsTask.post();
+            }
+            try {
+                String sourceJsonString = variantSourceObjectWriter.writeValueAsString(source);
+                StringDataWriter.write(outputFileJsonFile, Collections.singletonList(sourceJsonString));
+            } catch (JsonProcessingException e) {
+                e.printStackTrace();
+            }
         }
         logger.debug("Time txt2hts: " + this.htsConvertTime.get());
         logger.debug("Time hts2biodata: " + this.biodataConvertTime.get());
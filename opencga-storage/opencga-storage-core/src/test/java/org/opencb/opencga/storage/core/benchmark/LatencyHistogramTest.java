@@ -0,0 +1,65 @@
+package org.opencb.opencga.storage.core.benchmark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created on 18/10/26.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(1, histogram.getMin());
+        assertEquals(50000.5, histogram.getMean(), 0.001);
+        checkPercentile(50000, histogram.getValueAtPercentile(50));
+        checkPercentile(95000, histogram.getValueAtPercentile(95));
+        checkPercentile(99000, histogram.getValueAtPercentile(99));
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testExactSmallValues() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(49, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testAdd() throws Exception {
+        LatencyHistogram histogram1 = new LatencyHistogram();
+        LatencyHistogram histogram2 = new LatencyHistogram();
+        histogram1.record(10);
+        histogram2.record(1000);
+        histogram1.add(histogram2);
+
+        assertEquals(2, histogram1.getCount());
+        assertEquals(1000, histogram1.getMax());
+        assertEquals(10, histogram1.getMin());
+    }
+
+    @Test
+    public void testBuckets() throws Exception {
+        for (long value = 0; value < 1000000; value += 7) {
+            long highest = LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / 64);
+        }
+    }
+
+    private void checkPercentile(long expected, long actual) {
+        assertTrue("Expected " + expected + ", actual " + actual, actual >= expected && actual <= expected * 1.02);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.benchmark;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.config.BenchmarkConfiguration;
+import org.opencb.opencga.storage.core.config.StorageConfiguration;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.dummy.DummyVariantDBAdaptor;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 18/10/26.
+ */
+public class VariantBenchmarkRunnerTest {
+
+    private static final String FAILING_QUERY = "queryByRegion-2:1-1000";
+    private static final String QUERY = "queryByRegion-1:1-1000";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void failingQueriesDoNotStopTheBenchmark() throws Exception {
+        StorageConfiguration configuration = new StorageConfiguration();
+        BenchmarkConfiguration benchmark = new BenchmarkConfiguration();
+        benchmark.setConcurrency(2);
+        configuration.setBenchmark(benchmark);
+        VariantBenchmarkRunner runner = new VariantBenchmarkRunner(configuration, new FailingDBAdaptor());
+
+        Map<String, Integer> queryMix = new LinkedHashMap<>();
+        queryMix.put(FAILING_QUERY, 1);
+        queryMix.put(QUERY, 1);
+        BenchmarkStats stats = runner.query(3, queryMix);
+
+        // Every execution of each query, in each thread, is counted
+        Map<String, Map<String, Object>> queries = (Map<String, Map<String, Object>>) stats.getSummary().get("queries");
+        assertEquals(0L, ((Number) queries.get(FAILING_QUERY).get("count")).longValue());
+        assertEquals(6L, ((Number) queries.get(FAILING_QUERY).get("errors")).longValue());
+        assertEquals(6L, ((Number) queries.get(QUERY).get("count")).longValue());
+        assertEquals(0L, ((Number) queries.get(QUERY).get("errors")).longValue());
+    }
+
+    /**
+     * Fails the queries on the chromosome 2.
+     */
+    private static class FailingDBAdaptor extends DummyVariantDBAdaptor {
+
+        FailingDBAdaptor() {
+            super("benchmark");
+        }
+
+        @Override
+        public QueryResult<Variant> get(Query query, QueryOptions options) {
+            if (query.getString(VariantDBAdaptor.VariantQueryParams.REGION.key()).startsWith("2:")) {
+                throw new IllegalStateException("Query failed");
+            }
+            return new QueryResult<>("", 0, 0, 0, "", "", Collections.emptyList());
+        }
+    }
+}
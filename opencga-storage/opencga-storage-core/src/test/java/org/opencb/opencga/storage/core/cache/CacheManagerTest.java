@@ -0,0 +1,57 @@
+package org.opencb.opencga.storage.core.cache;
+
+import org.junit.Test;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.test.GenericTest;
+import org.opencb.opencga.storage.core.config.StorageConfiguration;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class CacheManagerTest extends GenericTest {
+
+    @Test
+    public void testVersionedKeys() throws Exception {
+        CacheManager cacheManager = new CacheManager();
+        Query query = new Query("region", "1:1000-2000");
+
+        String key1 = cacheManager.createKey("1", 1, "var", query, new QueryOptions());
+        String key1Bis = cacheManager.createKey("1", 1, "var", query, new QueryOptions());
+        String key2 = cacheManager.createKey("1", 2, "var", query, new QueryOptions());
+
+        assertEquals(key1, key1Bis);
+        assertNotEquals(key1, key2);
+        assertTrue(key1.startsWith(CacheManager.PREFIX_DATABASE_KEY + "1:"));
+        assertTrue(key2.startsWith(CacheManager.PREFIX_DATABASE_KEY + "1:"));
+    }
+
+    @Test
+    public void testLocalBackendConflictingConfiguration() throws Exception {
+        CacheManager.resetLocalCacheBackend();
+        try {
+            StorageConfiguration configuration = new StorageConfiguration();
+            configuration.getCache().setBackend(CacheManager.LOCAL_BACKEND).setMaxMemory(1000).setTtl(10);
+            CacheManager cacheManager = new CacheManager(configuration);
+
+            // Same settings share the backend
+            StorageConfiguration sameConfiguration = new StorageConfiguration();
+            sameConfiguration.getCache().setBackend(CacheManager.LOCAL_BACKEND).setMaxMemory(1000).setTtl(10);
+            assertEquals(1000L, new CacheManager(sameConfiguration).getStats().getLong("maxBytes"));
+
+            StorageConfiguration otherConfiguration = new StorageConfiguration();
+            otherConfiguration.getCache().setBackend(CacheManager.LOCAL_BACKEND).setMaxMemory(2000).setTtl(10);
+            try {
+                new CacheManager(otherConfiguration);
+                fail("Expected conflicting configuration error");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains("maxMemory=2000"));
+            }
+            assertEquals(1000L, cacheManager.getStats().getLong("maxBytes"));
+        } finally {
+            CacheManager.resetLocalCacheBackend();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.opencb.opencga.storage.core.cache;
+
+import org.junit.Test;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.commons.test.GenericTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class LocalCacheBackendTest extends GenericTest {
+
+    @Test
+    public void testGetSet() throws Exception {
+        LocalCacheBackend backend = new LocalCacheBackend(1000, -1, queryResult -> 100);
+
+        assertNull(backend.get("ocga:1:var:a"));
+        backend.set("ocga:1:var:a", new Query(), newQueryResult("a"));
+        QueryResult<String> result = backend.get("ocga:1:var:a");
+        assertNotNull(result);
+        assertEquals("a", result.first());
+
+        assertEquals(1L, backend.getStats().getLong("hits"));
+        assertEquals(1L, backend.getStats().getLong("misses"));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        // Each entry takes 100 bytes + key
+        LocalCacheBackend backend = new LocalCacheBackend(400, -1, queryResult -> 100);
+
+        backend.set("k1", new Query(), newQueryResult("1"));
+        backend.set("k2", new Query(), newQueryResult("2"));
+        backend.set("k3", new Query(), newQueryResult("3"));
+        backend.get("k1");
+        backend.set("k4", new Query(), newQueryResult("4"));
+
+        assertNotNull(backend.get("k1"));
+        assertNull(backend.get("k2"));
+        assertNotNull(backend.get("k3"));
+        assertNotNull(backend.get("k4"));
+        assertEquals(1L, backend.getStats().getLong("evictions"));
+    }
+
+    @Test
+    public void testInvalidateStudy() throws Exception {
+        LocalCacheBackend backend = new LocalCacheBackend(10000, -1, queryResult -> 100);
+
+        backend.set("ocga:1:var:a", new Query(), newQueryResult("a"));
+        backend.set("ocga:1:var:b", new Query(), newQueryResult("b"));
+        backend.set("ocga:2:var:a", new Query(), newQueryResult("a"));
+        backend.invalidate("ocga:1:");
+
+        assertNull(backend.get("ocga:1:var:a"));
+        assertNull(backend.get("ocga:1:var:b"));
+        assertNotNull(backend.get("ocga:2:var:a"));
+        assertEquals(1, backend.getStats().getInt("entries"));
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        AtomicLong nanoTime = new AtomicLong();
+        LocalCacheBackend backend = new LocalCacheBackend(10000, 1, queryResult -> 100, nanoTime::get);
+
+        backend.set("k1", new Query(), newQueryResult("1"));
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(900));
+        assertNotNull(backend.get("k1"));
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        assertNull(backend.get("k1"));
+        assertEquals(1L, backend.getStats().getLong("expirations"));
+    }
+
+    @Test
+    public void testStoreCopy() throws Exception {
+        LocalCacheBackend backend = new LocalCacheBackend(10000, -1, queryResult -> 100);
+
+        QueryResult<String> queryResult = new QueryResult<>("", 0, 1, 1, "", "", new ArrayList<>(Collections.singletonList("a")));
+        backend.set("k1", new Query(), queryResult);
+        // Modifying the stored or the returned lists must not modify the cached entry
+        queryResult.getResult().add("b");
+        QueryResult<String> cached = backend.get("k1");
+        assertEquals(Collections.singletonList("a"), cached.getResult());
+        cached.getResult().clear();
+        assertEquals(Collections.singletonList("a"), backend.get("k1").getResult());
+    }
+
+    private QueryResult<String> newQueryResult(String value) {
+        return new QueryResult<>("", 0, 1, 1, "", "", Collections.singletonList(value));
+    }
+}
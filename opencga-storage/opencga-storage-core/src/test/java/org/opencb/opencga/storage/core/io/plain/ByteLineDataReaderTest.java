@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.io.plain;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class ByteLineDataReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<String> lines;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        lines = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            String line;
+            if (i == 0) {
+                line = "##fileformat=VCFv4.1";
+            } else if (i % 100 == 0) {
+                line = " ";
+            } else {
+                line = "1\t" + i + "\t.\tA\tC\t.\tPASS\t.\tGT\t0/1";
+            }
+            lines.add(line);
+            // Mix unix and windows line terminators
+            sb.append(line).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        // Last line without line terminator
+        lines.add("1\t5000\t.\tA\tC\t.\tPASS\t.\tGT\t1/1");
+        sb.append(lines.get(lines.size() - 1));
+        content = sb.toString().getBytes(Charset.defaultCharset());
+    }
+
+    @Test
+    public void testReadPlain() throws Exception {
+        Path path = temporaryFolder.getRoot().toPath().resolve("file.vcf");
+        try (OutputStream os = new FileOutputStream(path.toFile())) {
+            os.write(content);
+        }
+        // Small chunks force lines crossing the chunks, and lines longer than the chunk
+        checkRead(path, 10);
+        checkRead(path, 1000);
+        checkRead(path, ByteLineDataReader.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Test
+    public void testReadGzip() throws Exception {
+        Path path = temporaryFolder.getRoot().toPath().resolve("file.vcf.gz");
+        try (OutputStream os = new GZIPOutputStream(new FileOutputStream(path.toFile()))) {
+            os.write(content);
+        }
+        checkRead(path, 10);
+        checkRead(path, 1000);
+        checkRead(path, ByteLineDataReader.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Test
+    public void testReadEmpty() throws Exception {
+        Path path = temporaryFolder.newFile("empty.vcf").toPath();
+        ByteLineDataReader reader = new ByteLineDataReader(path);
+        reader.open();
+        assertTrue(reader.read(10).isEmpty());
+        reader.close();
+    }
+
+    private void checkRead(Path path, int chunkSize) {
+        ByteLineDataReader reader = new ByteLineDataReader(path, 2, chunkSize);
+        reader.open();
+        reader.pre();
+        List<String> read = new ArrayList<>();
+        List<ByteLine> batch;
+        do {
+            batch = reader.read(333);
+            for (ByteLine line : batch) {
+                String str = line.toString(Charset.defaultCharset());
+                assertEquals(str.startsWith("#"), line.isHeader());
+                assertEquals(str.trim().isEmpty(), line.isBlank());
+                read.add(str);
+            }
+        } while (!batch.isEmpty());
+        reader.post();
+        reader.close();
+
+        assertEquals(lines, read);
+        assertEquals(lines.size(), reader.getReadLines());
+        assertEquals(path.toFile().length(), reader.getReadBytes());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.io.plain;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class StringDataReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<String> lines;
+
+    @Before
+    public void setUp() throws Exception {
+        lines = new ArrayList<>();
+        lines.add("##fileformat=VCFv4.1");
+        lines.add("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1");
+        for (int i = 1; i <= 50000; i++) {
+            lines.add("1\t" + i + "\t.\tA\tC\t.\tPASS\t.\tGT\t0/1");
+        }
+    }
+
+    @Test
+    public void testReadBgzf() throws Exception {
+        Path path = temporaryFolder.getRoot().toPath().resolve("file.vcf.gz");
+        try (OutputStream os = new BlockCompressedOutputStream(path.toFile())) {
+            write(os);
+        }
+        try (InputStream is = new BufferedInputStream(new FileInputStream(path.toFile()))) {
+            assertTrue(ParallelGzipInputStream.isBgzf(is));
+        }
+        checkRead(path, 4);
+        checkRead(path, 1);
+    }
+
+    @Test
+    public void testReadMultiMemberGzip() throws Exception {
+        Path path = temporaryFolder.getRoot().toPath().resolve("file.vcf.gz");
+        try (OutputStream os = new FileOutputStream(path.toFile())) {
+            int half = lines.size() / 2;
+            write(new GZIPOutputStream(os), lines.subList(0, half));
+            write(new GZIPOutputStream(os), lines.subList(half, lines.size()));
+        }
+        try (InputStream is = new BufferedInputStream(new FileInputStream(path.toFile()))) {
+            assertFalse(ParallelGzipInputStream.isBgzf(is));
+        }
+        checkRead(path, 4);
+        checkRead(path, 1);
+    }
+
+    @Test
+    public void testReadPlain() throws Exception {
+        Path path = temporaryFolder.getRoot().toPath().resolve("file.vcf");
+        try (OutputStream os = new FileOutputStream(path.toFile())) {
+            write(os);
+        }
+        checkRead(path, 4);
+    }
+
+    private void checkRead(Path path, int decompressThreads) {
+        StringDataReader reader = new StringDataReader(path, decompressThreads);
+        reader.open();
+        reader.pre();
+        List<String> read = new ArrayList<>();
+        List<String> batch;
+        do {
+            batch = reader.read(1000);
+            read.addAll(batch);
+        } while (!batch.isEmpty());
+        reader.post();
+        reader.close();
+
+        assertEquals(lines, read);
+        assertEquals(lines.size(), reader.getReadLines());
+        assertEquals(path.toFile().length(), reader.getReadBytes());
+    }
+
+    private void write(OutputStream os) throws IOException {
+        write(os, lines);
+    }
+
+    private void write(OutputStream os, List<String> lines) throws IOException {
+        // Do not close the writer, so the underlying stream can be reused
+        Writer writer = new OutputStreamWriter(os);
+        for (String line : lines) {
+            writer.write(line);
+            writer.write('\n');
+        }
+        writer.flush();
+        if (os instanceof GZIPOutputStream) {
+            ((GZIPOutputStream) os).finish();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.io.plain;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.opencga.storage.core.variant.VariantStorageBaseTest;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 18/10/26.
+ */
+public class TabixDataReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path path;
+
+    @Before
+    public void setUp() throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("##fileformat=VCFv4.1");
+        lines.add("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+        lines.add("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1");
+        for (int position : new int[]{10, 98, 99, 100, 101, 150, 199, 200, 201, 250, 260}) {
+            lines.add(line("1", position));
+        }
+        lines.add(line("2", 5));
+        lines.add(line("2", 50));
+        path = VariantStorageBaseTest.writeTabixIndexedVcf(lines, temporaryFolder.getRoot().toPath().resolve("file.vcf.gz"));
+    }
+
+    /**
+     * The variant at 98 is a deletion overlapping the region 1:101-200.
+     */
+    private static String line(String chromosome, int position) {
+        String ref = position == 98 ? "ACGTA" : "A";
+        String alt = position == 98 ? "A" : "C";
+        return chromosome + "\t" + position + "\t.\t" + ref + "\t" + alt + "\t.\tPASS\t.\tGT\t0/1";
+    }
+
+    @Test
+    public void testReadChromosome() throws Exception {
+        assertEquals(Arrays.asList(10, 98, 99, 100, 101, 150, 199, 200, 201, 250, 260), read(new TabixDataReader(path, "1")));
+        assertEquals(Arrays.asList(5, 50), read(new TabixDataReader(path, "2")));
+    }
+
+    @Test
+    public void testReadUnknownChromosome() throws Exception {
+        assertEquals(Collections.emptyList(), read(new TabixDataReader(path, "X")));
+    }
+
+    @Test
+    public void testRegionBoundaries() throws Exception {
+        assertEquals(Arrays.asList(10, 98, 99, 100), read(new TabixDataReader(path, "1", 1, 100)));
+        // The deletion starting at 98 belongs to the previous region
+        assertEquals(Arrays.asList(101, 150, 199, 200), read(new TabixDataReader(path, "1", 101, 200)));
+        // Open-ended last window
+        assertEquals(Arrays.asList(201, 250, 260), read(new TabixDataReader(path, "1", 201, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    public void testSmallRegion() throws Exception {
+        assertEquals(Collections.singletonList(99), read(new TabixDataReader(path, "1", 99, 99)));
+        assertEquals(Collections.emptyList(), read(new TabixDataReader(path, "1", 102, 149)));
+    }
+
+    private static List<Integer> read(TabixDataReader reader) {
+        reader.open();
+        reader.pre();
+        List<Integer> positions = new ArrayList<>();
+        List<String> batch;
+        // Small batches, so regions are read across several batches
+        while (!(batch = reader.read(2)).isEmpty()) {
+            for (String line : batch) {
+                positions.add(Integer.valueOf(line.split("\t")[1]));
+            }
+        }
+        reader.post();
+        reader.close();
+        assertEquals(positions.size(), reader.getReadLines());
+        return positions;
+    }
+}
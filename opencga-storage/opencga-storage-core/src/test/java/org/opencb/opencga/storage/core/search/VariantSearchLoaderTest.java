@@ -0,0 +1,96 @@
+package org.opencb.opencga.storage.core.search;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+import org.opencb.commons.test.GenericTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 18/10/26.
+ */
+public class VariantSearchLoaderTest extends GenericTest {
+
+    @Test
+    public void testCommitOnlyAtTheEnd() throws Exception {
+        CollectorSolrClient solrClient = new CollectorSolrClient();
+        VariantSearchLoader loader = new VariantSearchLoader(solrClient, 0);
+
+        load(loader, 250, 100);
+
+        assertEquals(250, solrClient.documents.size());
+        assertEquals(250, loader.getNumDocs());
+        assertEquals(1, solrClient.commits);
+        assertEquals("1_1_A_C", solrClient.documents.get(0).getFieldValue("id"));
+    }
+
+    @Test
+    public void testCommitWithin() throws Exception {
+        CollectorSolrClient solrClient = new CollectorSolrClient();
+        VariantSearchLoader loader = new VariantSearchLoader(solrClient, 5000);
+
+        load(loader, 50, 10);
+
+        assertEquals(50, solrClient.documents.size());
+        assertEquals(1, solrClient.commits);
+        for (Integer commitWithin : solrClient.commitWithin) {
+            assertEquals(5000, commitWithin.intValue());
+        }
+    }
+
+    private void load(VariantSearchLoader loader, int numVariants, int batchSize) {
+        loader.open();
+        loader.pre();
+        List<VariantSearch> batch = new ArrayList<>(batchSize);
+        for (int i = 1; i <= numVariants; i++) {
+            VariantSearch variantSearch = new VariantSearch();
+            variantSearch.setId("1_" + i + "_A_C");
+            variantSearch.setChromosome("1");
+            variantSearch.setStart(i);
+            batch.add(variantSearch);
+            if (batch.size() == batchSize) {
+                loader.write(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        loader.write(batch);
+        loader.post();
+        loader.close();
+    }
+
+    /**
+     * Fake SolrClient collecting the update requests.
+     */
+    private static class CollectorSolrClient extends SolrClient {
+        private final List<SolrInputDocument> documents = new ArrayList<>();
+        private final List<Integer> commitWithin = new ArrayList<>();
+        private int commits = 0;
+
+        @Override
+        public NamedList<Object> request(SolrRequest request, String collection) {
+            if (request instanceof UpdateRequest) {
+                UpdateRequest updateRequest = (UpdateRequest) request;
+                if (updateRequest.getDocuments() != null) {
+                    documents.addAll(updateRequest.getDocuments());
+                    commitWithin.add(updateRequest.getCommitWithin());
+                }
+                if (AbstractUpdateRequest.ACTION.COMMIT.equals(updateRequest.getAction())) {
+                    commits++;
+                }
+            }
+            return new NamedList<>();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
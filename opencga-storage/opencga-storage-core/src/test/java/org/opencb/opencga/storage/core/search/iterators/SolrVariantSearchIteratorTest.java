@@ -0,0 +1,178 @@
+package org.opencb.opencga.storage.core.search.iterators;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+import org.opencb.commons.test.GenericTest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class SolrVariantSearchIteratorTest extends GenericTest {
+
+    private static final int NUM_DOCUMENTS = 100;
+
+    @Test
+    public void testIterateAllPages() throws Exception {
+        PagedSolrClient solrClient = new PagedSolrClient();
+        SolrVariantSearchIterator iterator = new SolrVariantSearchIterator(solrClient, new SolrQuery("*:*"), 7, -1);
+
+        assertEquals(ids(0, NUM_DOCUMENTS), read(iterator));
+        assertEquals(NUM_DOCUMENTS, iterator.getCount());
+        // Pages of 7 documents, plus a last empty page
+        assertEquals(16, solrClient.requests.size());
+        for (SolrParams params : solrClient.requests) {
+            assertEquals("7", params.get("rows"));
+            assertEquals("id asc", params.get("sort"));
+        }
+        // Released without closing the iterator
+        assertTrue(iterator.isReleased());
+    }
+
+    @Test
+    public void testLimitAsTotal() throws Exception {
+        PagedSolrClient solrClient = new PagedSolrClient();
+        SolrVariantSearchIterator iterator = new SolrVariantSearchIterator(solrClient, new SolrQuery("*:*"), 7, 10);
+
+        assertEquals(ids(0, 10), read(iterator));
+        // Do not request more documents than the limit
+        assertEquals(2, solrClient.requests.size());
+        assertEquals("7", solrClient.requests.get(0).get("rows"));
+        assertEquals("3", solrClient.requests.get(1).get("rows"));
+        assertTrue(iterator.isReleased());
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        PagedSolrClient solrClient = new PagedSolrClient();
+        SolrVariantSearchIterator iterator = new SolrVariantSearchIterator(solrClient, new SolrQuery("*:*"), 7, 10, 12);
+
+        assertEquals(ids(12, 22), read(iterator));
+        for (SolrParams params : solrClient.requests) {
+            assertNull(params.get("start"));
+        }
+    }
+
+    @Test
+    public void testSkipFromQueryStart() throws Exception {
+        PagedSolrClient solrClient = new PagedSolrClient();
+        SolrQuery solrQuery = new SolrQuery("*:*");
+        solrQuery.setStart(95);
+        SolrVariantSearchIterator iterator = new SolrVariantSearchIterator(solrClient, solrQuery, 7, -1);
+
+        assertEquals(ids(95, NUM_DOCUMENTS), read(iterator));
+        for (SolrParams params : solrClient.requests) {
+            assertNull(params.get("start"));
+        }
+    }
+
+    @Test
+    public void testPrefetchNextPage() throws Exception {
+        PagedSolrClient solrClient = new PagedSolrClient();
+        SolrVariantSearchIterator iterator = new SolrVariantSearchIterator(solrClient, new SolrQuery("*:*"), 10, -1);
+
+        assertTrue(iterator.hasNext());
+        assertEquals("v000", iterator.next().getId());
+        // The second page is requested before consuming the first one
+        assertTrue(solrClient.secondPage.await(10, TimeUnit.SECONDS));
+        iterator.close();
+        assertTrue(iterator.isReleased());
+    }
+
+    @Test
+    public void testFetchError() throws Exception {
+        PagedSolrClient solrClient = new PagedSolrClient();
+        solrClient.failOnPage = 2;
+        SolrVariantSearchIterator iterator = new SolrVariantSearchIterator(solrClient, new SolrQuery("*:*"), 10, -1);
+
+        List<String> ids = new ArrayList<>();
+        try {
+            while (iterator.hasNext()) {
+                ids.add(iterator.next().getId());
+            }
+            fail("Expected an exception");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(ids(0, 10), ids);
+        assertTrue(iterator.isReleased());
+    }
+
+    private static List<String> read(SolrVariantSearchIterator iterator) {
+        List<String> ids = new ArrayList<>();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next().getId());
+        }
+        assertFalse(iterator.hasNext());
+        return ids;
+    }
+
+    private static List<String> ids(int from, int to) {
+        List<String> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add(id(i));
+        }
+        return ids;
+    }
+
+    private static String id(int i) {
+        return String.format("v%03d", i);
+    }
+
+    /**
+     * Fake SolrClient serving {@link #NUM_DOCUMENTS} documents sorted by id, paginated with the cursorMark.
+     */
+    private static class PagedSolrClient extends SolrClient {
+        private final List<SolrParams> requests = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch secondPage = new CountDownLatch(1);
+        private int failOnPage = -1;
+
+        @Override
+        public NamedList<Object> request(SolrRequest request, String collection) throws IOException {
+            SolrParams params = request.getParams();
+            requests.add(params);
+            if (requests.size() == 2) {
+                secondPage.countDown();
+            }
+            if (requests.size() == failOnPage) {
+                throw new IOException("Fail on page " + failOnPage);
+            }
+            String cursorMark = params.get(CursorMarkParams.CURSOR_MARK_PARAM);
+            int rows = params.getInt("rows");
+            int from = cursorMark.equals(CursorMarkParams.CURSOR_MARK_START) ? 0 : Integer.parseInt(cursorMark.substring(1)) + 1;
+            int to = Math.min(NUM_DOCUMENTS, from + rows);
+
+            SolrDocumentList documents = new SolrDocumentList();
+            for (int i = from; i < to; i++) {
+                SolrDocument document = new SolrDocument();
+                document.setField("id", id(i));
+                documents.add(document);
+            }
+            documents.setNumFound(NUM_DOCUMENTS);
+
+            NamedList<Object> response = new NamedList<>();
+            response.add("response", documents);
+            response.add(CursorMarkParams.CURSOR_MARK_NEXT, documents.isEmpty() ? cursorMark : id(to - 1));
+            return response;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
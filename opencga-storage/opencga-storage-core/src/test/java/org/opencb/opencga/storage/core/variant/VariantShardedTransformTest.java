@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant;
+
+import org.junit.Test;
+import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.storage.core.StoragePipelineResult;
+import org.opencb.opencga.storage.core.config.StorageConfiguration;
+import org.opencb.opencga.storage.core.variant.dummy.DummyStudyConfigurationManager;
+import org.opencb.opencga.storage.core.variant.dummy.DummyVariantStorageEngine;
+import org.opencb.opencga.storage.core.variant.dummy.DummyVariantStoragePipeline;
+import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
+import org.opencb.opencga.storage.core.variant.io.VariantTransformManifest;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created on 18/10/26.
+ */
+public class VariantShardedTransformTest extends VariantStorageBaseTest {
+
+    private static final String MAX = String.valueOf(Integer.MAX_VALUE);
+
+    @Override
+    public VariantStorageEngine getVariantStorageManager() throws Exception {
+        try (InputStream is = DummyVariantStorageEngine.class.getClassLoader().getResourceAsStream("storage-configuration.yml")) {
+            StorageConfiguration storageConfiguration = StorageConfiguration.load(is);
+            DummyVariantStorageEngine storageManager = new DummyVariantStorageEngine();
+            storageManager.setConfiguration(storageConfiguration, DummyVariantStorageEngine.STORAGE_ENGINE_ID);
+            return storageManager;
+        }
+    }
+
+    @Override
+    public void clearDB(String dbName) throws Exception {
+        DummyStudyConfigurationManager.clear();
+    }
+
+    @Test
+    public void getTransformShardsTest() throws Exception {
+        Path input = Paths.get(writeInput(newOutputUri()));
+        DummyVariantStoragePipeline pipeline = ((DummyVariantStorageEngine) variantStorageManager).newStoragePipeline(true);
+
+        // One shard per chromosome, sorted as in the header. Chromosomes without contig line go at the end
+        pipeline.init(new ObjectMap());
+        assertEquals(Arrays.asList("1:1-" + MAX, "2:1-" + MAX, "3:1-" + MAX), toString(pipeline.getTransformShards(input)));
+
+        // The last window of each chromosome is open-ended. Chromosomes shorter than the window are not split
+        pipeline.init(new ObjectMap(VariantStorageEngine.Options.TRANSFORM_SHARD_WINDOW_SIZE.key(), 100));
+        assertEquals(Arrays.asList("1:1-100", "1:101-200", "1:201-" + MAX, "2:1-" + MAX, "3:1-" + MAX),
+                toString(pipeline.getTransformShards(input)));
+
+        // Open-ended even if the length is a multiple of the window size
+        pipeline.init(new ObjectMap(VariantStorageEngine.Options.TRANSFORM_SHARD_WINDOW_SIZE.key(), 125));
+        assertEquals(Arrays.asList("1:1-125", "1:126-" + MAX, "2:1-" + MAX, "3:1-" + MAX),
+                toString(pipeline.getTransformShards(input)));
+    }
+
+    @Test
+    public void getTransformShardsWithoutContigsTest() throws Exception {
+        // Chromosomes not described in the header keep the order of the file, not the lexicographical order
+        List<String> lines = new ArrayList<>();
+        lines.add("##fileformat=VCFv4.1");
+        lines.add("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+        lines.add("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\tS2");
+        for (String chromosome : Arrays.asList("X", "10", "2")) {
+            lines.add(line(chromosome, 5));
+            lines.add(line(chromosome, 50));
+        }
+        Path input = writeTabixIndexedVcf(lines, Paths.get(newOutputUri()).resolve("file.vcf.gz"));
+        DummyVariantStoragePipeline pipeline = ((DummyVariantStorageEngine) variantStorageManager).newStoragePipeline(true);
+
+        pipeline.init(new ObjectMap());
+        assertEquals(Arrays.asList("X:1-" + MAX, "10:1-" + MAX, "2:1-" + MAX), toString(pipeline.getTransformShards(input)));
+    }
+
+    @Test
+    public void shardedTransformAvroTest() throws Exception {
+        shardedTransformTest("avro");
+    }
+
+    @Test
+    public void shardedTransformJsonTest() throws Exception {
+        shardedTransformTest("json");
+    }
+
+    private void shardedTransformTest(String format) throws Exception {
+        URI input = writeInput(newOutputUri(1, outputUri));
+
+        ObjectMap params = new ObjectMap()
+                .append(VariantStorageEngine.Options.ISOLATE_FILE_FROM_STUDY_CONFIGURATION.key(), true)
+                .append(VariantStorageEngine.Options.TRANSFORM_FORMAT.key(), format)
+                .append(VariantStorageEngine.Options.TRANSFORM_THREADS.key(), 2)
+                .append(VariantStorageEngine.Options.TRANSFORM_SHARDED.key(), false);
+        StoragePipelineResult single = runETL(variantStorageManager, input, newOutputUri(1, outputUri), params, true, true, false);
+
+        params.append(VariantStorageEngine.Options.TRANSFORM_SHARDED.key(), true)
+                .append(VariantStorageEngine.Options.TRANSFORM_SHARD_WINDOW_SIZE.key(), 100);
+        StoragePipelineResult sharded = runETL(variantStorageManager, input, newOutputUri(1, outputUri), params, true, true, false);
+
+        Path manifestPath = Paths.get(sharded.getTransformResult());
+        assertTrue(VariantReaderUtils.isManifest(manifestPath.toString()));
+        VariantTransformManifest manifest = VariantTransformManifest.read(manifestPath);
+        assertEquals(Arrays.asList(4L, 4L, 3L, 2L, 1L),
+                manifest.getParts().stream().map(VariantTransformManifest.Part::getNumLines).collect(Collectors.toList()));
+
+        // Same variants, in the same order, and same stats as the single stream transform
+        VariantSource singleSource = new VariantSource("file.vcf.gz", "6", "", "");
+        VariantSource shardedSource = new VariantSource("file.vcf.gz", "6", "", "");
+        List<String> expected = readVariants(Paths.get(single.getTransformResult()), singleSource);
+        assertEquals(14, expected.size());
+        assertEquals(expected, readVariants(manifestPath, shardedSource));
+        assertEquals(14, singleSource.getStats().getNumRecords());
+        assertEquals(singleSource.getStats().getNumRecords(), shardedSource.getStats().getNumRecords());
+    }
+
+    /**
+     * Write a small bgzipped and tabix indexed VCF. Chromosome 1 has 11 variants, and a deletion at 98 overlapping the
+     * position 101. Chromosome 3 is not described in the header.
+     */
+    private static URI writeInput(URI outdir) throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("##fileformat=VCFv4.1");
+        lines.add("##contig=<ID=1,length=250>");
+        lines.add("##contig=<ID=2,length=100>");
+        lines.add("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+        lines.add("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\tS2");
+        for (int position : new int[]{10, 98, 99, 100, 101, 150, 199, 200, 201, 250, 260}) {
+            lines.add(line("1", position));
+        }
+        lines.add(line("2", 5));
+        lines.add(line("2", 50));
+        lines.add(line("3", 7));
+        return writeTabixIndexedVcf(lines, Paths.get(outdir).resolve("file.vcf.gz")).toUri();
+    }
+
+    private static String line(String chromosome, int position) {
+        String ref = position == 98 ? "ACGTA" : "A";
+        String alt = position == 98 ? "A" : "C";
+        return chromosome + "\t" + position + "\t.\t" + ref + "\t" + alt + "\t.\tPASS\t.\tGT\t0/1\t1/1";
+    }
+
+    private static List<String> readVariants(Path path, VariantSource source) throws Exception {
+        VariantReader reader = VariantReaderUtils.getVariantReader(path, source);
+        reader.open();
+        reader.pre();
+        List<String> variants = new ArrayList<>();
+        List<Variant> batch;
+        while (!(batch = reader.read(3)).isEmpty()) {
+            for (Variant variant : batch) {
+                variants.add(variant.toJson());
+            }
+        }
+        reader.post();
+        reader.close();
+        return variants;
+    }
+
+    private static List<String> toString(List<Region> regions) {
+        return regions.stream().map(r -> r.getChromosome() + ":" + r.getStart() + "-" + r.getEnd()).collect(Collectors.toList());
+    }
+}
@@ -16,6 +16,11 @@
 
 package org.opencb.opencga.storage.core.variant;
 
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.variant.vcf.VCFCodec;
 import org.apache.commons.lang.RandomStringUtils;
 import org.junit.*;
 import org.junit.rules.ExpectedException;
@@ -33,7 +38,7 @@ import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManag
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
+import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
@@ -42,6 +47,7 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 import java.util.stream.Collectors;
 
 /**
@@ -320,6 +326,47 @@ public abstract class VariantStorageBaseTest extends GenericTest implements Vari
         }
     }
 
+    /**
+     * Write the lines as a bgzipped file, and index it with tabix.
+     *
+     * @param lines     VCF lines, including the header
+     * @param output    Output file. The index is written at output + ".tbi"
+     * @return          Output file
+     * @throws IOException if the file can not be written or indexed
+     */
+    public static Path writeTabixIndexedVcf(List<String> lines, Path output) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new BlockCompressedOutputStream(output.toFile()))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        TabixIndex index = IndexFactory.createTabixIndex(output.toFile(), new VCFCodec(), TabixFormat.VCF, null);
+        index.writeBasedOnFeatureFile(output.toFile());
+        return output;
+    }
+
+    /**
+     * Copy a sorted gzipped VCF as a bgzipped and tabix indexed file, with the same file name.
+     *
+     * @param input     Gzipped VCF file
+     * @param outdir    Output directory
+     * @return          Copy of the file
+     * @throws IOException if the file can not be copied or indexed
+     */
+    public static URI tabixIndexedCopy(URI input, URI outdir) throws IOException {
+        Path inputPath = Paths.get(input);
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(inputPath
+                .toFile()))))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return writeTabixIndexedVcf(lines, Paths.get(outdir).resolve(inputPath.getFileName())).toUri();
+    }
+
     protected static StudyConfiguration newStudyConfiguration() {
         return new StudyConfiguration(STUDY_ID, STUDY_NAME);
     }
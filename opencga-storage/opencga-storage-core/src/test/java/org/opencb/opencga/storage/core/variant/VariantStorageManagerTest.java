@@ -433,6 +433,31 @@ public abstract class VariantStorageManagerTest extends VariantStorageBaseTest {
 
     }
 
+    /**
+     * Transform reading the lines as bytes.
+     * Lines decoded by the transform threads.
+     **/
+    @Test
+    public void byteLineReaderIndex() throws Exception {
+        clearDB(DB_NAME);
+        ObjectMap params = new ObjectMap();
+        StudyConfiguration studyConfiguration = newStudyConfiguration();
+        params.put(VariantStorageEngine.Options.STUDY_ID.key(), studyConfiguration.getStudyId());
+        params.put(VariantStorageEngine.Options.STUDY_NAME.key(), studyConfiguration.getStudyName());
+        params.put(VariantStorageEngine.Options.FILE_ID.key(), 6);
+        params.put(VariantStorageEngine.Options.TRANSFORM_BYTE_LINE_READER.key(), true);
+        params.put(VariantStorageEngine.Options.TRANSFORM_THREADS.key(), 4);
+        params.put(VariantStorageEngine.Options.DB_NAME.key(), DB_NAME);
+        StoragePipelineResult etlResult = runETL(variantStorageManager, params, true, true, true);
+
+        VariantDBAdaptor dbAdaptor = getVariantStorageManager().getDBAdaptor(DB_NAME);
+        studyConfiguration = dbAdaptor.getStudyConfigurationManager().getStudyConfiguration(studyConfiguration.getStudyId(), null).first();
+
+        assertTrue(studyConfiguration.getIndexedFiles().contains(6));
+        VariantSource source = checkTransformedVariants(etlResult.getTransformResult(), studyConfiguration);
+        checkLoadedVariants(dbAdaptor, studyConfiguration, true, false, getExpectedNumLoadedVariants(source));
+    }
+
     @Test
     public void indexWithOtherFields() throws Exception {
         //GT:DS:GL
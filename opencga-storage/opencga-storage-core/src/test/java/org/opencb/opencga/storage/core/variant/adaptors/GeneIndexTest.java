@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.adaptors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.core.Region;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class GeneIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void loadGtf() throws Exception {
+        Path gtf = temporaryFolder.getRoot().toPath().resolve("genes.gtf");
+        Files.write(gtf, Arrays.asList(
+                "#!genome-build GRCh37",
+                "chr1\tHAVANA\tgene\t11869\t14409\t.\t+\t.\tgene_id \"ENSG00000223972\"; gene_name \"DDX11L1\";",
+                "chr1\tHAVANA\ttranscript\t11869\t14409\t.\t+\t.\tgene_id \"ENSG00000223972\"; gene_name \"DDX11L1\";",
+                "2\tHAVANA\tgene\t1000\t2000\t.\t-\t.\tgene_id \"ENSG00000000001\"; gene_name \"GENE2\";"));
+
+        GeneIndex index = GeneIndex.load(gtf);
+
+        assertEquals(new Region("1", 11869, 14409), index.getRegion("DDX11L1"));
+        assertEquals(new Region("1", 11869, 14409), index.getRegion("ENSG00000223972"));
+        assertEquals(new Region("2", 1000, 2000), index.getRegion("GENE2"));
+        assertNull(index.getRegion("BRCA2"));
+        assertNull(index.getGenesByGo("GO:0006915"));
+        assertSame(index, GeneIndex.load(gtf));
+    }
+
+    @Test
+    public void loadCellBaseGenes() throws Exception {
+        Path json = temporaryFolder.getRoot().toPath().resolve("genes.json");
+        Files.write(json, Arrays.asList(
+                "{\"id\":\"ENSG1\",\"name\":\"GENE1\",\"chromosome\":\"1\",\"start\":100,\"end\":200,"
+                        + "\"transcripts\":[{\"xrefs\":[{\"id\":\"GO:0006915\",\"dbName\":\"go\"},{\"id\":\"X1\",\"dbName\":\"other\"}]}],"
+                        + "\"annotation\":{\"expression\":[{\"factorValue\":\"Liver\",\"expression\":\"UP\"}]}}",
+                "{\"id\":\"ENSG2\",\"name\":\"GENE2\",\"chromosome\":\"2\",\"start\":300,\"end\":400,"
+                        + "\"transcripts\":[{\"xrefs\":[{\"id\":\"GO:0006915\",\"dbName\":\"go\"}]}],"
+                        + "\"annotation\":{\"expression\":[{\"factorValue\":\"brain\",\"expression\":\"DOWN\"}]}}"));
+
+        GeneIndex index = GeneIndex.load(json);
+
+        assertEquals(new Region("2", 300, 400), index.getRegion("GENE2"));
+        assertEquals(new HashSet<>(Arrays.asList("GENE1", "GENE2")), index.getGenesByGo("GO:0006915"));
+        assertNull(index.getGenesByGo("X1"));
+        assertEquals(Collections.singleton("GENE1"), index.getGenesByTissue("liver"));
+        assertEquals(Collections.singleton("GENE2"), index.getGenesByTissue("Brain"));
+    }
+
+}
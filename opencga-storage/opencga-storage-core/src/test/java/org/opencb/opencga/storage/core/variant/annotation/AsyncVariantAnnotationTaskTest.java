@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.opencga.storage.core.variant.annotation.annotators.VariantAnnotator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class AsyncVariantAnnotationTaskTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void annotateInOrder() throws Exception {
+        StubVariantAnnotator annotator = new StubVariantAnnotator(20, 0);
+        AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(annotator, executor, 4, 10, 1000, 0, 10);
+
+        List<Variant> variants = createVariants(200);
+        List<VariantAnnotation> annotations = task.apply(variants);
+
+        assertEquals(variants.size(), annotations.size());
+        for (int i = 0; i < variants.size(); i++) {
+            assertEquals(variants.get(i).getStart(), annotations.get(i).getStart());
+        }
+        assertTrue(annotator.maxConcurrentRequests.get() > 1);
+        assertTrue(annotator.maxConcurrentRequests.get() <= 4);
+    }
+
+    @Test
+    public void retryFailedRequests() throws Exception {
+        StubVariantAnnotator annotator = new StubVariantAnnotator(1, 3);
+        AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(annotator, executor, 2, 10, 1000, 5, 1);
+
+        List<Variant> variants = createVariants(50);
+        List<VariantAnnotation> annotations = task.apply(variants);
+
+        assertEquals(variants.size(), annotations.size());
+        assertEquals(3, annotator.failures.get());
+    }
+
+    @Test(expected = VariantAnnotatorException.class)
+    public void failAfterMaxRetries() throws Exception {
+        StubVariantAnnotator annotator = new StubVariantAnnotator(1, 1000);
+        AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(annotator, executor, 2, 10, 1000, 2, 1);
+
+        task.apply(createVariants(50));
+    }
+
+    @Test
+    public void adaptRequestSize() throws Exception {
+        AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(new StubVariantAnnotator(1, 0), executor, 2, 50, 1000, 0, 1);
+        task.apply(createVariants(500));
+        // Fast requests
+        assertTrue(task.getRequestSize() > 50);
+        assertTrue(task.getRequestSize() <= 100);
+
+        task = new AsyncVariantAnnotationTask(new StubVariantAnnotator(20, 0), executor, 2, 50, 5, 0, 1);
+        task.apply(createVariants(500));
+        // Slow requests
+        assertEquals(AsyncVariantAnnotationTask.MIN_REQUEST_SIZE, task.getRequestSize());
+    }
+
+    private static List<Variant> createVariants(int numVariants) {
+        List<Variant> variants = new ArrayList<>(numVariants);
+        for (int i = 0; i < numVariants; i++) {
+            variants.add(new Variant("1", 1000 + i, 1000 + i, "A", "C"));
+        }
+        return variants;
+    }
+
+    /**
+     * Annotator with a fixed latency, failing the first requests.
+     */
+    private static class StubVariantAnnotator extends VariantAnnotator {
+        private final long latency;
+        private final int numFailures;
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger concurrentRequests = new AtomicInteger();
+        private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+        StubVariantAnnotator(long latency, int numFailures) throws VariantAnnotatorException {
+            super(null, null);
+            this.latency = latency;
+            this.numFailures = numFailures;
+        }
+
+        @Override
+        public List<VariantAnnotation> annotate(List<Variant> variants) throws VariantAnnotatorException {
+            int concurrent = concurrentRequests.incrementAndGet();
+            maxConcurrentRequests.accumulateAndGet(concurrent, Math::max);
+            try {
+                Thread.sleep(latency + ThreadLocalRandom.current().nextInt(5));
+                if (failures.getAndUpdate(f -> f < numFailures ? f + 1 : f) < numFailures) {
+                    throw new VariantAnnotatorException("Service unavailable");
+                }
+                List<VariantAnnotation> annotations = new ArrayList<>(variants.size());
+                for (Variant variant : variants) {
+                    VariantAnnotation annotation = new VariantAnnotation();
+                    annotation.setChromosome(variant.getChromosome());
+                    annotation.setStart(variant.getStart());
+                    annotation.setReference(variant.getReference());
+                    annotation.setAlternate(variant.getAlternate());
+                    annotations.add(annotation);
+                }
+                return annotations;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new VariantAnnotatorException("Interrupted", e);
+            } finally {
+                concurrentRequests.decrementAndGet();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation.annotators;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.storage.core.config.StorageConfiguration;
+import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager;
+import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotatorException;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 18/10/26.
+ */
+public class VariantAnnotationCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void putAndGet() throws Exception {
+        Path dir = temporaryFolder.getRoot().toPath();
+        VariantAnnotationCache cache = new VariantAnnotationCache(dir, "v4_hsapiens_GRCh37");
+
+        List<Variant> variants = Arrays.asList(new Variant("1:1000:A:C"), new Variant("1:2000:A:T"), new Variant("2:3000:G:-"));
+        List<Variant> misses = new ArrayList<>();
+        assertEquals(0, cache.getAll(variants, misses).size());
+        assertEquals(variants, misses);
+
+        cache.putAll(Arrays.asList(annotation("1", 1000, "A", "C", "g1"), annotation("2", 3000, "G", "-", "g2")));
+        misses.clear();
+        List<VariantAnnotation> annotations = cache.getAll(variants, misses);
+        assertEquals(2, annotations.size());
+        assertEquals("g1", annotations.get(0).getId());
+        assertEquals("g2", annotations.get(1).getId());
+        assertEquals(Arrays.asList(variants.get(1)), misses);
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+
+        // Reopen the cache
+        cache = new VariantAnnotationCache(dir, "v4_hsapiens_GRCh37");
+        assertEquals(2, cache.size());
+        misses.clear();
+        assertEquals(2, cache.getAll(variants, misses).size());
+
+        // Other versions do not share the annotations
+        assertEquals(0, new VariantAnnotationCache(dir, "v5_hsapiens_GRCh38").size());
+    }
+
+    @Test
+    public void truncateIncompleteRecord() throws Exception {
+        Path dir = temporaryFolder.getRoot().toPath();
+        VariantAnnotationCache cache = new VariantAnnotationCache(dir, "v4");
+        cache.putAll(Arrays.asList(annotation("1", 1000, "A", "C", "g1")));
+        Path segment = cache.getDir().resolve("segment-00000.bin");
+        long size = Files.size(segment);
+        try (OutputStream os = Files.newOutputStream(segment, StandardOpenOption.APPEND)) {
+            os.write(new byte[]{0, 10, 'x'});
+        }
+
+        cache = new VariantAnnotationCache(dir, "v4");
+        assertEquals(1, cache.size());
+        assertEquals(size, Files.size(segment));
+        cache.putAll(Arrays.asList(annotation("1", 2000, "A", "C", "g2")));
+        cache = new VariantAnnotationCache(dir, "v4");
+        assertEquals(2, cache.size());
+        List<VariantAnnotation> annotations = cache.getAll(Arrays.asList(new Variant("1:2000:A:C")), new ArrayList<>());
+        assertEquals("g2", annotations.get(0).getId());
+    }
+
+    @Test
+    public void longKeys() throws Exception {
+        // Keys longer than 64KB, which can not be written with writeUTF
+        char[] chars = new char[70000];
+        Arrays.fill(chars, 'A');
+        String reference = new String(chars);
+        Path dir = temporaryFolder.getRoot().toPath();
+        VariantAnnotationCache cache = new VariantAnnotationCache(dir, "v4");
+        cache.putAll(Arrays.asList(annotation("1", 1000, reference, "C", "g1"), annotation("1", 2000, "A", "C", "g2")));
+
+        cache = new VariantAnnotationCache(dir, "v4");
+        assertEquals(2, cache.size());
+        List<VariantAnnotation> annotations = cache.getAll(Arrays.asList(new Variant("1", 1000, reference, "C"),
+                new Variant("1:2000:A:C")), new ArrayList<>());
+        assertEquals(Arrays.asList("g1", "g2"), annotations.stream().map(VariantAnnotation::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void maxSize() throws Exception {
+        Path dir = temporaryFolder.getRoot().toPath();
+        VariantAnnotationCache cache = new VariantAnnotationCache(dir, "v4", 2);
+        cache.putAll(Arrays.asList(annotation("1", 1000, "A", "C", "g1"), annotation("1", 2000, "A", "C", "g2"),
+                annotation("1", 3000, "A", "C", "g3")));
+        assertEquals(2, cache.size());
+        cache.putAll(Arrays.asList(annotation("1", 4000, "A", "C", "g4")));
+        assertEquals(2, cache.size());
+
+        // Annotations beyond the limit are not indexed when opening the cache
+        cache = new VariantAnnotationCache(dir, "v4", 1);
+        assertEquals(1, cache.size());
+        cache = new VariantAnnotationCache(dir, "v4");
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void sharedDirectory() throws Exception {
+        // Two caches on the same directory append to the same segment without overwriting each other
+        Path dir = temporaryFolder.getRoot().toPath();
+        VariantAnnotationCache cache1 = new VariantAnnotationCache(dir, "v4");
+        VariantAnnotationCache cache2 = new VariantAnnotationCache(dir, "v4");
+        cache1.putAll(Arrays.asList(annotation("1", 1000, "A", "C", "g1")));
+        cache2.putAll(Arrays.asList(annotation("1", 2000, "A", "C", "g2")));
+        cache1.putAll(Arrays.asList(annotation("1", 3000, "A", "C", "g3")));
+        assertEquals(Arrays.asList("g3"), cache1.getAll(Arrays.asList(new Variant("1:3000:A:C")), new ArrayList<>())
+                .stream().map(VariantAnnotation::getId).collect(Collectors.toList()));
+
+        VariantAnnotationCache cache = new VariantAnnotationCache(dir, "v4");
+        assertEquals(3, cache.size());
+        List<VariantAnnotation> annotations = cache.getAll(Arrays.asList(new Variant("1:1000:A:C"), new Variant("1:2000:A:C"),
+                new Variant("1:3000:A:C")), new ArrayList<>());
+        assertEquals(Arrays.asList("g1", "g2", "g3"), annotations.stream().map(VariantAnnotation::getId).collect(Collectors.toList()));
+    }
+
+    @Test(expected = VariantAnnotatorException.class)
+    public void missingCacheDir() throws Exception {
+        new FakeAnnotator(new ObjectMap()
+                .append(VariantAnnotationManager.SPECIES, "hsapiens")
+                .append(VariantAnnotationManager.ASSEMBLY, "GRCh37")
+                .append(VariantAnnotationManager.ANNOTATION_CACHE, true));
+    }
+
+    @Test
+    public void annotateInInputOrder() throws Exception {
+        ObjectMap options = new ObjectMap()
+                .append(VariantAnnotationManager.SPECIES, "hsapiens")
+                .append(VariantAnnotationManager.ASSEMBLY, "GRCh37")
+                .append(VariantAnnotationManager.ANNOTATION_CACHE, true)
+                .append(VariantAnnotationManager.ANNOTATION_CACHE_DIR, temporaryFolder.getRoot().getAbsolutePath());
+        FakeAnnotator annotator = new FakeAnnotator(options);
+
+        List<Variant> variants = Arrays.asList(new Variant("1:1000:A:C"), new Variant("1:2000:A:T"), new Variant("2:3000:G:-"),
+                new Variant("2:4000:G:A"));
+        annotator.annotate(Arrays.asList(variants.get(1), variants.get(3)));
+        assertEquals(2, annotator.getCache().size());
+
+        // Cache hits and misses are interleaved, as the input variants
+        List<VariantAnnotation> annotations = annotator.annotate(variants);
+        assertEquals(Arrays.asList(variants.get(0), variants.get(2)), annotator.annotated);
+        assertEquals(Arrays.asList("1:1000", "1:2000", "2:3000", "2:4000"),
+                annotations.stream().map(VariantAnnotation::getId).collect(Collectors.toList()));
+        assertEquals(2, annotator.getCache().getHits());
+    }
+
+    private static class FakeAnnotator extends AbstractCellBaseVariantAnnotator {
+        private List<Variant> annotated;
+
+        FakeAnnotator(ObjectMap options) throws VariantAnnotatorException {
+            super(new StorageConfiguration(), options);
+        }
+
+        @Override
+        protected List<VariantAnnotation> annotateFiltered(List<Variant> variants) {
+            annotated = variants;
+            return variants.stream()
+                    .map(v -> annotation(v.getChromosome(), v.getStart(), v.getReference(), v.getAlternate(),
+                            v.getChromosome() + ":" + v.getStart()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static VariantAnnotation annotation(String chromosome, int start, String reference, String alternate, String id) {
+        VariantAnnotation annotation = new VariantAnnotation();
+        annotation.setChromosome(chromosome);
+        annotation.setStart(start);
+        annotation.setReference(reference);
+        annotation.setAlternate(alternate);
+        annotation.setId(id);
+        return annotation;
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class MultiPartVariantReaderTest {
+
+    private final Map<Path, List<Variant>> partVariants = new LinkedHashMap<>();
+    private final List<FakeReader> readers = new ArrayList<>();
+
+    @Test
+    public void testReadParts() throws Exception {
+        addPart("part-1", new Variant("1", 10, "A", "C"), new Variant("1", 20, "A", "C"), new Variant("1", 30, "A", "C"));
+        // Empty parts are skipped
+        addPart("part-2");
+        addPart("part-3", new Variant("2", 10, "A", "C"));
+        addPart("part-4", new Variant("3", 10, "A", "C"), new Variant("3", 20, "A", "C"));
+
+        MultiPartVariantReader reader = newReader();
+        reader.open();
+        reader.pre();
+
+        List<String> read = new ArrayList<>();
+        List<Variant> batch;
+        while (!(batch = reader.read(2)).isEmpty()) {
+            // Batches never mix variants from two parts
+            assertEquals(1, batch.stream().map(Variant::getChromosome).distinct().count());
+            for (Variant variant : batch) {
+                read.add(variant.toString());
+            }
+        }
+        reader.post();
+        reader.close();
+
+        assertEquals(Arrays.asList("1:10:A:C", "1:20:A:C", "1:30:A:C", "2:10:A:C", "3:10:A:C", "3:20:A:C"), read);
+        // Each part is opened once, in order, and closed when exhausted
+        assertEquals(4, readers.size());
+        for (int i = 0; i < readers.size(); i++) {
+            assertEquals(Paths.get("part-" + (i + 1)), readers.get(i).path);
+            assertTrue(readers.get(i).closed);
+        }
+    }
+
+    @Test
+    public void testOnlyOnePartOpen() throws Exception {
+        addPart("part-1", new Variant("1", 10, "A", "C"), new Variant("1", 20, "A", "C"));
+        addPart("part-2", new Variant("2", 10, "A", "C"), new Variant("2", 20, "A", "C"));
+
+        MultiPartVariantReader reader = newReader();
+        reader.open();
+        reader.pre();
+
+        assertEquals(2, reader.read(2).size());
+        assertEquals(1, readers.size());
+        assertFalse(readers.get(0).closed);
+
+        // Moving to the next part closes the previous one
+        assertEquals(2, reader.read(2).size());
+        assertEquals(2, readers.size());
+        assertTrue(readers.get(0).closed);
+        assertFalse(readers.get(1).closed);
+
+        // Closing the reader closes the current part
+        reader.post();
+        reader.close();
+        assertTrue(readers.get(1).closed);
+    }
+
+    @Test
+    public void testNoParts() throws Exception {
+        MultiPartVariantReader reader = newReader();
+        reader.open();
+        reader.pre();
+        assertTrue(reader.read(10).isEmpty());
+        reader.post();
+        reader.close();
+        assertTrue(readers.isEmpty());
+    }
+
+    private void addPart(String name, Variant... variants) {
+        partVariants.put(Paths.get(name), Arrays.asList(variants));
+    }
+
+    private MultiPartVariantReader newReader() {
+        return new MultiPartVariantReader(new ArrayList<>(partVariants.keySet()), null, null, path -> {
+            FakeReader reader = new FakeReader(path, partVariants.get(path));
+            readers.add(reader);
+            return reader;
+        });
+    }
+
+    private static class FakeReader extends AbstractVariantReader {
+        private final Path path;
+        private final Iterator<Variant> iterator;
+        private boolean opened;
+        private boolean closed;
+
+        FakeReader(Path path, List<Variant> variants) {
+            super(Collections.emptyMap());
+            this.path = path;
+            this.iterator = variants.iterator();
+        }
+
+        @Override
+        public boolean open() {
+            opened = true;
+            return true;
+        }
+
+        @Override
+        public boolean close() {
+            closed = true;
+            return true;
+        }
+
+        @Override
+        public boolean post() {
+            return true;
+        }
+
+        @Override
+        public List<Variant> read() {
+            return read(1);
+        }
+
+        @Override
+        public List<Variant> read(int batchSize) {
+            assertTrue(opened);
+            assertFalse(closed);
+            List<Variant> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && iterator.hasNext()) {
+                batch.add(iterator.next());
+            }
+            return batch;
+        }
+    }
+}
@@ -80,5 +80,17 @@ public class VariantReaderUtilsTest {
         assertEquals(false, VariantReaderUtils.isMetaFile("file.vcf.file.proto"));
     }
 
+    @Test
+    public void manifestFile() {
+        assertTrue(VariantReaderUtils.isTransformedVariants("file.vcf.gz.variants.avro.gz.manifest"));
+        assertTrue(VariantReaderUtils.isTransformedVariants("file.vcf.gz.variants.json.gz.manifest"));
+        assertTrue(VariantReaderUtils.isManifest("file.vcf.gz.variants.avro.gz.manifest"));
+        assertFalse(VariantReaderUtils.isManifest("file.vcf.gz.variants.avro.gz"));
+        assertTrue(VariantReaderUtils.isAvro("file.vcf.gz.variants.avro.gz.manifest"));
+        assertTrue(VariantReaderUtils.isJson("file.vcf.gz.variants.json.manifest"));
+        assertEquals("file.vcf.gz.file.json.gz", VariantReaderUtils.getMetaFromTransformedFile("file.vcf.gz.variants.avro.gz.manifest"));
+        assertEquals("file.vcf.gz", VariantReaderUtils.getOriginalFromTransformedFile("file.vcf.gz.variants.avro.gz.manifest"));
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 18/10/26.
+ */
+public class VariantTransformManifestTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteRead() throws Exception {
+        VariantTransformManifest manifest = new VariantTransformManifest("avro", "file.vcf.gz.file.json.gz");
+        manifest.getParts().add(new VariantTransformManifest.Part("1:1-100", "file.vcf.gz.variants.part-00001.avro.gz", 4));
+        manifest.getParts().add(new VariantTransformManifest.Part("1:101-2147483647", "file.vcf.gz.variants.part-00002.avro.gz", 7));
+        manifest.getParts().add(new VariantTransformManifest.Part("2", "file.vcf.gz.variants.part-00003.avro.gz", 0));
+
+        Path path = temporaryFolder.getRoot().toPath().resolve("file.vcf.gz.variants.avro.gz" + VariantReaderUtils.MANIFEST_EXTENSION);
+        manifest.write(path);
+        VariantTransformManifest read = VariantTransformManifest.read(path);
+
+        assertEquals("avro", read.getFormat());
+        assertEquals("file.vcf.gz.file.json.gz", read.getMetadataFile());
+        assertEquals(3, read.getParts().size());
+        for (int i = 0; i < manifest.getParts().size(); i++) {
+            VariantTransformManifest.Part expected = manifest.getParts().get(i);
+            VariantTransformManifest.Part actual = read.getParts().get(i);
+            assertEquals(expected.getRegion(), actual.getRegion());
+            assertEquals(expected.getFile(), actual.getFile());
+            assertEquals(expected.getNumLines(), actual.getNumLines());
+        }
+
+        // Parts are resolved next to the manifest, in order
+        assertEquals(Arrays.asList(
+                path.resolveSibling("file.vcf.gz.variants.part-00001.avro.gz"),
+                path.resolveSibling("file.vcf.gz.variants.part-00002.avro.gz"),
+                path.resolveSibling("file.vcf.gz.variants.part-00003.avro.gz")),
+                read.getPartPaths(path));
+    }
+}
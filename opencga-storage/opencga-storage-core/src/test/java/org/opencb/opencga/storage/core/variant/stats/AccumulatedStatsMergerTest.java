@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.FileEntry;
+import org.opencb.biodata.models.variant.stats.VariantSingleSampleStats;
+import org.opencb.biodata.models.variant.stats.VariantSourceStats;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Created on 18/10/26.
+ */
+public class AccumulatedStatsMergerTest {
+
+    @Test
+    public void mergeSourceStats() {
+        List<Variant> variants = createVariants(40);
+        List<VariantSourceStats> partialStats = new ArrayList<>();
+        VariantSourceStats expected = new VariantSourceStats(null, "1");
+        expected.updateFileStats(variants);
+        expected.updateSampleStats(variants, null);
+        for (int i = 0; i < variants.size(); i += 10) {
+            VariantSourceStats stats = new VariantSourceStats(null, "1");
+            stats.updateFileStats(variants.subList(i, i + 10));
+            stats.updateSampleStats(variants.subList(i, i + 10), null);
+            partialStats.add(stats);
+        }
+
+        VariantSourceStats merged = AccumulatedStatsMerger.merge("1", partialStats);
+
+        assertEquals(expected.getFileStats().getNumRecords(), merged.getFileStats().getNumRecords());
+        assertEquals(expected.getFileStats().getVariantTypeCounts(), merged.getFileStats().getVariantTypeCounts());
+        assertEquals(expected.getFileStats().getChromosomeCounts(), merged.getFileStats().getChromosomeCounts());
+        // Qualities are 10, 11, ..., 49
+        assertEquals(29.5, expected.getFileStats().getMeanQuality(), 0.0001);
+        assertEquals(expected.getFileStats().getMeanQuality(), merged.getFileStats().getMeanQuality(), 0.0001);
+
+        assertEquals(5, expected.getSamplesStats().size());
+        assertEquals(expected.getSamplesStats().keySet(), merged.getSamplesStats().keySet());
+        for (Map.Entry<String, VariantSingleSampleStats> entry : expected.getSamplesStats().entrySet()) {
+            VariantSingleSampleStats expectedSample = entry.getValue();
+            VariantSingleSampleStats mergedSample = merged.getSamplesStats().get(entry.getKey());
+            assertEquals(entry.getKey(), expectedSample.getMendelianErrors(), mergedSample.getMendelianErrors());
+            assertEquals(entry.getKey(), expectedSample.getMissingGenotypes(), mergedSample.getMissingGenotypes());
+            assertEquals(entry.getKey(), expectedSample.getHomozygotesNumber(), mergedSample.getHomozygotesNumber());
+        }
+    }
+
+    @Test
+    public void mergeMeanQuality() {
+        // Weighted by the number of records, even without the accumulated quality
+        Stats merged = AccumulatedStatsMerger.merge(new Stats(1, 10), new Stats(3, 30), Stats.class);
+        assertEquals(4, merged.numRecords);
+        assertEquals(25, merged.meanQuality, 0.0001);
+
+        merged = AccumulatedStatsMerger.merge(new Stats(0, 0), new Stats(0, 0), Stats.class);
+        assertEquals(0, merged.numRecords);
+        assertEquals(0, merged.meanQuality, 0.0001);
+    }
+
+    @Test
+    public void mergeUnknownField() {
+        // Fields not known to be additive are never added
+        Stats stats1 = new Stats(1, 10);
+        Stats stats2 = new Stats(3, 30);
+        stats1.ratio = 0.5f;
+        stats2.ratio = 0.5f;
+        assertEquals(0.5, AccumulatedStatsMerger.merge(stats1, stats2, Stats.class).ratio, 0.0001);
+
+        stats2.ratio = 0.25f;
+        try {
+            AccumulatedStatsMerger.merge(stats1, stats2, Stats.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unable to merge the stats field 'ratio'. Values 0.5 and 0.25", e.getMessage());
+        }
+    }
+
+    @Test
+    public void mergeNonNumericField() {
+        // Strings and arrays are never concatenated. Equal values are kept, and different values are rejected
+        Stats stats1 = new Stats(1, 10);
+        Stats stats2 = new Stats(3, 30);
+        stats1.name = "file";
+        stats2.name = "file";
+        stats1.ids = Arrays.asList("a", "b");
+        stats2.ids = Arrays.asList("a", "b");
+        Stats merged = AccumulatedStatsMerger.merge(stats1, stats2, Stats.class);
+        assertEquals("file", merged.name);
+        assertEquals(Arrays.asList("a", "b"), merged.ids);
+
+        stats2.name = "other";
+        try {
+            AccumulatedStatsMerger.merge(stats1, stats2, Stats.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unable to merge the stats field 'name'. Values \"file\" and \"other\"", e.getMessage());
+        }
+
+        stats2.name = "file";
+        stats2.ids = Collections.singletonList("c");
+        try {
+            AccumulatedStatsMerger.merge(stats1, stats2, Stats.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unable to merge the stats field 'ids'. Values [\"a\",\"b\"] and [\"c\"]", e.getMessage());
+        }
+    }
+
+    @Test
+    public void mergeEmpty() {
+        VariantSourceStats merged = AccumulatedStatsMerger.merge("1", Collections.emptyList());
+        assertEquals("1", merged.getStudyId());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Variant> createVariants(int numVariants) {
+        String[] genotypes = {"0/0", "0/1", "1/1", "./."};
+        Random random = new Random(1);
+        List<Variant> variants = new ArrayList<>(numVariants);
+        for (int i = 0; i < numVariants; i++) {
+            Variant variant = new Variant(i % 2 == 0 ? "1" : "2", 1000 + i, 1000 + i, "A", i % 3 == 0 ? "T" : "G");
+            StudyEntry studyEntry = new StudyEntry("1", "1");
+            for (int s = 0; s < 5; s++) {
+                studyEntry.addSampleData("s" + s, ((Map) new ObjectMap("GT", genotypes[random.nextInt(genotypes.length)])));
+            }
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put("QUAL", String.valueOf(10 + i));
+            studyEntry.setFiles(new ArrayList<>(Collections.singletonList(new FileEntry("1", "", attributes))));
+            variant.addStudyEntry(studyEntry);
+            variants.add(variant);
+        }
+        return variants;
+    }
+
+    public static class Stats {
+        public long numRecords;
+        public float meanQuality;
+        public float ratio;
+        public String name;
+        public List<String> ids;
+
+        public Stats() {
+        }
+
+        Stats(long numRecords, float meanQuality) {
+            this.numRecords = numRecords;
+            this.meanQuality = meanQuality;
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.junit.Test;
+import org.opencb.biodata.models.feature.Genotype;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 18/10/26.
+ */
+public class GenotypeIndexStatsCalculatorTest {
+
+    private static final String[] GENOTYPES = {"0/0", "0/1", "1/1", "./."};
+
+    @Test
+    public void calculate() {
+        Map<String, List<Integer>> cohorts = new LinkedHashMap<>();
+        cohorts.put("ALL", Arrays.asList(1, 2, 3, 4, 5, 6));
+        cohorts.put("c1", Arrays.asList(1, 2, 3));
+        cohorts.put("c2", Arrays.asList(4, 5, 6));
+        GenotypeIndexStatsCalculator calculator = new GenotypeIndexStatsCalculator(cohorts);
+
+        Variant variant = new Variant("1", 1000, 1000, "A", "C");
+        Map<String, List<Integer>> genotypeIndex = new HashMap<>();
+        // Sample 100 is not in any cohort
+        genotypeIndex.put("0/1", Arrays.asList(1, 4, 100));
+        genotypeIndex.put("1/1", Collections.singletonList(5));
+        genotypeIndex.put(GenotypeIndexStatsCalculator.UNKNOWN_GENOTYPE, Collections.singletonList(6));
+
+        Map<String, VariantStats> stats = calculator.calculate(variant, genotypeIndex, "0/0");
+
+        VariantStats all = stats.get("ALL");
+        assertEquals(2, all.getGenotypesCount().get(new Genotype("0/0", "A", "C")).intValue());
+        assertEquals(2, all.getGenotypesCount().get(new Genotype("0/1", "A", "C")).intValue());
+        assertEquals(1, all.getGenotypesCount().get(new Genotype("1/1", "A", "C")).intValue());
+        assertEquals(1, all.getGenotypesCount().get(new Genotype("./.", "A", "C")).intValue());
+        assertEquals(6, all.getRefAlleleCount().intValue());
+        assertEquals(4, all.getAltAlleleCount().intValue());
+        assertEquals(2, all.getMissingAlleles().intValue());
+        assertEquals(1, all.getMissingGenotypes().intValue());
+        assertEquals(0.4, all.getMaf(), 0.0001);
+        assertEquals("C", all.getMafAllele());
+        assertEquals(0.2, all.getMgf(), 0.0001);
+        assertEquals("1/1", all.getMgfGenotype());
+
+        VariantStats c1 = stats.get("c1");
+        assertEquals(2, c1.getGenotypesCount().get(new Genotype("0/0", "A", "C")).intValue());
+        assertEquals(1, c1.getGenotypesCount().get(new Genotype("0/1", "A", "C")).intValue());
+        assertEquals(5, c1.getRefAlleleCount().intValue());
+        assertEquals(1, c1.getAltAlleleCount().intValue());
+        assertEquals(0, c1.getMissingGenotypes().intValue());
+        assertEquals(0, c1.getMgf(), 0.0001);
+        assertEquals("1/1", c1.getMgfGenotype());
+
+        VariantStats c2 = stats.get("c2");
+        assertEquals(1, c2.getGenotypesCount().get(new Genotype("0/1", "A", "C")).intValue());
+        assertEquals(1, c2.getGenotypesCount().get(new Genotype("1/1", "A", "C")).intValue());
+        assertEquals(1, c2.getMissingGenotypes().intValue());
+        assertEquals(0.25, c2.getMaf(), 0.0001);
+        assertEquals("A", c2.getMafAllele());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void calculateAsVariantStatisticsCalculator() {
+        int numSamples = 200;
+        Random random = new Random(1);
+        Map<String, Set<Integer>> cohortIds = new LinkedHashMap<>();
+        Map<String, Set<String>> cohortNames = new LinkedHashMap<>();
+        for (String cohort : Arrays.asList("ALL", "even", "random")) {
+            cohortIds.put(cohort, new HashSet<>());
+            cohortNames.put(cohort, new HashSet<>());
+        }
+        for (int sampleId = 1; sampleId <= numSamples; sampleId++) {
+            addToCohort(cohortIds, cohortNames, "ALL", sampleId);
+            if (sampleId % 2 == 0) {
+                addToCohort(cohortIds, cohortNames, "even", sampleId);
+            }
+            if (random.nextBoolean()) {
+                addToCohort(cohortIds, cohortNames, "random", sampleId);
+            }
+        }
+        GenotypeIndexStatsCalculator calculator = new GenotypeIndexStatsCalculator(cohortIds);
+        VariantStatisticsCalculator variantStatisticsCalculator = new VariantStatisticsCalculator(true);
+
+        for (int i = 0; i < 20; i++) {
+            Variant variant = new Variant("1", 1000 + i, 1000 + i, "A", "T");
+            StudyEntry studyEntry = new StudyEntry("1", "s1");
+            Map<String, List<Integer>> genotypeIndex = new HashMap<>();
+            for (int sampleId = 1; sampleId <= numSamples; sampleId++) {
+                String gt = GENOTYPES[random.nextInt(GENOTYPES.length)];
+                studyEntry.addSampleData("s" + sampleId, ((Map) new ObjectMap("GT", gt)));
+                if (!gt.equals("0/0")) {
+                    genotypeIndex.computeIfAbsent(gt, key -> new ArrayList<>()).add(sampleId);
+                }
+            }
+            variant.addStudyEntry(studyEntry);
+
+            Map<String, VariantStats> stats = calculator.calculate(variant, genotypeIndex, "0/0");
+            VariantStatsWrapper expected = variantStatisticsCalculator.calculateBatch(Collections.singletonList(variant), "s1", null,
+                    cohortNames).get(0);
+
+            for (String cohort : cohortNames.keySet()) {
+                VariantStats expectedStats = expected.getCohortStats().get(cohort);
+                VariantStats actualStats = stats.get(cohort);
+                assertEquals(expectedStats.getGenotypesCount(), actualStats.getGenotypesCount());
+                assertEquals(expectedStats.getRefAlleleCount(), actualStats.getRefAlleleCount());
+                assertEquals(expectedStats.getAltAlleleCount(), actualStats.getAltAlleleCount());
+                assertEquals(expectedStats.getMaf(), actualStats.getMaf(), 0.0001);
+            }
+        }
+    }
+
+    private static void addToCohort(Map<String, Set<Integer>> cohortIds, Map<String, Set<String>> cohortNames, String cohort,
+                                    int sampleId) {
+        cohortIds.get(cohort).add(sampleId);
+        cohortNames.get(cohort).add("s" + sampleId);
+    }
+
+}
@@ -20,8 +20,10 @@ import org.junit.*;
 import org.junit.rules.ExpectedException;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
 import org.opencb.biodata.models.variant.stats.VariantStats;
 import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
@@ -29,6 +31,7 @@ import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.VariantStorageManagerTest;
 import org.opencb.opencga.storage.core.variant.VariantStorageBaseTest;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantSourceDBAdaptor;
 
 import java.io.IOException;
 import java.net.URI;
@@ -39,6 +42,7 @@ import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -109,6 +113,85 @@ public abstract class VariantStatisticsManagerTest extends VariantStorageBaseTes
         checkCohorts(dbAdaptor, studyConfiguration);
     }
 
+    @Test
+    public void calculateAndLoadStatsDirectTest() throws Exception {
+        //Calculate and load stats for 2 cohorts without intermediate files
+        DefaultVariantStatisticsManager vsm = (DefaultVariantStatisticsManager) variantStorageManager.newVariantStatisticsManager(dbAdaptor);
+
+        checkCohorts(dbAdaptor, studyConfiguration);
+
+        Integer fileId = studyConfiguration.getFileIds().get(Paths.get(inputUri).getFileName().toString());
+        QueryOptions options = new QueryOptions(VariantStorageEngine.Options.FILE_ID.key(), fileId);
+        options.put(VariantStorageEngine.Options.LOAD_BATCH_SIZE.key(), 100);
+        Iterator<String> iterator = studyConfiguration.getSampleIds().keySet().iterator();
+
+        /** Create cohorts **/
+        HashSet<String> cohort1 = new HashSet<>();
+        cohort1.add(iterator.next());
+        cohort1.add(iterator.next());
+
+        HashSet<String> cohort2 = new HashSet<>();
+        cohort2.add(iterator.next());
+        cohort2.add(iterator.next());
+
+        Map<String, Set<String>> cohorts = new HashMap<>();
+        Map<String, Integer> cohortIds = new HashMap<>();
+        cohorts.put("cohort1", cohort1);
+        cohorts.put("cohort2", cohort2);
+        cohortIds.put("cohort1", 10);
+        cohortIds.put("cohort2", 11);
+
+        //Calculate and load stats
+        vsm.calculateAndLoadStats(dbAdaptor, null, cohorts, cohortIds, studyConfiguration, options);
+
+        assertTrue(studyConfiguration.getCalculatedStats().containsAll(cohortIds.values()));
+        checkCohorts(dbAdaptor, studyConfiguration);
+    }
+
+    @Test
+    public void calculateStatsGenotypeIndexTest() throws Exception {
+        //Calculate stats from the genotype index for 2 cohorts, with intermediate files
+        DefaultVariantStatisticsManager vsm = (DefaultVariantStatisticsManager) variantStorageManager.newVariantStatisticsManager(dbAdaptor);
+
+        Integer fileId = studyConfiguration.getFileIds().get(Paths.get(inputUri).getFileName().toString());
+        QueryOptions options = new QueryOptions(VariantStorageEngine.Options.FILE_ID.key(), fileId);
+        options.put(VariantStorageEngine.Options.LOAD_BATCH_SIZE.key(), 100);
+        options.put(DefaultVariantStatisticsManager.STATS_GENOTYPE_INDEX, true);
+        Iterator<String> iterator = studyConfiguration.getSampleIds().keySet().iterator();
+
+        /** Create cohorts **/
+        HashSet<String> cohort1 = new HashSet<>();
+        cohort1.add(iterator.next());
+        cohort1.add(iterator.next());
+
+        HashSet<String> cohort2 = new HashSet<>();
+        cohort2.add(iterator.next());
+        cohort2.add(iterator.next());
+
+        Map<String, Set<String>> cohorts = new HashMap<>();
+        Map<String, Integer> cohortIds = new HashMap<>();
+        cohorts.put("cohort1", cohort1);
+        cohorts.put("cohort2", cohort2);
+        cohortIds.put("cohort1", 10);
+        cohortIds.put("cohort2", 11);
+
+        Map<String, Integer> numRecords = getSourceNumRecords(dbAdaptor, studyConfiguration);
+        assertFalse(numRecords.isEmpty());
+        for (Integer value : numRecords.values()) {
+            assertTrue(value > 0);
+        }
+
+        //Calculate and load stats
+        URI stats = vsm.createStats(dbAdaptor, outputUri.resolve("cohort1.cohort2.gt_index.stats"), cohorts, cohortIds,
+                studyConfiguration, options);
+        vsm.loadStats(dbAdaptor, stats, studyConfiguration, options);
+
+        assertTrue(studyConfiguration.getCalculatedStats().containsAll(cohortIds.values()));
+        checkCohorts(dbAdaptor, studyConfiguration);
+        //The source stats are not calculated from the genotype index. Stored source stats must not be modified
+        assertEquals(numRecords, getSourceNumRecords(dbAdaptor, studyConfiguration));
+    }
+
     @Test
     public void calculateStatsSeparatedCohortsTest() throws Exception {
         //Calculate stats for 2 cohorts separately
@@ -170,6 +253,19 @@ public abstract class VariantStatisticsManagerTest extends VariantStorageBaseTes
 
     }
 
+    private static Map<String, Integer> getSourceNumRecords(VariantDBAdaptor dbAdaptor, StudyConfiguration studyConfiguration)
+            throws IOException {
+        Map<String, Integer> numRecords = new HashMap<>();
+        Iterator<VariantSource> iterator = dbAdaptor.getVariantSourceDBAdaptor().iterator(
+                new Query(VariantSourceDBAdaptor.VariantSourceQueryParam.STUDY_ID.key(), studyConfiguration.getStudyId()),
+                new QueryOptions());
+        while (iterator.hasNext()) {
+            VariantSource source = iterator.next();
+            numRecords.put(source.getFileId(), source.getStats() == null ? null : source.getStats().getNumRecords());
+        }
+        return numRecords;
+    }
+
     private static void checkCohorts(VariantDBAdaptor dbAdaptor, StudyConfiguration studyConfiguration) {
         for (Variant variant : dbAdaptor) {
             for (StudyEntry sourceEntry : variant.getStudies()) {
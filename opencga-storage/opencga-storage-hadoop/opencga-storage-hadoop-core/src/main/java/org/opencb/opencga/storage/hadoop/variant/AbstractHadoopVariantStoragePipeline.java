@@ -51,6 +51,7 @@ import org.opencb.opencga.storage.core.variant.VariantStoragePipeline;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager;
 import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
+import org.opencb.opencga.storage.core.variant.io.VariantTransformManifest;
 import org.opencb.opencga.storage.core.variant.io.json.mixin.GenericRecordAvroJsonMixin;
 import org.opencb.opencga.storage.core.variant.io.json.mixin.VariantSourceJsonMixin;
 import org.opencb.opencga.storage.hadoop.auth.HBaseCredentials;
@@ -326,6 +327,17 @@ public abstract class AbstractHadoopVariantStoragePipeline extends VariantStorag
                     fs.copyFromLocalFile(false, new org.apache.hadoop.fs.Path(fileInput), fileOutputPath);
                     logger.info("Copied to hdfs in {}s", (System.currentTimeMillis() - startTime) / 1000.0);
 
+                    if (VariantReaderUtils.isManifest(input.getPath())) {
+                        startTime = System.currentTimeMillis();
+                        Path manifestPath = Paths.get(input.getPath());
+                        for (Path part : VariantTransformManifest.read(manifestPath).getPartPaths(manifestPath)) {
+                            org.apache.hadoop.fs.Path partOutputPath = new org.apache.hadoop.fs.Path(
+                                    output.resolve(part.getFileName().toString()));
+                            fs.copyFromLocalFile(false, new org.apache.hadoop.fs.Path(part.toUri()), partOutputPath);
+                        }
+                        logger.info("Copied transformed parts to hdfs in {}s", (System.currentTimeMillis() - startTime) / 1000.0);
+                    }
+
                     input = variantsOutputPath.toUri();
                 } catch (IOException e) {
                     e.printStackTrace();
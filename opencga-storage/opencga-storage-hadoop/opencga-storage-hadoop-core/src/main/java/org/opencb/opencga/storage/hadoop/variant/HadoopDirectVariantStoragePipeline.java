@@ -95,7 +95,7 @@ public class HadoopDirectVariantStoragePipeline extends AbstractHadoopVariantSto
         String fileName = input.getFileName().toString();
         Path sourcePath = input.getParent().resolve(VariantReaderUtils.getMetaFromTransformedFile(fileName));
 
-        if (!VariantReaderUtils.isProto(fileName)) {
+        if (!VariantReaderUtils.isProto(fileName) || VariantReaderUtils.isManifest(fileName)) {
             throw new NotImplementedException("Direct loading only available for PROTO files.");
         }
 
@@ -29,6 +29,7 @@ import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.AdditionalAttribute;
 import org.opencb.biodata.models.variant.protobuf.VcfMeta;
 import org.opencb.cellbase.client.rest.CellBaseClient;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResult;
@@ -51,10 +52,12 @@ import org.opencb.opencga.storage.hadoop.variant.metadata.HBaseStudyConfiguratio
 import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveHelper;
 import org.opencb.opencga.storage.hadoop.variant.archive.VariantHadoopArchiveDBIterator;
 import org.opencb.opencga.storage.hadoop.variant.index.VariantHBaseResultSetIterator;
+import org.opencb.opencga.storage.hadoop.variant.index.VariantTableStudyRowResultSetIterator;
 import org.opencb.opencga.storage.hadoop.variant.index.annotation.VariantAnnotationPhoenixDBWriter;
 import org.opencb.opencga.storage.hadoop.variant.converters.annotation.VariantAnnotationToHBaseConverter;
 import org.opencb.opencga.storage.hadoop.variant.index.annotation.VariantAnnotationUpsertExecutor;
 import org.opencb.opencga.storage.hadoop.variant.index.phoenix.PhoenixHelper;
+import org.opencb.opencga.storage.hadoop.variant.index.phoenix.PhoenixHelper.Column;
 import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixHelper;
 import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantSqlQueryParser;
 import org.opencb.opencga.storage.hadoop.variant.converters.stats.VariantStatsToHBaseConverter;
@@ -63,6 +66,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.sql.Array;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -110,7 +114,8 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
         CellBaseConfiguration cellbaseConfiguration = configuration.getCellbase();
         cellBaseClient = new CellBaseClient(cellbaseConfiguration.toClientConfiguration());
 
-        this.queryParser = new VariantSqlQueryParser(genomeHelper, this.variantTable, new VariantDBAdaptorUtils(this), cellBaseClient);
+        this.queryParser = new VariantSqlQueryParser(genomeHelper, this.variantTable,
+                new VariantDBAdaptorUtils(this, storageEngine.getVariant().getOptions()), cellBaseClient);
 
         phoenixHelper = new VariantPhoenixHelper(genomeHelper);
     }
@@ -318,8 +323,11 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
 
     @Override
     public QueryResult distinct(Query query, String field) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        long startTime = System.currentTimeMillis();
+        Map<Object, Long> counts = groupByCounts(query, field);
+        List<Object> values = new ArrayList<>(counts.keySet());
+        return new QueryResult<>("distinct", ((int) (System.currentTimeMillis() - startTime)),
+                values.size(), values.size(), "", "", values);
     }
 
     @Override
@@ -455,6 +463,26 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
         }
     }
 
+    /**
+     * Iterate over the genotypes of one study, without building the Variant objects.
+     *
+     * @param query     Query to filter the variants
+     * @param options   Query options
+     * @param studyId   Study to read
+     * @return          Iterator over the study rows. Must be closed
+     */
+    public VariantTableStudyRowResultSetIterator studyRowIterator(Query query, QueryOptions options, int studyId) {
+        String sql = queryParser.parse(query, options);
+        logger.info(sql);
+        try {
+            Statement statement = getJdbcConnection().createStatement();
+            statement.setFetchSize(options.getInt("batchSize", -1));
+            return new VariantTableStudyRowResultSetIterator(statement.executeQuery(sql), studyId);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public void forEach(Consumer<? super Variant> action) {
         iterator().forEachRemaining(action);
@@ -467,26 +495,154 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
 
     @Override
     public QueryResult getFrequency(Query query, Region region, int regionIntervalSize) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        if (query == null) {
+            query = new Query();
+        }
+        // If interval is not provided is set to the value that returns 200 values
+        if (regionIntervalSize <= 0) {
+            regionIntervalSize = Math.max(1, (region.getEnd() - region.getStart()) / 200);
+        }
+        long startTime = System.currentTimeMillis();
+        String sql = queryParser.parseFrequency(query, region, regionIntervalSize);
+        logger.info(sql);
+
+        Map<Long, Long> counts = new HashMap<>();
+        try (Statement statement = getJdbcConnection().createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                counts.put(resultSet.getLong(1), resultSet.getLong(2));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        // Same output as the other storage engines. Include the intervals without variants.
+        List<ObjectMap> intervals = new ArrayList<>();
+        int firstChunkId = region.getStart() / regionIntervalSize;
+        int lastChunkId = region.getEnd() / regionIntervalSize;
+        for (int chunkId = firstChunkId; chunkId <= lastChunkId; chunkId++) {
+            long count = counts.getOrDefault((long) chunkId, 0L);
+            intervals.add(new ObjectMap("_id", chunkId)
+                    .append("start", chunkId == 0 ? 1 : chunkId * regionIntervalSize)
+                    .append("end", chunkId * regionIntervalSize + regionIntervalSize - 1)
+                    .append("chromosome", region.getChromosome())
+                    .append("features_count", count > 0 ? Math.log(count) : 0));
+        }
+
+        return new QueryResult<>(region.toString(), ((int) (System.currentTimeMillis() - startTime)),
+                intervals.size(), intervals.size(), "", "", intervals);
     }
 
     @Override
     public QueryResult rank(Query query, String field, int numResults, boolean asc) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        QueryOptions options = new QueryOptions();
+        options.put(QueryOptions.LIMIT, numResults);
+        options.put("count", true);
+        options.put(QueryOptions.ORDER, asc ? 1 : -1);
+
+        return groupBy(query, field, options);
     }
 
+    /**
+     * Count the number of variants for each value of the field. The aggregation is executed by Phoenix in the region servers,
+     * so only the values with their counts are returned to the client.
+     *
+     * Only the counts are returned, as "id" and "count". The list of variants for each value is not available.
+     *
+     * @param query     Query with the variant filters
+     * @param field     Field to group by. See {@link VariantSqlQueryParser#getGroupByColumn}
+     * @param options   Query options. Accepts "limit" (default 10), "skip" and "order" (1 ascending, -1 descending)
+     * @return  List of maps with the id and the count, sorted by count
+     */
     @Override
     public QueryResult groupBy(Query query, String field, QueryOptions options) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        if (options == null) {
+            options = new QueryOptions();
+        }
+        long startTime = System.currentTimeMillis();
+        Map<Object, Long> counts = groupByCounts(query, field);
+
+        int limit = options.getInt(QueryOptions.LIMIT, -1) > 0 ? options.getInt(QueryOptions.LIMIT) : 10;
+        int skip = Math.max(0, options.getInt(QueryOptions.SKIP, 0));
+        Comparator<Map.Entry<Object, Long>> comparator = Map.Entry.comparingByValue();
+        if (options.getInt(QueryOptions.ORDER, -1) < 0) {
+            comparator = comparator.reversed();
+        }
+
+        List<ObjectMap> result = new ArrayList<>(Math.min(limit, counts.size()));
+        counts.entrySet().stream()
+                .sorted(comparator)
+                .skip(skip)
+                .limit(limit)
+                .forEach(entry -> result.add(new ObjectMap("id", entry.getKey()).append("count", entry.getValue())));
+
+        return new QueryResult<>("groupBy", ((int) (System.currentTimeMillis() - startTime)),
+                result.size(), counts.size(), "", "", result);
     }
 
     @Override
     public QueryResult groupBy(Query query, List<String> fields, QueryOptions options) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException();
+        String warningMsg = "Unimplemented VariantHadoopDBAdaptor::groupBy list of fields. Using field[0] : '" + fields.get(0) + "'";
+        logger.warn(warningMsg);
+        QueryResult queryResult = groupBy(query, fields.get(0), options);
+        queryResult.setWarningMsg(warningMsg);
+        return queryResult;
+    }
+
+    /**
+     * Count the number of variants for each value of a field using Phoenix.
+     *
+     * Non array columns are aggregated in the region servers with a GROUP BY query. Phoenix is not able to unnest
+     * array columns, so for those the arrays of the matching variants are read in one single scan and counted in
+     * the client. The arrays do not contain repeated values, so each variant is counted once per value.
+     *
+     * @param query     Query with the variant filters
+     * @param field     Field to group by. See {@link VariantSqlQueryParser#getGroupByColumn}
+     * @return  Number of variants for each value
+     */
+    protected Map<Object, Long> groupByCounts(Query query, String field) {
+        if (query == null) {
+            query = new Query();
+        }
+        Column column = VariantSqlQueryParser.getGroupByColumn(field);
+        Map<Object, Long> counts = new HashMap<>();
+        try {
+            if (column.getPDataType().isArrayType()) {
+                String sql = queryParser.parseArrayValues(query, column);
+                logger.debug(sql);
+                try (Statement statement = getJdbcConnection().createStatement()) {
+                    statement.setFetchSize(1000);
+                    try (ResultSet resultSet = statement.executeQuery(sql)) {
+                        while (resultSet.next()) {
+                            Array array = resultSet.getArray(1);
+                            if (array == null) {
+                                continue;
+                            }
+                            for (Object value : (Object[]) array.getArray()) {
+                                if (VariantSqlQueryParser.isGroupByValue(field, value)) {
+                                    counts.merge(value, 1L, Long::sum);
+                                }
+                            }
+                        }
+                    }
+                }
+            } else {
+                String sql = queryParser.parseGroupBy(query, column);
+                logger.debug(sql);
+                try (Statement statement = getJdbcConnection().createStatement();
+                     ResultSet resultSet = statement.executeQuery(sql)) {
+                    while (resultSet.next()) {
+                        Object value = resultSet.getObject(1);
+                        if (VariantSqlQueryParser.isGroupByValue(field, value)) {
+                            counts.merge(value, resultSet.getLong(2), Long::sum);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return counts;
     }
 
     /**
@@ -43,6 +43,8 @@ import org.opencb.biodata.models.variant.VariantSource;
 import org.opencb.biodata.models.variant.avro.VariantAvro;
 import org.opencb.biodata.models.variant.avro.VariantFileMetadata;
 import org.opencb.biodata.models.variant.protobuf.VcfMeta;
+import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
+import org.opencb.opencga.storage.core.variant.io.VariantTransformManifest;
 import org.opencb.opencga.storage.hadoop.utils.HBaseManager;
 import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
 import org.opencb.opencga.storage.hadoop.variant.adaptors.HadoopVariantSourceDBAdaptor;
@@ -116,7 +118,19 @@ public class ArchiveDriver extends Configured implements Tool {
         conf.set("mapreduce.job.user.classpath.first", "true");
 
         // input
-        FileInputFormat.addInputPath(job, new Path(inputFile));
+        if (VariantReaderUtils.isManifest(inputFile)) {
+            // Sharded transform. Read all the parts listed in the manifest
+            Path manifestPath = new Path(inputFile);
+            VariantTransformManifest manifest;
+            try (InputStream is = manifestPath.getFileSystem(conf).open(manifestPath)) {
+                manifest = VariantTransformManifest.read(is);
+            }
+            for (VariantTransformManifest.Part part : manifest.getParts()) {
+                FileInputFormat.addInputPath(job, new Path(manifestPath.getParent(), part.getFile()));
+            }
+        } else {
+            FileInputFormat.addInputPath(job, new Path(inputFile));
+        }
 
         AvroJob.setInputKeySchema(job, VariantAvro.getClassSchema());
         job.setInputFormatClass(AvroKeyInputFormat.class);
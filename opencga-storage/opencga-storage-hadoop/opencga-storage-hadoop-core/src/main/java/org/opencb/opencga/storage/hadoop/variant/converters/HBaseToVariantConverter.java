@@ -328,7 +328,7 @@ public class HBaseToVariantConverter implements Converter<Result, Variant> {
         return variant;
     }
 
-    private String getSimpleGenotype(String genotype) {
+    public static String getSimpleGenotype(String genotype) {
         if (genotype.contains(",")) {
             String[] split = genotype.split(",");
             for (String gt : split) {
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.hadoop.variant.index;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixHelper.VariantColumn;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the {@link VariantTableStudyRow} of one study from a Phoenix ResultSet, without building the
+ * Variant objects with the samples data.
+ *
+ * Created on 18/10/26.
+ */
+public class VariantTableStudyRowResultSetIterator implements Iterator<VariantTableStudyRow>, AutoCloseable {
+
+    private final ResultSet resultSet;
+    private final int studyId;
+    private boolean hasNext;
+
+    public VariantTableStudyRowResultSetIterator(ResultSet resultSet, int studyId) throws SQLException {
+        this.resultSet = resultSet;
+        this.studyId = studyId;
+        hasNext = resultSet.next();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    @Override
+    public VariantTableStudyRow next() {
+        if (!hasNext) {
+            throw new NoSuchElementException();
+        }
+        try {
+            Variant variant = new Variant(resultSet.getString(VariantColumn.CHROMOSOME.column()),
+                    resultSet.getInt(VariantColumn.POSITION.column()),
+                    resultSet.getString(VariantColumn.REFERENCE.column()),
+                    resultSet.getString(VariantColumn.ALTERNATE.column()));
+            String type = resultSet.getString(VariantColumn.TYPE.column());
+            if (StringUtils.isNotBlank(type)) {
+                variant.setType(VariantType.valueOf(type));
+            }
+            VariantTableStudyRow row = new VariantTableStudyRow(variant, resultSet, studyId);
+            hasNext = resultSet.next();
+            return row;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        resultSet.close();
+    }
+}
@@ -56,6 +56,7 @@ import static org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPho
 public class VariantSqlQueryParser {
 
     public static final String COUNT = "count";
+    private static final String ENSEMBL_GENE_PREFIX = "ENSG";
     private final GenomeHelper genomeHelper;
     private final String variantTable;
     private final Logger logger = LoggerFactory.getLogger(VariantSqlQueryParser.class);
@@ -131,6 +132,142 @@ public class VariantSqlQueryParser {
         return utils;
     }
 
+    /**
+     * Generates an aggregation query to count the variants in intervals of the given region.
+     *
+     * SELECT FLOOR(POSITION / intervalSize), COUNT(*) FROM variants WHERE ... GROUP BY FLOOR(POSITION / intervalSize)
+     *
+     * @param query         Query with the variant filters
+     * @param region        Region to split in intervals
+     * @param intervalSize  Size of each interval
+     * @return  SQL query returning the interval id and the number of variants in the interval
+     */
+    public String parseFrequency(Query query, Region region, int intervalSize) {
+        String interval = "FLOOR(" + VariantColumn.POSITION + " / " + intervalSize + ")";
+        return parseAggregation(query, Collections.singletonList(getRegionFilter(region)), interval + ", COUNT(*)", interval);
+    }
+
+    /**
+     * Generates an aggregation query to count the variants for each value of the given column.
+     *
+     * SELECT "column", COUNT(*) FROM variants WHERE ... GROUP BY "column"
+     *
+     * Phoenix is not able to unnest the values of an array column, so array columns can not be aggregated in the
+     * region servers. Use {@link #parseArrayValues} instead.
+     *
+     * @param query         Query with the variant filters
+     * @param column        Column to group by. Must not be an array
+     * @return  SQL query returning the value and the number of variants with that value
+     */
+    public String parseGroupBy(Query query, Column column) {
+        if (column.getPDataType().isArrayType()) {
+            throw new VariantQueryException("Unable to group by array column " + column.column() + ". Use parseArrayValues instead");
+        }
+        String groupBy = '"' + column.column() + '"';
+        return parseAggregation(query, Collections.emptyList(), groupBy + ", COUNT(*)", groupBy);
+    }
+
+    /**
+     * Generates a query to get the values of an array column for each variant matching the query.
+     * The values have to be counted by the client, in one single scan of the table.
+     *
+     * SELECT "column" FROM variants WHERE ... AND "column" IS NOT NULL
+     *
+     * @param query     Query with the variant filters
+     * @param column    Array column
+     * @return  SQL query returning one array per variant
+     */
+    public String parseArrayValues(Query query, Column column) {
+        String projection = '"' + column.column() + '"';
+        return parseAggregation(query, Collections.singletonList(projection + " IS NOT NULL"), projection, null);
+    }
+
+    /**
+     * Get the column to use for a groupBy, rank or distinct operation. Accepts the same fields as the other storage engines.
+     *
+     * Gene names and ensembl gene ids are stored in the same column. Use {@link #isGroupByValue} to discard the values
+     * of the other kind.
+     *
+     * @param field     Field name
+     * @return  Column to group by
+     * @throws VariantQueryException if the field is not supported
+     */
+    public static Column getGroupByColumn(String field) {
+        switch (field) {
+            case "ensemblTranscript":
+                return VariantColumn.TRANSCRIPTS;
+            case "ct":
+            case "consequence_type":
+                return VariantColumn.SO;
+            case "biotype":
+                return VariantColumn.BIOTYPE;
+            case "chromosome":
+                return VariantColumn.CHROMOSOME;
+            case "type":
+                return VariantColumn.TYPE;
+            case "gene":
+            case "ensemblGene":
+                return VariantColumn.GENES;
+            default:
+                throw new VariantQueryException("Unable to group by field '" + field + "'. Supported fields: "
+                        + "gene, ensemblGene, ensemblTranscript, ct, consequence_type, biotype, chromosome, type");
+        }
+    }
+
+    /**
+     * Check if a value of the column returned by {@link #getGroupByColumn} belongs to the given field.
+     *
+     * The {@link VariantColumn#GENES} column contains both gene names and ensembl gene ids. Values starting
+     * with "ENSG" are ensembl gene ids, and the rest are gene names.
+     *
+     * @param field     Field name
+     * @param value     Value read from the column
+     * @return  If the value has to be counted for the field
+     */
+    public static boolean isGroupByValue(String field, Object value) {
+        if (value == null) {
+            return false;
+        }
+        switch (field) {
+            case "gene":
+                return !value.toString().startsWith(ENSEMBL_GENE_PREFIX);
+            case "ensemblGene":
+                return value.toString().startsWith(ENSEMBL_GENE_PREFIX);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Generates an aggregation query using the same filters as {@link #parse}.
+     *
+     * @param query         Query with the variant filters
+     * @param extraFilters  Extra filters to add to the query
+     * @param projection    Projected expressions
+     * @param groupBy       Group by expression. May be null
+     * @return  SQL query
+     */
+    protected String parseAggregation(Query query, List<String> extraFilters, String projection, String groupBy) {
+        StringBuilder sb = new StringBuilder("SELECT ");
+        try {
+            Set<Column> dynamicColumns = new HashSet<>();
+            List<String> regionFilters = getRegionFilters(query);
+            List<String> filters = getOtherFilters(query, new QueryOptions(), dynamicColumns);
+            filters.addAll(extraFilters);
+
+            sb.append(projection);
+            appendFromStatement(sb, dynamicColumns);
+            appendWhereStatement(sb, regionFilters, filters);
+        } catch (VariantQueryException e) {
+            e.setQuery(query);
+            throw e;
+        }
+        if (groupBy != null) {
+            sb.append(" GROUP BY ").append(groupBy);
+        }
+        return sb.toString();
+    }
+
     /**
      * Select only the required columns.
      *
@@ -1,13 +1,24 @@
 package org.opencb.opencga.storage.hadoop.variant.stats;
 
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.io.DataReader;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptorUtils;
 import org.opencb.opencga.storage.core.variant.io.db.VariantStatsDBWriter;
 import org.opencb.opencga.storage.core.variant.stats.DefaultVariantStatisticsManager;
+import org.opencb.opencga.storage.core.variant.stats.GenotypeIndexStatsCalculator;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatsWrapper;
 import org.opencb.opencga.storage.hadoop.variant.adaptors.VariantHadoopDBAdaptor;
+import org.opencb.opencga.storage.hadoop.variant.converters.HBaseToVariantConverter;
+import org.opencb.opencga.storage.hadoop.variant.index.VariantTableStudyRow;
+import org.opencb.opencga.storage.hadoop.variant.index.VariantTableStudyRowResultSetIterator;
 
 import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Function;
 
 /**
  * Created on 07/12/16.
@@ -40,5 +51,79 @@ public class HadoopDefaultVariantStatisticsManager extends DefaultVariantStatist
         };
     }
 
+    /**
+     * Calculate the stats from the genotype columns of the variants table. Samples not present in any column are HOM_REF.
+     */
+    @Override
+    protected GenotypeIndexStatsSource<?> newGenotypeIndexStatsSource(VariantDBAdaptor variantDBAdaptor, Query query,
+                                                                      StudyConfiguration studyConfiguration,
+                                                                      Map<String, Set<String>> cohorts, QueryOptions options) {
+        VariantHadoopDBAdaptor hadoopDBAdaptor = (VariantHadoopDBAdaptor) variantDBAdaptor;
+        int studyId = studyConfiguration.getStudyId();
+        DataReader<VariantTableStudyRow> reader = new DataReader<VariantTableStudyRow>() {
+            private VariantTableStudyRowResultSetIterator iterator;
+
+            @Override
+            public boolean open() {
+                QueryOptions readerOptions = new QueryOptions(QueryOptions.EXCLUDE, VariantDBAdaptorUtils.ANNOTATION_FIELD);
+                iterator = hadoopDBAdaptor.studyRowIterator(query, readerOptions, studyId);
+                return true;
+            }
+
+            @Override
+            public List<VariantTableStudyRow> read(int batchSize) {
+                List<VariantTableStudyRow> rows = new ArrayList<>(batchSize);
+                while (rows.size() < batchSize && iterator.hasNext()) {
+                    rows.add(iterator.next());
+                }
+                return rows;
+            }
+
+            @Override
+            public boolean close() {
+                try {
+                    iterator.close();
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+                return true;
+            }
+        };
+
+        return new GenotypeIndexStatsSource<>(reader, () -> {
+            GenotypeIndexStatsCalculator calculator = GenotypeIndexStatsCalculator.fromStudyConfiguration(studyConfiguration,
+                    cohorts.keySet());
+            return (Function<List<VariantTableStudyRow>, List<VariantStatsWrapper>>) rows -> calculate(calculator, rows);
+        });
+    }
+
+    private static List<VariantStatsWrapper> calculate(GenotypeIndexStatsCalculator calculator, List<VariantTableStudyRow> rows) {
+        List<VariantStatsWrapper> wrappers = new ArrayList<>(rows.size());
+        for (VariantTableStudyRow row : rows) {
+            Map<String, Collection<Integer>> genotypeIndex = new HashMap<>();
+            for (String genotype : row.getGenotypes()) {
+                if (!genotype.equals(VariantTableStudyRow.OTHER)) {
+                    genotypeIndex.put(genotype, row.getSampleIds(genotype));
+                }
+            }
+            // Complex genotypes
+            Map<String, List<Integer>> complexGenotypes = new HashMap<>();
+            for (Map.Entry<Integer, String> entry : row.getComplexVariant().getSampleToGenotype().entrySet()) {
+                String genotype = HBaseToVariantConverter.getSimpleGenotype(entry.getValue());
+                complexGenotypes.computeIfAbsent(genotype, key -> new ArrayList<>()).add(entry.getKey());
+            }
+            for (Map.Entry<String, List<Integer>> entry : complexGenotypes.entrySet()) {
+                genotypeIndex.merge(entry.getKey(), entry.getValue(), (samples, complexSamples) -> {
+                    List<Integer> merged = new ArrayList<>(samples);
+                    merged.addAll(complexSamples);
+                    return merged;
+                });
+            }
+            Variant variant = new Variant(row.getChromosome(), row.getPos(), row.getRef(), row.getAlt());
+            wrappers.add(new VariantStatsWrapper(variant.getChromosome(), variant.getStart(),
+                    calculator.calculate(variant, genotypeIndex, VariantTableStudyRow.HOM_REF)));
+        }
+        return wrappers;
+    }
 
 }
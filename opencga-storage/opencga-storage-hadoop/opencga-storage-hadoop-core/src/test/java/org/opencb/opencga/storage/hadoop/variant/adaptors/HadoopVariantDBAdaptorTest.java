@@ -104,13 +104,6 @@ public class HadoopVariantDBAdaptorTest extends VariantDBAdaptorTest implements
         super.testGetAllVariants_files();
     }
 
-    @Override
-    @Ignore
-    public void rank_ct() throws Exception {
-        Assume.assumeTrue(false);
-        super.rank_ct();
-    }
-
     @Override
     @Ignore
     public void testGetAllVariants() {
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.hadoop.variant.index.phoenix;
+
+import org.junit.Test;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ *
+ * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
+ */
+public class VariantSqlQueryParserTest {
+
+    @Test
+    public void testGroupByColumn() throws Exception {
+        assertEquals(VariantPhoenixHelper.VariantColumn.GENES, VariantSqlQueryParser.getGroupByColumn("gene"));
+        assertEquals(VariantPhoenixHelper.VariantColumn.GENES, VariantSqlQueryParser.getGroupByColumn("ensemblGene"));
+        assertEquals(VariantPhoenixHelper.VariantColumn.SO, VariantSqlQueryParser.getGroupByColumn("ct"));
+        assertEquals(VariantPhoenixHelper.VariantColumn.CHROMOSOME, VariantSqlQueryParser.getGroupByColumn("chromosome"));
+    }
+
+    @Test(expected = VariantQueryException.class)
+    public void testGroupByUnknownField() throws Exception {
+        VariantSqlQueryParser.getGroupByColumn("unknownField");
+    }
+
+    @Test
+    public void testGroupByGeneValues() throws Exception {
+        assertTrue(VariantSqlQueryParser.isGroupByValue("gene", "BRCA2"));
+        assertFalse(VariantSqlQueryParser.isGroupByValue("gene", "ENSG00000139618"));
+        assertTrue(VariantSqlQueryParser.isGroupByValue("ensemblGene", "ENSG00000139618"));
+        assertFalse(VariantSqlQueryParser.isGroupByValue("ensemblGene", "BRCA2"));
+        assertTrue(VariantSqlQueryParser.isGroupByValue("ct", "SO:0001583"));
+        assertFalse(VariantSqlQueryParser.isGroupByValue("ct", null));
+    }
+}
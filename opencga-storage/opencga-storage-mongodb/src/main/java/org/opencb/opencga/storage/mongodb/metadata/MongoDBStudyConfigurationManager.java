@@ -39,6 +39,7 @@ import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToStudyConf
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeoutException;
@@ -187,6 +188,22 @@ public class MongoDBStudyConfigurationManager extends StudyConfigurationManager
                 .collect(Collectors.toMap(StudyConfiguration::getStudyName, StudyConfiguration::getStudyId));
     }
 
+    /**
+     * Read the timestamps of all the studies with one query, without reading the whole configurations.
+     *
+     * @return Timestamp of each study
+     */
+    @Override
+    public Map<Integer, Long> getStudyTimeStamps() {
+        QueryResult<StudyConfiguration> queryResult = collection.find(new Document("studyName", new Document("$exists", true)),
+                Projections.include("studyId", "studyName", "timeStamp"), studyConfigurationConverter, null);
+        Map<Integer, Long> timeStamps = new HashMap<>();
+        for (StudyConfiguration studyConfiguration : queryResult.getResult()) {
+            timeStamps.put(studyConfiguration.getStudyId(), studyConfiguration.getTimeStamp());
+        }
+        return timeStamps;
+    }
+
     @Override
     public void close() {
         if (closeConnection) {
@@ -36,11 +36,13 @@ import org.opencb.opencga.storage.core.variant.annotation.annotators.VariantAnno
 import org.opencb.opencga.storage.core.variant.io.VariantImporter;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.io.db.VariantAnnotationDBWriter;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatisticsManager;
 import org.opencb.opencga.storage.mongodb.auth.MongoCredentials;
 import org.opencb.opencga.storage.mongodb.metadata.MongoDBStudyConfigurationManager;
 import org.opencb.opencga.storage.mongodb.variant.adaptors.VariantMongoDBAdaptor;
 import org.opencb.opencga.storage.mongodb.variant.io.db.VariantMongoDBAnnotationDBWriter;
 import org.opencb.opencga.storage.mongodb.variant.load.MongoVariantImporter;
+import org.opencb.opencga.storage.mongodb.variant.stats.MongoDBVariantStatisticsManager;
 
 import java.net.URI;
 import java.net.UnknownHostException;
@@ -75,7 +77,19 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
         MERGE("merge", false),
         MERGE_SKIP("merge.skip", false), // Internal use only
         MERGE_RESUME("merge.resume", false),
-        MERGE_PARALLEL_WRITE("merge.parallel.write", false);
+        MERGE_PARALLEL_WRITE("merge.parallel.write", false),
+        MERGE_BATCH_PREFETCH("merge.batch.prefetch", true),
+        MERGE_PARALLEL_CHROMOSOMES("merge.parallel.chromosomes", 1),
+        MERGE_LOADER_IN_FLIGHT_BATCHES("merge.loader.in.flight.batches", 1), // Batches written at once, shared by parallel chromosomes
+        DIRECT_LOAD("direct.load", true),                 // Skip the stage collection for files not overlapping other files in the study
+        QUERY_PLAN_CACHE_SIZE("query.plan.cache.size", 500),                    // Max number of cached query plans. 0 to disable
+        QUERY_PLAN_CACHE_CHECK_INTERVAL("query.plan.cache.check.interval", 1000), // Millis between study configuration checks
+        STAGE_COMPRESSION("stage.compression", "deflate"),                      // deflate, deflate-fast or none
+        STAGE_COMPRESSION_DICTIONARY_VARIANTS("stage.compression.dictionary.variants", 0), // Variants to build a preset dictionary
+        STAGE_COMPRESSION_DICTIONARIES("stage.compression.dictionaries", Collections.emptyMap()), // Internal use only. FileId to dictionary
+        // Filter the genotypes of the returned samples in the server. Mongo 3.4.4+
+        // The sample data of the returned files is not filtered, and still contains all the samples of each file
+        QUERY_SAMPLES_PUSHDOWN("query.samples.pushdown", false);
 
         private final String key;
         private final Object value;
@@ -135,6 +149,11 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
         return new MongoDBVariantStoragePipeline(configuration, STORAGE_ENGINE_ID, dbAdaptor);
     }
 
+    @Override
+    public VariantStatisticsManager newVariantStatisticsManager(VariantDBAdaptor dbAdaptor) {
+        return new MongoDBVariantStatisticsManager(dbAdaptor);
+    }
+
     @Override
     protected VariantAnnotationManager newVariantAnnotationManager(VariantAnnotator annotator, VariantDBAdaptor dbAdaptor) {
         VariantMongoDBAdaptor mongoDBAdaptor = (VariantMongoDBAdaptor) dbAdaptor;
@@ -222,6 +241,15 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                     URI input = etlResult.getPostTransformResult() == null ? entry.getKey() : etlResult.getPostTransformResult();
                     MongoDBVariantStoragePipeline storageETL = entry.getValue();
 
+                    if (doStage && doMerge && filesToMerge.isEmpty() && storageETL.canLoadDirectly(input)) {
+                        // Nothing to merge with. Stage and merge in one step, skipping the stage collection
+                        storageETL.getOptions().put(STAGE.key(), true);
+                        storageETL.getOptions().put(MERGE.key(), true);
+                        loadFile(storageETL, etlResult, results, input, outdirUri);
+                        mergedFiles.add(storageETL.getOptions().getInt(Options.FILE_ID.key()));
+                        continue;
+                    }
+
                     if (doStage) {
                         storageETL.getOptions().put(STAGE.key(), true);
                         storageETL.getOptions().put(MERGE.key(), false);
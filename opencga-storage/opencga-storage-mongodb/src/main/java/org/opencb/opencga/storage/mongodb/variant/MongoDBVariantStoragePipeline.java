@@ -44,22 +44,27 @@ import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
 import org.opencb.opencga.storage.mongodb.variant.adaptors.VariantMongoDBAdaptor;
 import org.opencb.opencga.storage.mongodb.variant.adaptors.VariantMongoDBWriter;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToSamplesConverter;
+import org.opencb.opencga.storage.mongodb.variant.converters.stage.VariantToAvroBinaryConverter;
 import org.opencb.opencga.storage.mongodb.variant.exceptions.MongoVariantStorageEngineException;
 import org.opencb.opencga.storage.mongodb.variant.load.*;
 import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageConverterTask;
 import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageLoader;
 import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageReader;
 import org.opencb.opencga.storage.mongodb.variant.load.variants.MongoDBOperations;
+import org.opencb.opencga.storage.mongodb.variant.load.variants.MongoDBVariantDirectLoader;
+import org.opencb.opencga.storage.mongodb.variant.load.variants.MongoDBVariantDirectReader;
 import org.opencb.opencga.storage.mongodb.variant.load.variants.MongoDBVariantMergeLoader;
 import org.opencb.opencga.storage.mongodb.variant.load.variants.MongoDBVariantMerger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 
 import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.*;
@@ -213,7 +218,12 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
         logger.info("Loading variants...");
         long start = System.currentTimeMillis();
 
-        if (doStage) {
+        boolean directLoad = doStage && doMerge && canLoadDirectly(studyConfiguration, source);
+        if (directLoad) {
+            directLoad(input, source, fileId, batchSize, loadThreads, numRecords);
+        }
+
+        if (doStage && !directLoad) {
             //Reader
             VariantReader variantReader;
             variantReader = VariantReaderUtils.getVariantReader(input, source);
@@ -234,7 +244,8 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             //Runner
 
             ProgressLogger progressLogger = new ProgressLogger("Write variants in STAGE collection:", numRecords, 200);
-            MongoDBVariantStageConverterTask converterTask = new MongoDBVariantStageConverterTask(progressLogger);
+            VariantToAvroBinaryConverter variantConverter = newStageVariantConverter(studyConfiguration, fileId, inputUri);
+            MongoDBVariantStageConverterTask converterTask = new MongoDBVariantStageConverterTask(progressLogger, variantConverter);
             MongoDBVariantStageLoader stageLoader =
                     new MongoDBVariantStageLoader(stageCollection, studyConfiguration.getStudyId(), fileId,
                             isResumeStage(options));
@@ -291,6 +302,7 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
                 throw new StorageEngineException("Error while executing LoadVariants in ParallelTaskRunner", e);
             } finally {
                 Runtime.getRuntime().removeShutdownHook(hook);
+                variantConverter.close();
             }
 
             long skippedVariants = converterTask.getSkippedVariants();
@@ -303,7 +315,7 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
 
 
         long skippedVariants = options.getLong("skippedVariants");
-        if (doMerge) {
+        if (doMerge && !directLoad) {
             MongoDBVariantWriteResult writeResult = merge(Collections.singletonList(fileId), batchSize, loadThreads,
                     numRecords, skippedVariants, stageCollection);
         }
@@ -315,6 +327,224 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
         return inputUri; //TODO: Return something like this: mongo://<host>/<dbName>/<collectionName>
     }
 
+    /**
+     * Build the converter for the stage collection. If requested, the first variants of the file are used to build a
+     * preset dictionary, which is stored in the study configuration to be able to read the stage collection. The
+     * dictionary is removed after merging the file, so only the dictionaries of the staged files are kept.
+     *
+     * A resumed stage load reuses the dictionary of the file, if any.
+     *
+     * @param studyConfiguration    Study configuration
+     * @param fileId                File to stage
+     * @param inputUri              File to stage
+     * @return                      Stage variant converter
+     * @throws StorageEngineException if the dictionary can not be built
+     */
+    private VariantToAvroBinaryConverter newStageVariantConverter(StudyConfiguration studyConfiguration, int fileId, URI inputUri)
+            throws StorageEngineException {
+        ObjectMap attributes = studyConfiguration.getAttributes();
+        VariantToAvroBinaryConverter.Codec codec = VariantToAvroBinaryConverter.Codec.parse(options.getString(STAGE_COMPRESSION.key(),
+                attributes.getString(STAGE_COMPRESSION.key(), STAGE_COMPRESSION.defaultValue())));
+        int dictionaryVariants = options.getInt(STAGE_COMPRESSION_DICTIONARY_VARIANTS.key(),
+                attributes.getInt(STAGE_COMPRESSION_DICTIONARY_VARIANTS.key(), STAGE_COMPRESSION_DICTIONARY_VARIANTS.defaultValue()));
+        if (codec == VariantToAvroBinaryConverter.Codec.NONE || dictionaryVariants <= 0) {
+            logger.info("Stage compression: {}", codec.key());
+            return new VariantToAvroBinaryConverter(codec, null);
+        }
+        byte[] stagedDictionary = MongoDBVariantStageLoader.getStageDictionaries(studyConfiguration, Collections.singletonList(fileId))
+                .get(fileId);
+        if (stagedDictionary != null) {
+            logger.info("Stage compression: {}, with the dictionary of {} bytes of the file {}", codec.key(), stagedDictionary.length,
+                    fileId);
+            return new VariantToAvroBinaryConverter(codec, stagedDictionary);
+        }
+
+        VariantToAvroBinaryConverter converter = new VariantToAvroBinaryConverter(codec, null);
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+        Path input = Paths.get(inputUri.getPath());
+        VariantReader reader = VariantReaderUtils.getVariantReader(input, readVariantSource(inputUri, null));
+        reader.open();
+        reader.pre();
+        int read = 0;
+        List<Variant> variants;
+        while (read < dictionaryVariants && !(variants = reader.read(Math.min(100, dictionaryVariants - read))).isEmpty()) {
+            for (Variant variant : variants) {
+                byte[] bytes = converter.encode(variant);
+                dictionary.write(bytes, 0, bytes.length);
+            }
+            read += variants.size();
+        }
+        reader.post();
+        reader.close();
+        converter.close();
+
+        byte[] bytes = dictionary.toByteArray();
+        if (bytes.length > VariantToAvroBinaryConverter.MAX_DICTIONARY_SIZE) {
+            bytes = Arrays.copyOfRange(bytes, bytes.length - VariantToAvroBinaryConverter.MAX_DICTIONARY_SIZE, bytes.length);
+        }
+        byte[] dictionaryBytes = bytes;
+        dbAdaptor.getStudyConfigurationManager().lockAndUpdate(studyConfiguration.getStudyId(), sc -> {
+            MongoDBVariantStageLoader.putStageDictionary(sc, fileId, dictionaryBytes);
+            return sc;
+        });
+        logger.info("Stage compression: {}, with a dictionary of {} bytes from {} variants", codec.key(), bytes.length, read);
+        return new VariantToAvroBinaryConverter(codec, bytes);
+    }
+
+    /**
+     * Check if the file can be loaded directly into the variants collection, skipping the stage collection.
+     *
+     * @param input     Transformed file to load
+     * @return          If the file does not share chromosomes with other files in the study
+     * @throws StorageEngineException if the file metadata can not be read
+     */
+    public boolean canLoadDirectly(URI input) throws StorageEngineException {
+        if (!options.getBoolean(DIRECT_LOAD.key(), DIRECT_LOAD.defaultValue()) || !options.containsKey(Options.STUDY_ID.key())) {
+            return false;
+        }
+        StudyConfiguration studyConfiguration = dbAdaptor.getStudyConfigurationManager()
+                .getStudyConfiguration(getStudyId(), new QueryOptions()).first();
+        return canLoadDirectly(studyConfiguration, readVariantSource(input, null));
+    }
+
+    /**
+     * A file can be loaded directly if there is no other staged or indexed file in the study sharing chromosomes with
+     * it, e.g. the first file of the study, or files split by chromosome. All the variants will be new in the study,
+     * so there is nothing to merge.
+     *
+     * The direct load requires a sorted input file, and fails otherwise. See {@link MongoDBVariantDirectReader}.
+     *
+     * @param studyConfiguration    Study configuration. Null if the study is new
+     * @param source                Variant source of the file to load
+     * @return                      If the file can be loaded directly
+     */
+    private boolean canLoadDirectly(StudyConfiguration studyConfiguration, VariantSource source) {
+        if (!options.getBoolean(DIRECT_LOAD.key(), DIRECT_LOAD.defaultValue()) || source.getStats() == null) {
+            return false;
+        }
+        if (studyConfiguration == null) {
+            return true;
+        }
+        Set<String> chromosomes = source.getStats().getChromosomeCounts().keySet();
+        Set<Integer> filesWithSource = new HashSet<>();
+        Query query = new Query(VariantSourceDBAdaptor.VariantSourceQueryParam.STUDY_ID.key(), studyConfiguration.getStudyId());
+        Iterator<VariantSource> iterator = dbAdaptor.getVariantSourceDBAdaptor().iterator(query, null);
+        while (iterator.hasNext()) {
+            VariantSource other = iterator.next();
+            filesWithSource.add(Integer.valueOf(other.getFileId()));
+            if (other.getStats() == null || !Collections.disjoint(chromosomes, other.getStats().getChromosomeCounts().keySet())) {
+                logger.info("File {} shares chromosomes with the file {}. Load through the stage collection.",
+                        source.getFileName(), other.getFileName());
+                return false;
+            }
+        }
+        if (!filesWithSource.containsAll(studyConfiguration.getIndexedFiles())) {
+            return false;
+        }
+
+        // Resume the direct load only if the last attempt was a direct load, i.e. it registered the merge operation
+        int fileId = options.getInt(Options.FILE_ID.key());
+        if (isResumeStage(options) && getBatchFileOperation(studyConfiguration.getBatches(),
+                op -> op.getOperationName().equals(MERGE.key()) && op.getFileIds().equals(Collections.singletonList(fileId))) == null) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stage and merge a file at the same time, without writing the variants into the stage collection.
+     *
+     * @see MongoDBVariantDirectLoader
+     *
+     * @param input         Transformed file to load
+     * @param source        Variant source of the file
+     * @param fileId        File to load
+     * @param batchSize     Batch size
+     * @param loadThreads   Number of load threads
+     * @param numRecords    Number of variant records in the file
+     * @return              Write Result with times and count
+     * @throws StorageEngineException  If there is a problem executing the {@link ParallelTaskRunner}
+     */
+    private MongoDBVariantWriteResult directLoad(Path input, VariantSource source, int fileId, int batchSize, int loadThreads,
+                                                 int numRecords) throws StorageEngineException {
+        List<Integer> fileIds = Collections.singletonList(fileId);
+        StudyConfiguration studyConfiguration = preMerge(fileIds, true);
+        logger.info("Loading file {} directly into the variants collection", fileId);
+
+        final MongoDBVariantWriteResult writeResult;
+        if (options.getBoolean(MERGE_SKIP.key())) {
+            // It was already merged, but still some work is needed. Exit to do postLoad step
+            writeResult = new MongoDBVariantWriteResult();
+        } else {
+            ProgressLogger progressLogger = new ProgressLogger("Write variants in VARIANTS collection:", numRecords, 200);
+            // No need to compress the binaries, as they are not written
+            VariantToAvroBinaryConverter variantConverter = new VariantToAvroBinaryConverter(VariantToAvroBinaryConverter.Codec.NONE, null);
+            MongoDBVariantStageConverterTask converterTask = new MongoDBVariantStageConverterTask(progressLogger, variantConverter);
+            // All the variants are new in the study, and there are no indexed files in these chromosomes.
+            MongoDBVariantMerger variantMerger = new MongoDBVariantMerger(dbAdaptor, studyConfiguration, fileIds,
+                    dbAdaptor.getVariantsCollection(), Collections.emptySet(), true, false);
+            MongoDBVariantMergeLoader variantLoader = new MongoDBVariantMergeLoader(dbAdaptor.getVariantsCollection(), fileIds, true,
+                    null);
+            MongoDBVariantDirectLoader directLoader = new MongoDBVariantDirectLoader(converterTask, variantMerger, variantLoader,
+                    dbAdaptor.getStageCollection(), studyConfiguration.getStudyId(), fileId);
+
+            ParallelTaskRunner<Variant, MongoDBOperations> ptr;
+            try {
+                ptr = new ParallelTaskRunner<>(
+                        new MongoDBVariantDirectReader(VariantReaderUtils.getVariantReader(input, source)),
+                        directLoader,
+                        null,
+                        ParallelTaskRunner.Config.builder()
+                                .setNumTasks(loadThreads)
+                                .setBatchSize(batchSize)
+                                .setAbortOnFail(true).build());
+            } catch (RuntimeException e) {
+                throw new StorageEngineException("Error while creating ParallelTaskRunner", e);
+            }
+
+            Thread hook = new Thread(() -> {
+                try {
+                    logger.error("Direct load shutdown hook!");
+                    stageError();
+                    setStatus(BatchFileOperation.Status.ERROR, MERGE.key(), fileIds);
+                } catch (StorageEngineException e) {
+                    e.printStackTrace();
+                    throw new RuntimeException(e);
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(hook);
+            try {
+                try {
+                    ptr.run();
+                } catch (ExecutionException e) {
+                    throw new StorageEngineException("Error while executing LoadVariants in ParallelTaskRunner", e);
+                }
+            } catch (Exception e) {
+                stageError();
+                setStatus(BatchFileOperation.Status.ERROR, MERGE.key(), fileIds);
+                throw e;
+            } finally {
+                Runtime.getRuntime().removeShutdownHook(hook);
+                variantConverter.close();
+                variantMerger.close();
+            }
+            writeResult = variantLoader.getResult();
+            writeResult.setSkippedVariants(converterTask.getSkippedVariants());
+        }
+        stageSuccess(source);
+        if (!options.getBoolean(MERGE_SKIP.key())) {
+            setStatus(BatchFileOperation.Status.DONE, MERGE.key(), fileIds);
+        }
+
+        logger.info("Write result: {}", writeResult.toString());
+        options.put("writeResult", writeResult);
+        options.put("skippedVariants", writeResult.getSkippedVariants());
+        loadStats.append(MERGE.key(), true);
+        loadStats.append(DIRECT_LOAD.key(), true);
+        loadStats.append("mergeWriteResult", writeResult);
+        return writeResult;
+    }
+
     /**
      * Check can stage this file.
      *
@@ -490,6 +720,8 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
         ListMultimap<String, Integer> chromosomeInLoadedFiles = LinkedListMultimap.create();
         // List of all the indexed files that cover each chromosome
         ListMultimap<String, Integer> chromosomeInFilesToLoad = LinkedListMultimap.create();
+        // Number of variants to load in each chromosome
+        Map<String, Long> chromosomeCounts = new HashMap<>();
 
         boolean wholeGenomeFiles = false;
         while (iterator.hasNext()) {
@@ -498,6 +730,8 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
 
             // If the file is going to be loaded, check if covers just one chromosome
             if (fileIds.contains(fileId)) {
+                variantSource.getStats().getChromosomeCounts()
+                        .forEach((chromosome, count) -> chromosomeCounts.merge(chromosome, count.longValue(), Long::sum));
                 if (variantSource.getStats().getChromosomeCounts().size() == 1) {
                     chromosomesToLoad.addAll(variantSource.getStats().getChromosomeCounts().keySet());
                 } else {
@@ -536,9 +770,13 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
                     throw new StorageEngineException(message);
                 }
 
+                int parallelChromosomes = options.getInt(MERGE_PARALLEL_CHROMOSOMES.key(), MERGE_PARALLEL_CHROMOSOMES.defaultValue());
                 if (chromosomesToLoad.isEmpty()) {
                     writeResult = mergeByChromosome(fileIds, batchSize, loadThreads, stageCollection,
                             studyConfiguration, null, studyConfiguration.getIndexedFiles());
+                } else if (parallelChromosomes > 1 && chromosomesToLoad.size() > 1) {
+                    writeResult = mergeByChromosomeParallel(batchSize, loadThreads, parallelChromosomes, stageCollection,
+                            studyConfiguration, chromosomesToLoad, chromosomeCounts, chromosomeInFilesToLoad, chromosomeInLoadedFiles);
                 } else {
                     writeResult = new MongoDBVariantWriteResult();
                     for (String chromosome : chromosomesToLoad) {
@@ -563,6 +801,14 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
         long modifiedCount = MongoDBVariantStageLoader.cleanStageCollection(stageCollection, studyConfiguration.getStudyId(), fileIds,
                 chromosomesToLoad);
         logger.info("Delete variants time: " + (System.currentTimeMillis() - startTime) / 1000 + "s , CleanDocuments: " + modifiedCount);
+        if (!MongoDBVariantStageLoader.getStageDictionaries(studyConfiguration, fileIds).isEmpty()) {
+            // Merged files are not in the stage collection anymore
+            dbAdaptor.getStudyConfigurationManager().lockAndUpdate(studyConfiguration.getStudyId(), sc -> {
+                MongoDBVariantStageLoader.removeStageDictionaries(sc, fileIds);
+                return sc;
+            });
+            MongoDBVariantStageLoader.removeStageDictionaries(studyConfiguration, fileIds);
+        }
 
         writeResult.setSkippedVariants(skippedVariants);
 
@@ -580,6 +826,18 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
     }
 
     private StudyConfiguration preMerge(List<Integer> fileIds) throws StorageEngineException {
+        return preMerge(fileIds, false);
+    }
+
+    /**
+     * Check if the files can be merged, and register the merge operation.
+     *
+     * @param fileIds       Files to merge
+     * @param directLoad    If the files are being staged and merged at the same time. See {@link #directLoad}
+     * @return              Updated study configuration
+     * @throws StorageEngineException if the files can not be merged
+     */
+    private StudyConfiguration preMerge(List<Integer> fileIds, boolean directLoad) throws StorageEngineException {
         int studyId = getStudyId();
         StudyConfiguration studyConfiguration;
         Set<Integer> fileIdsSet = new HashSet<>(fileIds);
@@ -627,7 +885,10 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
                     break;
                 } else {
                     // Can not merge any file if there is an ongoing MERGE or STAGE operation
-                    if (op.getOperationName().equals(MERGE.key()) || op.getOperationName().equals(STAGE.key())) {
+                    // The direct load stages and merges the same files at the same time.
+                    boolean directLoadStage = directLoad && op.getOperationName().equals(STAGE.key())
+                            && op.getFileIds().equals(fileIds);
+                    if (op.getOperationName().equals(MERGE.key()) || (op.getOperationName().equals(STAGE.key()) && !directLoadStage)) {
                         if (!op.currentStatus().equals(BatchFileOperation.Status.READY)) {
                             throw MongoVariantStorageEngineException.operationInProgressException(op);
                         }
@@ -648,21 +909,162 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
         return studyConfiguration;
     }
 
+    /**
+     * Merge several chromosomes at the same time.
+     *
+     * Chromosomes are scheduled from the largest to the smallest in a bounded executor, sharing the
+     * number of load threads between the concurrent partitions. Each partition works with its own copy of the
+     * StudyConfiguration. The ProgressLogger is shared, as it is already shared by the tasks of each partition.
+     * Indexes are created once, after merging all the chromosomes.
+     *
+     * If a chromosome fails, no other chromosome is started, and the running ones are allowed to finish their
+     * writes, so no chromosome is left half written but the failed one. The merge operation is marked as ERROR
+     * and resumed as a whole. In resume mode, the merge loader does not modify the variants already containing the files.
+     *
+     * @param batchSize                 Batch size
+     * @param loadThreads               Total number of load threads, shared between all the partitions. So are the batches
+     *                                  in flight of the merge loader
+     * @param parallelChromosomes       Max number of chromosomes to merge at the same time
+     * @param stageCollection           Stage collection where files are loaded.
+     * @param studyConfiguration        Study configuration
+     * @param chromosomesToLoad         Chromosomes to load
+     * @param chromosomeCounts          Number of variants to load in each chromosome
+     * @param chromosomeInFilesToLoad   Files to load in each chromosome
+     * @param chromosomeInLoadedFiles   Already loaded files in each chromosome
+     * @return                          Write Result aggregated from all the chromosomes
+     * @throws StorageEngineException  If there is a problem merging any of the chromosomes
+     */
+    private MongoDBVariantWriteResult mergeByChromosomeParallel(
+            int batchSize, int loadThreads, int parallelChromosomes, MongoDBCollection stageCollection,
+            StudyConfiguration studyConfiguration, Set<String> chromosomesToLoad, Map<String, Long> chromosomeCounts,
+            ListMultimap<String, Integer> chromosomeInFilesToLoad, ListMultimap<String, Integer> chromosomeInLoadedFiles)
+            throws StorageEngineException {
+
+        // Largest chromosomes first
+        List<String> chromosomes = new ArrayList<>(chromosomesToLoad);
+        chromosomes.sort(Comparator.comparingLong((String chromosome) -> chromosomeCounts.getOrDefault(chromosome, 0L)).reversed());
+
+        int numPartitions = Math.min(parallelChromosomes, chromosomes.size());
+        int threadsPerPartition = Math.max(1, loadThreads / numPartitions);
+        int inFlightBatchesPerPartition = Math.max(1, options.getInt(MERGE_LOADER_IN_FLIGHT_BATCHES.key(),
+                MERGE_LOADER_IN_FLIGHT_BATCHES.defaultValue()) / numPartitions);
+        long totalCount = 0;
+        for (String chromosome : chromosomes) {
+            totalCount += chromosomeCounts.getOrDefault(chromosome, 0L);
+        }
+        ProgressLogger progressLogger = new ProgressLogger("Write variants in VARIANTS collection:", totalCount, 200);
+        logger.info("Merging chromosomes {} in parallel. [{} chromosomes at the same time, {} threads and {} batches in flight each]",
+                chromosomes, numPartitions, threadsPerPartition, inFlightBatchesPerPartition);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numPartitions, r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        }); // Set Daemon for quick shutdown !!!
+        CompletionService<MongoDBVariantWriteResult> completionService = new ExecutorCompletionService<>(executorService);
+        Map<Future<MongoDBVariantWriteResult>, String> futures = new LinkedHashMap<>();
+        AtomicBoolean abort = new AtomicBoolean(false);
+        for (String chromosome : chromosomes) {
+            List<Integer> filesToLoad = chromosomeInFilesToLoad.get(chromosome);
+            Set<Integer> indexedFiles = new HashSet<>(chromosomeInLoadedFiles.get(chromosome));
+            // Each partition works with its own copy of the StudyConfiguration
+            StudyConfiguration partitionStudyConfiguration = studyConfiguration.newInstance();
+            futures.put(completionService.submit(() -> {
+                if (abort.get()) {
+                    // Some other chromosome failed. Do not start this one.
+                    return null;
+                }
+                Thread.currentThread().setName("merge-chr" + chromosome);
+                return mergeByChromosome(filesToLoad, batchSize, threadsPerPartition, stageCollection,
+                        partitionStudyConfiguration, chromosome, indexedFiles, progressLogger, false, inFlightBatchesPerPartition);
+            }), chromosome);
+        }
+        executorService.shutdown();
+
+        MongoDBVariantWriteResult writeResult = new MongoDBVariantWriteResult();
+        List<String> mergedChromosomes = new ArrayList<>(chromosomes.size());
+        Exception exception = null;
+        String failedChromosome = null;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<MongoDBVariantWriteResult> future;
+            try {
+                future = completionService.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executorService.shutdownNow();
+                throw new StorageEngineException("Interrupted while merging chromosomes", e);
+            }
+            String chromosome = futures.get(future);
+            try {
+                MongoDBVariantWriteResult aux = future.get();
+                if (aux == null) {
+                    continue;
+                }
+                logger.info("Chromosome {} merged: {}", chromosome, aux);
+                writeResult.merge(aux);
+                mergedChromosomes.add(chromosome);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executorService.shutdownNow();
+                throw new StorageEngineException("Interrupted while merging chromosomes", e);
+            } catch (ExecutionException e) {
+                if (exception == null) {
+                    exception = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    failedChromosome = chromosome;
+                    // Do not start any other chromosome, but let the running ones finish their writes.
+                    abort.set(true);
+                } else {
+                    logger.error("Error merging chromosome " + chromosome, e.getCause());
+                }
+            }
+        }
+
+        if (exception != null) {
+            List<String> pendingChromosomes = new ArrayList<>(chromosomes);
+            pendingChromosomes.removeAll(mergedChromosomes);
+            logger.error("Error merging chromosome {}. Merged chromosomes: {}. Chromosomes to resume: {}",
+                    failedChromosome, mergedChromosomes, pendingChromosomes);
+            if (exception instanceof StorageEngineException) {
+                throw (StorageEngineException) exception;
+            } else {
+                throw new StorageEngineException("Error merging chromosome " + failedChromosome, exception);
+            }
+        }
+        // Indexes are created once for all the partitions
+        VariantMongoDBAdaptor.createIndexes(new QueryOptions(), dbAdaptor.getVariantsCollection());
+        return writeResult;
+    }
+
     private MongoDBVariantWriteResult mergeByChromosome(
             List<Integer> fileIds, int batchSize, int loadThreads, MongoDBCollection stageCollection,
             StudyConfiguration studyConfiguration, String chromosomeToLoad, Set<Integer> indexedFiles)
             throws StorageEngineException {
+        return mergeByChromosome(fileIds, batchSize, loadThreads, stageCollection, studyConfiguration, chromosomeToLoad, indexedFiles,
+                null, true, options.getInt(MERGE_LOADER_IN_FLIGHT_BATCHES.key(), MERGE_LOADER_IN_FLIGHT_BATCHES.defaultValue()));
+    }
+
+    private MongoDBVariantWriteResult mergeByChromosome(
+            List<Integer> fileIds, int batchSize, int loadThreads, MongoDBCollection stageCollection,
+            StudyConfiguration studyConfiguration, String chromosomeToLoad, Set<Integer> indexedFiles, ProgressLogger progressLogger,
+            boolean createIndexes, int inFlightBatches)
+            throws StorageEngineException {
 
         MongoDBVariantStageReader reader = new MongoDBVariantStageReader(stageCollection, studyConfiguration.getStudyId(),
                 chromosomeToLoad == null ? Collections.emptyList() : Collections.singletonList(chromosomeToLoad));
         boolean resume = isResumeMerge(options);
-        ProgressLogger progressLogger = new ProgressLogger("Write variants in VARIANTS collection:", reader::countNumVariants, 200);
-        progressLogger.setApproximateTotalCount(reader.countAproxNumVariants());
+        if (progressLogger == null) {
+            progressLogger = new ProgressLogger("Write variants in VARIANTS collection:", reader::countNumVariants, 200);
+            progressLogger.setApproximateTotalCount(reader.countAproxNumVariants());
+        }
 
+        boolean batchPrefetch = options.getBoolean(MERGE_BATCH_PREFETCH.key(), MERGE_BATCH_PREFETCH.defaultValue());
         MongoDBVariantMerger variantMerger = new MongoDBVariantMerger(dbAdaptor, studyConfiguration, fileIds,
-                dbAdaptor.getVariantsCollection(), indexedFiles, resume);
+                dbAdaptor.getVariantsCollection(), indexedFiles, resume, batchPrefetch);
+        variantMerger.setCreateIndexes(createIndexes);
+        boolean parallelWrite = options.getBoolean(MERGE_PARALLEL_WRITE.key(), MERGE_PARALLEL_WRITE.defaultValue());
+        // Each task already writes its own batches in the parallel write mode
         MongoDBVariantMergeLoader variantLoader = new MongoDBVariantMergeLoader(dbAdaptor.getVariantsCollection(), fileIds, resume,
-                progressLogger);
+                progressLogger, parallelWrite ? 1 : inFlightBatches);
 
         ParallelTaskRunner<Document, MongoDBOperations> ptrMerge;
         ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
@@ -670,7 +1072,7 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
                 .setBatchSize(batchSize)
                 .setAbortOnFail(true).build();
         try {
-            if (options.getBoolean(MERGE_PARALLEL_WRITE.key(), MERGE_PARALLEL_WRITE.defaultValue())) {
+            if (parallelWrite) {
                 ptrMerge = new ParallelTaskRunner<>(reader, batch -> {
                     List<MongoDBOperations> apply = variantMerger.apply(batch);
                     variantLoader.write(apply);     // Load in each thread
@@ -680,6 +1082,8 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
                 ptrMerge = new ParallelTaskRunner<>(reader, variantMerger, variantLoader, config);
             }
         } catch (RuntimeException e) {
+            variantMerger.close();
+            variantLoader.close();
             throw new StorageEngineException("Error while creating ParallelTaskRunner", e);
         }
 
@@ -691,8 +1095,15 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
                 logger.info("Merging files " + fileIds);
             }
             ptrMerge.run();
+            if (parallelWrite) {
+                // The loader is not the writer of the ParallelTaskRunner
+                variantLoader.post();
+            }
         } catch (ExecutionException e) {
             throw new StorageEngineException("Error while executing LoadVariants in ParallelTaskRunner", e);
+        } finally {
+            variantMerger.close();
+            variantLoader.close();
         }
         return variantLoader.getResult();
     }
@@ -23,6 +23,7 @@ import com.mongodb.*;
 import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.UpdateResult;
 import htsjdk.variant.vcf.VCFConstants;
@@ -48,6 +49,7 @@ import org.opencb.commons.datastore.core.QueryResult;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 import org.opencb.commons.datastore.mongodb.MongoDataStoreManager;
+import org.opencb.commons.datastore.mongodb.MongoPersistentCursor;
 import org.opencb.commons.io.DataWriter;
 import org.opencb.opencga.storage.core.cache.CacheManager;
 import org.opencb.opencga.storage.core.config.CellBaseConfiguration;
@@ -88,6 +90,9 @@ import static org.opencb.opencga.storage.core.variant.VariantStorageEngine.Optio
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptorUtils.*;
 import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.COLLECTION_STAGE;
 import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.DEFAULT_GENOTYPE;
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.QUERY_PLAN_CACHE_CHECK_INTERVAL;
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.QUERY_PLAN_CACHE_SIZE;
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.QUERY_SAMPLES_PUSHDOWN;
 
 /**
  * @author Ignacio Medina <igmecas@gmail.com>
@@ -113,6 +118,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
     private final ObjectMap configuration;
     private final CellBaseConfiguration cellbaseConfiguration;
     private CacheManager cacheManager;
+    private final VariantQueryPlanCache queryPlanCache;
 
     @Deprecated
     private DataWriter dataWriter;
@@ -148,9 +154,15 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         this.configuration = storageEngineConfiguration == null || this.storageEngineConfiguration.getVariant().getOptions() == null
                 ? new ObjectMap()
                 : this.storageEngineConfiguration.getVariant().getOptions();
-        this.utils = new VariantDBAdaptorUtils(this);
+        this.utils = new VariantDBAdaptorUtils(this, configuration);
         cellBaseClient = new CellBaseClient(cellbaseConfiguration.toClientConfiguration());
         this.cacheManager = new CacheManager(storageConfiguration);
+        int queryPlanCacheSize = configuration.getInt(QUERY_PLAN_CACHE_SIZE.key(), QUERY_PLAN_CACHE_SIZE.defaultValue());
+        long queryPlanCheckInterval = configuration.getLong(QUERY_PLAN_CACHE_CHECK_INTERVAL.key(),
+                QUERY_PLAN_CACHE_CHECK_INTERVAL.<Integer>defaultValue());
+        this.queryPlanCache = queryPlanCacheSize > 0
+                ? new VariantQueryPlanCache(queryPlanCacheSize, this::getStudiesStamp, queryPlanCheckInterval)
+                : null;
         NUMBER_INSTANCES.incrementAndGet();
     }
 
@@ -265,7 +277,12 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         if (options.getBoolean("cache") && cacheManager.isTypeAllowed("var")) {
             List<Integer> studyIds = utils.getStudyIds(query.getAsList(VariantQueryParams.STUDIES.key()), options);
             // TODO : ONLY USING ONE STUDY ID ?
-            String key = cacheManager.createKey(studyIds.get(0).toString(), "var", query, options);
+            Integer studyId = studyIds.get(0);
+            // Version the key with the data generation of the study, so modified studies do not return old results
+            StudyConfiguration studyConfiguration = studyConfigurationManager.getStudyConfiguration(studyId,
+                    new QueryOptions(StudyConfigurationManager.READ_ONLY, true)).first();
+            long dataGeneration = studyConfiguration == null ? -1 : studyConfiguration.getDataGeneration();
+            String key = cacheManager.createKey(studyId.toString(), dataGeneration, "var", query, options);
             queryResult = cacheManager.get(key);
             if (queryResult.getResult() != null && queryResult.getResult().size() != 0) {
                 return queryResult;
@@ -280,11 +297,36 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
     }
 
     private QueryResult<Variant> getVariantQueryResult(Query query, QueryOptions options) {
-        //        parseQueryOptions(options, qb);
-        Document mongoQuery = parseQuery(query);
+        if (queryPlanCache == null) {
+            return getVariantQueryResult(query, options, null, null);
+        }
+        VariantQueryPlanCache.QueryPlan plan = getQueryPlan(query, options);
+        DocumentToVariantConverter converter = plan.borrowConverter();
+        if (converter == null) {
+            converter = getDocumentToVariantConverter(query, options);
+        }
+        try {
+            return getVariantQueryResult(query, options, plan, converter);
+        } finally {
+            // Return the converter even if the query fails, so the pool does not shrink
+            plan.returnConverter(converter);
+        }
+    }
+
+    private QueryResult<Variant> getVariantQueryResult(Query query, QueryOptions options, VariantQueryPlanCache.QueryPlan plan,
+                                                       DocumentToVariantConverter converter) {
+        Document mongoQuery;
+        Document projection;
+        if (plan != null) {
+            mongoQuery = plan.bind(parsePositionalParams(query));
+            projection = new Document(plan.getProjection());
+        } else {
+            //        parseQueryOptions(options, qb);
+            mongoQuery = parseQuery(query);
 
 //        DBObject projection = parseProjectionQueryOptions(options);
-        Document projection = createProjection(query, options);
+            projection = createProjection(query, options);
+        }
         logger.debug("Query to be executed: '{}'", mongoQuery.toJson(new JsonWriterSettings(JsonMode.SHELL, false)));
 //        logger.info("Query to be executed: '{}'", mongoQuery.toJson(new JsonWriterSettings(JsonMode.SHELL, true)));
         options.putIfAbsent(QueryOptions.SKIP_COUNT, true);
@@ -308,8 +350,97 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
 //                System.err.println("mongodb.explain = " + explain);
 //            }
 //        }
-        return variantsCollection.find(mongoQuery, projection, getDocumentToVariantConverter(query, options),
-                options);
+        if (converter == null) {
+            converter = getDocumentToVariantConverter(query, options);
+        }
+        VariantSamplesProjection samplesProjection = getSamplesProjection(query, options, projection);
+        QueryResult<Variant> queryResult;
+        if (samplesProjection == null) {
+            queryResult = variantsCollection.find(mongoQuery, projection, converter, options);
+        } else {
+            List<Bson> pipeline = samplesProjection.buildPipeline(mongoQuery, projection, options);
+            logger.debug("Samples projection pipeline: {}", pipeline);
+            queryResult = variantsCollection.aggregate(pipeline, converter, new QueryOptions(QueryOptions.TIMEOUT, timeout));
+            if (!options.getBoolean(QueryOptions.SKIP_COUNT)) {
+                queryResult.setNumTotalResults(variantsCollection.count(mongoQuery).first());
+            }
+        }
+        return queryResult;
+    }
+
+    /**
+     * Get the compiled plan of the query shape, or compile it if missing or outdated.
+     *
+     * @param query   Query
+     * @param options Query options. The sort options are normalized, as in {@link #createProjection}
+     * @return        Query plan
+     */
+    private VariantQueryPlanCache.QueryPlan getQueryPlan(Query query, QueryOptions options) {
+        String key = VariantQueryPlanCache.key(query, options);
+        VariantQueryPlanCache.QueryPlan plan = queryPlanCache.get(key);
+        if (plan == null) {
+            // Take the stamp before parsing, so concurrent modifications outdate the plan
+            Object stamp = queryPlanCache.currentStamp();
+            Document filter = parseQuery(VariantQueryPlanCache.removePositionalParams(query));
+            Document projection = createProjection(query, options);
+            plan = new VariantQueryPlanCache.QueryPlan(filter, projection, stamp);
+            queryPlanCache.put(key, plan);
+        } else {
+            normalizeSortOptions(options);
+        }
+        return plan;
+    }
+
+    /**
+     * Get the server side projection of the returned samples, if enabled and applicable to the query.
+     * Only used when a single study is returned and the studies are projected as a whole.
+     *
+     * @param query         Query
+     * @param options       Query options
+     * @param projection    Mongo projection
+     * @return              Samples projection, or null if not applicable
+     */
+    private VariantSamplesProjection getSamplesProjection(Query query, QueryOptions options, Document projection) {
+        if (!configuration.getBoolean(QUERY_SAMPLES_PUSHDOWN.key(), QUERY_SAMPLES_PUSHDOWN.defaultValue())
+                || !isValidParam(query, VariantQueryParams.RETURNED_SAMPLES)
+                || !(projection.get(DocumentToVariantConverter.STUDIES_FIELD) instanceof Document)) {
+            return null;
+        }
+        for (String key : projection.keySet()) {
+            if (key.startsWith(DocumentToVariantConverter.STUDIES_FIELD + '.')) {
+                return null;
+            }
+        }
+        List<Integer> studyIds = utils.getStudyIds(query.getAsList(VariantQueryParams.RETURNED_STUDIES.key()), options);
+        if (studyIds.size() != 1) {
+            return null;
+        }
+        StudyConfiguration studyConfiguration = studyConfigurationManager.getStudyConfiguration(studyIds.get(0), options).first();
+        if (studyConfiguration == null) {
+            return null;
+        }
+        List<Integer> returnedFiles = query.containsKey(VariantQueryParams.RETURNED_FILES.key())
+                ? query.getAsIntegerList(VariantQueryParams.RETURNED_FILES.key())
+                : null;
+        return VariantSamplesProjection.build(studyConfiguration, getReturnedSamplesList(query, options), returnedFiles);
+    }
+
+    private Document parsePositionalParams(Query query) {
+        List<Region> regions = new ArrayList<>();
+        for (VariantQueryParams param : Arrays.asList(VariantQueryParams.REGION, VariantQueryParams.CHROMOSOME)) {
+            if (isValidParam(query, param)) {
+                for (String region : query.getAsStringList(param.key())) {
+                    regions.add(Region.parseRegion(region));
+                }
+            }
+        }
+        QueryBuilder builder = new QueryBuilder();
+        getRegionFilter(regions, builder);
+        return new Document(builder.get().toMap());
+    }
+
+    private Object getStudiesStamp() {
+        return studyConfigurationManager.getStudyTimeStamps();
     }
 
     @Override
@@ -443,6 +574,26 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         }
     }
 
+    /**
+     * Iterate over the raw documents of the variants collection, without converting them into Variant objects.
+     *
+     * @param query      Query to filter the variants
+     * @param projection Fields to return
+     * @param options    Query options
+     * @return           Persistent cursor over the documents. Must be closed
+     */
+    public MongoCursor<Document> nativeIterator(Query query, Bson projection, QueryOptions options) {
+        if (options == null) {
+            options = new QueryOptions();
+        }
+        if (query == null) {
+            query = new Query();
+        }
+        Document mongoQuery = parseQuery(query);
+        options.putIfAbsent(MongoDBCollection.BATCH_SIZE, 100);
+        return new MongoPersistentCursor(variantsCollection, mongoQuery, projection, options);
+    }
+
     @Override
     public void forEach(Consumer<? super Variant> action) {
         forEach(new Query(), action, new QueryOptions());
@@ -1420,13 +1571,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         }
     }
 
-    private Document createProjection(Query query, QueryOptions options) {
-        Document projection = new Document();
-
-        if (options == null) {
-            options = new QueryOptions();
-        }
-
+    private static void normalizeSortOptions(QueryOptions options) {
         if (options.containsKey(QueryOptions.SORT) && !options.getString(QueryOptions.SORT).equals("_id")) {
             if (options.getBoolean(QueryOptions.SORT)) {
                 options.put(QueryOptions.SORT, "_id");
@@ -1435,6 +1580,16 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
                 options.remove(QueryOptions.SORT);
             }
         }
+    }
+
+    private Document createProjection(Query query, QueryOptions options) {
+        Document projection = new Document();
+
+        if (options == null) {
+            options = new QueryOptions();
+        }
+
+        normalizeSortOptions(options);
         Set<String> returnedFields = getReturnedFields(options);
         if (!returnedFields.isEmpty()) { //Include some
             for (String s : returnedFields) {
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.adaptors;
+
+import org.bson.Document;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor.VariantQueryParams.CHROMOSOME;
+import static org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor.VariantQueryParams.REGION;
+
+/**
+ * Cache of compiled query plans, keyed by the shape of the query: the query without its positional parameters and
+ * the query options modifying the projection.
+ *
+ * Each plan contains the filter for the non positional parameters, the projection, and a pool of converters. The region
+ * filter is added when the plan is executed, producing the same query as parsing the whole query: the region clauses
+ * join the "$or" of the filter, if any. Plans are discarded when the stamp of the studies changes.
+ *
+ * Created on 18/10/26.
+ */
+public class VariantQueryPlanCache {
+
+    public static final Set<String> POSITIONAL_PARAMS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(REGION.key(), CHROMOSOME.key())));
+    public static final List<String> PLAN_OPTIONS = Collections.unmodifiableList(
+            Arrays.asList(QueryOptions.INCLUDE, QueryOptions.EXCLUDE, QueryOptions.SORT, QueryOptions.ORDER));
+
+    private static final String OR = "$or";
+
+    private final Map<String, QueryPlan> plans;
+    private final Supplier<Object> stampSupplier;
+    private final long checkInterval;
+    private volatile Object stamp;
+    private volatile long stampTime;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize       Max number of plans
+     * @param stampSupplier Stamp of the studies. Plans built with other stamp are discarded
+     * @param checkInterval Milliseconds between calls to the stamp supplier
+     */
+    public VariantQueryPlanCache(int maxSize, Supplier<Object> stampSupplier, long checkInterval) {
+        this.plans = Collections.synchronizedMap(new LinkedHashMap<String, QueryPlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueryPlan> eldest) {
+                return size() > maxSize;
+            }
+        });
+        this.stampSupplier = stampSupplier;
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Build the key of a query. Must be called before modifying the query or the options.
+     *
+     * @param query     Query
+     * @param options   Query options
+     * @return          Key of the query shape
+     */
+    public static String key(Query query, QueryOptions options) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> entry : new TreeMap<>(query).entrySet()) {
+            if (!POSITIONAL_PARAMS.contains(entry.getKey()) && entry.getValue() != null) {
+                sb.append(entry.getKey()).append('=').append(entry.getValue()).append('&');
+            }
+        }
+        sb.append('|');
+        for (String option : PLAN_OPTIONS) {
+            if (options.get(option) != null) {
+                sb.append(option).append('=').append(options.get(option)).append('&');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param query Query
+     * @return      Copy of the query without the positional parameters
+     */
+    public static Query removePositionalParams(Query query) {
+        Query shape = new Query(query);
+        for (String param : POSITIONAL_PARAMS) {
+            shape.remove(param);
+        }
+        return shape;
+    }
+
+    /**
+     * @param key   Key of the query shape
+     * @return      Valid plan, or null if missing or outdated
+     */
+    public QueryPlan get(String key) {
+        QueryPlan plan = plans.get(key);
+        if (plan != null && !Objects.equals(plan.stamp, currentStamp())) {
+            plans.remove(key, plan);
+            plan = null;
+        }
+        if (plan == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return plan;
+    }
+
+    public void put(String key, QueryPlan plan) {
+        plans.put(key, plan);
+    }
+
+    /**
+     * @return Stamp of the studies. Refreshed at most once every {@link #checkInterval} milliseconds
+     */
+    public Object currentStamp() {
+        long now = System.currentTimeMillis();
+        if (stampTime == 0 || now - stampTime >= checkInterval) {
+            stamp = stampSupplier.get();
+            stampTime = now;
+        }
+        return stamp;
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Compiled query for a query shape.
+     */
+    public static class QueryPlan {
+        private final Document filter;
+        private final Document projection;
+        private final Object stamp;
+        // Converters are not thread safe. Each execution borrows one
+        private final Queue<DocumentToVariantConverter> converters = new ConcurrentLinkedQueue<>();
+
+        public QueryPlan(Document filter, Document projection, Object stamp) {
+            this.filter = filter;
+            this.projection = projection;
+            this.stamp = stamp;
+        }
+
+        /**
+         * Add the positional filter to the compiled filter. The clauses of both filters are merged at the top level, as
+         * when the query is parsed at once. In particular, the "$or" clauses of both filters are joined in a single "$or".
+         *
+         * @param positionalFilter  Filter of the positional parameters. May be empty
+         * @return                  Mongo query
+         */
+        public Document bind(Document positionalFilter) {
+            if (positionalFilter.isEmpty()) {
+                return new Document(filter);
+            } else if (filter.isEmpty()) {
+                return positionalFilter;
+            }
+            Document query = new Document(filter);
+            for (Map.Entry<String, Object> entry : positionalFilter.entrySet()) {
+                Object value = query.get(entry.getKey());
+                if (value == null) {
+                    query.put(entry.getKey(), entry.getValue());
+                } else if (OR.equals(entry.getKey()) && value instanceof List && entry.getValue() instanceof List) {
+                    List<Object> or = new ArrayList<>((List<?>) entry.getValue());
+                    or.addAll((List<?>) value);
+                    query.put(OR, or);
+                } else {
+                    return new Document("$and", Arrays.asList(positionalFilter, filter));
+                }
+            }
+            return query;
+        }
+
+        public Document getFilter() {
+            return filter;
+        }
+
+        public Document getProjection() {
+            return projection;
+        }
+
+        /**
+         * @return A converter not used by other execution, or null if none is available
+         */
+        public DocumentToVariantConverter borrowConverter() {
+            return converters.poll();
+        }
+
+        public void returnConverter(DocumentToVariantConverter converter) {
+            converters.offer(converter);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.adaptors;
+
+import com.google.common.collect.BiMap;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToStudyVariantEntryConverter.*;
+
+/**
+ * Server side projection of the samples of one study.
+ *
+ * Builds an aggregation pipeline where the genotypes map of the study only contains the returned samples, and the
+ * files list only contains the returned files, so the rest of the genotypes do not leave the server.
+ * The sample data of each returned file is not filtered: its binaries still contain all the samples of the
+ * file, so the benefit is limited to the genotypes and to the files without returned samples.
+ * Requires MongoDB 3.4.4 or newer.
+ *
+ * Created on 18/10/26.
+ */
+public class VariantSamplesProjection {
+
+    private final int studyId;
+    private final List<Integer> sampleIds;
+    private final List<Integer> fileIds;
+
+    /**
+     * @param studyId   Returned study
+     * @param sampleIds Returned samples
+     * @param fileIds   Returned files. Null for all the files
+     */
+    public VariantSamplesProjection(int studyId, Collection<Integer> sampleIds, Collection<Integer> fileIds) {
+        this.studyId = studyId;
+        this.sampleIds = new ArrayList<>(new TreeSet<>(sampleIds));
+        this.fileIds = fileIds == null ? null : new ArrayList<>(new TreeSet<>(fileIds));
+    }
+
+    /**
+     * Build the projection for the returned samples, if it reduces the data to fetch.
+     *
+     * @param studyConfiguration    Returned study
+     * @param returnedSamples       Returned samples, as names or ids. Empty for all the samples
+     * @param returnedFiles         Returned files. Null for all the files
+     * @return                      Samples projection, or null if all the samples are returned
+     */
+    public static VariantSamplesProjection build(StudyConfiguration studyConfiguration, List<String> returnedSamples,
+                                                 List<Integer> returnedFiles) {
+        if (returnedSamples == null || returnedSamples.isEmpty()) {
+            return null;
+        }
+        BiMap<String, Integer> indexedSamples = StudyConfiguration.getIndexedSamples(studyConfiguration);
+        Set<Integer> sampleIds = new HashSet<>();
+        for (String sample : returnedSamples) {
+            Integer sampleId = indexedSamples.get(sample);
+            if (sampleId == null && StringUtils.isNumeric(sample) && indexedSamples.containsValue(Integer.valueOf(sample))) {
+                sampleId = Integer.valueOf(sample);
+            }
+            if (sampleId != null) {
+                sampleIds.add(sampleId);
+            }
+        }
+        if (sampleIds.size() >= indexedSamples.size()) {
+            return null;
+        }
+
+        Set<Integer> fileIds = null;
+        if (returnedFiles != null) {
+            // Files of the returned samples are required to read the extra sample fields
+            fileIds = new HashSet<>(returnedFiles);
+            for (Map.Entry<Integer, LinkedHashSet<Integer>> entry : studyConfiguration.getSamplesInFiles().entrySet()) {
+                if (!Collections.disjoint(entry.getValue(), sampleIds)) {
+                    fileIds.add(entry.getKey());
+                }
+            }
+        }
+        return new VariantSamplesProjection(studyConfiguration.getStudyId(), sampleIds, fileIds);
+    }
+
+    /**
+     * Build the aggregation pipeline equivalent to a find with this projection.
+     *
+     * @param query         Mongo query
+     * @param projection    Mongo projection
+     * @param options       Query options. Uses the normalized sort, skip and limit
+     * @return              Aggregation pipeline
+     */
+    public List<Bson> buildPipeline(Bson query, Document projection, QueryOptions options) {
+        List<Bson> pipeline = new ArrayList<>(5);
+        pipeline.add(new Document("$match", query));
+        if (options.containsKey(QueryOptions.SORT)) {
+            String order = options.getString(QueryOptions.ORDER, QueryOptions.ASCENDING);
+            boolean descending = order.equalsIgnoreCase(QueryOptions.DESCENDING) || order.equals("-1");
+            pipeline.add(new Document("$sort", new Document(options.getString(QueryOptions.SORT), descending ? -1 : 1)));
+        }
+        if (options.getInt(QueryOptions.SKIP) > 0) {
+            pipeline.add(new Document("$skip", options.getInt(QueryOptions.SKIP)));
+        }
+        if (options.getInt(QueryOptions.LIMIT) > 0) {
+            pipeline.add(new Document("$limit", options.getInt(QueryOptions.LIMIT)));
+        }
+        pipeline.add(new Document("$project", buildProject(projection)));
+        return pipeline;
+    }
+
+    /**
+     * Replace the studies projection with an expression filtering the study, its files and its genotypes.
+     *
+     * @param projection    Mongo projection
+     * @return              Projection for the $project stage
+     */
+    Document buildProject(Document projection) {
+        Document project = new Document(projection);
+
+        Object files;
+        if (fileIds == null) {
+            files = "$$s." + FILES_FIELD;
+        } else {
+            files = new Document("$filter", new Document("input", "$$s." + FILES_FIELD)
+                    .append("as", "f")
+                    .append("cond", new Document("$in", Arrays.asList("$$f." + FILEID_FIELD, fileIds))));
+        }
+        Document genotypes = new Document("$arrayToObject", new Document("$map", new Document()
+                .append("input", new Document("$objectToArray", "$$s." + GENOTYPES_FIELD))
+                .append("as", "g")
+                .append("in", new Document("k", "$$g.k")
+                        .append("v", new Document("$filter", new Document("input", "$$g.v")
+                                .append("as", "i")
+                                .append("cond", new Document("$in", Arrays.asList("$$i", sampleIds))))))));
+
+        project.put(DocumentToVariantConverter.STUDIES_FIELD, new Document("$map", new Document()
+                .append("input", new Document("$filter", new Document("input", "$" + DocumentToVariantConverter.STUDIES_FIELD)
+                        .append("as", "s")
+                        .append("cond", new Document("$eq", Arrays.asList("$$s." + STUDYID_FIELD, studyId)))))
+                .append("as", "s")
+                .append("in", new Document(STUDYID_FIELD, "$$s." + STUDYID_FIELD)
+                        .append(ALTERNATES_FIELD, "$$s." + ALTERNATES_FIELD)
+                        .append(FILES_FIELD, files)
+                        .append(GENOTYPES_FIELD, genotypes))));
+        return project;
+    }
+
+    /**
+     * Apply the projection to a variant document, as the server would do with the pipeline from {@link #buildPipeline}.
+     *
+     * @param document  Variant document
+     * @return          Projected copy of the document
+     */
+    public Document apply(Document document) {
+        Document projected = new Document(document);
+        Set<Integer> sampleIds = new HashSet<>(this.sampleIds);
+        List<Document> studies = new ArrayList<>();
+        for (Document study : (List<Document>) document.get(DocumentToVariantConverter.STUDIES_FIELD, List.class)) {
+            if (((Number) study.get(STUDYID_FIELD)).intValue() != studyId) {
+                continue;
+            }
+            Document projectedStudy = new Document(STUDYID_FIELD, study.get(STUDYID_FIELD));
+            if (study.containsKey(ALTERNATES_FIELD)) {
+                projectedStudy.put(ALTERNATES_FIELD, study.get(ALTERNATES_FIELD));
+            }
+            if (study.containsKey(FILES_FIELD)) {
+                List<Document> files = (List<Document>) study.get(FILES_FIELD);
+                projectedStudy.put(FILES_FIELD, fileIds == null ? files : files.stream()
+                        .filter(file -> fileIds.contains(file.get(FILEID_FIELD)))
+                        .collect(Collectors.toList()));
+            }
+            Document genotypes = (Document) study.get(GENOTYPES_FIELD);
+            if (genotypes != null) {
+                Document projectedGenotypes = new Document();
+                for (Map.Entry<String, Object> entry : genotypes.entrySet()) {
+                    projectedGenotypes.put(entry.getKey(), ((List<Integer>) entry.getValue()).stream()
+                            .filter(sampleIds::contains)
+                            .collect(Collectors.toList()));
+                }
+                projectedStudy.put(GENOTYPES_FIELD, projectedGenotypes);
+            }
+            studies.add(projectedStudy);
+        }
+        projected.put(DocumentToVariantConverter.STUDIES_FIELD, studies);
+        return projected;
+    }
+
+    public int getStudyId() {
+        return studyId;
+    }
+
+    public List<Integer> getSampleIds() {
+        return sampleIds;
+    }
+
+    public List<Integer> getFileIds() {
+        return fileIds;
+    }
+}
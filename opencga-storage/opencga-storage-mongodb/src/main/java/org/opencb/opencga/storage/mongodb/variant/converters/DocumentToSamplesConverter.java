@@ -18,6 +18,9 @@ package org.opencb.opencga.storage.mongodb.variant.converters;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.bson.Document;
 import org.bson.types.Binary;
@@ -52,6 +55,8 @@ public class DocumentToSamplesConverter /*implements ComplexTypeConverter<Varian
     private final Map<Integer, BiMap<String, Integer>> __studySamplesId; //Inverse map from "sampleIds". Do not use directly, can be null
     // . Use "getIndexedIdSamplesMap()"
     private final Map<Integer, LinkedHashMap<String, Integer>> __returnedSamplesPosition;
+    // Immutable map from indexed file to the names of its samples. Use "getIndexedFileSamplesMap()"
+    private final Map<Integer, Map<Integer, List<String>>> __studyFileSamples;
     private final Map<Integer, Set<String>> studyDefaultGenotypeSet;
     private LinkedHashSet<String> returnedSamples;
     private StudyConfigurationManager studyConfigurationManager;
@@ -108,6 +113,7 @@ public class DocumentToSamplesConverter /*implements ComplexTypeConverter<Varian
         studyConfigurations = new HashMap<>();
         __studySamplesId = new HashMap<>();
         __returnedSamplesPosition = new HashMap<>();
+        __studyFileSamples = new HashMap<>();
         studyDefaultGenotypeSet = new HashMap<>();
         returnedSamples = new LinkedHashSet<>();
         studyConfigurationManager = null;
@@ -202,7 +208,7 @@ public class DocumentToSamplesConverter /*implements ComplexTypeConverter<Varian
         // Make a copy of the extraFields. They may be modified
         List<String> extraFields = new LinkedList<>(studyConfiguration.getAttributes()
                 .getAsStringList(Options.EXTRA_GENOTYPE_FIELDS.key()));
-        boolean excludeGenotypes = !object.containsKey(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD)
+        boolean excludeGenotypes = object.get(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD) == null
                 || studyConfiguration.getAttributes().getBoolean(Options.EXCLUDE_GENOTYPES.key(), Options.EXCLUDE_GENOTYPES.defaultValue());
         boolean compressExtraParams = studyConfiguration.getAttributes()
                 .getBoolean(Options.EXTRA_GENOTYPE_FIELDS_COMPRESS.key(),
@@ -213,9 +219,6 @@ public class DocumentToSamplesConverter /*implements ComplexTypeConverter<Varian
         }
 
 
-        List<List<String>> samplesData = new ArrayList<>(sampleIds.size());
-
-
         // An array of genotypes is initialized with the most common one
 //        String mostCommonGtString = mongoGenotypes.getString("def");
         Set<String> defaultGenotypes = studyDefaultGenotypeSet.get(studyId);
@@ -227,58 +230,21 @@ public class DocumentToSamplesConverter /*implements ComplexTypeConverter<Varian
             mostCommonGtString = UNKNOWN_GENOTYPE;
         }
 
-        // Add the samples to the file
-        for (int i = 0; i < sampleIds.size(); i++) {
-            String[] values;
-            if (excludeGenotypes) {
-                values = new String[extraFields.size()];
-            } else {
-                values = new String[1 + extraFields.size()];
-                values[0] = mostCommonGtString;
-            }
-            samplesData.add(Arrays.asList(values));
-        }
-
-
-        // Loop through the non-most commmon genotypes, and set their defaultValue
-        // in the position specified in the array, such as:
-        // "0|1" : [ 41, 311, 342, 358, 881, 898, 903 ]
-        // genotypes[41], genotypes[311], etc, will be set to "0|1"
-        Map<Integer, String> idSamples = getIndexedSamplesIdMap(studyId).inverse();
-        if (!excludeGenotypes) {
-            Document mongoGenotypes = (Document) object.get(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD);
-            for (Map.Entry<String, Object> dbo : mongoGenotypes.entrySet()) {
-                final String genotype;
-                if (dbo.getKey().equals(UNKNOWN_GENOTYPE)) {
-                    if (returnedUnknownGenotype == null) {
-                        continue;
-                    }
-                    if (defaultGenotypes.contains(returnedUnknownGenotype)) {
-                        continue;
-                    } else {
-                        genotype = returnedUnknownGenotype;
-                    }
-                } else {
-                    genotype = genotypeToDataModelType(dbo.getKey());
-                }
-                for (Integer sampleId : (List<Integer>) dbo.getValue()) {
-                    if (idSamples.containsKey(sampleId)) {
-                        samplesData.get(samplesPositionToReturn.get(idSamples.get(sampleId))).set(0, genotype);
-                    }
-                }
-            }
-        }
-
-        if (object.containsKey(DocumentToStudyVariantEntryConverter.FILES_FIELD)) {
+        // Only the sample data of each file is kept by the lazy samples data
+        final Map<Integer, Document> files;
+        if (object.get(DocumentToStudyVariantEntryConverter.FILES_FIELD) != null) {
             List<Document> fileObjects = (List<Document>) object.get(DocumentToStudyVariantEntryConverter.FILES_FIELD);
-            Map<Integer, Document> files = fileObjects.stream()
-                    .collect(Collectors.toMap(f -> (Integer) f.get(DocumentToStudyVariantEntryConverter.FILEID_FIELD), f -> f));
+            files = fileObjects.stream()
+                    .collect(Collectors.toMap(f -> (Integer) f.get(DocumentToStudyVariantEntryConverter.FILEID_FIELD),
+                            f -> {
+                                Document sampleDatas = (Document) f.get(DocumentToStudyVariantEntryConverter.SAMPLE_DATA_FIELD);
+                                return sampleDatas == null ? new Document() : sampleDatas;
+                            }));
 
             Set<String> extraFieldsSet = new HashSet<>();
             for (Integer fid : studyConfiguration.getIndexedFiles()) {
                 if (files.containsKey(fid)) {
-                    Document sampleDatas = (Document) files.get(fid).get(DocumentToStudyVariantEntryConverter.SAMPLE_DATA_FIELD);
-                    extraFieldsSet.addAll(sampleDatas.keySet());
+                    extraFieldsSet.addAll(files.get(fid).keySet());
                 }
             }
             Iterator<String> it = extraFields.iterator();
@@ -288,108 +254,133 @@ public class DocumentToSamplesConverter /*implements ComplexTypeConverter<Varian
                     it.remove();
                 }
             }
+        } else {
+            files = null;
+        }
 
-            for (Integer fid : studyConfiguration.getIndexedFiles()) {
-                if (files.containsKey(fid)) {
-                    Document sampleDatas = (Document) files.get(fid).get(DocumentToStudyVariantEntryConverter.SAMPLE_DATA_FIELD);
-
-                    int extraFieldPosition;
-                    if (excludeGenotypes) {
-                        extraFieldPosition = 0; //There are no GT
-                    } else {
-                        extraFieldPosition = 1; //Skip GT
+        // Samples data is loaded by columns on the first access, and each row is only built when accessed.
+        // The loader only captures the required sub-documents and immutable snapshots of the study configuration.
+        Map<Integer, String> idSamples = getIndexedSamplesIdMap(studyId).inverse();
+        Map<Integer, List<String>> fileSamples = getIndexedFileSamplesMap(studyConfiguration);
+        List<String> returnedExtraFields = ImmutableList.copyOf(extraFields);
+        Document mongoGenotypes = excludeGenotypes ? null : (Document) object.get(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD);
+        String unknownGenotype = returnedUnknownGenotype;
+        LazySamplesData samplesData = new LazySamplesData(sampleIds.size(), excludeGenotypes ? null : mostCommonGtString,
+                extraFields.size(), data -> {
+                    if (mongoGenotypes != null) {
+                        loadGenotypes(mongoGenotypes, defaultGenotypes, unknownGenotype, idSamples, samplesPositionToReturn, data);
                     }
-                    for (String extraField : extraFields) {
-                        extraField = extraField.toLowerCase();
-                        byte[] byteArray = sampleDatas == null || !sampleDatas.containsKey(extraField)
-                                ? null
-                                : sampleDatas.get(extraField, Binary.class).getData();
-
-                        VariantMongoDBProto.OtherFields otherFields = null;
-                        if (compressExtraParams && byteArray != null) {
-                            try {
-                                byteArray = CompressionUtils.decompress(byteArray);
-                            } catch (IOException e) {
-                                throw new UncheckedIOException(e);
-                            } catch (DataFormatException ignore) {
-                                //It was not actually compressed, so it failed decompressing
-                            }
-                        }
+                    if (files != null) {
+                        loadExtraFields(fileSamples, files, returnedExtraFields, compressExtraParams, samplesPositionToReturn, data);
+                    }
+                });
+
+        fillStudyEntryFields(study, samplesPositionToReturn, extraFields, samplesData, excludeGenotypes);
+        return samplesData;
+    }
+
+    /**
+     * Loop through the non-most common genotypes, and set their value in the positions specified in the array.
+     * e.g. "0|1" : [ 41, 311, 342, 358, 881, 898, 903 ]
+     * genotypes[41], genotypes[311], etc, will be set to "0|1"
+     */
+    private static void loadGenotypes(Document mongoGenotypes, Set<String> defaultGenotypes, String returnedUnknownGenotype,
+                                      Map<Integer, String> idSamples, Map<String, Integer> samplesPositionToReturn,
+                                      LazySamplesData samplesData) {
+        for (Map.Entry<String, Object> dbo : mongoGenotypes.entrySet()) {
+            final String genotype;
+            if (dbo.getKey().equals(UNKNOWN_GENOTYPE)) {
+                if (returnedUnknownGenotype == null) {
+                    continue;
+                }
+                if (defaultGenotypes.contains(returnedUnknownGenotype)) {
+                    continue;
+                } else {
+                    genotype = returnedUnknownGenotype;
+                }
+            } else {
+                genotype = genotypeToDataModelType(dbo.getKey());
+            }
+            for (Integer sampleId : (List<Integer>) dbo.getValue()) {
+                if (idSamples.containsKey(sampleId)) {
+                    samplesData.setGenotype(samplesPositionToReturn.get(idSamples.get(sampleId)), genotype);
+                }
+            }
+        }
+    }
+
+    private static void loadExtraFields(Map<Integer, List<String>> fileSamples, Map<Integer, Document> files, List<String> extraFields,
+                                        boolean compressExtraParams, Map<String, Integer> samplesPositionToReturn,
+                                        LazySamplesData samplesData) {
+        for (Map.Entry<Integer, List<String>> entry : fileSamples.entrySet()) {
+            Integer fid = entry.getKey();
+            if (files.containsKey(fid)) {
+                Document sampleDatas = files.get(fid);
+
+                int extraFieldPosition = 0;
+                for (String extraField : extraFields) {
+                    extraField = extraField.toLowerCase();
+                    byte[] byteArray = sampleDatas == null || !sampleDatas.containsKey(extraField)
+                            ? null
+                            : sampleDatas.get(extraField, Binary.class).getData();
+
+                    VariantMongoDBProto.OtherFields otherFields = null;
+                    if (compressExtraParams && byteArray != null) {
                         try {
-                            if (byteArray != null) {
-                                otherFields = VariantMongoDBProto.OtherFields.parseFrom(byteArray);
-                            }
-                        } catch (InvalidProtocolBufferException e) {
+                            byteArray = CompressionUtils.decompress(byteArray);
+                        } catch (IOException e) {
                             throw new UncheckedIOException(e);
+                        } catch (DataFormatException ignore) {
+                            //It was not actually compressed, so it failed decompressing
                         }
-                        Supplier<String> supplier;
-                        if (otherFields == null) {
-                            supplier = () -> UNKNOWN_FIELD;
-                        } else if (otherFields.getIntValuesCount() > 0) {
-                            final Iterator<Integer> iterator = otherFields.getIntValuesList().iterator();
-                            supplier = () -> iterator.hasNext() ? INTEGER_COMPLEX_TYPE_CONVERTER.convertToDataModelType(iterator.next())
-                                    : UNKNOWN_FIELD;
-                        } else if (otherFields.getFloatValuesCount() > 0) {
-                            final Iterator<Integer> iterator = otherFields.getFloatValuesList().iterator();
-                            supplier = () -> iterator.hasNext() ? FLOAT_COMPLEX_TYPE_CONVERTER.convertToDataModelType(iterator.next())
-                                    : UNKNOWN_FIELD;
-                        } else {
-                            final Iterator<String> iterator = otherFields.getStringValuesList().iterator();
-                            supplier = () -> iterator.hasNext() ? iterator.next() : UNKNOWN_FIELD;
-                        }
-                        for (Integer sampleId : studyConfiguration.getSamplesInFiles().get(fid)) {
-                            String sampleName = studyConfiguration.getSampleIds().inverse().get(sampleId);
-                            Integer samplePosition = samplesPositionToReturn.get(sampleName);
-                            if (samplePosition == null) {
-                                // The sample on this position is not returned. Skip this value.
-                                supplier.get();
-                            } else {
-                                samplesData.get(samplePosition).set(extraFieldPosition, supplier.get());
-                            }
+                    }
+                    try {
+                        if (byteArray != null) {
+                            otherFields = VariantMongoDBProto.OtherFields.parseFrom(byteArray);
                         }
-
-                        extraFieldPosition++;
+                    } catch (InvalidProtocolBufferException e) {
+                        throw new UncheckedIOException(e);
                     }
-                } else {
-                    int extraFieldPosition;
-                    if (excludeGenotypes) {
-                        extraFieldPosition = 0; //There are no GT
+                    Supplier<String> supplier;
+                    if (otherFields == null) {
+                        supplier = () -> UNKNOWN_FIELD;
+                    } else if (otherFields.getIntValuesCount() > 0) {
+                        final Iterator<Integer> iterator = otherFields.getIntValuesList().iterator();
+                        supplier = () -> iterator.hasNext() ? INTEGER_COMPLEX_TYPE_CONVERTER.convertToDataModelType(iterator.next())
+                                : UNKNOWN_FIELD;
+                    } else if (otherFields.getFloatValuesCount() > 0) {
+                        final Iterator<Integer> iterator = otherFields.getFloatValuesList().iterator();
+                        supplier = () -> iterator.hasNext() ? FLOAT_COMPLEX_TYPE_CONVERTER.convertToDataModelType(iterator.next())
+                                : UNKNOWN_FIELD;
                     } else {
-                        extraFieldPosition = 1; //Skip GT
+                        final Iterator<String> iterator = otherFields.getStringValuesList().iterator();
+                        supplier = () -> iterator.hasNext() ? iterator.next() : UNKNOWN_FIELD;
                     }
-                    for (int i = 0; i < extraFields.size(); i++) {
-                        for (Integer sampleId : studyConfiguration.getSamplesInFiles().get(fid)) {
-                            String sampleName = studyConfiguration.getSampleIds().inverse().get(sampleId);
-                            Integer samplePosition = samplesPositionToReturn.get(sampleName);
-                            if (samplePosition != null) {
-                                if (samplesData.get(samplePosition).get(extraFieldPosition) == null) {
-                                    samplesData.get(samplePosition).set(extraFieldPosition, UNKNOWN_FIELD);
-                                }
+                    for (String sampleName : entry.getValue()) {
+                        Integer samplePosition = samplesPositionToReturn.get(sampleName);
+                        if (samplePosition == null) {
+                            // The sample on this position is not returned. Skip this value.
+                            supplier.get();
+                        } else {
+                            samplesData.setExtraField(extraFieldPosition, samplePosition, supplier.get());
+                        }
+                    }
+
+                    extraFieldPosition++;
+                }
+            } else {
+                for (int extraFieldPosition = 0; extraFieldPosition < extraFields.size(); extraFieldPosition++) {
+                    for (String sampleName : entry.getValue()) {
+                        Integer samplePosition = samplesPositionToReturn.get(sampleName);
+                        if (samplePosition != null) {
+                            if (samplesData.getExtraField(extraFieldPosition, samplePosition) == null) {
+                                samplesData.setExtraField(extraFieldPosition, samplePosition, UNKNOWN_FIELD);
                             }
                         }
-                        extraFieldPosition++;
                     }
                 }
             }
         }
-
-//
-//        int extraFieldPosition = 1; //Skip GT
-//        for (String extraField : extraFields) {
-//            if (object.containsKey(extraField.toLowerCase())) {
-//                List values = (List) object.get(extraField.toLowerCase());
-//
-//                for (int i = 0; i < values.size(); i++) {
-//                    Object value = values.get(i);
-//                    String sampleName = samplesPosition.inverse().get(i);
-//                    samplesData.get(samplesPositionToReturn.get(sampleName)).set(extraFieldPosition, value.toString());
-//                }
-//            }
-//            extraFieldPosition++;
-//        }
-
-        fillStudyEntryFields(study, samplesPositionToReturn, extraFields, samplesData, excludeGenotypes);
-        return samplesData;
     }
 
     private void fillStudyEntryFields(StudyEntry study, LinkedHashMap<String, Integer> samplesPositionToReturn, List<String> extraFields,
@@ -590,6 +581,7 @@ public class DocumentToSamplesConverter /*implements ComplexTypeConverter<Varian
     public void addStudyConfiguration(StudyConfiguration studyConfiguration) {
         this.studyConfigurations.put(studyConfiguration.getStudyId(), studyConfiguration);
         this.__studySamplesId.put(studyConfiguration.getStudyId(), null);
+        this.__studyFileSamples.remove(studyConfiguration.getStudyId());
 
         Set defGenotypeSet = studyConfiguration.getAttributes().get(DEFAULT_GENOTYPE.key(), Set.class);
         if (defGenotypeSet == null) {
@@ -629,6 +621,7 @@ public class DocumentToSamplesConverter /*implements ComplexTypeConverter<Varian
                         .forEach(stringIntegerEntry -> returnedSampleIds.put(stringIntegerEntry.getKey(), stringIntegerEntry.getValue()));
                 sampleIds = returnedSampleIds;
             }
+            sampleIds = ImmutableBiMap.copyOf(sampleIds);
             this.__studySamplesId.put(studyId, sampleIds);
         } else {
             sampleIds = this.__studySamplesId.get(studyId);
@@ -637,6 +630,24 @@ public class DocumentToSamplesConverter /*implements ComplexTypeConverter<Varian
         return sampleIds;
     }
 
+    /**
+     * Lazy usage of the samples of each indexed file. Immutable, so it can be used by the lazy samples data.
+     **/
+    private Map<Integer, List<String>> getIndexedFileSamplesMap(StudyConfiguration studyConfiguration) {
+        return __studyFileSamples.computeIfAbsent(studyConfiguration.getStudyId(), studyId -> {
+            BiMap<Integer, String> idSamples = studyConfiguration.getSampleIds().inverse();
+            ImmutableMap.Builder<Integer, List<String>> fileSamples = ImmutableMap.builder();
+            for (Integer fileId : studyConfiguration.getIndexedFiles()) {
+                List<String> samples = new ArrayList<>();
+                for (Integer sampleId : studyConfiguration.getSamplesInFiles().get(fileId)) {
+                    samples.add(idSamples.get(sampleId));
+                }
+                fileSamples.put(fileId, Collections.unmodifiableList(samples));
+            }
+            return fileSamples.build();
+        });
+    }
+
     private LinkedHashMap<String, Integer> getReturnedSamplesPosition(StudyConfiguration studyConfiguration) {
         if (!__returnedSamplesPosition.containsKey(studyConfiguration.getStudyId())) {
             LinkedHashMap<String, Integer> samplesPosition;
@@ -126,7 +126,7 @@ public class DocumentToStudyVariantEntryConverter {
 
 //        String fileId = (String) object.get(FILEID_FIELD);
         Document fileObject = null;
-        if (document.containsKey(FILES_FIELD)) {
+        if (document.get(FILES_FIELD) != null) {
             List<FileEntry> files = new ArrayList<>(((List) document.get(FILES_FIELD)).size());
             for (Document fileDocument : (List<Document>) document.get(FILES_FIELD)) {
                 Integer fid = ((Integer) fileDocument.get(FILEID_FIELD));
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.converters;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Samples data of a study, stored by columns.
+ *
+ * Genotypes are stored as the default genotype plus the samples with a different one, and each extra field as one
+ * array of values. Columns are loaded on the first access, and the row of each sample is only built when accessed.
+ * Any structural modification of the list copies all the rows into a regular list.
+ *
+ * Concurrent reads are safe, and the columns are loaded only once. Modifications are not synchronized.
+ *
+ * Created on 18/10/26.
+ */
+public class LazySamplesData extends AbstractList<List<String>> {
+
+    private final int size;
+    private final String defaultGenotype;
+    private final boolean hasGenotype;
+    private final String[][] extraFields;
+    private final Map<Integer, String> genotypes = new HashMap<>();
+    /** Null once the columns are loaded. Written after the columns, so it publishes them to other threads. */
+    private volatile Consumer<LazySamplesData> loader;
+    private List<String>[] rows;
+    private List<List<String>> materialized;
+
+    /**
+     * @param size              Number of samples
+     * @param defaultGenotype   Genotype of the samples without other genotype. Null if the genotypes are not returned
+     * @param numExtraFields    Number of fields after the genotype
+     * @param loader            Fills the columns on the first access. May be null
+     */
+    public LazySamplesData(int size, String defaultGenotype, int numExtraFields, Consumer<LazySamplesData> loader) {
+        this.size = size;
+        this.defaultGenotype = defaultGenotype;
+        this.hasGenotype = defaultGenotype != null;
+        this.extraFields = new String[numExtraFields][];
+        this.loader = loader == null ? data -> { } : loader;
+    }
+
+    @Override
+    public List<String> get(int position) {
+        if (materialized != null) {
+            return materialized.get(position);
+        }
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size);
+        }
+        load();
+        List<String> row = rows[position];
+        if (row == null) {
+            String[] values = new String[(hasGenotype ? 1 : 0) + extraFields.length];
+            int i = 0;
+            if (hasGenotype) {
+                values[i++] = getGenotype(position);
+            }
+            for (int field = 0; field < extraFields.length; field++) {
+                values[i++] = getExtraField(field, position);
+            }
+            row = Arrays.asList(values);
+            rows[position] = row;
+        }
+        return row;
+    }
+
+    @Override
+    public int size() {
+        return materialized == null ? size : materialized.size();
+    }
+
+    @Override
+    public List<String> set(int index, List<String> element) {
+        return materialize().set(index, element);
+    }
+
+    @Override
+    public void add(int index, List<String> element) {
+        modCount++;
+        materialize().add(index, element);
+    }
+
+    @Override
+    public List<String> remove(int index) {
+        modCount++;
+        return materialize().remove(index);
+    }
+
+    /**
+     * Genotype of a sample, without building its row.
+     *
+     * @param position  Sample position
+     * @return          Genotype of the sample, or null if the genotypes are not returned
+     */
+    public String getGenotype(int position) {
+        if (!hasGenotype) {
+            return null;
+        } else if (materialized != null) {
+            return materialized.get(position).get(0);
+        }
+        load();
+        if (rows != null && rows[position] != null) {
+            return rows[position].get(0);
+        }
+        return genotypes.getOrDefault(position, defaultGenotype);
+    }
+
+    /**
+     * @return Positions of the samples loaded with a genotype other than the default genotype. Empty after modifying the list
+     */
+    public Set<Integer> getNonDefaultGenotypePositions() {
+        load();
+        return Collections.unmodifiableSet(genotypes.keySet());
+    }
+
+    void setGenotype(int position, String genotype) {
+        genotypes.put(position, genotype);
+    }
+
+    String getExtraField(int field, int position) {
+        String[] values = extraFields[field];
+        return values == null ? null : values[position];
+    }
+
+    void setExtraField(int field, int position, String value) {
+        if (extraFields[field] == null) {
+            extraFields[field] = new String[size];
+        }
+        extraFields[field][position] = value;
+    }
+
+    private void load() {
+        if (loader != null) {
+            synchronized (this) {
+                Consumer<LazySamplesData> loader = this.loader;
+                if (loader != null) {
+                    loader.accept(this);
+                    @SuppressWarnings("unchecked")
+                    List<String>[] rows = new List[size];
+                    this.rows = rows;
+                    this.loader = null;
+                }
+            }
+        }
+    }
+
+    private List<List<String>> materialize() {
+        if (materialized == null) {
+            List<List<String>> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(get(i));
+            }
+            materialized = list;
+            rows = null;
+            genotypes.clear();
+        }
+        return materialized;
+    }
+}
@@ -27,32 +27,143 @@ import org.bson.types.Binary;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.VariantAvro;
 import org.opencb.commons.datastore.core.ComplexTypeConverter;
-import org.opencb.commons.utils.CompressionUtils;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Adler32;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
+ * Converts variants into compressed avro binaries for the stage collection.
+ *
+ * The {@link Codec} is tagged in the binary subtype, so binaries written with any codec can be read. Deflate streams
+ * compressed with a preset dictionary can only be read by the converter that wrote them, or by a converter where the
+ * dictionary of the file was registered with {@link #registerDictionary}. The checksum included in the stream is
+ * validated against the dictionary.
+ *
+ * Encoders, decoders, deflaters and buffers are reused by each thread. Native memory of deflaters and inflaters is
+ * released with {@link #close}.
+ *
  * Created on 27/06/16.
  *
  * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
  */
 public class VariantToAvroBinaryConverter implements ComplexTypeConverter<Variant, Binary> {
 
-    private SpecificDatumWriter<VariantAvro> writer = new SpecificDatumWriter<>(VariantAvro.getClassSchema());
-    private SpecificDatumReader<VariantAvro> reader = new SpecificDatumReader<>(VariantAvro.getClassSchema());
+    /**
+     * Deflate streams never use more than the last 32KB of the dictionary.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    public enum Codec {
+        /** Deflate with default compression level. Format used by previous versions. */
+        DEFLATE("deflate", (byte) 0, Deflater.DEFAULT_COMPRESSION),
+        /** Deflate optimized for speed. */
+        DEFLATE_FAST("deflate-fast", (byte) 0, Deflater.BEST_SPEED),
+        /** Uncompressed avro. */
+        NONE("none", (byte) 0x80, Deflater.NO_COMPRESSION);
+
+        private final String key;
+        private final byte subtype;
+        private final int level;
+
+        Codec(String key, byte subtype, int level) {
+            this.key = key;
+            this.subtype = subtype;
+            this.level = level;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        public static Codec parse(String key) {
+            for (Codec codec : values()) {
+                if (codec.key.equalsIgnoreCase(key)) {
+                    return codec;
+                }
+            }
+            throw new IllegalArgumentException("Unknown stage compression codec '" + key + "'. Expected one of "
+                    + Arrays.toString(Arrays.stream(values()).map(Codec::key).toArray()));
+        }
+    }
+
+    private final SpecificDatumWriter<VariantAvro> writer = new SpecificDatumWriter<>(VariantAvro.getClassSchema());
+    private final SpecificDatumReader<VariantAvro> reader = new SpecificDatumReader<>(VariantAvro.getClassSchema());
+    private final Codec codec;
+    private final byte[] dictionary;
+    private final Map<Integer, byte[]> fileDictionaries = new ConcurrentHashMap<>();
+    private final Queue<Context> contexts = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Context> context = ThreadLocal.withInitial(() -> {
+        Context context = new Context();
+        contexts.add(context);
+        return context;
+    });
+
+    public VariantToAvroBinaryConverter() {
+        this(Codec.DEFLATE, null);
+    }
+
+    /**
+     * @param codec         Compression codec
+     * @param dictionary    Preset dictionary for deflate codecs. May be null
+     */
+    public VariantToAvroBinaryConverter(Codec codec, byte[] dictionary) {
+        this.codec = codec;
+        if (dictionary != null && dictionary.length > MAX_DICTIONARY_SIZE) {
+            dictionary = Arrays.copyOfRange(dictionary, dictionary.length - MAX_DICTIONARY_SIZE, dictionary.length);
+        }
+        this.dictionary = codec == Codec.NONE ? null : dictionary;
+    }
+
+    /**
+     * Register the dictionary used to compress the variants of a file.
+     *
+     * @param fileId        File id
+     * @param dictionary    Preset dictionary
+     */
+    public void registerDictionary(int fileId, byte[] dictionary) {
+        fileDictionaries.put(fileId, dictionary);
+    }
 
     @Override
     public Variant convertToDataModelType(Binary object) {
-        BinaryDecoder decoder = null;
+        return convertToDataModelType(object, dictionary);
+    }
+
+    /**
+     * Read a variant from a file, using the dictionary registered for that file, if any.
+     *
+     * @param object    Stage binary
+     * @param fileId    File id of the variant
+     * @return          Variant
+     */
+    public Variant convertToDataModelType(Binary object, int fileId) {
+        return convertToDataModelType(object, fileDictionaries.get(fileId));
+    }
+
+    private Variant convertToDataModelType(Binary object, byte[] dictionary) {
+        Context context = this.context.get();
         try {
             byte[] data = object.getData();
-            data = CompressionUtils.decompress(data);
-            InputStream is = new ByteArrayInputStream(data);
-//                is = new GZIPInputStream(is);
-            decoder = DecoderFactory.get().directBinaryDecoder(is, decoder);
-
-            return new Variant(reader.read(null, decoder));
+            int length;
+            byte[] avro;
+            if (object.getType() == Codec.NONE.subtype) {
+                avro = data;
+                length = data.length;
+            } else {
+                avro = context.inflate(data, dictionary);
+                length = context.inflatedLength;
+            }
+            context.decoder = DecoderFactory.get().binaryDecoder(avro, 0, length, context.decoder);
+            return new Variant(reader.read(null, context.decoder));
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         } catch (DataFormatException e) {
@@ -60,25 +171,128 @@ public class VariantToAvroBinaryConverter implements ComplexTypeConverter<Varian
         }
     }
 
-
     @Override
     public Binary convertToStorageType(Variant variant) {
-        BinaryEncoder encoder = null;
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-//            byteArrayOutputStream.reset();
-        OutputStream outputStream = byteArrayOutputStream;
+        Context context = this.context.get();
         try {
-//                outputStream = new GZIPOutputStream(outputStream);
-            encoder = EncoderFactory.get().directBinaryEncoder(outputStream, encoder);
-            writer.write(variant.getImpl(), encoder);
-            encoder.flush();
-            outputStream.flush();
-            outputStream.close();
-            byte[] data = byteArrayOutputStream.toByteArray();
-            data = CompressionUtils.compress(data);
-            return new Binary(data);
+            byte[] avro = context.encode(variant.getImpl());
+            if (codec == Codec.NONE) {
+                return new Binary(codec.subtype, avro);
+            } else {
+                return new Binary(codec.subtype, context.deflate(avro));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Avro encoding of a variant, without compression. Used to build dictionaries.
+     *
+     * @param variant Variant
+     * @return Serialized variant
+     */
+    public byte[] encode(Variant variant) {
+        try {
+            return context.get().encode(variant.getImpl());
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Release the native memory of all the deflaters and inflaters. The converter can not be used after this.
+     */
+    public void close() {
+        Context context;
+        while ((context = contexts.poll()) != null) {
+            context.end();
+        }
+    }
+
+    private static int checksum(byte[] dictionary) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(dictionary);
+        return (int) adler32.getValue();
+    }
+
+    /**
+     * Reusable objects of each thread.
+     */
+    private class Context {
+        private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        private BinaryEncoder encoder;
+        private BinaryDecoder decoder;
+        private Deflater deflater;
+        private Inflater inflater;
+        private byte[] buffer = new byte[4096];
+        private int inflatedLength;
+
+        byte[] encode(VariantAvro variantAvro) throws IOException {
+            outputStream.reset();
+            encoder = EncoderFactory.get().binaryEncoder(outputStream, encoder);
+            writer.write(variantAvro, encoder);
+            encoder.flush();
+            return outputStream.toByteArray();
+        }
+
+        byte[] deflate(byte[] data) {
+            if (deflater == null) {
+                deflater = new Deflater(codec.level);
+            }
+            deflater.reset();
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+
+        byte[] inflate(byte[] data, byte[] dictionary) throws DataFormatException {
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+            inflater.reset();
+            inflater.setInput(data);
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int inflated = inflater.inflate(buffer, length, buffer.length - length);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    if (dictionary == null || checksum(dictionary) != inflater.getAdler()) {
+                        throw new IllegalStateException("Missing stage compression dictionary " + inflater.getAdler());
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (inflated == 0 && inflater.needsInput()) {
+                    throw new DataFormatException("Truncated deflate stream");
+                }
+                length += inflated;
+            }
+            inflatedLength = length;
+            return buffer;
+        }
+
+        void end() {
+            if (deflater != null) {
+                deflater.end();
+            }
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
 }
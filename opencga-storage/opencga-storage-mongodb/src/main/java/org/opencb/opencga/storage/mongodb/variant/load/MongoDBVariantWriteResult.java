@@ -16,6 +16,9 @@
 
 package org.opencb.opencga.storage.mongodb.variant.load;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.opencb.opencga.storage.core.benchmark.LatencyHistogram;
+
 /**
  * Created on 30/10/15.
  *
@@ -68,6 +71,8 @@ public class MongoDBVariantWriteResult {
     private long existingVariantsNanoTime;
     /** Time in nanoseconds into updating the missing variants. */
     private long fillGapsNanoTime;
+    /** Latency in microseconds of each batch of writes. Not considered by {@link #equals}. */
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
 
     public MongoDBVariantWriteResult() {
     }
@@ -108,6 +113,7 @@ public class MongoDBVariantWriteResult {
             newVariantsNanoTime += other.newVariantsNanoTime;
             existingVariantsNanoTime += other.existingVariantsNanoTime;
             fillGapsNanoTime += other.fillGapsNanoTime;
+            writeLatency.add(other.writeLatency);
         }
     }
 
@@ -192,6 +198,11 @@ public class MongoDBVariantWriteResult {
         return this;
     }
 
+    @JsonIgnore
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
 
     @Override
     public boolean equals(Object o) {
@@ -258,6 +269,10 @@ public class MongoDBVariantWriteResult {
                 + ", newVariantsTime=" + newVariantsNanoTime / 1000000000.0 + "s"
                 + ", existingVariantsTime=" + existingVariantsNanoTime / 1000000000.0 + "s"
                 + ", fillGapsTime=" + fillGapsNanoTime / 1000000000.0 + "s"
+                + (writeLatency.getCount() == 0 ? "" : ", writeLatency={count:" + writeLatency.getCount()
+                        + ", p50:" + writeLatency.getValueAtPercentile(50) / 1000.0 + "ms"
+                        + ", p99:" + writeLatency.getValueAtPercentile(99) / 1000.0 + "ms"
+                        + ", max:" + writeLatency.getMax() / 1000.0 + "ms}")
                 + '}';
     }
 
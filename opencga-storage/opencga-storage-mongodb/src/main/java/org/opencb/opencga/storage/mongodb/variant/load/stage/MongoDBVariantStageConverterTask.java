@@ -6,6 +6,7 @@ import org.bson.Document;
 import org.bson.types.Binary;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.commons.datastore.core.ComplexTypeConverter;
 import org.opencb.commons.run.ParallelTaskRunner;
 import org.opencb.opencga.core.common.ProgressLogger;
 
@@ -25,9 +26,15 @@ public class MongoDBVariantStageConverterTask implements ParallelTaskRunner.Task
 
     private final ProgressLogger progressLogger;
     private final AtomicLong skippedVariants;
+    private final ComplexTypeConverter<Variant, Binary> variantConverter;
 
     public MongoDBVariantStageConverterTask(ProgressLogger progressLogger) {
+        this(progressLogger, VARIANT_CONVERTER_DEFAULT);
+    }
+
+    public MongoDBVariantStageConverterTask(ProgressLogger progressLogger, ComplexTypeConverter<Variant, Binary> variantConverter) {
         this.progressLogger = progressLogger;
+        this.variantConverter = variantConverter;
         skippedVariants = new AtomicLong(0);
     }
 
@@ -48,7 +55,7 @@ public class MongoDBVariantStageConverterTask implements ParallelTaskRunner.Task
                 localSkippedVariants++;
                 continue;
             }
-            Binary binary = VARIANT_CONVERTER_DEFAULT.convertToStorageType(variant);
+            Binary binary = variantConverter.convertToStorageType(variant);
             Document id = STRING_ID_CONVERTER.convertToStorageType(variant);
 
             ids.put(id, binary);
@@ -29,6 +29,7 @@ import org.opencb.commons.datastore.core.ComplexTypeConverter;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.io.DataWriter;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.mongodb.variant.converters.VariantStringIdConverter;
 import org.opencb.opencga.storage.mongodb.variant.converters.stage.VariantToAvroBinaryConverter;
 import org.opencb.opencga.storage.mongodb.variant.load.MongoDBVariantWriteResult;
@@ -41,6 +42,7 @@ import java.util.regex.Pattern;
 
 import static com.mongodb.client.model.Filters.*;
 import static com.mongodb.client.model.Updates.*;
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.STAGE_COMPRESSION_DICTIONARIES;
 import static org.opencb.opencga.storage.mongodb.variant.converters.VariantStringIdConverter.*;
 
 /**
@@ -185,6 +187,61 @@ public class MongoDBVariantStageLoader implements DataWriter<ListMultimap<Docume
         return nonInsertedIds;
     }
 
+    /**
+     * Get the preset dictionaries used to compress the stage binaries of some files.
+     *
+     * @param studyConfiguration    Study configuration
+     * @param fileIds               Files to read from the stage collection
+     * @return                      Dictionary of each file. Files without dictionary are not included.
+     */
+    public static Map<Integer, byte[]> getStageDictionaries(StudyConfiguration studyConfiguration, Collection<Integer> fileIds) {
+        Map<Integer, byte[]> dictionaries = new HashMap<>();
+        for (Map.Entry<String, Object> entry : getStageDictionaries(studyConfiguration).entrySet()) {
+            Integer fileId = Integer.valueOf(entry.getKey());
+            if (fileIds.contains(fileId)) {
+                dictionaries.put(fileId, Base64.getDecoder().decode(entry.getValue().toString()));
+            }
+        }
+        return dictionaries;
+    }
+
+    /**
+     * Store the preset dictionary used to compress the stage binaries of a file. Dictionaries are stored until the file
+     * is merged, so the study configuration only contains the dictionaries of the staged files.
+     *
+     * @param studyConfiguration    Study configuration
+     * @param fileId                Staged file
+     * @param dictionary            Preset dictionary
+     */
+    public static void putStageDictionary(StudyConfiguration studyConfiguration, int fileId, byte[] dictionary) {
+        Map<String, Object> dictionaries = getStageDictionaries(studyConfiguration);
+        dictionaries.put(String.valueOf(fileId), Base64.getEncoder().encodeToString(dictionary));
+        studyConfiguration.getAttributes().put(STAGE_COMPRESSION_DICTIONARIES.key(), dictionaries);
+    }
+
+    /**
+     * Remove the preset dictionaries of some files, once they are removed from the stage collection.
+     *
+     * @param studyConfiguration    Study configuration
+     * @param fileIds               Merged files
+     */
+    public static void removeStageDictionaries(StudyConfiguration studyConfiguration, Collection<Integer> fileIds) {
+        Map<String, Object> dictionaries = getStageDictionaries(studyConfiguration);
+        for (Integer fileId : fileIds) {
+            dictionaries.remove(fileId.toString());
+        }
+        studyConfiguration.getAttributes().put(STAGE_COMPRESSION_DICTIONARIES.key(), dictionaries);
+    }
+
+    private static Map<String, Object> getStageDictionaries(StudyConfiguration studyConfiguration) {
+        Object dictionaries = studyConfiguration.getAttributes().get(STAGE_COMPRESSION_DICTIONARIES.key());
+        Map<String, Object> map = new LinkedHashMap<>();
+        if (dictionaries instanceof Map) {
+            ((Map<?, ?>) dictionaries).forEach((fileId, dictionary) -> map.put(fileId.toString(), dictionary));
+        }
+        return map;
+    }
+
     public static long cleanStageCollection(MongoDBCollection stageCollection, int studyId, int fileId) {
         //Delete those studies that have duplicated variants. Those are not inserted, so they are not new variants.
         long modifiedCount = stageCollection.update(
@@ -201,6 +258,48 @@ public class MongoDBVariantStageLoader implements DataWriter<ListMultimap<Docume
         return modifiedCount;
     }
 
+    /**
+     * Mark in the stage collection the variants of a file loaded directly into the variants collection.
+     *
+     * Documents are left as {@link #cleanStageCollection} would leave them after merging the file, so the next
+     * merges of the study know that those variants are not new in the study.
+     *
+     * @param stageCollection   Stage collection
+     * @param studyId           Study of the file
+     * @param fileId            Loaded file
+     * @param ids               Stage ids of the loaded variants, as built by {@link #STRING_ID_CONVERTER}
+     * @return                  Number of upserted documents
+     */
+    public static long markLoadedVariants(MongoDBCollection stageCollection, int studyId, int fileId, Collection<Document> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Bson> queries = new ArrayList<>(ids.size());
+        List<Bson> updates = new ArrayList<>(ids.size());
+        for (Document id : ids) {
+            queries.add(eq("_id", id.getString("_id")));
+            updates.add(combine(
+                    set(studyId + "." + fileId, null),
+                    set(studyId + "." + NEW_STUDY_FIELD, false),
+                    setOnInsert(END_FIELD, id.get(END_FIELD)),
+                    setOnInsert(REF_FIELD, id.get(REF_FIELD)),
+                    setOnInsert(ALT_FIELD, id.get(ALT_FIELD))));
+        }
+        try {
+            return stageCollection.update(queries, updates, QUERY_OPTIONS).first().getUpserts().size();
+        } catch (MongoBulkWriteException e) {
+            // Concurrent upserts may fail with a DuplicatedKeyException. See https://jira.mongodb.org/browse/SERVER-14322
+            // The updates are idempotent, so retry all of them once.
+            for (BulkWriteError writeError : e.getWriteErrors()) {
+                if (!ErrorCategory.fromErrorCode(writeError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
+                    throw e;
+                }
+            }
+            return e.getWriteResult().getUpserts().size()
+                    + stageCollection.update(queries, updates, QUERY_OPTIONS).first().getUpserts().size();
+        }
+    }
+
     public static long cleanStageCollection(MongoDBCollection stageCollection, int studyId, List<Integer> fileIds) {
         return cleanStageCollection(stageCollection, studyId, fileIds, null);
     }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.load.variants;
+
+import com.google.common.collect.ListMultimap;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.mongodb.MongoDBCollection;
+import org.opencb.commons.run.ParallelTaskRunner;
+import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter;
+import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageConverterTask;
+import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageLoader;
+
+import java.util.*;
+
+import static org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageLoader.STRING_ID_CONVERTER;
+
+/**
+ * Loads a file directly into the variants collection, without writing it into the stage collection.
+ *
+ * Each batch is converted into the documents that the stage collection would have, and merged with the
+ * {@link MongoDBVariantMerger} as new variants in the study. Only valid if no other file in the study shares
+ * chromosomes with the loaded file. After writing each batch, the loaded variants are marked in the stage collection,
+ * so the next merges of the study know that they are not new in the study.
+ *
+ * The merger and the merge loader must be created in resume mode. The variants are inserted if missing, and the
+ * study is only added if it does not contain the file yet, so a duplicated variant found in different batches is
+ * loaded once, and a failed load can be repeated.
+ *
+ * Created on 18/10/26.
+ */
+public class MongoDBVariantDirectLoader implements ParallelTaskRunner.Task<Variant, MongoDBOperations> {
+
+    private final MongoDBVariantStageConverterTask converterTask;
+    private final MongoDBVariantMerger variantMerger;
+    private final MongoDBVariantMergeLoader variantLoader;
+    private final MongoDBCollection stageCollection;
+    private final int studyId;
+    private final int fileId;
+    private final DocumentToVariantConverter variantConverter = new DocumentToVariantConverter();
+
+    /**
+     * @param converterTask     Converts the variants into the stage binary format. Counts the skipped variants
+     * @param variantMerger     Merger of the study and file, in resume mode, without indexed files
+     * @param variantLoader     Loader of the file, in resume mode
+     * @param stageCollection   Stage collection where mark the loaded variants
+     * @param studyId           Study of the file
+     * @param fileId            File to load
+     */
+    public MongoDBVariantDirectLoader(MongoDBVariantStageConverterTask converterTask, MongoDBVariantMerger variantMerger,
+                                      MongoDBVariantMergeLoader variantLoader, MongoDBCollection stageCollection,
+                                      int studyId, int fileId) {
+        this.converterTask = converterTask;
+        this.variantMerger = variantMerger;
+        this.variantLoader = variantLoader;
+        this.stageCollection = stageCollection;
+        this.studyId = studyId;
+        this.fileId = fileId;
+    }
+
+    @Override
+    public void pre() {
+        converterTask.pre();
+    }
+
+    @Override
+    public List<MongoDBOperations> apply(List<Variant> batch) {
+        String study = Integer.toString(studyId);
+        String file = Integer.toString(fileId);
+
+        // Remap the study and file ids
+        batch.forEach(variant -> variant.getStudies().forEach(studyEntry -> {
+            studyEntry.setStudyId(study);
+            studyEntry.getFiles().forEach(fileEntry -> fileEntry.setFileId(file));
+        }));
+
+        // Stage ids, indexed by the id in the variants collection
+        Map<String, Document> stageIds = new HashMap<>();
+        List<Document> documents = new ArrayList<>(batch.size());
+        for (ListMultimap<Document, Binary> map : converterTask.apply(batch)) {
+            for (Map.Entry<Document, Collection<Binary>> entry : map.asMap().entrySet()) {
+                Document id = entry.getKey();
+                stageIds.put(variantConverter.buildStorageId(STRING_ID_CONVERTER.convertToDataModelType(id)), id);
+                documents.add(new Document(id).append(study, new Document(file, new ArrayList<>(entry.getValue()))));
+            }
+        }
+
+        List<MongoDBOperations> operations = variantMerger.apply(documents);
+
+        // Read the ids before writing, as the loader may modify them
+        List<Document> loadedIds = new ArrayList<>(documents.size());
+        for (MongoDBOperations mongoDBOperations : operations) {
+            for (String id : mongoDBOperations.getNewStudy().getIds()) {
+                Document stageId = stageIds.get(id);
+                if (stageId != null) {
+                    loadedIds.add(stageId);
+                }
+            }
+        }
+        variantLoader.write(operations);
+        MongoDBVariantStageLoader.markLoadedVariants(stageCollection, studyId, fileId, loadedIds);
+        return operations;
+    }
+
+    @Override
+    public void post() {
+        variantMerger.post();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.load.variants;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.io.DataReader;
+
+import java.util.*;
+
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.DIRECT_LOAD;
+
+/**
+ * DataReader for the direct load. Reads the variants from the input file instead of the stage collection.
+ *
+ * As the {@link org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageReader}, never splits
+ * overlapping variants in different batches, so the {@link MongoDBVariantMerger} can merge them. This requires the
+ * input to be sorted: the variants of each chromosome are contiguous, and sorted by start. Otherwise, the read fails.
+ *
+ * Created on 18/10/26.
+ */
+public class MongoDBVariantDirectReader implements DataReader<Variant> {
+
+    private final DataReader<Variant> reader;
+    private final LinkedList<Variant> pending = new LinkedList<>();
+    /** Chromosomes already read, but the current one. */
+    private final Set<String> readChromosomes = new HashSet<>();
+    private Variant previous;
+
+    public MongoDBVariantDirectReader(DataReader<Variant> reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean open() {
+        return reader.open();
+    }
+
+    @Override
+    public boolean pre() {
+        return reader.pre();
+    }
+
+    @Override
+    public List<Variant> read() {
+        return read(1);
+    }
+
+    @Override
+    public List<Variant> read(int batchSize) {
+        List<Variant> list = new ArrayList<>(batchSize);
+        while (list.size() < batchSize && hasNext(batchSize - list.size())) {
+            list.add(pending.removeFirst());
+        }
+
+        if (!list.isEmpty()) {
+            Variant last = list.get(list.size() - 1);
+            String chr = last.getChromosome();
+            int start = last.getStart();
+            int end = last.getEnd();
+            // Add to the batch the next variants while they overlap with the last one
+            while (hasNext(1) && pending.getFirst().overlapWith(chr, start, end, true)) {
+                Variant next = pending.removeFirst();
+                list.add(next);
+                start = Math.min(start, next.getStart());
+                end = Math.max(end, next.getEnd());
+            }
+        }
+        return list;
+    }
+
+    private boolean hasNext(int batchSize) {
+        if (pending.isEmpty()) {
+            List<Variant> variants = reader.read(batchSize);
+            for (Variant variant : variants) {
+                checkSorted(variant);
+            }
+            pending.addAll(variants);
+        }
+        return !pending.isEmpty();
+    }
+
+    private void checkSorted(Variant variant) {
+        if (previous != null) {
+            boolean sorted;
+            if (previous.getChromosome().equals(variant.getChromosome())) {
+                sorted = previous.getStart() <= variant.getStart();
+            } else {
+                readChromosomes.add(previous.getChromosome());
+                sorted = !readChromosomes.contains(variant.getChromosome());
+            }
+            if (!sorted) {
+                throw new IllegalStateException("Unsorted input file. Variant " + variant + " found after " + previous
+                        + ". Sort the file or load it through the stage collection with '" + DIRECT_LOAD.key() + "=false'");
+            }
+        }
+        previous = variant;
+    }
+
+    @Override
+    public boolean post() {
+        return reader.post();
+    }
+
+    @Override
+    public boolean close() {
+        return reader.close();
+    }
+}
@@ -16,6 +16,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.Matcher;
 
 import static com.mongodb.client.model.Filters.and;
@@ -46,25 +47,131 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
     /** Files to be loaded. */
     private final List<Integer> fileIds;
 
+    /** Max number of batches being written at the same time. */
+    private final int inFlightBatches;
+    /** Executes the writes if more than one batch can be in flight. Null otherwise. */
+    private final ExecutorService executor;
+
     // Variables that must be aware of concurrent modification
     private final MongoDBVariantWriteResult result;
+    private final Deque<InFlightWrite> inFlightWrites = new LinkedList<>();
 
     public MongoDBVariantMergeLoader(MongoDBCollection collection, List<Integer> fileIds, boolean resume, ProgressLogger progressLogger) {
+        this(collection, fileIds, resume, progressLogger, 1);
+    }
+
+    /**
+     * @param collection        Variants collection
+     * @param fileIds           Files to be loaded
+     * @param resume            Resume a previous load
+     * @param progressLogger    Progress logger. May be null
+     * @param inFlightBatches   Max number of batches being written at the same time. Batches sharing variants are never
+     *                          written at the same time
+     */
+    public MongoDBVariantMergeLoader(MongoDBCollection collection, List<Integer> fileIds, boolean resume, ProgressLogger progressLogger,
+                                     int inFlightBatches) {
         this.progressLogger = progressLogger;
         this.collection = collection;
         this.resume = resume;
         this.fileIds = fileIds;
         this.result = new MongoDBVariantWriteResult();
+        this.inFlightBatches = Math.max(1, inFlightBatches);
+        if (this.inFlightBatches > 1) {
+            executor = Executors.newFixedThreadPool(this.inFlightBatches, runnable -> {
+                Thread thread = new Thread(runnable, "merge-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            executor = null;
+        }
     }
 
     @Override
     public boolean write(List<MongoDBOperations> batch) {
         for (MongoDBOperations mongoDBOperations : batch) {
-            executeMongoDBOperations(mongoDBOperations);
+            if (executor == null) {
+                executeMongoDBOperations(mongoDBOperations);
+            } else {
+                submit(mongoDBOperations);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait for the writes in flight. Must be called before reading the result.
+     *
+     * @return true
+     */
+    @Override
+    public boolean post() {
+        if (executor != null) {
+            synchronized (inFlightWrites) {
+                while (!inFlightWrites.isEmpty()) {
+                    await(inFlightWrites.removeFirst());
+                }
+            }
+            executor.shutdown();
+        }
+        return true;
+    }
+
+    /**
+     * Release the threads of the writes in flight. Writes not awaited by {@link #post()}, like after an error, are
+     * interrupted.
+     *
+     * @return true
+     */
+    @Override
+    public boolean close() {
+        if (executor != null) {
+            executor.shutdownNow();
         }
         return true;
     }
 
+    /**
+     * Submit the operations to be written in background. Blocks while there are too many batches in flight, or while
+     * any of the batches in flight modifies some of the variants of the operations.
+     *
+     * @param mongoDBOps MongoDB operations to execute
+     */
+    private void submit(MongoDBOperations mongoDBOps) {
+        // Copy the ids. The retry logic may modify the lists
+        Set<String> ids = new HashSet<>(mongoDBOps.getNewStudy().getIds());
+        ids.addAll(mongoDBOps.getExistingStudy().getIds());
+        synchronized (inFlightWrites) {
+            Iterator<InFlightWrite> iterator = inFlightWrites.iterator();
+            while (iterator.hasNext()) {
+                InFlightWrite inFlightWrite = iterator.next();
+                if (inFlightWrite.future.isDone() || !Collections.disjoint(inFlightWrite.ids, ids)) {
+                    await(inFlightWrite);
+                    iterator.remove();
+                }
+            }
+            while (inFlightWrites.size() >= inFlightBatches) {
+                await(inFlightWrites.removeFirst());
+            }
+            inFlightWrites.add(new InFlightWrite(ids, executor.submit(() -> executeMongoDBOperations(mongoDBOps))));
+        }
+    }
+
+    private void await(InFlightWrite inFlightWrite) {
+        try {
+            inFlightWrite.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
     public MongoDBVariantWriteResult getResult() {
         return result;
     }
@@ -76,6 +183,7 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
      * @return           MongoDBVariantWriteResult
      */
     protected MongoDBVariantWriteResult executeMongoDBOperations(MongoDBOperations mongoDBOps) {
+        long start = System.nanoTime();
         long newVariantsTime = -System.nanoTime();
 
         newVariantsTime += System.nanoTime();
@@ -101,6 +209,7 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
                 updatesNewStudyExistingVariant + updatesWithDataExistingStudy, mongoDBOps.getMissingVariants(),
                 mongoDBOps.getOverlappedVariants(), mongoDBOps.getSkipped(), mongoDBOps.getNonInserted(), newVariantsTime, existingVariants,
                 fillGapsVariants);
+        writeResult.getWriteLatency().record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
         synchronized (result) {
             result.merge(writeResult);
         }
@@ -229,6 +338,16 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
         }
     }
 
+    private static class InFlightWrite {
+        private final Set<String> ids;
+        private final Future<MongoDBVariantWriteResult> future;
+
+        InFlightWrite(Set<String> ids, Future<MongoDBVariantWriteResult> future) {
+            this.ids = ids;
+            this.future = future;
+        }
+    }
+
 //    protected void onInsertError(MongoDBOperations mongoDBOps, BulkWriteResult writeResult) {
 //        logger.error("(Inserts = " + mongoDBOps.inserts.size() + ") "
 //                + "!= (InsertedCount = " + writeResult.getInsertedCount() + ")");
@@ -25,6 +25,7 @@ import org.bson.types.Binary;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.FileEntry;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
 import org.opencb.biodata.models.variant.avro.VariantType;
 import org.opencb.biodata.tools.variant.merge.VariantMerger;
 import org.opencb.commons.datastore.core.Query;
@@ -40,11 +41,13 @@ import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToSamplesCo
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToStudyVariantEntryConverter;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter;
 import org.opencb.opencga.storage.mongodb.variant.converters.VariantStringIdConverter;
+import org.opencb.opencga.storage.mongodb.variant.converters.stage.VariantToAvroBinaryConverter;
 import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static com.mongodb.client.model.Filters.and;
@@ -55,7 +58,6 @@ import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToSt
 import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter.IDS_FIELD;
 import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter.STUDIES_FIELD;
 import static org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageLoader.STRING_ID_CONVERTER;
-import static org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageLoader.VARIANT_CONVERTER_DEFAULT;
 
 /**
  * Created on 07/04/16.
@@ -220,6 +222,8 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
     private final Set<Integer> indexedFiles;
     private final DocumentToVariantConverter variantConverter;
     private final DocumentToStudyVariantEntryConverter studyConverter;
+    /** Reads the stage binaries, with the compression dictionaries of the files to be merged. */
+    private final VariantToAvroBinaryConverter stageConverter;
     private final StudyConfiguration studyConfiguration;
     private final boolean excludeGenotypes;
 
@@ -232,9 +236,25 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
     private final VariantMerger variantMerger;
     private final List<String> format;
     private boolean resume;
+    /** Fetch all the already loaded overlapping variants of each batch with one single query. */
+    private final boolean batchPrefetch;
+    private boolean createIndexes = true;
+
+    // Overlapping variants read from the 'variants' collection. Shared between threads
+    /** Number of queries executed to fetch the loaded overlapping variants. */
+    private final AtomicLong fetchQueries = new AtomicLong();
+    /** Number of queries executed to prefetch the loaded overlapping variants of a whole batch. */
+    private final AtomicLong prefetchQueries = new AtomicLong();
+    /** Number of loaded overlapping variants served from the per-batch prefetch. */
+    private final AtomicLong prefetchedHits = new AtomicLong();
 
     public MongoDBVariantMerger(VariantDBAdaptor dbAdaptor, StudyConfiguration studyConfiguration, List<Integer> fileIds,
                                  MongoDBCollection collection, Set<Integer> indexedFiles, boolean resume) {
+        this(dbAdaptor, studyConfiguration, fileIds, collection, indexedFiles, resume, true);
+    }
+
+    public MongoDBVariantMerger(VariantDBAdaptor dbAdaptor, StudyConfiguration studyConfiguration, List<Integer> fileIds,
+                                 MongoDBCollection collection, Set<Integer> indexedFiles, boolean resume, boolean batchPrefetch) {
         this.dbAdaptor = Objects.requireNonNull(dbAdaptor);
         this.studyConfiguration = Objects.requireNonNull(studyConfiguration);
         this.fileIds = Objects.requireNonNull(fileIds);
@@ -249,11 +269,14 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
         DocumentToSamplesConverter samplesConverter = new DocumentToSamplesConverter(this.studyConfiguration);
         studyConverter = new DocumentToStudyVariantEntryConverter(false, samplesConverter);
         variantConverter = new DocumentToVariantConverter(studyConverter, null);
+        stageConverter = new VariantToAvroBinaryConverter();
+        MongoDBVariantStageLoader.getStageDictionaries(studyConfiguration, fileIds).forEach(stageConverter::registerDictionary);
         samplesPositionMap = new HashMap<>();
 
         variantMerger = new VariantMerger();
 
         this.resume = resume;
+        this.batchPrefetch = batchPrefetch;
     }
 
     @Override
@@ -272,7 +295,29 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
 
     @Override
     public void post() {
-        VariantMongoDBAdaptor.createIndexes(new QueryOptions(), collection);
+        if (batchPrefetch) {
+            logger.info("Overlapping variants fetched from the database: {} queries, {} served from batch prefetch, {} round-trips saved",
+                    getFetchQueries(), getPrefetchedHits(), getSavedRoundTrips());
+        }
+        if (createIndexes) {
+            VariantMongoDBAdaptor.createIndexes(new QueryOptions(), collection);
+        }
+    }
+
+    /**
+     * Release the resources used to read the stage collection. Must be called once the merge is finished.
+     */
+    public void close() {
+        stageConverter.close();
+    }
+
+    /**
+     * @param createIndexes Create the indexes of the variants collection on {@link #post()}. Enabled by default.
+     * @return this
+     */
+    public MongoDBVariantMerger setCreateIndexes(boolean createIndexes) {
+        this.createIndexes = createIndexes;
+        return this;
     }
 
     public MongoDBOperations merge(List<Document> variants) {
@@ -280,61 +325,129 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
         // Set of operations to be executed in the Database
         MongoDBOperations mongoDBOps = new MongoDBOperations();
 
+        List<List<Document>> regions = groupOverlappingVariants(variants);
+
+        // Loaded variants required to merge the overlapping regions of this batch
+        Map<String, Variant> prefetchedVariants;
+        if (batchPrefetch) {
+            prefetchedVariants = prefetchOverlappedVariants(regions);
+        } else {
+            prefetchedVariants = Collections.emptyMap();
+        }
+
+        for (List<Document> region : regions) {
+            if (region.size() == 1) {
+                Document document = region.get(0);
+                processVariantTryCatch(document, STRING_ID_CONVERTER.convertToDataModelType(document), mongoDBOps);
+            } else {
+                processOverlappedVariants(region, mongoDBOps, prefetchedVariants);
+            }
+        }
+
+//        // Execute MongoDB Operations
+//        return executeMongoDBOperations(mongoDBOps);
+
+        return mongoDBOps;
+    }
+
+    /**
+     * Split the batch of documents from the stage collection in regions. Each region is either a single variant,
+     * or a list of overlapping variants.
+     *
+     * Documents without information for the current study are discarded.
+     *
+     * @param variants  Sorted documents from the stage collection
+     * @return          List of regions, in the same order as the input
+     */
+    protected List<List<Document>> groupOverlappingVariants(List<Document> variants) {
+        List<List<Document>> regions = new ArrayList<>();
+
         Variant previousVariant = null;
-        Document previousDocument = null;
         int start = 0;
         int end = 0;
         String chromosome = null;
-        List<Document> overlappedVariants = null;
+        List<Document> currentRegion = null;
 
         for (Document document : variants) {
             Variant variant = STRING_ID_CONVERTER.convertToDataModelType(document);
             Document study = document.get(Integer.toString(studyId), Document.class);
             if (study != null) {
                 if (previousVariant != null && variant.overlapWith(chromosome, start, end, true)) {
-                    // If the variant overlaps with the last one, add to the overlappedVariants list.
-                    // Do not process any variant!
-                    if (overlappedVariants == null) {
-                        overlappedVariants = new LinkedList<>();
-                        overlappedVariants.add(previousDocument);
-                    }
-                    overlappedVariants.add(document);
+                    // If the variant overlaps with the last one, add to the current region.
+                    currentRegion.add(document);
                     start = Math.min(start, variant.getStart());
                     end = Math.max(end, getEnd(variant));
-                    previousDocument = document;
-                    previousVariant = variant;
-
-                    continue;
                 } else {
-                    // If the current variant does not overlap with the last one, we can load the previous variant (or region)
-                    if (overlappedVariants != null) {
-                        processOverlappedVariants(overlappedVariants, mongoDBOps);
-                    } else if (previousDocument != null) {
-                        processVariantTryCatch(previousDocument, previousVariant, mongoDBOps);
-                    }
-                    overlappedVariants = null;
+                    // If the current variant does not overlap with the last one, start a new region
+                    currentRegion = new LinkedList<>();
+                    currentRegion.add(document);
+                    regions.add(currentRegion);
+                    chromosome = variant.getChromosome();
+                    start = variant.getStart();
+                    end = getEnd(variant);
                 }
-
-                previousDocument = document;
                 previousVariant = variant;
-                chromosome = variant.getChromosome();
-                start = variant.getStart();
-                end = getEnd(variant);
             }
-
         }
+        return regions;
+    }
 
-        // Process remaining variants
-        if (overlappedVariants != null) {
-            processOverlappedVariants(overlappedVariants, mongoDBOps);
-        } else if (previousDocument != null) {
-            processVariantTryCatch(previousDocument, previousVariant, mongoDBOps);
+    /**
+     * Fetch from the 'variants' collection, with one single query, the already loaded variants that are going to be
+     * required to merge the overlapping regions of the batch. See scenarios C3) and C4)
+     *
+     * Reproduces the selection made by {@link #mergeOverlappedVariants}: for each main variant of a region, only the first
+     * loaded variant overlapping with it is read, and only if some of the variants overlapping with it is new in the study.
+     *
+     * @param regions   Regions of the batch, as returned by {@link #groupOverlappingVariants}
+     * @return          Loaded variants, indexed by {@link Variant#toString()}
+     */
+    protected Map<String, Variant> prefetchOverlappedVariants(List<List<Document>> regions) {
+        if (indexedFiles.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        for (List<Document> region : regions) {
+            if (region.size() == 1) {
+                continue;
+            }
+            List<Variant> variants = new ArrayList<>(region.size());
+            List<Boolean> newStudies = new ArrayList<>(region.size());
+            for (Document document : region) {
+                variants.add(STRING_ID_CONVERTER.convertToDataModelType(document));
+                newStudies.add(isNewStudy(document.get(Integer.toString(studyId), Document.class)));
+            }
+            for (Variant mainVariant : variants) {
+                boolean newOverlappingRegion = false;
+                String firstLoadedVariant = null;
+                for (int i = 0; i < variants.size(); i++) {
+                    Variant variant = variants.get(i);
+                    if (!mainVariant.overlapWith(variant, true)) {
+                        continue;
+                    }
+                    if (newStudies.get(i)) {
+                        newOverlappingRegion = true;
+                    } else if (firstLoadedVariant == null) {
+                        firstLoadedVariant = variant.toString();
+                    }
+                }
+                // Only new overlapping regions with some loaded variant will require to read from the database.
+                if (newOverlappingRegion && firstLoadedVariant != null) {
+                    ids.add(firstLoadedVariant);
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
         }
 
-//        // Execute MongoDB Operations
-//        return executeMongoDBOperations(mongoDBOps);
-
-        return mongoDBOps;
+        prefetchQueries.incrementAndGet();
+        QueryResult<Variant> queryResult = fetchVariants(new ArrayList<>(ids));
+        Map<String, Variant> prefetchedVariants = new HashMap<>(queryResult.getResult().size());
+        for (Variant variant : queryResult.getResult()) {
+            prefetchedVariants.put(variant.toString(), variant);
+        }
+        return prefetchedVariants;
     }
 
     public Integer getEnd(Variant variant) {
@@ -396,7 +509,7 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
                 }
 
                 Binary file = duplicatedVariants.get(0);
-                Variant variant = VARIANT_CONVERTER_DEFAULT.convertToDataModelType(file);
+                Variant variant = stageConverter.convertToDataModelType(file, fileId);
                 if (variant.getType().equals(VariantType.NO_VARIATION) || variant.getType().equals(VariantType.SYMBOLIC)) {
                     mongoDBOps.setSkipped(mongoDBOps.getSkipped() + 1);
                     continue;
@@ -435,9 +548,14 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
     }
 
     protected void processOverlappedVariants(List<Document> overlappedVariants, MongoDBOperations mongoDBOps) {
+        processOverlappedVariants(overlappedVariants, mongoDBOps, Collections.emptyMap());
+    }
+
+    protected void processOverlappedVariants(List<Document> overlappedVariants, MongoDBOperations mongoDBOps,
+                                             Map<String, Variant> prefetchedVariants) {
         for (Document document : overlappedVariants) {
             try {
-                processOverlappedVariants(document, overlappedVariants, mongoDBOps);
+                processOverlappedVariants(document, overlappedVariants, mongoDBOps, prefetchedVariants);
             } catch (Exception e) {
                 Variant mainVariant = STRING_ID_CONVERTER.convertToDataModelType(document);
                 List<Variant> variants = overlappedVariants.stream()
@@ -458,13 +576,15 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
      * @param mainDocument          Main document to add.
      * @param overlappedVariants    Overlapping documents from Stage collection.
      * @param mongoDBOps            Set of MongoDB operations to update
+     * @param prefetchedVariants    Loaded variants already read from the database, indexed by {@link Variant#toString()}
      */
-    protected void processOverlappedVariants(Document mainDocument, List<Document> overlappedVariants, MongoDBOperations mongoDBOps) {
+    protected void processOverlappedVariants(Document mainDocument, List<Document> overlappedVariants, MongoDBOperations mongoDBOps,
+                                             Map<String, Variant> prefetchedVariants) {
 
         Variant mainVariant = STRING_ID_CONVERTER.convertToDataModelType(mainDocument);
 
         // Merge documents
-        Map<Document, Variant> mergedVariants = mergeOverlappedVariants(mainVariant, overlappedVariants);
+        Map<Document, Variant> mergedVariants = mergeOverlappedVariants(mainVariant, overlappedVariants, prefetchedVariants);
 
         int variantsWithValidData = getVariantsWithValidData(mergedVariants.keySet());
 
@@ -500,7 +620,7 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
                     logger.warn("Found {} duplicated variants for file {} in variant {}.",
                             files.size(), fileId, mainVariant);
                     for (Binary binary : files) {
-                        Variant duplicatedVariant = VARIANT_CONVERTER_DEFAULT.convertToDataModelType(binary);
+                        Variant duplicatedVariant = stageConverter.convertToDataModelType(binary, fileId);
                         String call = duplicatedVariant.getStudies().get(0).getFiles().get(0).getCall();
                         if (call == null) {
                             call = duplicatedVariant.toString();
@@ -627,6 +747,21 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
      * @return  For each document, its corresponding merged variant
      */
     protected Map<Document, Variant> mergeOverlappedVariants(Variant mainVariant, List<Document> overlappedVariants) {
+        return mergeOverlappedVariants(mainVariant, overlappedVariants, Collections.emptyMap());
+    }
+
+    /**
+     * Given a list of overlapped documents from the stage collection, merge resolving the overlapping positions.
+     *
+     * @see #mergeOverlappedVariants(Variant, List)
+     *
+     * @param mainVariant           Main variant to resolve conflicts.
+     * @param overlappedVariants    Overlapping documents from Stage collection.
+     * @param prefetchedVariants    Loaded variants already read from the database, indexed by {@link Variant#toString()}
+     * @return  For each document, its corresponding merged variant
+     */
+    protected Map<Document, Variant> mergeOverlappedVariants(Variant mainVariant, List<Document> overlappedVariants,
+                                                             Map<String, Variant> prefetchedVariants) {
 //        System.out.println("--------------------------------");
 //        System.out.println("Overlapped region = " + overlappedVariants
 //                .stream()
@@ -676,7 +811,7 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
                 List<Binary> files = getListFromDocument(study, fileId.toString());
                 if (files != null && files.size() == 1) {
                     // If there is only one variant for this file, add to the map variantsPerFile
-                    Variant variant = VARIANT_CONVERTER_DEFAULT.convertToDataModelType(files.get(0));
+                    Variant variant = stageConverter.convertToDataModelType(files.get(0), fileId);
                     variant.getStudies().get(0).setSamplesPosition(getSamplesPosition(fileId));
                     variantsPerFile.get(fileId).add(variant);
                     ids.addAll(variant.getIds());
@@ -769,6 +904,13 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
             for (Variant variant : mergedVariants.values()) {
                 // If the variant is not new in this study, query to the database for the loaded info.
                 if (!newStudies.get(i)) {
+                    Variant prefetchedVariant = prefetchedVariants.get(variant.toString());
+                    if (prefetchedVariant != null && prefetchedVariant.getStudies().size() == 1) {
+                        prefetchedHits.incrementAndGet();
+                        // The same loaded variant may be merged with different main variants. Do not share the instance.
+                        variantsToMerge.add(copyVariant(prefetchedVariant));
+                        break;
+                    }
                     QueryResult<Variant> queryResult = fetchVariant(variant);
                     if (queryResult.getResult().size() == 1 && queryResult.first().getStudies().size() == 1) {
                         variantsToMerge.add(queryResult.first());
@@ -805,20 +947,31 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
     /**
      * Reads the given variant from the 'variants' collection.
      *
+     * @param variant Variant to read
+     * @return  Query result of the query
+     */
+    private QueryResult<Variant> fetchVariant(Variant variant) {
+        return fetchVariants(Collections.singletonList(variant.toString()));
+    }
+
+    /**
+     * Reads the given variants from the 'variants' collection.
+     *
      * It may happen that, 3s of default timeout, is not enough if there is a
      * lot of writes at the same time in the "variants" collection. Also add a
      * retry, just in case.
-     * @param variant Variant to read
+     * @param variants Variants to read
      * @return  Query result of the query
      */
-    private QueryResult<Variant> fetchVariant(Variant variant) {
+    private QueryResult<Variant> fetchVariants(List<String> variants) {
         QueryResult<Variant> queryResult = null;
         int maxNumFails = 2;
         int fails = 0;
         while (queryResult == null) {
             try {
+                fetchQueries.incrementAndGet();
                 queryResult = dbAdaptor.get(new Query()
-                                .append(VariantDBAdaptor.VariantQueryParams.ID.key(), variant.toString())
+                                .append(VariantDBAdaptor.VariantQueryParams.ID.key(), variants)
                                 .append(VariantDBAdaptor.VariantQueryParams.RETURNED_STUDIES.key(), studyId),
                         new QueryOptions(QueryOptions.TIMEOUT, 30_000));
             } catch (MongoExecutionTimeoutException e) {
@@ -833,6 +986,42 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
         return queryResult;
     }
 
+    private static Variant copyVariant(Variant variant) {
+        Variant copy = new Variant(VariantAvro.newBuilder(variant.getImpl()).build());
+        for (StudyEntry studyEntry : variant.getStudies()) {
+            copy.getStudy(studyEntry.getStudyId()).setSamplesPosition(studyEntry.getSamplesPosition());
+        }
+        return copy;
+    }
+
+    /**
+     * @return Number of queries executed to read loaded overlapping variants from the database.
+     */
+    public long getFetchQueries() {
+        return fetchQueries.get();
+    }
+
+    /**
+     * @return Number of queries executed to prefetch the loaded overlapping variants of a whole batch.
+     */
+    public long getPrefetchQueries() {
+        return prefetchQueries.get();
+    }
+
+    /**
+     * @return Number of loaded overlapping variants served from the per-batch prefetch.
+     */
+    public long getPrefetchedHits() {
+        return prefetchedHits.get();
+    }
+
+    /**
+     * @return Number of round-trips to the database saved by the per-batch prefetch.
+     */
+    public long getSavedRoundTrips() {
+        return Math.max(0, prefetchedHits.get() - prefetchQueries.get());
+    }
+
     /**
      * Transform the set of genotypes and file objects into a set of mongodb operations.
      *
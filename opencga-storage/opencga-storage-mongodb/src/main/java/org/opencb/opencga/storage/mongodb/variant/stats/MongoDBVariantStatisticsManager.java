@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.stats;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.io.DataReader;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.stats.DefaultVariantStatisticsManager;
+import org.opencb.opencga.storage.core.variant.stats.GenotypeIndexStatsCalculator;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatsWrapper;
+import org.opencb.opencga.storage.mongodb.variant.adaptors.VariantMongoDBAdaptor;
+import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToSamplesConverter;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.DEFAULT_GENOTYPE;
+import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD;
+import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToStudyVariantEntryConverter.STUDYID_FIELD;
+import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter.*;
+
+/**
+ * Statistics manager calculating the stats from the genotypes field of the variants collection, without converting
+ * the documents into Variant objects. See {@link DefaultVariantStatisticsManager#STATS_GENOTYPE_INDEX}.
+ *
+ * Created on 18/10/26.
+ */
+public class MongoDBVariantStatisticsManager extends DefaultVariantStatisticsManager {
+
+    public MongoDBVariantStatisticsManager(VariantDBAdaptor dbAdaptor) {
+        super(dbAdaptor);
+    }
+
+    @Override
+    protected GenotypeIndexStatsSource<?> newGenotypeIndexStatsSource(VariantDBAdaptor variantDBAdaptor, Query query,
+                                                                      StudyConfiguration studyConfiguration,
+                                                                      Map<String, Set<String>> cohorts, QueryOptions options) {
+        if (studyConfiguration.getAttributes().getBoolean(VariantStorageEngine.Options.EXCLUDE_GENOTYPES.key(),
+                VariantStorageEngine.Options.EXCLUDE_GENOTYPES.defaultValue())) {
+            logger.info("Genotypes not loaded in study {}", studyConfiguration.getStudyName());
+            return null;
+        }
+        List<String> defaultGenotypes = studyConfiguration.getAttributes().getAsStringList(DEFAULT_GENOTYPE.key());
+        // The unknown genotype "?/?" is counted as missing by the calculator
+        String defaultGenotype = defaultGenotypes.isEmpty() ? null : defaultGenotypes.get(0);
+
+        VariantMongoDBAdaptor mongoDBAdaptor = (VariantMongoDBAdaptor) variantDBAdaptor;
+        int studyId = studyConfiguration.getStudyId();
+        Bson projection = Projections.include(CHROMOSOME_FIELD, START_FIELD, END_FIELD, REFERENCE_FIELD, ALTERNATE_FIELD, TYPE_FIELD,
+                STUDIES_FIELD + '.' + STUDYID_FIELD, STUDIES_FIELD + '.' + GENOTYPES_FIELD);
+        DataReader<Document> reader = new VariantDocumentReader(mongoDBAdaptor, query, projection);
+
+        return new GenotypeIndexStatsSource<>(reader, () -> {
+            GenotypeIndexStatsCalculator calculator = GenotypeIndexStatsCalculator.fromStudyConfiguration(studyConfiguration,
+                    cohorts.keySet());
+            return (Function<List<Document>, List<VariantStatsWrapper>>) documents
+                    -> calculate(calculator, documents, studyId, defaultGenotype);
+        });
+    }
+
+    private static List<VariantStatsWrapper> calculate(GenotypeIndexStatsCalculator calculator, List<Document> documents,
+                                                       int studyId, String defaultGenotype) {
+        List<VariantStatsWrapper> wrappers = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            Document study = getStudy(document, studyId);
+            if (study == null) {
+                continue;
+            }
+            Map<String, List<Integer>> genotypeIndex = new HashMap<>();
+            Document gts = study.get(GENOTYPES_FIELD, Document.class);
+            if (gts != null) {
+                for (Map.Entry<String, Object> entry : gts.entrySet()) {
+                    @SuppressWarnings("unchecked")
+                    List<Integer> samples = (List<Integer>) entry.getValue();
+                    genotypeIndex.put(DocumentToSamplesConverter.genotypeToDataModelType(entry.getKey()), samples);
+                }
+            }
+            Variant variant = new Variant(document.getString(CHROMOSOME_FIELD), document.getInteger(START_FIELD),
+                    document.getInteger(END_FIELD), document.getString(REFERENCE_FIELD), document.getString(ALTERNATE_FIELD));
+            String type = document.getString(TYPE_FIELD);
+            if (type != null) {
+                variant.setType(VariantType.valueOf(type));
+            }
+            wrappers.add(new VariantStatsWrapper(variant.getChromosome(), variant.getStart(),
+                    calculator.calculate(variant, genotypeIndex, defaultGenotype)));
+        }
+        return wrappers;
+    }
+
+    private static Document getStudy(Document document, int studyId) {
+        List<?> studies = document.get(STUDIES_FIELD, List.class);
+        if (studies != null) {
+            for (Object o : studies) {
+                Document study = (Document) o;
+                if (Objects.equals(study.get(STUDYID_FIELD), studyId)) {
+                    return study;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the raw documents of the variants collection.
+     */
+    private static class VariantDocumentReader implements DataReader<Document> {
+        private final VariantMongoDBAdaptor dbAdaptor;
+        private final Query query;
+        private final Bson projection;
+        private MongoCursor<Document> cursor;
+
+        VariantDocumentReader(VariantMongoDBAdaptor dbAdaptor, Query query, Bson projection) {
+            this.dbAdaptor = dbAdaptor;
+            this.query = query;
+            this.projection = projection;
+        }
+
+        @Override
+        public boolean open() {
+            cursor = dbAdaptor.nativeIterator(query, projection, new QueryOptions());
+            return true;
+        }
+
+        @Override
+        public List<Document> read(int batchSize) {
+            List<Document> documents = new ArrayList<>(batchSize);
+            while (documents.size() < batchSize && cursor.hasNext()) {
+                documents.add(cursor.next());
+            }
+            return documents;
+        }
+
+        @Override
+        public boolean close() {
+            cursor.close();
+            return true;
+        }
+    }
+
+}
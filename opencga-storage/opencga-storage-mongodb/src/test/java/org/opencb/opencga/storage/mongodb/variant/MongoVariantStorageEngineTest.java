@@ -16,6 +16,7 @@
 
 package org.opencb.opencga.storage.mongodb.variant;
 
+import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.Sorts;
 import org.bson.Document;
@@ -23,6 +24,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
 import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
@@ -38,15 +41,23 @@ import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.VariantStorageManagerTest;
 import org.opencb.opencga.storage.core.variant.VariantStorageBaseTest;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
 import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions;
 import org.opencb.opencga.storage.mongodb.variant.adaptors.VariantMongoDBAdaptor;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter;
 import org.opencb.opencga.storage.mongodb.variant.exceptions.MongoVariantStorageEngineException;
+import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -54,6 +65,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
@@ -161,6 +173,33 @@ public class MongoVariantStorageEngineTest extends VariantStorageManagerTest imp
         assertEquals(stageCount, count);
     }
 
+    @Test
+    public void stageCompressionDictionaryTest() throws Exception {
+        StudyConfiguration studyConfiguration = createStudyConfiguration();
+
+        StoragePipelineResult storagePipelineResult = runDefaultETL(smallInputUri, variantStorageManager, studyConfiguration, new ObjectMap()
+                .append(MongoDBVariantOptions.STAGE.key(), true)
+                .append(MongoDBVariantOptions.MERGE.key(), false)
+                .append(MongoDBVariantOptions.STAGE_COMPRESSION.key(), "deflate-fast")
+                .append(MongoDBVariantOptions.STAGE_COMPRESSION_DICTIONARY_VARIANTS.key(), 100));
+
+        VariantMongoDBAdaptor dbAdaptor = getVariantStorageManager().getDBAdaptor(DB_NAME);
+        StudyConfigurationManager scm = dbAdaptor.getStudyConfigurationManager();
+        StudyConfiguration sc = scm.getStudyConfiguration(studyConfiguration.getStudyId(), null).first();
+        assertEquals(Collections.singleton(FILE_ID),
+                MongoDBVariantStageLoader.getStageDictionaries(sc, Collections.singletonList(FILE_ID)).keySet());
+
+        runETL(variantStorageManager, storagePipelineResult.getTransformResult(), outputUri, new ObjectMap()
+                .append(VariantStorageEngine.Options.ANNOTATE.key(), false)
+                .append(MongoDBVariantOptions.STAGE.key(), true)
+                .append(MongoDBVariantOptions.MERGE.key(), true), false, false, true);
+
+        // The dictionary is removed once the file is merged
+        sc = scm.getStudyConfiguration(studyConfiguration.getStudyId(), null).first();
+        assertEquals(Collections.emptyMap(), MongoDBVariantStageLoader.getStageDictionaries(sc, Collections.singletonList(FILE_ID)));
+        assertTrue(dbAdaptor.count(null).first() > 0);
+    }
+
     private long simulateStageError(StudyConfiguration studyConfiguration, VariantMongoDBAdaptor dbAdaptor) throws Exception {
         // Simulate stage error
         // 1) Set ERROR status on the StudyConfiguration
@@ -195,6 +234,209 @@ public class MongoVariantStorageEngineTest extends VariantStorageManagerTest imp
         return stageCount;
     }
 
+    @Test
+    public void mergeWithInFlightBatchesTest() throws Exception {
+        // Both files share most of the variants, so the second merge updates variants written by the first one
+        List<URI> files = Arrays.asList(
+                getResourceUri("1000g_batches/1-500.filtered.10k.chr22.phase3_shapeit2_mvncall_integrated_v5.20130502.genotypes.vcf.gz"),
+                getResourceUri("1000g_batches/501-1000.filtered.10k.chr22.phase3_shapeit2_mvncall_integrated_v5.20130502.genotypes.vcf.gz"));
+
+        // Merge with several batches in flight, and, in other collections, with one single batch in flight
+        for (MongoDBVariantStorageEngine engine : Arrays.asList(variantStorageManager, getVariantStorageManager("2"))) {
+            int inFlightBatches = engine == variantStorageManager ? 4 : 1;
+            StudyConfiguration studyConfiguration = new StudyConfiguration(STUDY_ID, STUDY_NAME);
+            for (int i = 0; i < files.size(); i++) {
+                runDefaultETL(files.get(i), engine, studyConfiguration, new ObjectMap()
+                        .append(VariantStorageEngine.Options.FILE_ID.key(), i + 1)
+                        .append(VariantStorageEngine.Options.ANNOTATE.key(), false)
+                        .append(VariantStorageEngine.Options.CALCULATE_STATS.key(), false)
+                        .append(VariantStorageEngine.Options.LOAD_BATCH_SIZE.key(), 10)
+                        .append(MongoDBVariantOptions.DIRECT_LOAD.key(), false)
+                        .append(MongoDBVariantOptions.MERGE_LOADER_IN_FLIGHT_BATCHES.key(), inFlightBatches));
+            }
+        }
+
+        VariantMongoDBAdaptor dbAdaptor = variantStorageManager.getDBAdaptor(DB_NAME);
+        VariantMongoDBAdaptor dbAdaptor2 = getVariantStorageManager("2").getDBAdaptor(DB_NAME);
+        long count = dbAdaptor.count(null).first();
+        assertTrue(count > 0);
+        assertEquals(dbAdaptor2.count(null).first().longValue(), count);
+
+        // Same files and genotypes of each sample
+        assertEquals(count, compareCollections(dbAdaptor2.getVariantsCollection(), dbAdaptor.getVariantsCollection()));
+    }
+
+    @Test
+    public void mergeParallelChromosomesTest() throws Exception {
+        // Split the multi-chromosome file by chromosome
+        List<String> chromosomes = Arrays.asList("1", "2", "3", "4");
+        Map<String, List<String>> lines = new LinkedHashMap<>();
+        List<String> header = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(Paths.get(smallInputUri).toFile()))))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    header.add(line);
+                } else {
+                    String chromosome = line.substring(0, line.indexOf('\t'));
+                    if (chromosomes.contains(chromosome)) {
+                        lines.computeIfAbsent(chromosome, k -> new ArrayList<>()).add(line);
+                    }
+                }
+            }
+        }
+        List<URI> files = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : lines.entrySet()) {
+            Path file = Paths.get(outputUri).resolve("variant-test-file.chr" + entry.getKey() + ".vcf");
+            List<String> content = new ArrayList<>(header);
+            content.addAll(entry.getValue());
+            Files.write(file, content);
+            files.add(file.toUri());
+        }
+
+        // Merge all the chromosomes at the same time, and, in other collections, one chromosome after the other
+        for (VariantStorageEngine engine : Arrays.asList(variantStorageManager, getVariantStorageManager("2"))) {
+            int parallelChromosomes = engine == variantStorageManager ? chromosomes.size() : 1;
+            engine.getOptions()
+                    .append(VariantStorageEngine.Options.DB_NAME.key(), DB_NAME)
+                    .append(VariantStorageEngine.Options.STUDY_NAME.key(), STUDY_NAME)
+                    .append(VariantStorageEngine.Options.STUDY_ID.key(), STUDY_ID)
+                    .append(VariantStorageEngine.Options.ANNOTATE.key(), false)
+                    .append(VariantStorageEngine.Options.CALCULATE_STATS.key(), false)
+                    .append(MongoDBVariantOptions.DIRECT_LOAD.key(), false)
+                    .append(MongoDBVariantOptions.MERGE_PARALLEL_CHROMOSOMES.key(), parallelChromosomes);
+            for (StoragePipelineResult result : engine.index(files, outputUri, true, true, true)) {
+                assertTrue(result.isLoadExecuted());
+                assertNull(result.getLoadError());
+            }
+        }
+
+        MongoDataStore mongoDataStore = getMongoDataStoreManager(DB_NAME).get(DB_NAME);
+        MongoDBCollection variantsCollection = mongoDataStore.getCollection(MongoDBVariantOptions.COLLECTION_VARIANTS.defaultValue());
+        MongoDBCollection variants2Collection = mongoDataStore.getCollection(MongoDBVariantOptions.COLLECTION_VARIANTS.defaultValue() + "2");
+        assertTrue(compareCollections(variants2Collection, variantsCollection) > 0);
+
+        StudyConfiguration studyConfiguration = variantStorageManager.getDBAdaptor(DB_NAME).getStudyConfigurationManager()
+                .getStudyConfiguration(STUDY_ID, null).first();
+        assertEquals(chromosomes.size(), studyConfiguration.getIndexedFiles().size());
+        checkLoadedVariants();
+    }
+
+    @Test
+    public void shardedTransformTest() throws Exception {
+        // Bgzipped and tabix indexed copy of the input
+        URI input = tabixIndexedCopy(smallInputUri, newOutputUri());
+
+        // Transform in shards and load, and, in other collections, transform as a single stream and load
+        for (VariantStorageEngine engine : Arrays.asList(variantStorageManager, getVariantStorageManager("2"))) {
+            boolean sharded = engine == variantStorageManager;
+            engine.getOptions()
+                    .append(VariantStorageEngine.Options.DB_NAME.key(), DB_NAME)
+                    .append(VariantStorageEngine.Options.STUDY_NAME.key(), STUDY_NAME)
+                    .append(VariantStorageEngine.Options.STUDY_ID.key(), STUDY_ID)
+                    .append(VariantStorageEngine.Options.ANNOTATE.key(), false)
+                    .append(VariantStorageEngine.Options.CALCULATE_STATS.key(), false)
+                    .append(VariantStorageEngine.Options.TRANSFORM_THREADS.key(), 4)
+                    .append(VariantStorageEngine.Options.TRANSFORM_SHARDED.key(), sharded);
+            StoragePipelineResult result = engine.index(Collections.singletonList(input), newOutputUri(), true, true, true).get(0);
+            assertEquals(sharded, VariantReaderUtils.isManifest(result.getTransformResult().getPath()));
+            assertTrue(result.isLoadExecuted());
+            assertNull(result.getLoadError());
+        }
+
+        MongoDataStore mongoDataStore = getMongoDataStoreManager(DB_NAME).get(DB_NAME);
+        MongoDBCollection variantsCollection = mongoDataStore.getCollection(MongoDBVariantOptions.COLLECTION_VARIANTS.defaultValue());
+        MongoDBCollection variants2Collection = mongoDataStore.getCollection(MongoDBVariantOptions.COLLECTION_VARIANTS.defaultValue() + "2");
+        assertTrue(compareCollections(variants2Collection, variantsCollection) > 0);
+
+        StudyConfiguration studyConfiguration = variantStorageManager.getDBAdaptor(DB_NAME).getStudyConfigurationManager()
+                .getStudyConfiguration(STUDY_ID, null).first();
+        assertEquals(1, studyConfiguration.getIndexedFiles().size());
+        checkLoadedVariants();
+    }
+
+    @Test
+    public void mergeWithBatchPrefetchTest() throws Exception {
+        StudyConfiguration studyConfiguration = createStudyConfiguration();
+        URI f1 = getResourceUri("1000g_batches/1-500.filtered.10k.chr22.phase3_shapeit2_mvncall_integrated_v5.20130502.genotypes.vcf.gz");
+        URI f2 = getResourceUri("1000g_batches/501-1000.filtered.10k.chr22.phase3_shapeit2_mvncall_integrated_v5.20130502.genotypes.vcf.gz");
+
+        // Load the same files in two studies, with and without the batch prefetch. The second file merges overlapping
+        // regions with the loaded variants of the first one.
+        String studyName1 = studyConfiguration.getStudyName();
+        String studyName2 = studyConfiguration.getStudyName() + "_2";
+        for (URI file : Arrays.asList(f1, f2)) {
+            ObjectMap objectMap = new ObjectMap()
+                    .append(VariantStorageEngine.Options.DB_NAME.key(), DB_NAME)
+                    .append(VariantStorageEngine.Options.CALCULATE_STATS.key(), false)
+                    .append(VariantStorageEngine.Options.ANNOTATE.key(), false)
+                    .append(VariantStorageEngine.Options.FILE_ID.key(), null)
+                    .append(MongoDBVariantOptions.DIRECT_LOAD.key(), false);
+            runETL(variantStorageManager, file, outputUri, objectMap
+                    .append(VariantStorageEngine.Options.STUDY_ID.key(), studyConfiguration.getStudyId())
+                    .append(VariantStorageEngine.Options.STUDY_NAME.key(), studyName1)
+                    .append(MongoDBVariantOptions.MERGE_BATCH_PREFETCH.key(), true), true, true, true);
+            runETL(variantStorageManager, file, outputUri, objectMap
+                    .append(VariantStorageEngine.Options.STUDY_ID.key(), studyConfiguration.getStudyId() + 1)
+                    .append(VariantStorageEngine.Options.STUDY_NAME.key(), studyName2)
+                    .append(MongoDBVariantOptions.MERGE_BATCH_PREFETCH.key(), false), true, true, true);
+        }
+
+        VariantDBAdaptor dbAdaptor = variantStorageManager.getDBAdaptor(DB_NAME);
+        Map<String, Variant> variants1 = new HashMap<>();
+        dbAdaptor.iterator(new Query(VariantDBAdaptor.VariantQueryParams.STUDIES.key(), studyName1), new QueryOptions())
+                .forEachRemaining(variant -> variants1.put(variant.toString(), variant));
+        Map<String, Variant> variants2 = new HashMap<>();
+        dbAdaptor.iterator(new Query(VariantDBAdaptor.VariantQueryParams.STUDIES.key(), studyName2), new QueryOptions())
+                .forEachRemaining(variant -> variants2.put(variant.toString(), variant));
+
+        assertFalse(variants1.isEmpty());
+        assertEquals(variants2.keySet(), variants1.keySet());
+        for (Map.Entry<String, Variant> entry : variants1.entrySet()) {
+            StudyEntry study1 = entry.getValue().getStudy(studyName1);
+            StudyEntry study2 = variants2.get(entry.getKey()).getStudy(studyName2);
+            assertEquals(entry.getKey(), study2.getSamplesName(), study1.getSamplesName());
+            for (String sample : study1.getSamplesName()) {
+                assertEquals(entry.getKey() + " " + sample, study2.getSampleData(sample, "GT"), study1.getSampleData(sample, "GT"));
+            }
+        }
+        checkLoadedVariants();
+    }
+
+    @Test
+    public void directLoadTest() throws Exception {
+        StudyConfiguration studyConfiguration = createStudyConfiguration();
+        StoragePipelineResult storagePipelineResult = runDefaultETL(smallInputUri, variantStorageManager, studyConfiguration, new ObjectMap()
+                .append(VariantStorageEngine.Options.ANNOTATE.key(), false)
+                .append(VariantStorageEngine.Options.CALCULATE_STATS.key(), false));
+        assertTrue(storagePipelineResult.getLoadStats().getBoolean(MongoDBVariantOptions.DIRECT_LOAD.key()));
+
+        // Load the same file without the direct load in other study. Both loads should write the same variants
+        runDefaultETL(smallInputUri, variantStorageManager, new StudyConfiguration(6, "study2"), new ObjectMap()
+                .append(MongoDBVariantOptions.DIRECT_LOAD.key(), false)
+                .append(VariantStorageEngine.Options.ANNOTATE.key(), false)
+                .append(VariantStorageEngine.Options.CALCULATE_STATS.key(), false));
+
+        try (VariantMongoDBAdaptor dbAdaptor = getVariantStorageManager().getDBAdaptor(DB_NAME)) {
+            String studyId = String.valueOf(studyConfiguration.getStudyId());
+            // The loaded variants have to be marked in the stage collection as not new in the study
+            long stageCount = 0;
+            for (Document document : dbAdaptor.getStageCollection().nativeQuery()
+                    .find(Filters.exists(studyId), new QueryOptions())) {
+                Document study = document.get(studyId, Document.class);
+                assertEquals(document.getString("_id"), false, study.getBoolean(MongoDBVariantStageLoader.NEW_STUDY_FIELD));
+                stageCount++;
+            }
+            assertTrue(stageCount > 0);
+            for (Document document : dbAdaptor.getVariantsCollection().nativeQuery().find(new Document(), new QueryOptions())) {
+                List<Document> studies = document.get(DocumentToVariantConverter.STUDIES_FIELD, List.class);
+                assertEquals(document.getString("_id"), 2, studies.size());
+            }
+        }
+        checkLoadedVariants();
+    }
+
     @Test
     public void mergeAlreadyStagedFileTest() throws Exception {
         StudyConfiguration studyConfiguration = createStudyConfiguration();
@@ -16,19 +16,36 @@
 
 package org.opencb.opencga.storage.mongodb.variant.adaptors;
 
+import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.junit.Test;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.commons.datastore.mongodb.MongoDBCollection;
+import org.opencb.commons.datastore.mongodb.MongoDataStoreManager;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptorTest;
+import org.opencb.opencga.storage.mongodb.auth.MongoCredentials;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine;
 import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageTest;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import static org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor.VariantQueryParams.*;
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.QUERY_PLAN_CACHE_SIZE;
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.QUERY_SAMPLES_PUSHDOWN;
+import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter.STUDIES_FIELD;
 
 /**
  * @author Alejandro Aleman Ramos <aaleman@cipf.es>
@@ -100,4 +117,126 @@ public class VariantMongoDBAdaptorTest extends VariantDBAdaptorTest implements M
         assertEquals(numVariantsChr1, numVariantsNoAnnotation);
     }
 
+    @Test
+    public void queryPlanCacheRegionAndGeneTest() throws Exception {
+        VariantDBAdaptor uncachedDBAdaptor = newDBAdaptor(QUERY_PLAN_CACHE_SIZE.key(), 0);
+
+        // Region and gene filters are joined with OR
+        Query query = new Query(REGION.key(), "1:1000000-2000000").append(GENE.key(), "FLG-AS1");
+        long regionVariants = dbAdaptor.count(new Query(REGION.key(), "1:1000000-2000000")).first();
+        long geneVariants = dbAdaptor.count(new Query(GENE.key(), "FLG-AS1")).first();
+        assertTrue(regionVariants > 0);
+        assertTrue(geneVariants > 0);
+        List<String> expected;
+        try {
+            expected = getIds(uncachedDBAdaptor.get(new Query(query), new QueryOptions()));
+        } finally {
+            uncachedDBAdaptor.close();
+        }
+        assertEquals(regionVariants + geneVariants, expected.size());
+
+        // The first query compiles the plan, and the second one reuses it
+        assertEquals(expected, getIds(dbAdaptor.get(new Query(query), new QueryOptions())));
+        assertEquals(expected, getIds(dbAdaptor.get(new Query(query), new QueryOptions())));
+    }
+
+    @Test
+    public void studyTimeStampsTest() throws Exception {
+        // The stamp of the query plan cache reads only the timestamps, and matches the whole configurations
+        StudyConfigurationManager studyConfigurationManager = dbAdaptor.getStudyConfigurationManager();
+        Map<Integer, Long> timeStamps = studyConfigurationManager.getStudyTimeStamps();
+        assertEquals(studyConfigurationManager.getStudies(null).size(), timeStamps.size());
+        StudyConfiguration sc = studyConfigurationManager.getStudyConfiguration(studyConfiguration.getStudyId(), null).first();
+        assertEquals(sc.getTimeStamp(), timeStamps.get(studyConfiguration.getStudyId()));
+
+        studyConfigurationManager.updateStudyConfiguration(sc, null);
+        assertNotEquals(timeStamps, studyConfigurationManager.getStudyTimeStamps());
+        assertEquals(sc.getTimeStamp(), studyConfigurationManager.getStudyTimeStamps().get(studyConfiguration.getStudyId()));
+    }
+
+    @Test
+    public void samplesPushdownTest() throws Exception {
+        assumeTrue("Requires MongoDB 3.4.4 or newer", isMongoVersionAtLeast(3, 4, 4));
+        List<String> samples = StudyConfiguration.getIndexedSamples(studyConfiguration).keySet().stream()
+                .sorted().limit(3).collect(Collectors.toList());
+        VariantSamplesProjection samplesProjection = VariantSamplesProjection.build(studyConfiguration, samples, null);
+        assertNotNull(samplesProjection);
+
+        // The server side projection returns the same documents as the projection applied in the client
+        MongoDBCollection variantsCollection = ((VariantMongoDBAdaptor) dbAdaptor).getVariantsCollection();
+        Map<Object, Document> expectedDocuments = new HashMap<>();
+        for (Document document : variantsCollection.nativeQuery().find(new Document(), new QueryOptions())) {
+            expectedDocuments.put(document.get("_id"), samplesProjection.apply(document));
+        }
+        List<Bson> pipeline = samplesProjection.buildPipeline(new Document(), new Document(), new QueryOptions());
+        List<Document> documents = variantsCollection.aggregate(pipeline, new QueryOptions()).getResult();
+        assertEquals(expectedDocuments.size(), documents.size());
+        for (Document document : documents) {
+            Document expected = expectedDocuments.get(document.get("_id"));
+            assertEquals(expected.get(STUDIES_FIELD), document.get(STUDIES_FIELD));
+        }
+
+        // Same variants and samples data as without the pushdown
+        Query query = new Query(RETURNED_STUDIES.key(), studyConfiguration.getStudyName())
+                .append(RETURNED_SAMPLES.key(), samples)
+                .append(REGION.key(), "1");
+        Map<String, Variant> expected = new HashMap<>();
+        for (Variant variant : dbAdaptor.get(new Query(query), new QueryOptions()).getResult()) {
+            expected.put(variant.toString(), variant);
+        }
+        assertFalse(expected.isEmpty());
+        VariantDBAdaptor pushdownDBAdaptor = newDBAdaptor(QUERY_SAMPLES_PUSHDOWN.key(), true);
+        try {
+            List<Variant> variants = pushdownDBAdaptor.get(new Query(query), new QueryOptions()).getResult();
+            assertEquals(expected.size(), variants.size());
+            for (Variant variant : variants) {
+                StudyEntry expectedStudy = expected.get(variant.toString()).getStudies().get(0);
+                StudyEntry study = variant.getStudies().get(0);
+                assertEquals(samples.size(), study.getOrderedSamplesName().size());
+                assertEquals(expectedStudy.getOrderedSamplesName(), study.getOrderedSamplesName());
+                assertEquals(expectedStudy.getSamplesData(), study.getSamplesData());
+                assertEquals(expectedStudy.getFiles(), study.getFiles());
+            }
+        } finally {
+            pushdownDBAdaptor.close();
+        }
+    }
+
+    private static List<String> getIds(QueryResult<Variant> queryResult) {
+        return queryResult.getResult().stream().map(Variant::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * New DBAdaptor with a different value for one of the storage engine options.
+     */
+    private VariantDBAdaptor newDBAdaptor(String key, Object value) throws Exception {
+        ObjectMap engineOptions = variantStorageManager.getConfiguration()
+                .getStorageEngine(MongoDBVariantStorageEngine.STORAGE_ENGINE_ID).getVariant().getOptions();
+        Object previousValue = engineOptions.put(key, value);
+        try {
+            return variantStorageManager.getDBAdaptor(DB_NAME);
+        } finally {
+            if (previousValue == null) {
+                engineOptions.remove(key);
+            } else {
+                engineOptions.put(key, previousValue);
+            }
+        }
+    }
+
+    private boolean isMongoVersionAtLeast(int... minVersion) throws Exception {
+        MongoCredentials credentials = getVariantStorageManager().getMongoCredentials(DB_NAME);
+        try (MongoDataStoreManager mongoManager = getMongoDataStoreManager(DB_NAME)) {
+            Document buildInfo = mongoManager.get(credentials.getMongoDbName(), credentials.getMongoDBConfiguration())
+                    .getDb().runCommand(new Document("buildInfo", 1));
+            List<Integer> version = (List<Integer>) buildInfo.get("versionArray");
+            for (int i = 0; i < minVersion.length; i++) {
+                if (version.get(i) != minVersion[i]) {
+                    return version.get(i) > minVersion[i];
+                }
+            }
+            return true;
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.adaptors;
+
+import org.bson.Document;
+import org.junit.Test;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor.VariantQueryParams.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class VariantQueryPlanCacheTest {
+
+    @Test
+    public void keyIgnoresPositionalParams() {
+        Query query1 = new Query(STUDIES.key(), "s1").append(REGION.key(), "1:1000-2000").append(ANNOT_BIOTYPE.key(), "protein_coding");
+        Query query2 = new Query(ANNOT_BIOTYPE.key(), "protein_coding").append(CHROMOSOME.key(), "2").append(STUDIES.key(), "s1");
+        Query query3 = new Query(STUDIES.key(), "s2").append(ANNOT_BIOTYPE.key(), "protein_coding");
+
+        QueryOptions options = new QueryOptions(QueryOptions.INCLUDE, "studies");
+        assertEquals(VariantQueryPlanCache.key(query1, options), VariantQueryPlanCache.key(query2, options));
+        assertNotEquals(VariantQueryPlanCache.key(query1, options), VariantQueryPlanCache.key(query3, options));
+        assertNotEquals(VariantQueryPlanCache.key(query1, options), VariantQueryPlanCache.key(query1, new QueryOptions()));
+        // Timeouts, limits and skips do not change the plan
+        assertEquals(VariantQueryPlanCache.key(query1, options),
+                VariantQueryPlanCache.key(query1, new QueryOptions(options).append(QueryOptions.LIMIT, 10)));
+
+        Query shape = VariantQueryPlanCache.removePositionalParams(query1);
+        assertFalse(shape.containsKey(REGION.key()));
+        assertTrue(query1.containsKey(REGION.key()));
+    }
+
+    @Test
+    public void invalidateOnStampChange() {
+        AtomicLong stamp = new AtomicLong(1);
+        VariantQueryPlanCache cache = new VariantQueryPlanCache(10, stamp::get, 0);
+
+        cache.put("k", new VariantQueryPlanCache.QueryPlan(new Document(), new Document(), cache.currentStamp()));
+        assertNotNull(cache.get("k"));
+
+        stamp.set(2);
+        assertNull(cache.get("k"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        VariantQueryPlanCache cache = new VariantQueryPlanCache(2, () -> 1, 1000);
+        for (String key : Arrays.asList("k1", "k2")) {
+            cache.put(key, new VariantQueryPlanCache.QueryPlan(new Document(), new Document(), cache.currentStamp()));
+        }
+        cache.get("k1");
+        cache.put("k3", new VariantQueryPlanCache.QueryPlan(new Document(), new Document(), cache.currentStamp()));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("k1"));
+        assertNull(cache.get("k2"));
+        assertNotNull(cache.get("k3"));
+    }
+
+    @Test
+    public void bind() {
+        Document filter = new Document("type", "SNV");
+        Document region = new Document("chr", "1");
+        VariantQueryPlanCache.QueryPlan plan = new VariantQueryPlanCache.QueryPlan(filter, new Document(), 1);
+
+        assertEquals(filter, plan.bind(new Document()));
+        assertEquals(new Document("type", "SNV").append("chr", "1"), plan.bind(region));
+        assertEquals(region, new VariantQueryPlanCache.QueryPlan(new Document(), new Document(), 1).bind(region));
+        // Filters on the same field can not be merged
+        assertEquals(new Document("$and", Arrays.asList(new Document("type", "INDEL"), filter)), plan.bind(new Document("type", "INDEL")));
+        assertEquals(new Document("type", "SNV"), filter);
+    }
+
+    @Test
+    public void bindOr() {
+        // The regions join the "$or" of the filter, as when parsing the whole query
+        Document filter = new Document("$or", Arrays.asList(new Document("gene", "g1"), new Document("ids", "rs1")))
+                .append("type", "SNV");
+        Document regions = new Document("$or", Arrays.asList(new Document("chr", "1"), new Document("chr", "2")));
+        VariantQueryPlanCache.QueryPlan plan = new VariantQueryPlanCache.QueryPlan(filter, new Document(), 1);
+
+        Document expected = new Document("$or", Arrays.asList(new Document("chr", "1"), new Document("chr", "2"),
+                new Document("gene", "g1"), new Document("ids", "rs1")))
+                .append("type", "SNV");
+        assertEquals(expected, plan.bind(regions));
+        assertEquals(2, filter.get("$or", List.class).size());
+
+        plan = new VariantQueryPlanCache.QueryPlan(new Document("type", "SNV"), new Document(), 1);
+        assertEquals(new Document("type", "SNV").append("$or", regions.get("$or")), plan.bind(regions));
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.adaptors;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToStudyVariantEntryConverter.*;
+import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter.STUDIES_FIELD;
+
+/**
+ * Created on 18/10/26.
+ */
+public class VariantSamplesProjectionTest {
+
+    private StudyConfiguration studyConfiguration;
+
+    @Before
+    public void setUp() {
+        studyConfiguration = new StudyConfiguration(1, "s1");
+        studyConfiguration.getSampleIds().put("S1", 1);
+        studyConfiguration.getSampleIds().put("S2", 2);
+        studyConfiguration.getSampleIds().put("S3", 3);
+        studyConfiguration.getSampleIds().put("S4", 4);
+        studyConfiguration.getSamplesInFiles().put(10, new LinkedHashSet<>(Arrays.asList(1, 2)));
+        studyConfiguration.getSamplesInFiles().put(20, new LinkedHashSet<>(Arrays.asList(3, 4)));
+        studyConfiguration.getIndexedFiles().addAll(Arrays.asList(10, 20));
+    }
+
+    @Test
+    public void build() {
+        assertNull(VariantSamplesProjection.build(studyConfiguration, Collections.emptyList(), null));
+        assertNull(VariantSamplesProjection.build(studyConfiguration, Arrays.asList("S1", "S2", "3", "S4"), null));
+
+        VariantSamplesProjection projection = VariantSamplesProjection.build(studyConfiguration, Arrays.asList("S3", "1", "S9"), null);
+        assertNotNull(projection);
+        assertEquals(Arrays.asList(1, 3), projection.getSampleIds());
+        assertNull(projection.getFileIds());
+
+        projection = VariantSamplesProjection.build(studyConfiguration, Collections.singletonList("S3"), Collections.singletonList(10));
+        assertEquals(Arrays.asList(10, 20), projection.getFileIds());
+    }
+
+    @Test
+    public void apply() {
+        Document study = new Document(STUDYID_FIELD, 1)
+                .append(FILES_FIELD, Arrays.asList(new Document(FILEID_FIELD, 10), new Document(FILEID_FIELD, 20)))
+                .append(GENOTYPES_FIELD, new Document("0/1", Arrays.asList(1, 3)).append("1/1", Arrays.asList(2, 4)));
+        Document otherStudy = new Document(STUDYID_FIELD, 2).append(GENOTYPES_FIELD, new Document());
+        Document variant = new Document("_id", "1:10:A:C").append(STUDIES_FIELD, Arrays.asList(study, otherStudy));
+
+        Document projected = new VariantSamplesProjection(1, Arrays.asList(1, 2), Collections.singletonList(10)).apply(variant);
+
+        List<Document> studies = (List<Document>) projected.get(STUDIES_FIELD);
+        assertEquals(1, studies.size());
+        assertEquals(Collections.singletonList(new Document(FILEID_FIELD, 10)), studies.get(0).get(FILES_FIELD));
+        assertEquals(new Document("0/1", Collections.singletonList(1)).append("1/1", Collections.singletonList(2)),
+                studies.get(0).get(GENOTYPES_FIELD));
+        assertEquals(2, ((List) variant.get(STUDIES_FIELD)).size());
+    }
+
+    @Test
+    public void buildPipeline() {
+        VariantSamplesProjection samplesProjection = new VariantSamplesProjection(1, Collections.singletonList(1), null);
+        Document projection = new Document("chr", 1).append(STUDIES_FIELD, new Document("$elemMatch", new Document()));
+        QueryOptions options = new QueryOptions(QueryOptions.SORT, "_id").append(QueryOptions.LIMIT, 10);
+
+        List<Bson> pipeline = samplesProjection.buildPipeline(new Document("chr", "1"), projection, options);
+
+        assertEquals(Arrays.asList("$match", "$sort", "$limit", "$project"),
+                Arrays.asList(pipeline.stream().map(stage -> ((Document) stage).keySet().iterator().next()).toArray()));
+        Document project = (Document) ((Document) pipeline.get(3)).get("$project");
+        assertEquals(1, project.get("chr"));
+        assertTrue(((Document) project.get(STUDIES_FIELD)).containsKey("$map"));
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.converters;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 18/10/26.
+ */
+public class LazySamplesDataTest {
+
+    @Test
+    public void loadOnFirstAccess() {
+        AtomicInteger loads = new AtomicInteger();
+        LazySamplesData samplesData = new LazySamplesData(4, "0/0", 1, data -> {
+            loads.incrementAndGet();
+            data.setGenotype(2, "0/1");
+            data.setExtraField(0, 2, "10");
+            data.setExtraField(0, 3, ".");
+        });
+
+        assertEquals(4, samplesData.size());
+        assertEquals(0, loads.get());
+
+        assertEquals("0/1", samplesData.getGenotype(2));
+        assertEquals(Collections.singleton(2), samplesData.getNonDefaultGenotypePositions());
+        assertEquals(Arrays.asList("0/0", null), samplesData.get(0));
+        assertEquals(Arrays.asList("0/1", "10"), samplesData.get(2));
+        assertEquals(Arrays.asList("0/0", "."), samplesData.get(3));
+        assertSame(samplesData.get(2), samplesData.get(2));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void loadConcurrently() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        int size = 1000;
+        LazySamplesData samplesData = new LazySamplesData(size, "0/0", 1, data -> {
+            loads.incrementAndGet();
+            for (int i = 0; i < size; i += 2) {
+                data.setGenotype(i, "0/1");
+                data.setExtraField(0, i, String.valueOf(i));
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < size; i++) {
+                        assertEquals(i % 2 == 0 ? Arrays.asList("0/1", String.valueOf(i)) : Arrays.asList("0/0", null),
+                                samplesData.get(i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void modify() {
+        LazySamplesData samplesData = new LazySamplesData(2, "0/0", 0, data -> data.setGenotype(1, "1/1"));
+
+        samplesData.get(0).set(0, "0/1");
+        assertEquals("0/1", samplesData.getGenotype(0));
+
+        samplesData.add(Collections.singletonList("./."));
+        assertEquals(Arrays.<List<String>>asList(
+                Collections.singletonList("0/1"),
+                Collections.singletonList("1/1"),
+                Collections.singletonList("./.")), samplesData);
+        assertEquals("./.", samplesData.getGenotype(2));
+    }
+
+    @Test
+    public void excludeGenotypes() {
+        LazySamplesData samplesData = new LazySamplesData(1, null, 1, null);
+
+        assertNull(samplesData.getGenotype(0));
+        assertEquals(Collections.singletonList(null), samplesData.get(0));
+    }
+}
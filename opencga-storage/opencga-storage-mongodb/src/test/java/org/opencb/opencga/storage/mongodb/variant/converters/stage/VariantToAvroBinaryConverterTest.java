@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.converters.stage;
+
+import org.bson.types.Binary;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.utils.CompressionUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 18/10/26.
+ */
+public class VariantToAvroBinaryConverterTest {
+
+    private Variant variant;
+
+    @Before
+    public void setUp() {
+        variant = new Variant("1", 1000, 1000, "A", "C");
+        variant.setIds(Collections.singletonList("rs666"));
+        StudyEntry studyEntry = new StudyEntry("2", "1");
+        studyEntry.getFile("2").getAttributes().put("QUAL", "0.01");
+        studyEntry.setFormatAsString("GT:DP");
+        Map<String, String> na001 = new HashMap<>();
+        na001.put("GT", "0/1");
+        na001.put("DP", "4");
+        studyEntry.addSampleData("NA001", na001);
+        variant.addStudyEntry(studyEntry);
+    }
+
+    @Test
+    public void convertCodecs() {
+        for (VariantToAvroBinaryConverter.Codec codec : VariantToAvroBinaryConverter.Codec.values()) {
+            VariantToAvroBinaryConverter converter = new VariantToAvroBinaryConverter(codec, null);
+            Binary binary = converter.convertToStorageType(variant);
+            assertEquals(codec == VariantToAvroBinaryConverter.Codec.NONE ? (byte) 0x80 : (byte) 0, binary.getType());
+            assertEquals(variant.toJson(), converter.convertToDataModelType(binary).toJson());
+            // Any converter can read any codec
+            assertEquals(variant.toJson(), new VariantToAvroBinaryConverter().convertToDataModelType(binary).toJson());
+        }
+    }
+
+    @Test
+    public void convertLegacy() throws Exception {
+        VariantToAvroBinaryConverter converter = new VariantToAvroBinaryConverter();
+        Binary legacy = new Binary(CompressionUtils.compress(converter.encode(variant)));
+        assertEquals(variant.toJson(), converter.convertToDataModelType(legacy).toJson());
+    }
+
+    @Test
+    public void convertWithDictionary() {
+        VariantToAvroBinaryConverter defaultConverter = new VariantToAvroBinaryConverter();
+        byte[] dictionary = defaultConverter.encode(variant);
+        VariantToAvroBinaryConverter converter = new VariantToAvroBinaryConverter(VariantToAvroBinaryConverter.Codec.DEFLATE_FAST,
+                dictionary);
+
+        Binary binary = converter.convertToStorageType(variant);
+        assertEquals(variant.toJson(), converter.convertToDataModelType(binary).toJson());
+
+        // Dictionaries are registered by file
+        defaultConverter.registerDictionary(1, dictionary);
+        assertEquals(variant.toJson(), defaultConverter.convertToDataModelType(binary, 1).toJson());
+        converter.close();
+        defaultConverter.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void convertWithMissingDictionary() {
+        byte[] dictionary = new VariantToAvroBinaryConverter().encode(variant);
+        Binary binary = new VariantToAvroBinaryConverter(VariantToAvroBinaryConverter.Codec.DEFLATE, dictionary)
+                .convertToStorageType(variant);
+
+        new VariantToAvroBinaryConverter().convertToDataModelType(binary);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void convertWithDictionaryOfOtherFile() {
+        VariantToAvroBinaryConverter defaultConverter = new VariantToAvroBinaryConverter();
+        byte[] dictionary = defaultConverter.encode(variant);
+        Binary binary = new VariantToAvroBinaryConverter(VariantToAvroBinaryConverter.Codec.DEFLATE, dictionary)
+                .convertToStorageType(variant);
+
+        defaultConverter.registerDictionary(1, dictionary);
+        defaultConverter.registerDictionary(2, new byte[]{1, 2, 3});
+        defaultConverter.convertToDataModelType(binary, 2);
+    }
+
+    @Test
+    public void parseCodec() {
+        assertEquals(VariantToAvroBinaryConverter.Codec.DEFLATE_FAST, VariantToAvroBinaryConverter.Codec.parse("deflate-fast"));
+        assertEquals(VariantToAvroBinaryConverter.Codec.NONE, VariantToAvroBinaryConverter.Codec.parse("NONE"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnknownCodec() {
+        VariantToAvroBinaryConverter.Codec.parse("lz4");
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2016 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.load.variants;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.io.DataReader;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 18/10/26.
+ */
+public class MongoDBVariantDirectReaderTest {
+
+    @Test
+    public void readOverlappingVariants() {
+        MongoDBVariantDirectReader reader = newReader("1:100:A:C", "1:100:A:T", "1:200:A:C", "2:50:A:C", "2:60:A:C");
+
+        assertEquals(asList(new Variant("1:100:A:C"), new Variant("1:100:A:T")), reader.read(1));
+        assertEquals(asList(new Variant("1:200:A:C"), new Variant("2:50:A:C")), reader.read(2));
+        assertEquals(asList(new Variant("2:60:A:C")), reader.read(2));
+        assertEquals(0, reader.read(2).size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readUnsortedPositions() {
+        MongoDBVariantDirectReader reader = newReader("1:200:A:C", "1:100:A:C");
+
+        reader.read(10);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readUnsortedChromosomes() {
+        MongoDBVariantDirectReader reader = newReader("1:100:A:C", "2:100:A:C", "1:200:A:C");
+
+        while (!reader.read(1).isEmpty()) {
+            continue;
+        }
+    }
+
+    private MongoDBVariantDirectReader newReader(String... variants) {
+        Iterator<String> iterator = asList(variants).iterator();
+        return new MongoDBVariantDirectReader(new DataReader<Variant>() {
+            @Override
+            public List<Variant> read() {
+                return read(1);
+            }
+
+            @Override
+            public List<Variant> read(int batchSize) {
+                List<Variant> batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && iterator.hasNext()) {
+                    batch.add(new Variant(iterator.next()));
+                }
+                return batch;
+            }
+        });
+    }
+}